@@ -4,9 +4,12 @@ import com.robertnorthard.dtbs.server.layer.controllers.rest.AccountController;
 import com.robertnorthard.dtbs.server.layer.controllers.rest.AuthenticationController;
 import com.robertnorthard.dtbs.server.layer.controllers.rest.BookingController;
 import com.robertnorthard.dtbs.server.layer.controllers.rest.GeocodeController;
+import com.robertnorthard.dtbs.server.layer.controllers.rest.MetricsController;
 import com.robertnorthard.dtbs.server.layer.controllers.rest.TaxiController;
 import com.robertnorthard.dtbs.server.layer.controllers.rest.TestController;
+import com.robertnorthard.dtbs.server.layer.security.AdmissionRejectedExceptionMapper;
 import com.robertnorthard.dtbs.server.layer.security.AuthenticationFilter;
+import com.robertnorthard.dtbs.server.layer.security.RateLimitFilter;
 import javax.ws.rs.ApplicationPath;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.server.filter.RolesAllowedDynamicFeature;
@@ -28,6 +31,7 @@ public class ApplicationConfig extends ResourceConfig {
         register(GeocodeController.class);
         register(BookingController.class);
         register(TaxiController.class);
+        register(MetricsController.class);
         register(TestController.class);
 
         // Filters        
@@ -38,5 +42,9 @@ public class ApplicationConfig extends ResourceConfig {
          */
         register(RolesAllowedDynamicFeature.class);
         register(AuthenticationFilter.class);
+        register(RateLimitFilter.class);
+
+        // Exception mappers
+        register(AdmissionRejectedExceptionMapper.class);
     }
 }
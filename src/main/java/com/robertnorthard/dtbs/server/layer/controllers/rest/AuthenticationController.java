@@ -2,9 +2,12 @@ package com.robertnorthard.dtbs.server.layer.controllers.rest;
 
 import com.robertnorthard.dtbs.server.common.exceptions.AccountAuthenticationFailed;
 import com.robertnorthard.dtbs.server.layer.persistence.dto.HttpResponseFactory;
+import com.robertnorthard.dtbs.server.layer.security.AuthenticationFilter;
+import com.robertnorthard.dtbs.server.layer.security.SessionTokenService;
 import com.robertnorthard.dtbs.server.layer.service.AccountFacade;
 import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
 import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.utils.http.HttpHeader;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -12,6 +15,7 @@ import javax.annotation.security.PermitAll;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
@@ -33,12 +37,23 @@ public class AuthenticationController {
     private AccountFacade accountService;
     private final DataMapper mapper;
     private final HttpResponseFactory responseFactory;
+    private final SessionTokenService sessionTokenService;
 
     public AuthenticationController() {
         this.mapper = DataMapper.getInstance();
         this.responseFactory = HttpResponseFactory.getInstance();
+        this.sessionTokenService = SessionTokenService.getInstance();
     }
 
+    /**
+     * Authenticate a user. On success the account is returned with a signed
+     * session token in the X-Session-Token header, to be sent on later
+     * requests as "Authorization: Bearer token" in place of Basic
+     * credentials.
+     *
+     * @param credentials json username, password and optional GCM registration id.
+     * @return the authenticated account, else 401.
+     */
     @POST
     @Path("/login")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -52,17 +67,18 @@ public class AuthenticationController {
             if (ac.getGcmRegId() != null) {
 
                 ac = this.accountService
-                        .authenticate(ac.getUsername(), ac.getPassword(), ac.getGcmRegId());
+                        .login(ac.getUsername(), ac.getPassword(), ac.getGcmRegId());
 
             } else {
 
                 ac = this.accountService
-                        .authenticate(ac.getUsername(), ac.getPassword());
+                        .login(ac.getUsername(), ac.getPassword());
 
             }
 
-            return this.responseFactory.getResponse(
-                    ac, Response.Status.OK);
+            return Response.fromResponse(this.responseFactory.getResponse(ac, Response.Status.OK))
+                    .header(HttpHeader.SESSION_TOKEN.toString(), this.sessionTokenService.issue(ac))
+                    .build();
 
         } catch (IOException ex) {
 
@@ -78,6 +94,42 @@ public class AuthenticationController {
         }
     }
 
+    /**
+     * Exchange a session token within its refresh window for a new one with
+     * a new expiry. The old token is revoked. Expired tokens are accepted, so
+     * the endpoint does not require an authenticated user.
+     *
+     * @param authHeader Authorization header holding the bearer session token.
+     * @return the new session token in the X-Session-Token header, else 401.
+     */
+    @POST
+    @Path("/refresh")
+    @Produces(MediaType.APPLICATION_JSON)
+    @PermitAll
+    public Response refresh(@HeaderParam("Authorization") String authHeader) {
+        try {
+            if (authHeader == null || !authHeader.regionMatches(true, 0,
+                    AuthenticationFilter.BEARER_PREFIX, 0, AuthenticationFilter.BEARER_PREFIX.length())) {
+                throw new AccountAuthenticationFailed();
+            }
+
+            String token = this.sessionTokenService.refresh(
+                    authHeader.substring(AuthenticationFilter.BEARER_PREFIX.length()).trim(),
+                    this.accountService);
+
+            return Response.fromResponse(this.responseFactory.getResponse(
+                    "Session refreshed.", Response.Status.OK))
+                    .header(HttpHeader.SESSION_TOKEN.toString(), token)
+                    .build();
+
+        } catch (AccountAuthenticationFailed ex) {
+
+            LOGGER.log(Level.INFO, null, ex);
+            return this.responseFactory.getResponse(
+                    ex.getMessage(), Response.Status.UNAUTHORIZED);
+        }
+    }
+
     @POST
     @Path("/logout")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -9,25 +9,35 @@ import com.robertnorthard.dtbs.server.common.exceptions.InvalidBookingException;
 import com.robertnorthard.dtbs.server.common.exceptions.InvalidGoogleApiResponseException;
 import com.robertnorthard.dtbs.server.common.exceptions.RouteNotFoundException;
 import com.robertnorthard.dtbs.server.common.exceptions.TaxiNotFoundException;
+import com.robertnorthard.dtbs.server.layer.service.entities.Route;
 import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.BookingEvent;
 import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingDto;
 import com.robertnorthard.dtbs.server.layer.persistence.dto.HttpListResponse;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.HttpPageResponse;
 import com.robertnorthard.dtbs.server.layer.persistence.dto.HttpResponseFactory;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingSummaryDto;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.PagedResult;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.QuoteDto;
 import com.robertnorthard.dtbs.server.layer.service.BookingFacade;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCopier;
 import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
 import java.io.IOException;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.security.RolesAllowed;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -125,22 +135,98 @@ public class BookingController {
     }
 
     /**
-     * Return booking history based on user roles.
+     * Quote the route, distance, estimated travel time and cost of a journey.
+     * The quoteId may be sent when making a booking for the same journey
+     * within a few minutes to reuse the quoted route.
+     *
+     * @param securityContext injected by request scope
+     * @param message JSON with startLocation and endLocation.
+     * @param pathFormat optional route path format. If "encoded" the route path
+     * is returned as a Google encoded polyline.
+     * @return a route and fare quote.
+     */
+    @POST
+    @Path("/quote")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @RolesAllowed("passenger")
+    public Response quote(@Context SecurityContext securityContext, String message,
+            @QueryParam("path") String pathFormat) {
+
+        try {
+            if (securityContext == null) {
+                throw new AccountAuthenticationFailed();
+            }
+
+            BookingDto bookingDto = this.mapper.readValue(message, BookingDto.class);
+
+            QuoteDto quote = this.bookingService.createQuote(
+                    securityContext.getUserPrincipal().getName(),
+                    bookingDto.getStartLocation(),
+                    bookingDto.getEndLocation());
+
+            if (Route.ENCODED_PATH_FORMAT.equalsIgnoreCase(pathFormat)) {
+                quote = new QuoteDto(quote.getQuoteId(), quote.getUsername(),
+                        quote.getStartLocation(), quote.getEndLocation(),
+                        quote.getRoute().withEncodedPath(), quote.getCost(), quote.getExpiresAt());
+            }
+
+            return this.responseFactory.getResponse(quote, Response.Status.OK);
+
+        } catch (AccountAuthenticationFailed ex) {
+
+            LOGGER.log(Level.INFO, null, ex);
+            return this.responseFactory.getResponse(
+                    ex.getMessage(), Response.Status.UNAUTHORIZED);
+        } catch (RouteNotFoundException ex) {
+
+            LOGGER.log(Level.INFO, null, ex);
+            return this.responseFactory.getResponse(
+                    ex.getMessage(), Response.Status.NOT_FOUND);
+
+        } catch (IOException | IllegalArgumentException ex) {
+
+            LOGGER.log(Level.INFO, null, ex);
+            return this.responseFactory.getResponse(
+                    ex.getMessage(), Response.Status.BAD_REQUEST);
+
+        } catch (InvalidGoogleApiResponseException ex) {
+
+            LOGGER.log(Level.SEVERE, null, ex);
+            return this.responseFactory.getResponse(
+                    ex.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Return a page of booking history based on user roles, most recent first.
      *
      * @param securityContext
-     * @return booking history based on user roles.
+     * @param cursor next_cursor returned with the previous page, omitted for the first page.
+     * @param limit maximum number of bookings to return.
+     * @return a page of booking history based on user roles.
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @RolesAllowed({"passenger", "driver"})
-    public Response bookingHistory(@Context SecurityContext securityContext) {
+    public Response bookingHistory(@Context SecurityContext securityContext,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("limit") @DefaultValue("20") int limit) {
 
         if (securityContext != null) {
 
-            return Response.status(Response.Status.OK)
-                    .entity(new HttpListResponse<>(
-                                    this.bookingService.findBookingHistory(
-                                            securityContext.getUserPrincipal().getName()), "0").toString()).build();
+            try {
+                PagedResult<BookingSummaryDto> page = this.bookingService.findBookingHistory(
+                        securityContext.getUserPrincipal().getName(), cursor, limit);
+
+                return Response.status(Response.Status.OK)
+                        .entity(new HttpPageResponse<>(page, "0").toString()).build();
+
+            } catch (IllegalArgumentException ex) {
+                LOGGER.log(Level.INFO, null, ex);
+                return this.responseFactory.getResponse(
+                        ex.getMessage(), Response.Status.BAD_REQUEST);
+            }
         }
 
         LOGGER.log(Level.INFO, "bookingHistory - user not authenticated");
@@ -149,18 +235,18 @@ public class BookingController {
     }
 
     /**
-     * Return a collection of bookings in awaiting taxi dispatch state.
+     * Return summaries of bookings in awaiting taxi dispatch state.
      *
-     * @return a collection of bookings in awaiting taxi dispatch state.
+     * @return summaries of bookings in awaiting taxi dispatch state.
      */
     @GET
     @Path("/awaiting")
     @Produces(MediaType.APPLICATION_JSON)
     @RolesAllowed("driver")
     public Response findBookingsAwaitingTaxiDispatch() {
-        return Response.status(Response.Status.UNAUTHORIZED)
+        return Response.status(Response.Status.OK)
                 .entity(new HttpListResponse<>(
-                                this.bookingService.findBookingsInAwaitingTaxiDispatchState(), "0").toString()).build();
+                                this.bookingService.findAwaitingBookingSummaries(), "0").toString()).build();
     }
 
     /**
@@ -168,6 +254,8 @@ public class BookingController {
      *
      * @param securityContext user's security context injected by container.
      * @param id id of booking.
+     * @param pathFormat optional route path format. If "encoded" the route path
+     * is returned as a Google encoded polyline.
      * @return the booking object. If the user is authenticated to view the
      * booking.
      */
@@ -175,7 +263,8 @@ public class BookingController {
     @Path("/{id}")
     @Produces(MediaType.APPLICATION_JSON)
     @RolesAllowed("passenger")
-    public Response findBooking(@Context SecurityContext securityContext, @PathParam("id") long id) {
+    public Response findBooking(@Context SecurityContext securityContext, @PathParam("id") long id,
+            @QueryParam("path") String pathFormat) {
 
         try {
             if (securityContext != null) {
@@ -188,6 +277,8 @@ public class BookingController {
                     throw new EntityNotFoundException();
                 }
 
+                booking = this.setPathFormat(booking, pathFormat);
+
                 return this.responseFactory.getResponse(booking, Response.Status.OK);
 
             } else {
@@ -205,6 +296,49 @@ public class BookingController {
         }
     }
 
+    /**
+     * Return the event log of a booking, an audit of each state transition.
+     *
+     * @param securityContext user's security context injected by container.
+     * @param id id of booking.
+     * @return the events of the booking in the order they were appended. If
+     * the user is the booking's passenger or driver.
+     */
+    @GET
+    @Path("/{id}/events")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RolesAllowed({"passenger", "driver"})
+    public Response findBookingEvents(@Context SecurityContext securityContext, @PathParam("id") long id) {
+
+        try {
+            if (securityContext != null) {
+
+                List<BookingEvent> events = this.bookingService.findBookingEvents(
+                        id,
+                        securityContext.getUserPrincipal().getName());
+
+                if (events == null) {
+                    throw new EntityNotFoundException();
+                }
+
+                return Response.status(Response.Status.OK)
+                        .entity(new HttpListResponse<>(events, "0").toString()).build();
+
+            } else {
+                throw new AccountAuthenticationFailed();
+            }
+
+        } catch (AccountAuthenticationFailed ex) {
+            LOGGER.log(Level.INFO, null, ex);
+            return this.responseFactory.getResponse(
+                    ex.getMessage(), Response.Status.UNAUTHORIZED);
+        } catch (EntityNotFoundException ex) {
+            LOGGER.log(Level.INFO, null, ex);
+            return this.responseFactory.getResponse(
+                    ex.getMessage(), Response.Status.NOT_FOUND);
+        }
+    }
+
     /**
      * Accept a taxi booking,
      *
@@ -240,9 +374,10 @@ public class BookingController {
             return this.responseFactory.getResponse(
                     ex.getMessage(), Response.Status.NOT_FOUND);
         } catch (IllegalBookingStateException ex) {
+            // booking already accepted by another taxi or no longer awaiting a taxi.
             LOGGER.log(Level.INFO, null, ex);
             return this.responseFactory.getResponse(
-                    ex.getMessage(), Response.Status.BAD_REQUEST);
+                    ex.getMessage(), Response.Status.CONFLICT);
         }
     }
     
@@ -374,12 +509,15 @@ public class BookingController {
      * Check if active booking for user and return.
      * 
      * @param securityContext user's security context injected by container.
+     * @param pathFormat optional route path format. If "encoded" the route path
+     * is returned as a Google encoded polyline.
      * @return the most recent active booking.
      */
     @GET
     @Path("/active")
     @RolesAllowed({"passenger", "driver"})
-    public Response activeBookings(@Context SecurityContext securityContext){
+    public Response activeBookings(@Context SecurityContext securityContext,
+            @QueryParam("path") String pathFormat){
         
         Booking booking = null;
         
@@ -393,6 +531,8 @@ public class BookingController {
                 if(booking == null){
                     return this.responseFactory.getResponse("No active bookings.", Response.Status.NOT_FOUND);
                 }
+
+                booking = this.setPathFormat(booking, pathFormat);
                 
                 return this.responseFactory.getResponse(booking, Response.Status.OK);
                 
@@ -406,4 +546,47 @@ public class BookingController {
                     ex.getMessage(), Response.Status.UNAUTHORIZED);
         }
     }
+
+    /**
+     * Return an overview of the user's bookings: active booking id, most
+     * recent bookings and booking counts.
+     *
+     * @param securityContext user's security context injected by container.
+     * @return an overview of the user's bookings.
+     */
+    @GET
+    @Path("/overview")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RolesAllowed({"passenger", "driver"})
+    public Response bookingOverview(@Context SecurityContext securityContext) {
+
+        if (securityContext != null) {
+            return this.responseFactory.getResponse(
+                    this.bookingService.findBookingView(securityContext.getUserPrincipal().getName()),
+                    Response.Status.OK);
+        }
+
+        LOGGER.log(Level.INFO, "bookingOverview - user not authenticated");
+        return this.responseFactory.getResponse(
+                "User not authenticated", Response.Status.UNAUTHORIZED);
+    }
+
+    /**
+     * Return the booking to send, with its route path as an encoded polyline
+     * if requested. The booking is copied rather than changed as it may be
+     * shared by the entity cache.
+     *
+     * @param booking booking to return.
+     * @param pathFormat requested path format.
+     * @return the booking to send.
+     */
+    private Booking setPathFormat(Booking booking, String pathFormat) {
+        if (booking.getRoute() == null || !Route.ENCODED_PATH_FORMAT.equalsIgnoreCase(pathFormat)) {
+            return booking;
+        }
+
+        Booking copy = EntityCopier.copy(booking);
+        copy.setRoute(booking.getRoute().withEncodedPath());
+        return copy;
+    }
 }
@@ -42,6 +42,7 @@ public class GeocodeController {
      * Return a route from start and end location latitude and longitude.
      *
      * @param url url with start_latitude, start_longitude, end_latitude and end_longitude query parameters.
+     * An optional path=encoded query parameter returns the route path as a Google encoded polyline.
      * @return a route from start to end location using provided a latitudes and longitudes.
      */
     @GET
@@ -65,6 +66,10 @@ public class GeocodeController {
 
             Route route = this.googleDistanceMatrixService.getRouteInfo(new Location(start_latitude, start_longitude), new Location(end_latitude, end_longitude));
 
+            if (route != null && Route.ENCODED_PATH_FORMAT.equalsIgnoreCase(query.getFirst("path"))) {
+                route = route.withEncodedPath();
+            }
+
             return this.responseFactory.getResponse(route, Response.Status.OK);
 
         } catch (IllegalArgumentException ex) {
@@ -0,0 +1,88 @@
+package com.robertnorthard.dtbs.server.layer.controllers.rest;
+
+import com.robertnorthard.dtbs.server.layer.persistence.dto.HttpListResponse;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.HttpResponseFactory;
+import com.robertnorthard.dtbs.server.layer.security.PasswordHashingExecutor;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCacheRegistry;
+import com.robertnorthard.dtbs.server.layer.utils.gcm.NotificationDispatcher;
+import javax.annotation.security.RolesAllowed;
+import javax.enterprise.context.RequestScoped;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * A controller class for exposing application metrics.
+ *
+ * @author robertnorthard
+ */
+@Path("/v1/metrics")
+@RequestScoped
+public class MetricsController {
+
+    private final HttpResponseFactory responseFactory;
+
+    public MetricsController() {
+        this.responseFactory = HttpResponseFactory.getInstance();
+    }
+
+    /**
+     * Return hit ratio, size and eviction statistics for each entity cache.
+     *
+     * @return statistics for each entity cache.
+     */
+    @GET
+    @Path("/caches")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RolesAllowed("admin")
+    public Response findCacheStats() {
+        return Response.status(Response.Status.OK)
+                .entity(new HttpListResponse<>(EntityCacheRegistry.getStats(), "0").toString()).build();
+    }
+
+    /**
+     * Return queue depth, throughput and latency statistics for password
+     * hashing.
+     *
+     * @return statistics for the password hashing executor.
+     */
+    @GET
+    @Path("/password-hashing")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RolesAllowed("admin")
+    public Response findPasswordHashingStats() {
+        return this.responseFactory.getResponse(
+                PasswordHashingExecutor.getInstance().getStats(), Response.Status.OK);
+    }
+
+    /**
+     * Return queue depth, outcome and latency statistics for push
+     * notifications.
+     *
+     * @return statistics for the notification dispatcher.
+     */
+    @GET
+    @Path("/notifications")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RolesAllowed("admin")
+    public Response findNotificationStats() {
+        return this.responseFactory.getResponse(
+                NotificationDispatcher.getInstance().getStats(), Response.Status.OK);
+    }
+
+    /**
+     * Return the most recent push notifications that could not be delivered.
+     *
+     * @return notifications that could not be delivered.
+     */
+    @GET
+    @Path("/notifications/dead-letters")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RolesAllowed("admin")
+    public Response findNotificationDeadLetters() {
+        return Response.status(Response.Status.OK)
+                .entity(new HttpListResponse<>(NotificationDispatcher.getInstance().getDeadLetters(), "0").toString()).build();
+    }
+}
@@ -20,8 +20,10 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
 
 /**
  * Controller class for taxis.
@@ -62,6 +64,68 @@ public class TaxiController {
     @Produces(MediaType.APPLICATION_JSON)
     @RolesAllowed("driver")
     public Response updateTaxiLocation(@PathParam("id") Long id, String message) {
+        return this.updateLocation(id, message);
+    }
+
+    /**
+     * Update location of the authenticated driver's taxi.
+     *
+     * @param securityContext security context of the authenticated driver.
+     * @param message the json update message.
+     * @return update confirmation, 404 if the driver has no taxi.
+     */
+    @POST
+    @Path("/me/location")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @RolesAllowed("driver")
+    public Response updateMyTaxiLocation(@Context SecurityContext securityContext, String message) {
+
+        Taxi taxi = this.taxiService.findTaxiForDriver(
+                securityContext.getUserPrincipal().getName());
+
+        if (taxi != null) {
+            return this.updateLocation(taxi.getId(), message);
+        } else {
+            LOGGER.log(Level.INFO, "updateMyTaxiLocation - Taxi not found");
+            return this.responseFactory.getResponse(
+                    "Taxi not found.", Response.Status.NOT_FOUND);
+        }
+    }
+
+    /**
+     * Find the authenticated driver's taxi.
+     *
+     * @param securityContext security context of the authenticated driver.
+     * @return the driver's taxi else 404.
+     */
+    @GET
+    @Path("/me")
+    @Produces(MediaType.APPLICATION_JSON)
+    @RolesAllowed("driver")
+    public Response getMyTaxi(@Context SecurityContext securityContext) {
+
+        Taxi taxi = this.taxiService.findTaxiForDriver(
+                securityContext.getUserPrincipal().getName());
+
+        if (taxi != null) {
+            return this.responseFactory.getResponse(
+                    taxi, Response.Status.OK);
+        } else {
+            LOGGER.log(Level.INFO, "getMyTaxi - Taxi not found");
+            return this.responseFactory.getResponse(
+                    "Taxi not found.", Response.Status.NOT_FOUND);
+        }
+    }
+
+    /**
+     * Update location of taxi associated with the provided id.
+     *
+     * @param id id of the taxi.
+     * @param message the json update message.
+     * @return update confirmation.
+     */
+    private Response updateLocation(Long id, String message) {
         try {
 
             Location location = this.mapper.readValue(message, Location.class);
@@ -0,0 +1,191 @@
+package com.robertnorthard.dtbs.server.layer.controllers.websockets;
+
+import com.robertnorthard.dtbs.server.layer.persistence.data.mappers.booking.JpaBookingStateDataConverter;
+import com.robertnorthard.dtbs.server.layer.security.SessionToken;
+import com.robertnorthard.dtbs.server.layer.security.SessionTokenService;
+import com.robertnorthard.dtbs.server.layer.service.BookingFacade;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.EventTypes;
+import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
+import com.robertnorthard.dtbs.server.layer.utils.topic.BookingTopic;
+import com.robertnorthard.dtbs.server.layer.utils.topic.TopicSubscriber;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.websocket.CloseReason;
+import javax.websocket.OnClose;
+import javax.websocket.OnError;
+import javax.websocket.OnMessage;
+import javax.websocket.OnOpen;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpoint;
+
+/**
+ * Web socket (server to client) pushing the authenticated user's booking
+ * state transitions, so apps do not need to poll for booking updates.
+ *
+ * Clients connect with a session token in the token query parameter,
+ * /ws/v1/bookings?token=... On connect the user's active booking, if any, is
+ * sent so a reconnecting app does not miss a transition. The token is checked
+ * again before each message is pushed and the connection is closed once the
+ * token has expired or been revoked. Connections are also closed when the
+ * user logs out.
+ *
+ * @author robertnorthard
+ */
+@Singleton
+@ServerEndpoint(value = "/ws/v1/bookings")
+public class BookingWebSocketEndpoint {
+
+    private static final Logger LOGGER = Logger.getLogger(
+            BookingWebSocketEndpoint.class.getName());
+
+    private static final String TOKEN_PARAMETER = "token";
+    private static final String USERNAME_PROPERTY = "username";
+    private static final String SUBSCRIBER_PROPERTY = "subscriber";
+    private static final long SEND_TIMEOUT_SECONDS = 5;
+
+    private final SessionTokenService sessionTokenService = SessionTokenService.getInstance();
+
+    @Inject
+    private BookingTopic bookingTopic;
+    @Inject
+    private BookingFacade bookingService;
+
+    @OnOpen
+    public void onOpen(Session session) throws IOException {
+        List<String> tokens = session.getRequestParameterMap().get(TOKEN_PARAMETER);
+        SessionToken token = tokens == null || tokens.isEmpty()
+                ? null : this.sessionTokenService.verify(tokens.get(0));
+
+        if (token == null) {
+            session.close(new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY,
+                    "User not authenticated."));
+            return;
+        }
+
+        String username = token.getUsername();
+        TopicSubscriber subscriber = new SessionSubscriber(session, tokens.get(0),
+                this.sessionTokenService);
+
+        session.getUserProperties().put(USERNAME_PROPERTY, username);
+        session.getUserProperties().put(SUBSCRIBER_PROPERTY, subscriber);
+        this.bookingTopic.subscribe(username, subscriber);
+
+        Booking booking = this.bookingService.checkActiveBooking(username);
+        if (booking != null) {
+            String status = new JpaBookingStateDataConverter().convertToDatabaseColumn(booking.getState());
+            subscriber.send(BookingTopic.toMessage(
+                    "booking:" + booking.getId() + ":" + status,
+                    status,
+                    EventTypes.BOOKING_EVENT.toString(),
+                    DataMapper.getInstance().getObjectAsJson(booking)), null);
+        }
+    }
+
+    @OnClose
+    public void onClose(Session session) {
+
+        LOGGER.log(Level.FINE, "Removing client {0}", session.getId());
+
+        String username = (String) session.getUserProperties().get(USERNAME_PROPERTY);
+        TopicSubscriber subscriber = (TopicSubscriber) session.getUserProperties().get(SUBSCRIBER_PROPERTY);
+
+        if (username != null && subscriber != null) {
+            this.bookingTopic.unsubscribe(username, subscriber);
+        }
+    }
+
+    /**
+     * Clients send their refreshed session token to keep the connection open
+     * past the expiry of the token it was opened with. Other messages are
+     * ignored - communication otherwise one way. Server to client.
+     *
+     * @param message refreshed session token.
+     * @param session web socket session.
+     */
+    @OnMessage
+    public void onMessage(String message, Session session) throws IOException {
+        String username = (String) session.getUserProperties().get(USERNAME_PROPERTY);
+        SessionSubscriber subscriber = (SessionSubscriber) session.getUserProperties().get(SUBSCRIBER_PROPERTY);
+        SessionToken token = this.sessionTokenService.verify(message == null ? null : message.trim());
+
+        if (subscriber != null && token != null && token.getUsername().equals(username)) {
+            subscriber.setToken(message.trim());
+        }
+    }
+
+    @OnError
+    public void onError(Throwable t) {
+        LOGGER.log(Level.WARNING, t.getMessage());
+    }
+
+    /**
+     * Subscription of a web socket session to a booking topic, valid while
+     * the session token the connection was opened with, or the latest
+     * refreshed token sent over it, is valid.
+     */
+    private static class SessionSubscriber implements TopicSubscriber {
+
+        private final Session session;
+        private volatile String token;
+        private final SessionTokenService sessionTokenService;
+
+        SessionSubscriber(Session session, String token, SessionTokenService sessionTokenService) {
+            this.session = session;
+            this.token = token;
+            this.sessionTokenService = sessionTokenService;
+        }
+
+        void setToken(String token) {
+            this.token = token;
+        }
+
+        @Override
+        public boolean isOpen() {
+            if (!this.session.isOpen()) {
+                return false;
+            }
+
+            if (this.sessionTokenService.verify(this.token) == null) {
+                this.close("Session expired.");
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void send(String message, final SendCallback callback) {
+            RemoteEndpoint.Async remote = this.session.getAsyncRemote();
+            remote.setSendTimeout(TimeUnit.SECONDS.toMillis(SEND_TIMEOUT_SECONDS));
+
+            remote.sendText(message, new SendHandler() {
+                @Override
+                public void onResult(SendResult result) {
+                    if (result.isOK() && callback != null) {
+                        callback.sent();
+                    } else if (!result.isOK()) {
+                        LOGGER.log(Level.FINE, "Unable to send to client " + session.getId(),
+                                result.getException());
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void close(String reason) {
+            try {
+                this.session.close(new CloseReason(CloseReason.CloseCodes.VIOLATED_POLICY, reason));
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, null, ex);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.robertnorthard.dtbs.server.layer.persistence;
 
 import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A account Data Access Object (DAO) class for handling and managing event
@@ -10,4 +11,17 @@ import com.robertnorthard.dtbs.server.layer.service.entities.Account;
  * @author robertnorthard
  */
 public class AccountDao extends JpaEntityDaoImpl<String, Account> {
+
+    private static final int CACHE_SIZE = 10000;
+    private static final long CACHE_TTL_SECONDS = 30;
+
+    /**
+     * Default constructor for class AccountDao. Accounts are looked up on
+     * every authenticated request so are cached by username. The cache is
+     * only invalidated on the node making a change, so other nodes may serve
+     * an account for up to 30 seconds after it is changed.
+     */
+    public AccountDao() {
+        this.enableCache(CACHE_SIZE, CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+    }
 }
@@ -0,0 +1,40 @@
+package com.robertnorthard.dtbs.server.layer.persistence;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Address;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+/**
+ * An address Data Access Object (DAO) class for handling and managing address
+ * related data requested, updated, and processed in the application and
+ * maintained in the database.
+ *
+ * @author robertnorthard
+ */
+public class AddressDao extends JpaEntityDaoImpl<Long, Address> {
+
+    /**
+     * Return the most recently stored addresses that have a location.
+     *
+     * @param limit maximum number of addresses to return.
+     * @return addresses, most recent first.
+     */
+    public List<Address> findRecent(int limit) {
+
+        List<Address> addresses = null;
+        EntityManager em = this.getEntityManager();
+
+        try {
+            TypedQuery<Address> query = em.createNamedQuery("Address.findRecent", Address.class);
+            query.setMaxResults(limit);
+            addresses = query.getResultList();
+        } finally {
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+
+        return addresses;
+    }
+}
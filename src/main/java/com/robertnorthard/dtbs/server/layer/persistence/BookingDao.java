@@ -1,10 +1,22 @@
 package com.robertnorthard.dtbs.server.layer.persistence;
 
+import com.robertnorthard.dtbs.server.layer.persistence.dto.AwaitingBookingDto;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingCursor;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingSummaryDto;
 import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
 import com.robertnorthard.dtbs.server.layer.service.entities.booking.BookingState;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.BookingEvent;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.OutboxNotification;
+import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCacheRegistry;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.OptimisticLockException;
 import javax.persistence.Query;
+import javax.persistence.RollbackException;
+import javax.persistence.TypedQuery;
 
 /**
  * A booking Data Access Object (DAO) class for handling and managing event
@@ -15,6 +27,16 @@ import javax.persistence.Query;
  */
 public class BookingDao extends JpaEntityDaoImpl<Long, Booking> {
 
+    private static final int CACHE_SIZE = 5000;
+    private static final long CACHE_TTL_SECONDS = 60;
+
+    /**
+     * Default constructor for class BookingDao. Bookings are cached by id.
+     */
+    public BookingDao() {
+        this.enableCache(CACHE_SIZE, CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
     /**
      * Return a collection of bookings in the specified state.
      *
@@ -59,28 +81,242 @@ public class BookingDao extends JpaEntityDaoImpl<Long, Booking> {
     }
 
     /**
-     * Return a collection of incomplete bookings for the specified user.
+     * Return a page of a passenger's booking summaries ordered by most recent first.
      *
-     * @param username the user's username.
-     * @return a collection of in complete bookings for the specified user.
+     * @param username username of passenger.
+     * @param cursor position to return bookings after, null for first page.
+     * @param limit maximum number of bookings to return.
+     * @return a page of a passenger's bookings ordered by most recent first.
      */
-    public List<Booking> findInCompletedBookingsForUser(String username) {
+    public List<BookingSummaryDto> findBookingHistoryForPassenger(String username, BookingCursor cursor, int limit) {
+        return this.findBookingHistoryForAccount(
+                "Booking.findBookingHistoryForPassenger", username, cursor, limit);
+    }
 
-        List<Booking> bookings = null;
+    /**
+     * Return a page of a driver's booking summaries ordered by most recent first.
+     *
+     * @param username username of driver.
+     * @param cursor position to return bookings after, null for first page.
+     * @param limit maximum number of bookings to return.
+     * @return a page of a driver's bookings ordered by most recent first.
+     */
+    public List<BookingSummaryDto> findBookingHistoryForDriver(String username, BookingCursor cursor, int limit) {
+        return this.findBookingHistoryForAccount(
+                "Booking.findBookingHistoryForDriver", username, cursor, limit);
+    }
+
+    /**
+     * Return the number of a passenger's bookings in each state.
+     *
+     * @param username username of passenger.
+     * @return rows of booking state and number of bookings in that state.
+     */
+    public List<Object[]> countBookingsForPassengerByState(String username) {
+        return this.countBookingsForAccountByState("Booking.countBookingsForPassengerByState", username);
+    }
+
+    /**
+     * Return the number of a driver's bookings in each state.
+     *
+     * @param username username of driver.
+     * @return rows of booking state and number of bookings in that state.
+     */
+    public List<Object[]> countBookingsForDriverByState(String username) {
+        return this.countBookingsForAccountByState("Booking.countBookingsForDriverByState", username);
+    }
+
+    /**
+     * Return the number of bookings in each state a user is either the
+     * passenger or driver of. A booking a user is both passenger and driver
+     * of is counted once.
+     *
+     * @param username username of passenger and driver.
+     * @return rows of booking state and number of bookings in that state.
+     */
+    public List<Object[]> countBookingsForPassengerOrDriverByState(String username) {
+        return this.countBookingsForAccountByState("Booking.countBookingsForPassengerOrDriverByState", username);
+    }
+
+    /**
+     * Return summaries of bookings awaiting a taxi ordered by oldest first.
+     * Only the columns listed to drivers are selected.
+     *
+     * @return summaries of bookings awaiting a taxi.
+     */
+    public List<AwaitingBookingDto> findAwaitingBookingSummaries() {
         EntityManager em = this.getEntityManager();
+        List<AwaitingBookingDto> bookings = null;
 
         try {
-            Query query = em.createNamedQuery("Booking.findBookingsforUserInState", Booking.class);
+            TypedQuery<AwaitingBookingDto> query = em.createNamedQuery(
+                    "Booking.findAwaitingBookingSummaries", AwaitingBookingDto.class);
+            query.setParameter("state", Booking.getAwaitingTaxiBookingState());
+            bookings = query.getResultList();
+        } finally {
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+        return bookings;
+    }
+
+    /**
+     * Return the id of the most recent active booking of a passenger.
+     *
+     * @param username username of passenger.
+     * @return the id of the passenger's most recent active booking, null if
+     * none.
+     */
+    public Long findActiveBookingIdForPassenger(String username) {
+
+        List<Long> ids = null;
+        EntityManager em = this.getEntityManager();
+
+        try {
+            TypedQuery<Long> query = em.createNamedQuery("Booking.findActiveBookingIdsForPassenger", Long.class);
             query.setParameter("username", username);
             query.setParameter("state", Booking.getCompletedTaxiBookingState());
             query.setParameter("state2", Booking.getCancelledBookingState());
-            bookings = query.getResultList();
+            query.setMaxResults(1);
+            ids = query.getResultList();
         } finally {
             if (em.isOpen()) {
                 em.close();
             }
         }
-        return bookings;
+        return ids == null || ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * Persist a new booking and append the event recording its creation in a
+     * single transaction.
+     *
+     * @param booking booking to persist.
+     * @param event booking created event, the booking id is set once the
+     * booking is persisted.
+     * @throws IllegalArgumentException if booking or event is null.
+     */
+    public void persistBooking(Booking booking, BookingEvent event) {
+
+        if (booking == null || event == null) {
+            throw new IllegalArgumentException("Booking and event cannot be null.");
+        }
+
+        EntityManager em = this.getEntityManager();
+        EntityTransaction tx = em.getTransaction();
+
+        try {
+            tx.begin();
+            em.persist(booking);
+            em.flush();
+            event.setBookingId(booking.getId());
+            em.persist(event);
+            tx.commit();
+        } finally {
+            this.invalidate(booking.getId());
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Apply a booking state transition in a single transaction: append the
+     * event to the booking event log and update the booking projection and,
+     * if provided, the taxi assigned to it. The booking and taxi are
+     * versioned so the transition only succeeds if neither has been modified
+     * since it was read, otherwise nothing is written.
+     *
+     * @param booking booking after the transition.
+     * @param taxi taxi after the transition, null if the taxi is unchanged.
+     * @param event event recording the transition.
+     * @throws IllegalArgumentException if booking or event is null.
+     * @throws OptimisticLockException if the booking or taxi was modified
+     * concurrently.
+     */
+    public void applyTransition(Booking booking, Taxi taxi, BookingEvent event) {
+        this.applyTransition(booking, taxi, event, null);
+    }
+
+    /**
+     * Apply a booking state transition in a single transaction as above and
+     * write the notification describing it to the notification outbox, so
+     * the notification is sent if and only if the transition is committed.
+     *
+     * @param booking booking after the transition.
+     * @param taxi taxi after the transition, null if the taxi is unchanged.
+     * @param event event recording the transition.
+     * @param notification notification to send, null for none.
+     * @throws IllegalArgumentException if booking or event is null.
+     * @throws OptimisticLockException if the booking or taxi was modified
+     * concurrently.
+     */
+    public void applyTransition(Booking booking, Taxi taxi, BookingEvent event, OutboxNotification notification) {
+
+        if (booking == null || event == null) {
+            throw new IllegalArgumentException("Booking and event cannot be null.");
+        }
+
+        EntityManager em = this.getEntityManager();
+        EntityTransaction tx = em.getTransaction();
+
+        try {
+            tx.begin();
+            if (taxi != null) {
+                em.merge(taxi);
+            }
+            em.merge(booking);
+            em.persist(event);
+            if (notification != null) {
+                em.persist(notification);
+            }
+            em.flush();
+            tx.commit();
+        } catch (RollbackException ex) {
+            if (ex.getCause() instanceof OptimisticLockException) {
+                throw (OptimisticLockException) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            this.invalidate(booking.getId());
+            if (taxi != null) {
+                EntityCacheRegistry.invalidate(Taxi.class, taxi.getId());
+            }
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Return the passenger username and id of every active booking, ordered
+     * by most recent first.
+     *
+     * @return rows of passenger username and booking id.
+     */
+    public List<Object[]> findActiveBookingIds() {
+
+        List<Object[]> rows = null;
+        EntityManager em = this.getEntityManager();
+
+        try {
+            TypedQuery<Object[]> query = em.createNamedQuery("Booking.findActiveBookingIds", Object[].class);
+            query.setParameter("state", Booking.getCompletedTaxiBookingState());
+            query.setParameter("state2", Booking.getCancelledBookingState());
+            rows = query.getResultList();
+        } finally {
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+        return rows;
     }
 
     /**
@@ -106,4 +342,66 @@ public class BookingDao extends JpaEntityDaoImpl<Long, Booking> {
         }
         return bookings;
     }
+
+    /**
+     * Count bookings in each state for account with given username and query.
+     *
+     * @param query account count query.
+     * @param username username to search for.
+     * @return rows of booking state and number of bookings in that state.
+     */
+    private List<Object[]> countBookingsForAccountByState(String query, String username) {
+
+        EntityManager em = this.getEntityManager();
+        List<Object[]> counts = null;
+
+        try {
+            TypedQuery<Object[]> namedQuery = em.createNamedQuery(query, Object[].class);
+            namedQuery.setParameter("username", username);
+            counts = namedQuery.getResultList();
+        } finally {
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Find a page of booking summaries for account with given username and query. If a
+     * cursor is provided the query suffixed with "Before" is used to seek past
+     * the cursor.
+     *
+     * @param query account history query.
+     * @param username username to search for.
+     * @param cursor position to return bookings after, null for first page.
+     * @param limit maximum number of bookings to return.
+     * @return a page of booking summaries for the provided username and query.
+     */
+    private List<BookingSummaryDto> findBookingHistoryForAccount(String query, String username, BookingCursor cursor, int limit) {
+
+        EntityManager em = this.getEntityManager();
+        List<BookingSummaryDto> bookings = null;
+
+        try {
+            TypedQuery<BookingSummaryDto> namedQuery;
+
+            if (cursor == null) {
+                namedQuery = em.createNamedQuery(query, BookingSummaryDto.class);
+            } else {
+                namedQuery = em.createNamedQuery(query + "Before", BookingSummaryDto.class);
+                namedQuery.setParameter("timestamp", cursor.getTimestamp());
+                namedQuery.setParameter("id", cursor.getId());
+            }
+
+            namedQuery.setParameter("username", username);
+            namedQuery.setMaxResults(limit);
+            bookings = namedQuery.getResultList();
+        } finally {
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+        return bookings;
+    }
 }
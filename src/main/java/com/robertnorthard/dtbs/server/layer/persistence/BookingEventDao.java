@@ -0,0 +1,69 @@
+package com.robertnorthard.dtbs.server.layer.persistence;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.events.BookingEvent;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+/**
+ * A booking event Data Access Object (DAO) class for reading the append only
+ * booking event log. Events are appended by the booking DAO in the same
+ * transaction as the booking they describe.
+ *
+ * @author robertnorthard
+ */
+public class BookingEventDao extends JpaEntityDaoImpl<Long, BookingEvent> {
+
+    /**
+     * Return all events for a booking in the order they were appended.
+     *
+     * @param bookingId id of booking.
+     * @return all events for a booking in the order they were appended.
+     */
+    public List<BookingEvent> findEventsForBooking(long bookingId) {
+
+        List<BookingEvent> events = null;
+        EntityManager em = this.getEntityManager();
+
+        try {
+            TypedQuery<BookingEvent> query = em.createNamedQuery(
+                    "BookingEvent.findEventsForBooking", BookingEvent.class);
+            query.setParameter("bookingId", bookingId);
+            events = query.getResultList();
+        } finally {
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+
+        return events;
+    }
+
+    /**
+     * Return a page of events appended after the event with the given id, for
+     * consumers following the event log.
+     *
+     * @param id id of the last event read, 0 to read from the start.
+     * @param limit maximum number of events to return.
+     * @return a page of events appended after the event with the given id.
+     */
+    public List<BookingEvent> findEventsAfter(long id, int limit) {
+
+        List<BookingEvent> events = null;
+        EntityManager em = this.getEntityManager();
+
+        try {
+            TypedQuery<BookingEvent> query = em.createNamedQuery(
+                    "BookingEvent.findEventsAfter", BookingEvent.class);
+            query.setParameter("id", id);
+            query.setMaxResults(limit);
+            events = query.getResultList();
+        } finally {
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+
+        return events;
+    }
+}
@@ -0,0 +1,99 @@
+package com.robertnorthard.dtbs.server.layer.persistence;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In memory index from driver username to the id of their taxi, used to load
+ * a driver's taxi by id instead of by query. Entries are hints checked
+ * against the loaded taxi, so an entry out of date is corrected from the
+ * database on next lookup.
+ *
+ * A reverse index from taxi id to driver is kept so a taxi update, such as a
+ * location update, checks its driver's entry without scanning every driver.
+ * Reads are lock free, changes to the two maps are made under a lock.
+ *
+ * @author robertnorthard
+ */
+public class DriverTaxiIndex {
+
+    private final ConcurrentMap<String, Long> taxiIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, String> drivers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for dependency injection/testing.
+     */
+    DriverTaxiIndex() {
+    }
+
+    /**
+     * @return a shared instance of the driver taxi index.
+     */
+    public static DriverTaxiIndex getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Return the id of a driver's taxi.
+     *
+     * @param username username of driver.
+     * @return the id of the driver's taxi, null if not indexed.
+     */
+    public Long get(String username) {
+        return this.taxiIds.get(username);
+    }
+
+    /**
+     * Index the id of a driver's taxi.
+     *
+     * @param username username of driver.
+     * @param taxiId id of the driver's taxi.
+     */
+    public void put(String username, long taxiId) {
+        synchronized (this.drivers) {
+            Long previousTaxiId = this.taxiIds.put(username, taxiId);
+            if (previousTaxiId != null && previousTaxiId.longValue() != taxiId) {
+                this.drivers.remove(previousTaxiId, username);
+            }
+
+            String previousDriver = this.drivers.put(taxiId, username);
+            if (previousDriver != null && !previousDriver.equals(username)) {
+                this.taxiIds.remove(previousDriver, taxiId);
+            }
+        }
+    }
+
+    /**
+     * Remove a driver's entry if it maps to the given taxi.
+     *
+     * @param username username of driver.
+     * @param taxiId id of taxi.
+     */
+    public void remove(String username, long taxiId) {
+        synchronized (this.drivers) {
+            if (this.taxiIds.remove(username, taxiId)) {
+                this.drivers.remove(taxiId, username);
+            }
+        }
+    }
+
+    /**
+     * Remove any entry mapping a driver other than the taxi's current driver
+     * to the taxi.
+     *
+     * @param taxiId id of taxi.
+     * @param username username of the taxi's current driver, null if none.
+     */
+    public void unindex(long taxiId, String username) {
+        String indexed = this.drivers.get(taxiId);
+
+        if (indexed != null && !indexed.equals(username)) {
+            this.remove(indexed, taxiId);
+        }
+    }
+
+    private static class Holder {
+
+        private static final DriverTaxiIndex INSTANCE = new DriverTaxiIndex();
+    }
+}
@@ -2,9 +2,15 @@ package com.robertnorthard.dtbs.server.layer.persistence;
 
 import com.robertnorthard.dtbs.server.common.exceptions.EntityNotFoundException;
 import com.robertnorthard.dtbs.server.layer.utils.EntityManagerFactoryUtils;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCache;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCacheRegistry;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCopier;
+import java.io.Serializable;
 import java.lang.reflect.ParameterizedType;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
 import javax.persistence.criteria.CriteriaQuery;
 
@@ -21,6 +27,9 @@ public class JpaEntityDaoImpl<K, V> implements EntityDao<K, V> {
 
     private final Class<V> persistentClass;
 
+    // read-through cache for findEntityById, null unless enabled by the DAO.
+    private EntityCache<K, V> cache;
+
     /**
      * Default constructor for class EntityDaoImpl
      */
@@ -30,6 +39,37 @@ public class JpaEntityDaoImpl<K, V> implements EntityDao<K, V> {
                 .getActualTypeArguments()[1];
     }
 
+    /**
+     * Enable a read-through cache for findEntityById. The cache is shared by
+     * all DAOs for the same entity class and is invalidated by update,
+     * persistEntity, deleteEntityById and evict. Only enable for entities
+     * modified through this DAO or that invalidate it explicitly. Each
+     * caller receives its own copy of a cached entity.
+     *
+     * @param maximumSize maximum number of cached entities.
+     * @param ttl time a cached entity may be served for.
+     * @param unit unit of ttl.
+     * @throws IllegalStateException if the entity is not serializable.
+     */
+    protected final void enableCache(int maximumSize, long ttl, TimeUnit unit) {
+        if (!Serializable.class.isAssignableFrom(this.persistentClass)) {
+            throw new IllegalStateException("Cached entities must be serializable.");
+        }
+        this.cache = EntityCacheRegistry.getCache(this.persistentClass, maximumSize, ttl, unit);
+    }
+
+    /**
+     * Remove the entity with primary key K from the read-through cache, if
+     * enabled.
+     *
+     * @param id primary key.
+     */
+    protected void invalidate(K id) {
+        if (this.cache != null) {
+            this.cache.invalidate(id);
+        }
+    }
+
     /**
      * Return a persistent context entity manager.
      *
@@ -54,6 +94,15 @@ public class JpaEntityDaoImpl<K, V> implements EntityDao<K, V> {
             throw new IllegalArgumentException("Id cannot be null.");
         }
         
+        long stamp = 0;
+        if (this.cache != null) {
+            V cached = this.cache.get(id);
+            if (cached != null) {
+                return EntityCopier.copy(cached);
+            }
+            stamp = this.cache.getStamp();
+        }
+
         V foundEntity = null;
         EntityManager em = this.getEntityManager();
         
@@ -64,6 +113,10 @@ public class JpaEntityDaoImpl<K, V> implements EntityDao<K, V> {
                 em.close();
             }
         }
+
+        if (this.cache != null) {
+            this.cache.put(id, EntityCopier.copy(foundEntity), stamp);
+        }
         return foundEntity;        
     }
     
@@ -81,6 +134,7 @@ public class JpaEntityDaoImpl<K, V> implements EntityDao<K, V> {
         }
 
         EntityManager em = this.getEntityManager();
+        EntityManagerFactory emf = em.getEntityManagerFactory();
         EntityTransaction tx = em.getTransaction();
 
         try {
@@ -88,10 +142,14 @@ public class JpaEntityDaoImpl<K, V> implements EntityDao<K, V> {
             em.persist(entity);
             em.flush();
         } finally {
-            if (!tx.getRollbackOnly()) {
-                tx.commit();
-            }else if(em.isOpen()){
-                em.close();
+            try {
+                if (!tx.getRollbackOnly()) {
+                    tx.commit();
+                } else if (em.isOpen()) {
+                    em.close();
+                }
+            } finally {
+                this.invalidate(emf, entity);
             }
         }
     }
@@ -110,6 +168,7 @@ public class JpaEntityDaoImpl<K, V> implements EntityDao<K, V> {
             throw new IllegalArgumentException("id cannot be null.");
         }
 
+        this.invalidate(id);
         EntityManager em = this.getEntityManager();
 
         V entity = em.find(persistentClass, id);
@@ -141,6 +200,7 @@ public class JpaEntityDaoImpl<K, V> implements EntityDao<K, V> {
         }
 
         EntityManager em = this.getEntityManager();
+        EntityManagerFactory emf = em.getEntityManagerFactory();
         EntityTransaction tx = em.getTransaction();
 
         try {
@@ -148,14 +208,59 @@ public class JpaEntityDaoImpl<K, V> implements EntityDao<K, V> {
             em.merge(entity);
             em.flush();
         } finally {
-            if (!tx.getRollbackOnly()) {
-                tx.commit();
-            } else if (em.isOpen()) {
+            try {
+                if (!tx.getRollbackOnly()) {
+                    tx.commit();
+                } else if (em.isOpen()) {
+                    em.close();
+                }
+            } finally {
+                this.invalidate(emf, entity);
+            }
+        }
+    }
+
+    /**
+     * Evict entity with primary key K from the shared and read-through caches
+     * so the next read is loaded from the database. Used after an optimistic
+     * lock failure as the cached copy may be stale.
+     *
+     * @param id primary key.
+     * @throws IllegalArgumentException if id is null.
+     */
+    public void evict(K id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Id cannot be null.");
+        }
+
+        this.invalidate(id);
+        EntityManager em = this.getEntityManager();
+
+        try {
+            em.getEntityManagerFactory().getCache().evict(this.persistentClass, id);
+        } finally {
+            if (em.isOpen()) {
                 em.close();
             }
         }
     }
 
+    /**
+     * Remove entity from the read-through cache, if enabled. Called once the
+     * transaction has completed, so a concurrent read cannot cache the entity
+     * as it was before the write, and whether or not the write succeeded as
+     * the caller may hold a modified copy.
+     *
+     * @param emf entity manager factory used for the write.
+     * @param entity entity written.
+     */
+    @SuppressWarnings("unchecked")
+    private void invalidate(EntityManagerFactory emf, V entity) {
+        if (this.cache != null) {
+            this.invalidate((K) emf.getPersistenceUnitUtil().getIdentifier(entity));
+        }
+    }
+
     /**
      * Return all entities for given class.
      * If no entities found, null is returned.
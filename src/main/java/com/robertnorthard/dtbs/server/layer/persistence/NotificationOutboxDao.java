@@ -0,0 +1,146 @@
+package com.robertnorthard.dtbs.server.layer.persistence;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.events.OutboxNotification;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.OutboxNotification.DeliveryStatus;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.TypedQuery;
+
+/**
+ * A notification outbox Data Access Object (DAO) class for reading and
+ * updating the notification outbox. Notifications are written by the DAO
+ * persisting the change they describe, in the same transaction.
+ *
+ * @author robertnorthard
+ */
+public class NotificationOutboxDao extends JpaEntityDaoImpl<Long, OutboxNotification> {
+
+    /**
+     * Claim a batch of notifications waiting to be sent, oldest first. Only
+     * pending notifications with no claim or an expired claim are claimed,
+     * by a conditional update so concurrent relays on other nodes claim
+     * different notifications. Each claim counts as a delivery attempt.
+     *
+     * @param owner key identifying this claim, unique to the caller and run.
+     * @param now current time in milliseconds.
+     * @param leaseMillis time in milliseconds until the claim expires.
+     * @param limit maximum number of notifications to claim.
+     * @return the notifications claimed.
+     */
+    public List<OutboxNotification> claimPending(String owner, long now, long leaseMillis, int limit) {
+
+        EntityManager em = this.getEntityManager();
+        EntityTransaction tx = em.getTransaction();
+
+        try {
+            tx.begin();
+            List<Long> ids = em.createNamedQuery("OutboxNotification.findClaimable", Long.class)
+                    .setParameter("status", DeliveryStatus.PENDING)
+                    .setParameter("now", now)
+                    .setMaxResults(limit)
+                    .getResultList();
+
+            if (ids.isEmpty()) {
+                tx.commit();
+                return Collections.emptyList();
+            }
+
+            em.createNamedQuery("OutboxNotification.claim")
+                    .setParameter("owner", owner)
+                    .setParameter("leaseUntil", now + leaseMillis)
+                    .setParameter("ids", ids)
+                    .setParameter("status", DeliveryStatus.PENDING)
+                    .setParameter("now", now)
+                    .executeUpdate();
+            tx.commit();
+
+            TypedQuery<OutboxNotification> query = em.createNamedQuery(
+                    "OutboxNotification.findClaimed", OutboxNotification.class);
+            query.setParameter("owner", owner);
+            query.setHint("javax.persistence.cache.retrieveMode", CacheRetrieveMode.BYPASS);
+            return query.getResultList();
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Release claimed notifications that were not sent so they can be
+     * claimed again immediately, without counting the claim as an attempt.
+     *
+     * @param ids ids of notifications to release.
+     * @param owner key the notifications were claimed with.
+     */
+    public void release(List<Long> ids, String owner) {
+
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+
+        EntityManager em = this.getEntityManager();
+        EntityTransaction tx = em.getTransaction();
+
+        try {
+            tx.begin();
+            em.createNamedQuery("OutboxNotification.release")
+                    .setParameter("ids", ids)
+                    .setParameter("owner", owner)
+                    .setParameter("status", DeliveryStatus.PENDING)
+                    .executeUpdate();
+            tx.commit();
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Set the delivery status of a batch of notifications in a single
+     * statement.
+     *
+     * @param ids ids of notifications to update.
+     * @param status new delivery status.
+     * @throws IllegalArgumentException if ids or status is null.
+     */
+    public void updateStatus(List<Long> ids, DeliveryStatus status) {
+
+        if (ids == null || status == null) {
+            throw new IllegalArgumentException("Ids and status cannot be null.");
+        }
+
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        EntityManager em = this.getEntityManager();
+        EntityTransaction tx = em.getTransaction();
+
+        try {
+            tx.begin();
+            em.createNamedQuery("OutboxNotification.updateStatus")
+                    .setParameter("status", status)
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+            tx.commit();
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+    }
+}
@@ -3,7 +3,9 @@ package com.robertnorthard.dtbs.server.layer.persistence;
 import com.robertnorthard.dtbs.server.layer.service.entities.events.PasswordResetEvent;
 import java.util.List;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
 /**
  * A password reset event Data Access Object (DAO) class for handling and
@@ -66,4 +68,114 @@ public class PasswordResetEventDao extends JpaEntityDaoImpl<Long, PasswordResetE
         }
         return events;
     }
+
+    /**
+     * Return a user's most recently issued active password reset.
+     *
+     * @param username username to search by.
+     * @return the latest active password reset or null if none.
+     */
+    public PasswordResetEvent findLatestActivePasswordReset(String username) {
+
+        EntityManager em = this.getEntityManager();
+
+        try {
+            TypedQuery<PasswordResetEvent> query = em.createNamedQuery(
+                    "PasswordResetEvent.findLatestActivePasswordReset", PasswordResetEvent.class);
+            query.setParameter("username", username);
+            query.setMaxResults(1);
+            List<PasswordResetEvent> events = query.getResultList();
+
+            return events.isEmpty() ? null : events.get(0);
+        } finally {
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Count an attempt to verify a password reset code in a single
+     * statement, so concurrent attempts on any node are all counted.
+     *
+     * @param id id of password reset.
+     * @param maxAttempts maximum number of attempts.
+     * @return true if the attempt was counted, false if the reset is
+     * inactive or has reached maxAttempts.
+     */
+    public boolean recordAttempt(long id, int maxAttempts) {
+        EntityManager em = this.getEntityManager();
+        EntityTransaction tx = em.getTransaction();
+
+        try {
+            tx.begin();
+            int updated = em.createNamedQuery("PasswordResetEvent.recordAttempt")
+                    .setParameter("id", id)
+                    .setParameter("maxAttempts", maxAttempts)
+                    .executeUpdate();
+            tx.commit();
+            return updated > 0;
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Mark a password reset inactive.
+     *
+     * @param id id of password reset.
+     * @return true if the reset was active, false if already inactive.
+     */
+    public boolean deactivate(long id) {
+        EntityManager em = this.getEntityManager();
+        EntityTransaction tx = em.getTransaction();
+
+        try {
+            tx.begin();
+            int updated = em.createNamedQuery("PasswordResetEvent.deactivate")
+                    .setParameter("id", id)
+                    .executeUpdate();
+            tx.commit();
+            return updated > 0;
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+    }
+
+    /**
+     * Mark all of a user's password resets inactive.
+     *
+     * @param username username of account.
+     * @return number of password resets deactivated.
+     */
+    public int deactivateForUsername(String username) {
+        EntityManager em = this.getEntityManager();
+        EntityTransaction tx = em.getTransaction();
+
+        try {
+            tx.begin();
+            int updated = em.createNamedQuery("PasswordResetEvent.deactivateForUsername")
+                    .setParameter("username", username)
+                    .executeUpdate();
+            tx.commit();
+            return updated;
+        } finally {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            if (em.isOpen()) {
+                em.close();
+            }
+        }
+    }
 }
@@ -3,7 +3,9 @@ package com.robertnorthard.dtbs.server.layer.persistence;
 import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
 import com.robertnorthard.dtbs.server.layer.service.entities.taxi.TaxiState;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
 import javax.persistence.Query;
 
 /**
@@ -15,15 +17,51 @@ import javax.persistence.Query;
  */
 public class TaxiDao extends JpaEntityDaoImpl<Long, Taxi> {
 
+    private static final int CACHE_SIZE = 1000;
+    private static final long CACHE_TTL_SECONDS = 60;
+
+    private final DriverTaxiIndex driverTaxiIds;
+
+    /**
+     * Default constructor for class TaxiDao. Taxis are cached by id and
+     * drivers are indexed to their taxi in the shared driver taxi index.
+     */
+    public TaxiDao() {
+        this(DriverTaxiIndex.getInstance());
+    }
+
+    /**
+     * Constructor for dependency injection/testing.
+     *
+     * @param driverTaxiIds index of driver username to taxi id.
+     */
+    public TaxiDao(DriverTaxiIndex driverTaxiIds) {
+        this.driverTaxiIds = driverTaxiIds;
+        this.enableCache(CACHE_SIZE, CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
     /**
-     * Return a collection of bookings in the specified state.
+     * Return the taxi assigned to the driver. The taxi id is resolved from
+     * an in-memory index and the taxi loaded by id, falling back to a query
+     * if the driver is not indexed or the taxi is no longer assigned to them.
      * If a taxi is not found for the driver null is returned.
      *
      * @param username username of driver.
      * @return the driver's taxi. If a taxi is not found for the driver null is returned.
      */
     public Taxi findTaxiForDriver(String username) {
-        
+
+        Long id = this.driverTaxiIds.get(username);
+
+        if (id != null) {
+            Taxi taxi = this.findEntityById(id);
+            if (taxi != null && taxi.getAccount() != null
+                    && username.equals(taxi.getAccount().getUsername())) {
+                return taxi;
+            }
+            this.driverTaxiIds.remove(username, id);
+        }
+
         Taxi taxi = null;
         EntityManager em = this.getEntityManager();
         
@@ -31,14 +69,39 @@ public class TaxiDao extends JpaEntityDaoImpl<Long, Taxi> {
         Query query = em.createNamedQuery("Taxi.findTaxiForDriver", Taxi.class);
         query.setParameter("username", username);
         taxi = (Taxi)query.getSingleResult();
+        } catch (NoResultException ex) {
+            return null;
         }finally{
             if(em.isOpen()){
                 em.close();
             }
         }
-        
+
+        this.driverTaxiIds.put(username, taxi.getId());
         return taxi;
     }
+
+    /**
+     * Update a taxi and update the driver index, as the taxi's account may
+     * have changed.
+     *
+     * @param taxi taxi to update.
+     * @throws IllegalArgumentException if taxi is null.
+     */
+    @Override
+    public void update(Taxi taxi) {
+        if (taxi == null) {
+            throw new IllegalArgumentException("Entity cannot be null.");
+        }
+
+        try {
+            super.update(taxi);
+        } finally {
+            // the current driver is indexed on their next lookup.
+            this.driverTaxiIds.unindex(taxi.getId(),
+                    taxi.getAccount() == null ? null : taxi.getAccount().getUsername());
+        }
+    }
     
     /**
      * Return collection of taxis on duty but not on a job.
@@ -0,0 +1,156 @@
+package com.robertnorthard.dtbs.server.layer.persistence.dto;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Read only projection of a booking awaiting a taxi, as listed to drivers.
+ * Populated directly by a JPQL constructor expression so only the columns
+ * rendered by the client are loaded.
+ *
+ * @author robertnorthard
+ */
+public class AwaitingBookingDto implements Serializable {
+
+    private final long id;
+    private final Date timestamp;
+    private final int numberPassengers;
+    private final double cost;
+    private final String passengerCommonName;
+    private final String startAddress;
+    private final double startLatitude;
+    private final double startLongitude;
+    private final String endAddress;
+    private final double endLatitude;
+    private final double endLongitude;
+    private final double distance;
+    private final double estimateTravelTime;
+
+    /**
+     * Constructor for class AwaitingBookingDto.
+     *
+     * @param id booking id.
+     * @param timestamp time booking was made.
+     * @param numberPassengers number of passengers.
+     * @param cost estimated cost.
+     * @param passengerCommonName passenger's common name.
+     * @param startAddress pickup street address.
+     * @param startLatitude pickup latitude.
+     * @param startLongitude pickup longitude.
+     * @param endAddress destination street address.
+     * @param endLatitude destination latitude.
+     * @param endLongitude destination longitude.
+     * @param distance route distance in meters.
+     * @param estimateTravelTime estimated travel time in seconds.
+     */
+    public AwaitingBookingDto(long id, Date timestamp, int numberPassengers, double cost,
+            String passengerCommonName,
+            String startAddress, double startLatitude, double startLongitude,
+            String endAddress, double endLatitude, double endLongitude,
+            double distance, double estimateTravelTime) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.numberPassengers = numberPassengers;
+        this.cost = cost;
+        this.passengerCommonName = passengerCommonName;
+        this.startAddress = startAddress;
+        this.startLatitude = startLatitude;
+        this.startLongitude = startLongitude;
+        this.endAddress = endAddress;
+        this.endLatitude = endLatitude;
+        this.endLongitude = endLongitude;
+        this.distance = distance;
+        this.estimateTravelTime = estimateTravelTime;
+    }
+
+    /**
+     * @return the id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the timestamp
+     */
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the numberPassengers
+     */
+    public int getNumberPassengers() {
+        return numberPassengers;
+    }
+
+    /**
+     * @return the cost
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * @return the passengerCommonName
+     */
+    public String getPassengerCommonName() {
+        return passengerCommonName;
+    }
+
+    /**
+     * @return the startAddress
+     */
+    public String getStartAddress() {
+        return startAddress;
+    }
+
+    /**
+     * @return the startLatitude
+     */
+    public double getStartLatitude() {
+        return startLatitude;
+    }
+
+    /**
+     * @return the startLongitude
+     */
+    public double getStartLongitude() {
+        return startLongitude;
+    }
+
+    /**
+     * @return the endAddress
+     */
+    public String getEndAddress() {
+        return endAddress;
+    }
+
+    /**
+     * @return the endLatitude
+     */
+    public double getEndLatitude() {
+        return endLatitude;
+    }
+
+    /**
+     * @return the endLongitude
+     */
+    public double getEndLongitude() {
+        return endLongitude;
+    }
+
+    /**
+     * @return the distance
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return the estimateTravelTime
+     */
+    public double getEstimateTravelTime() {
+        return estimateTravelTime;
+    }
+}
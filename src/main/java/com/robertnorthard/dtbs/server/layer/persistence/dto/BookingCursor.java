@@ -0,0 +1,105 @@
+package com.robertnorthard.dtbs.server.layer.persistence.dto;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Keyset pagination cursor for bookings ordered by timestamp and id in
+ * descending order. A cursor identifies the last booking of a page, the next
+ * page starts at the booking immediately after it.
+ *
+ * @author robertnorthard
+ */
+public class BookingCursor implements Serializable {
+
+    private static final String SEPARATOR = "_";
+
+    private final Date timestamp;
+    private final long id;
+
+    /**
+     * Constructor for class BookingCursor.
+     *
+     * @param timestamp timestamp of the last booking in a page.
+     * @param id id of the last booking in a page.
+     * @throws IllegalArgumentException if timestamp is null.
+     */
+    public BookingCursor(Date timestamp, long id) {
+        if (timestamp == null) {
+            throw new IllegalArgumentException("Cursor timestamp cannot be null.");
+        }
+
+        this.timestamp = new Date(timestamp.getTime());
+        this.id = id;
+    }
+
+    /**
+     * Parse a cursor from its string representation.
+     *
+     * @param cursor cursor in the form timestamp_id.
+     * @return the parsed cursor or null if cursor is null or empty.
+     * @throws IllegalArgumentException if the cursor is invalid.
+     */
+    public static BookingCursor parse(String cursor) {
+
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+
+        String[] parts = cursor.split(SEPARATOR);
+
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+
+        try {
+            return new BookingCursor(new Date(Long.parseLong(parts[0])), Long.parseLong(parts[1]));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cursor.", ex);
+        }
+    }
+
+    /**
+     * Compare two bookings by timestamp and id in descending order.
+     *
+     * @param timestamp1 timestamp of first booking.
+     * @param id1 id of first booking.
+     * @param timestamp2 timestamp of second booking.
+     * @param id2 id of second booking.
+     * @return a negative integer if the first booking is more recent, zero if
+     * equal and a positive integer if the second booking is more recent.
+     */
+    public static int compare(Date timestamp1, long id1, Date timestamp2, long id2) {
+        int result = timestamp2.compareTo(timestamp1);
+
+        if (result == 0) {
+            result = Long.compare(id2, id1);
+        }
+        return result;
+    }
+
+    /**
+     * @return the timestamp
+     */
+    public Date getTimestamp() {
+        return new Date(this.timestamp.getTime());
+    }
+
+    /**
+     * @return the id
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * Return string representation of the cursor suitable for a query
+     * parameter.
+     *
+     * @return string representation of the cursor.
+     */
+    @Override
+    public String toString() {
+        return this.timestamp.getTime() + SEPARATOR + this.id;
+    }
+}
@@ -17,6 +17,7 @@ public class BookingDto implements Serializable {
     private Location startLocation;
     private Location endLocation;
     private int numberPassengers;
+    private String quoteId;
 
     /**
      * @return the startLocation
@@ -87,4 +88,18 @@ public class BookingDto implements Serializable {
     public void setId(long id) {
         this.id = id;
     }
+
+    /**
+     * @return the quoteId, null if the booking was not quoted.
+     */
+    public String getQuoteId() {
+        return quoteId;
+    }
+
+    /**
+     * @param quoteId the quoteId to set
+     */
+    public void setQuoteId(String quoteId) {
+        this.quoteId = quoteId;
+    }
 }
@@ -0,0 +1,153 @@
+package com.robertnorthard.dtbs.server.layer.persistence.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.robertnorthard.dtbs.server.layer.persistence.data.mappers.booking.JsonBookingStateDataConverter;
+import com.robertnorthard.dtbs.server.layer.service.entities.Route;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.BookingState;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Read only projection of a booking for booking history lists. Populated
+ * directly by a JPQL constructor expression so only the columns rendered by
+ * the client are loaded.
+ *
+ * @author robertnorthard
+ */
+public class BookingSummaryDto implements Serializable {
+
+    private final long id;
+    private final Date timestamp;
+    private final BookingState state;
+    private final double cost;
+    private final int numberPassengers;
+    private final Date startTime;
+    private final Date endTime;
+    private final String startAddress;
+    private final String endAddress;
+    private final Long taxiId;
+
+    /**
+     * Constructor for class BookingSummaryDto.
+     *
+     * @param id booking id.
+     * @param timestamp time booking was made.
+     * @param state booking state.
+     * @param cost booking cost.
+     * @param numberPassengers number of passengers.
+     * @param startTime time passenger was picked up.
+     * @param endTime time passenger was dropped off.
+     * @param startAddress pickup street address.
+     * @param endAddress destination street address.
+     * @param taxiId id of dispatched taxi, null if no taxi dispatched.
+     */
+    public BookingSummaryDto(long id, Date timestamp, BookingState state, double cost,
+            int numberPassengers, Date startTime, Date endTime,
+            String startAddress, String endAddress, Long taxiId) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.state = state;
+        this.cost = cost;
+        this.numberPassengers = numberPassengers;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.startAddress = startAddress;
+        this.endAddress = endAddress;
+        this.taxiId = taxiId;
+    }
+
+    /**
+     * Create a booking summary from a booking.
+     *
+     * @param booking booking to summarise.
+     * @return a summary of the booking.
+     */
+    public static BookingSummaryDto fromBooking(Booking booking) {
+        Route route = booking.getRoute();
+        String startAddress = null;
+        String endAddress = null;
+
+        if (route != null && route.getStartAddress() != null) {
+            startAddress = route.getStartAddress().getAddress();
+        }
+        if (route != null && route.getEndAddress() != null) {
+            endAddress = route.getEndAddress().getAddress();
+        }
+
+        return new BookingSummaryDto(booking.getId(), booking.getTimestamp(), booking.getState(),
+                booking.getCost(), booking.getNumberPassengers(), booking.getStartTime(), booking.getEndTime(),
+                startAddress, endAddress, booking.getTaxi() == null ? null : booking.getTaxi().getId());
+    }
+
+    /**
+     * @return the id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the timestamp
+     */
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the state
+     */
+    @JsonSerialize(using = JsonBookingStateDataConverter.class)
+    public BookingState getState() {
+        return state;
+    }
+
+    /**
+     * @return the cost
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * @return the numberPassengers
+     */
+    public int getNumberPassengers() {
+        return numberPassengers;
+    }
+
+    /**
+     * @return the startTime
+     */
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the endTime
+     */
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @return the startAddress
+     */
+    public String getStartAddress() {
+        return startAddress;
+    }
+
+    /**
+     * @return the endAddress
+     */
+    public String getEndAddress() {
+        return endAddress;
+    }
+
+    /**
+     * @return the taxiId
+     */
+    public Long getTaxiId() {
+        return taxiId;
+    }
+}
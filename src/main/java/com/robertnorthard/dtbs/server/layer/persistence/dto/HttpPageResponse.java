@@ -0,0 +1,37 @@
+package com.robertnorthard.dtbs.server.layer.persistence.dto;
+
+import java.util.List;
+
+/**
+ * Data transfer object encapsulate a http response that contains a page of a
+ * collection of data.
+ *
+ * @author robertnorthard
+ */
+public class HttpPageResponse<T> extends HttpListResponse<T> {
+
+    private String nextCursor;
+
+    public HttpPageResponse(List<T> data, String nextCursor, String status) {
+        super(data, status);
+        this.nextCursor = nextCursor;
+    }
+
+    public HttpPageResponse(PagedResult<T> page, String status) {
+        this(page.getData(), page.getNextCursor(), status);
+    }
+
+    /**
+     * @return the cursor of the next page, null if last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @param nextCursor the next cursor to set
+     */
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -9,6 +9,11 @@ import javax.ws.rs.core.Response;
  */
 public class HttpResponseFactory {
 
+    /**
+     * HTTP 429 Too Many Requests, not defined by Response.Status.
+     */
+    public static final int TOO_MANY_REQUESTS = 429;
+
     private static HttpResponseFactory factory;
 
     /**
@@ -72,4 +77,18 @@ public class HttpResponseFactory {
                 return null;
         }
     }
+
+    /**
+     * Generate and return a HTTP 429 Too Many Requests response.
+     *
+     * @param object object to encode.
+     * @param retryAfterSeconds seconds the client should wait before retrying.
+     * @return a HTTP 429 response with a Retry-After header.
+     */
+    public Response getTooManyRequestsResponse(Object object, long retryAfterSeconds) {
+        return Response.status(TOO_MANY_REQUESTS)
+                .header("Retry-After", retryAfterSeconds)
+                .entity(new HttpObjectResponse(object, "5")
+                        .toString()).build();
+    }
 }
@@ -0,0 +1,41 @@
+package com.robertnorthard.dtbs.server.layer.persistence.dto;
+
+import java.util.List;
+
+/**
+ * Data transfer object encapsulating a page of results and the cursor to
+ * request the next page with.
+ *
+ * @author robertnorthard
+ * @param <T> type of result.
+ */
+public class PagedResult<T> {
+
+    private final List<T> data;
+    private final String nextCursor;
+
+    /**
+     * Constructor for class PagedResult.
+     *
+     * @param data page of results.
+     * @param nextCursor cursor of the next page, null if last page.
+     */
+    public PagedResult(List<T> data, String nextCursor) {
+        this.data = data;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return the data
+     */
+    public List<T> getData() {
+        return this.data;
+    }
+
+    /**
+     * @return the next cursor, null if last page.
+     */
+    public String getNextCursor() {
+        return this.nextCursor;
+    }
+}
@@ -0,0 +1,123 @@
+package com.robertnorthard.dtbs.server.layer.persistence.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import com.robertnorthard.dtbs.server.layer.service.entities.Route;
+import java.io.Serializable;
+
+/**
+ * A route and fare quote for a journey. The quote id may be passed when
+ * making a booking for the same journey to reuse the quoted route.
+ *
+ * @author robertnorthard
+ */
+public class QuoteDto implements Serializable {
+
+    private final String quoteId;
+    private final String username;
+    private final Location startLocation;
+    private final Location endLocation;
+    private final Route route;
+    private final double cost;
+    private final long expiresAt;
+
+    /**
+     * Constructor for class QuoteDto.
+     *
+     * @param quoteId unique id of quote.
+     * @param username username of passenger the quote was made for.
+     * @param startLocation requested start location.
+     * @param endLocation requested end location.
+     * @param route quoted route.
+     * @param cost estimated cost.
+     * @param expiresAt time the quote expires in milliseconds.
+     */
+    public QuoteDto(String quoteId, String username, Location startLocation, Location endLocation,
+            Route route, double cost, long expiresAt) {
+        this.quoteId = quoteId;
+        this.username = username;
+        this.startLocation = startLocation;
+        this.endLocation = endLocation;
+        this.route = route;
+        this.cost = cost;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Return true if the quote was made for the passenger and journey.
+     *
+     * @param username username of passenger.
+     * @param startLocation requested start location.
+     * @param endLocation requested end location.
+     * @return true if the quote matches the passenger and journey.
+     */
+    public boolean matches(String username, Location startLocation, Location endLocation) {
+        return this.username.equals(username)
+                && this.startLocation.equals(startLocation)
+                && this.endLocation.equals(endLocation);
+    }
+
+    /**
+     * @return the quoteId
+     */
+    public String getQuoteId() {
+        return this.quoteId;
+    }
+
+    /**
+     * @return the username
+     */
+    @JsonIgnore
+    public String getUsername() {
+        return this.username;
+    }
+
+    /**
+     * @return the startLocation
+     */
+    public Location getStartLocation() {
+        return this.startLocation;
+    }
+
+    /**
+     * @return the endLocation
+     */
+    public Location getEndLocation() {
+        return this.endLocation;
+    }
+
+    /**
+     * @return the route
+     */
+    public Route getRoute() {
+        return this.route;
+    }
+
+    /**
+     * @return route distance in meters.
+     */
+    public double getDistance() {
+        return this.route.getDistance();
+    }
+
+    /**
+     * @return estimated travel time in seconds.
+     */
+    public double getEstimateTravelTime() {
+        return this.route.getEstimateTravelTime();
+    }
+
+    /**
+     * @return the cost
+     */
+    public double getCost() {
+        return this.cost;
+    }
+
+    /**
+     * @return time the quote expires in milliseconds.
+     */
+    public long getExpiresAt() {
+        return this.expiresAt;
+    }
+}
@@ -13,6 +13,7 @@ public class AccountSecurityContext implements SecurityContext {
 
     private final Account account;
     private final String requireUri;
+    private final String authenticationScheme;
 
     /**
      * Constructor for class UserSecurityContext.
@@ -21,8 +22,20 @@ public class AccountSecurityContext implements SecurityContext {
      * @param requireUri access url.
      */
     public AccountSecurityContext(Account account, String requireUri) {
+        this(account, requireUri, SecurityContext.BASIC_AUTH);
+    }
+
+    /**
+     * Constructor for class UserSecurityContext.
+     *
+     * @param account account to encapsulate in security context.
+     * @param requireUri access url.
+     * @param authenticationScheme scheme used to authenticate the account.
+     */
+    public AccountSecurityContext(Account account, String requireUri, String authenticationScheme) {
         this.account = account;
         this.requireUri = requireUri;
+        this.authenticationScheme = authenticationScheme;
     }
 
     /**
@@ -80,6 +93,6 @@ public class AccountSecurityContext implements SecurityContext {
      */
     @Override
     public String getAuthenticationScheme() {
-        return SecurityContext.BASIC_AUTH;
+        return this.authenticationScheme;
     }
 }
@@ -0,0 +1,36 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import javax.ejb.ApplicationException;
+
+/**
+ * Thrown when a request is rejected because a bounded resource is saturated.
+ * Mapped to a 429 Too Many Requests response with a Retry-After header. An
+ * application exception so it reaches controllers unwrapped from services.
+ *
+ * @author robertnorthard
+ */
+@ApplicationException
+public class AdmissionRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 4513867309186410552L;
+
+    private final long retryAfterSeconds;
+
+    /**
+     * Constructor for class AdmissionRejectedException.
+     *
+     * @param message reason for rejection.
+     * @param retryAfterSeconds seconds the client should wait before retrying.
+     */
+    public AdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    /**
+     * @return seconds the client should wait before retrying.
+     */
+    public long getRetryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
+}
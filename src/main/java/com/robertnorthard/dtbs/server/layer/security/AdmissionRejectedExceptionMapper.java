@@ -0,0 +1,26 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import com.robertnorthard.dtbs.server.layer.persistence.dto.HttpResponseFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Map an AdmissionRejectedException to a 429 Too Many Requests response.
+ *
+ * @author robertnorthard
+ */
+@Provider
+public class AdmissionRejectedExceptionMapper implements ExceptionMapper<AdmissionRejectedException> {
+
+    private static final Logger LOGGER = Logger.getLogger(AdmissionRejectedExceptionMapper.class.getName());
+
+    @Override
+    public Response toResponse(AdmissionRejectedException ex) {
+        LOGGER.log(Level.INFO, ex.getMessage());
+        return HttpResponseFactory.getInstance().getTooManyRequestsResponse(
+                ex.getMessage(), ex.getRetryAfterSeconds());
+    }
+}
@@ -1,17 +1,21 @@
 package com.robertnorthard.dtbs.server.layer.security;
 
 import com.robertnorthard.dtbs.server.common.exceptions.AccountAuthenticationFailed;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.HttpResponseFactory;
 import com.robertnorthard.dtbs.server.layer.service.AccountFacade;
 import com.robertnorthard.dtbs.server.layer.service.AccountService;
 import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.utils.AuthenticationUtils;
 import com.robertnorthard.dtbs.server.layer.utils.http.HttpHeader;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Priority;
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.ext.Provider;
 
 /**
@@ -25,7 +29,19 @@ public class AuthenticationFilter implements ContainerRequestFilter {
 
     private static final Logger LOGGER = Logger.getLogger(AuthenticationFilter.class.getName());
 
+    /**
+     * Authorization header prefix of a session token.
+     */
+    public static final String BEARER_PREFIX = "Bearer ";
+    private static final String BEARER_SCHEME = "BEARER";
+
     private final AccountFacade accountService = new AccountService();
+    private final CredentialCache credentialCache = CredentialCache.getInstance();
+    private final SessionTokenService sessionTokenService = SessionTokenService.getInstance();
+    private final AuthenticationRateLimiter rateLimiter = AuthenticationRateLimiter.getInstance();
+
+    @Context
+    private HttpServletRequest servletRequest;
 
     @Override
     public void filter(ContainerRequestContext requestContext) throws IOException {
@@ -39,10 +55,69 @@ public class AuthenticationFilter implements ContainerRequestFilter {
                 throw new AccountAuthenticationFailed();
             }
 
-            account = this.accountService.authenticate(authHeader);
+            if (authHeader.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+                SessionToken session = this.sessionTokenService.verify(
+                        authHeader.substring(BEARER_PREFIX.length()).trim());
+
+                if (session == null) {
+                    throw new AccountAuthenticationFailed();
+                }
+
+                requestContext.setSecurityContext(new AccountSecurityContext(
+                        session.toAccount(), requestUri, BEARER_SCHEME));
+                return;
+            }
+
+            account = this.authenticate(authHeader);
             requestContext.setSecurityContext(new AccountSecurityContext(account, requestUri));
         } catch (AccountAuthenticationFailed ex) {
             LOGGER.log(Level.FINEST, "User not authenticated");
+        } catch (AdmissionRejectedException ex) {
+            LOGGER.log(Level.INFO, ex.getMessage());
+            requestContext.abortWith(HttpResponseFactory.getInstance()
+                    .getTooManyRequestsResponse(ex.getMessage(), ex.getRetryAfterSeconds()));
+        }
+    }
+
+    /**
+     * Authenticate the Authorization header, using the credential cache to
+     * skip the account lookup and password check for recently verified
+     * credentials.
+     *
+     * @param authHeader Authorization header.
+     * @return the authenticated account.
+     * @throws AccountAuthenticationFailed if authentication fails.
+     */
+    private Account authenticate(String authHeader) throws AccountAuthenticationFailed {
+        Account cached = this.credentialCache.getAccount(authHeader);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        // credentials not recently verified cost a password check.
+        this.rateLimiter.checkAuthentication(this.getUsername(authHeader),
+                this.servletRequest == null ? null : this.servletRequest.getRemoteAddr());
+
+        Account account = this.accountService.authenticate(authHeader);
+        this.credentialCache.put(authHeader, account);
+        return account;
+    }
+
+    /**
+     * Return the username from Basic credentials.
+     *
+     * @param authHeader Authorization header.
+     * @return the username or null if the header is not valid Basic credentials.
+     */
+    private String getUsername(String authHeader) {
+        try {
+            String credentials = AuthenticationUtils.base64Decode(
+                    authHeader.replaceFirst("[Bb]asic ", ""));
+            int separator = credentials.indexOf(':');
+            return separator < 0 ? null : credentials.substring(0, separator);
+        } catch (IllegalArgumentException ex) {
+            return null;
         }
     }
 }
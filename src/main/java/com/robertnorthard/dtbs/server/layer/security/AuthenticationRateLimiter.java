@@ -0,0 +1,93 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits for authentication attempts and password reset requests, by
+ * username and by client address. Checked before any database or password
+ * hashing work is done.
+ *
+ * Authentication attempts for a username are limited per client address, so
+ * a caller who knows a username cannot exhaust the user's attempts and lock
+ * them out from other addresses. Attempts from one address across many
+ * usernames are bounded by the address limit.
+ *
+ * @author robertnorthard
+ */
+public class AuthenticationRateLimiter {
+
+    private static final AuthenticationRateLimiter INSTANCE = new AuthenticationRateLimiter(
+            new TokenBucketRateLimiter(10, 6, TimeUnit.SECONDS),
+            new TokenBucketRateLimiter(30, 2, TimeUnit.SECONDS),
+            new TokenBucketRateLimiter(3, 20, TimeUnit.MINUTES),
+            new TokenBucketRateLimiter(10, 6, TimeUnit.MINUTES));
+
+    private final TokenBucketRateLimiter loginByUsername;
+    private final TokenBucketRateLimiter loginByAddress;
+    private final TokenBucketRateLimiter resetByUsername;
+    private final TokenBucketRateLimiter resetByAddress;
+
+    /**
+     * Constructor for class AuthenticationRateLimiter.
+     *
+     * @param loginByUsername authentication attempts per username and client
+     * address.
+     * @param loginByAddress authentication attempts per client address.
+     * @param resetByUsername password reset requests per username.
+     * @param resetByAddress password reset requests per client address.
+     */
+    AuthenticationRateLimiter(TokenBucketRateLimiter loginByUsername, TokenBucketRateLimiter loginByAddress,
+            TokenBucketRateLimiter resetByUsername, TokenBucketRateLimiter resetByAddress) {
+        this.loginByUsername = loginByUsername;
+        this.loginByAddress = loginByAddress;
+        this.resetByUsername = resetByUsername;
+        this.resetByAddress = resetByAddress;
+    }
+
+    /**
+     * @return a shared instance of the authentication rate limiter.
+     */
+    public static AuthenticationRateLimiter getInstance() {
+        return AuthenticationRateLimiter.INSTANCE;
+    }
+
+    /**
+     * Record an authentication attempt, a login, Basic credentials not
+     * recently verified or a temporary password reset code.
+     *
+     * @param username username attempted, may be null.
+     * @param address client address, may be null.
+     * @throws AdmissionRejectedException if the address, or the username
+     * from the address, has exceeded its rate limit.
+     */
+    public void checkAuthentication(String username, String address) {
+        this.check(this.loginByAddress, address, "Too many authentication attempts.");
+        this.check(this.loginByUsername, username == null ? null : username + "|" + address,
+                "Too many authentication attempts.");
+    }
+
+    /**
+     * Record a request for a password reset email.
+     *
+     * @param username username of account to reset.
+     * @param address client address, may be null.
+     * @throws AdmissionRejectedException if the username or address has
+     * exceeded its rate limit.
+     */
+    public void checkPasswordReset(String username, String address) {
+        this.check(this.resetByAddress, address, "Too many password reset requests.");
+        this.check(this.resetByUsername, username, "Too many password reset requests.");
+    }
+
+    private void check(TokenBucketRateLimiter limiter, String key, String message) {
+        if (key == null) {
+            return;
+        }
+
+        long waitNanos = limiter.tryAcquire(key);
+        if (waitNanos > 0) {
+            throw new AdmissionRejectedException(message,
+                    TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.service.entities.AccountRole;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A short lived cache of successfully verified Authorization headers, so
+ * repeat requests with the same credentials skip the BCrypt password check.
+ *
+ * Headers are never stored. Entries are keyed by a HMAC-SHA256 of the header
+ * using a random key generated at start up, and hold the username and role
+ * the credentials were verified for, so a cached request needs no database
+ * read. Entries are removed on logout and password reset, which take effect
+ * on the next request on the node that handled them. A change made on another
+ * node takes effect once the entry expires, after at most 30 seconds.
+ *
+ * @author robertnorthard
+ */
+public class CredentialCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int KEY_LENGTH = 32;
+    private static final int MAXIMUM_SIZE = 10000;
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final CredentialCache INSTANCE = new CredentialCache();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ThreadLocal<Mac> mac;
+
+    /**
+     * Constructor for class CredentialCache. A new HMAC key is generated for
+     * each instance.
+     */
+    CredentialCache() {
+        byte[] key = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(key);
+        final SecretKeySpec keySpec = new SecretKeySpec(key, HMAC_ALGORITHM);
+
+        this.mac = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    Mac m = Mac.getInstance(HMAC_ALGORITHM);
+                    m.init(keySpec);
+                    return m;
+                } catch (GeneralSecurityException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return a shared instance of the credential cache.
+     */
+    public static CredentialCache getInstance() {
+        return CredentialCache.INSTANCE;
+    }
+
+    /**
+     * Return the account the Authorization header was verified for. If the
+     * header is not cached or the entry has expired null is returned.
+     *
+     * @param authHeader Authorization header.
+     * @return the account the header was verified for, holding only its
+     * username and role, or null.
+     */
+    public Account getAccount(String authHeader) {
+        String key = this.hash(authHeader);
+        Entry entry = this.entries.get(key);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expiresAt - System.nanoTime() <= 0) {
+            this.entries.remove(key, entry);
+            return null;
+        }
+
+        Account account = new Account();
+        account.setUsername(entry.username);
+        account.setRole(entry.role);
+        return account;
+    }
+
+    /**
+     * Cache an Authorization header successfully verified for an account.
+     *
+     * @param authHeader Authorization header.
+     * @param account account the header was verified for.
+     */
+    public void put(String authHeader, Account account) {
+        if (account == null || account.getUsername() == null || account.getRole() == null) {
+            return;
+        }
+
+        if (this.entries.size() >= MAXIMUM_SIZE) {
+            this.removeExpired();
+            if (this.entries.size() >= MAXIMUM_SIZE) {
+                return;
+            }
+        }
+
+        this.entries.put(this.hash(authHeader), new Entry(
+                account.getUsername(), account.getRole(), System.nanoTime() + TTL_NANOS));
+    }
+
+    /**
+     * Remove all cached credentials for a user. Called on logout, password
+     * reset and deactivation.
+     *
+     * @param username username of account.
+     */
+    public void invalidate(String username) {
+        Iterator<Entry> it = this.entries.values().iterator();
+
+        while (it.hasNext()) {
+            if (it.next().username.equals(username)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached credentials.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    private void removeExpired() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+
+        while (it.hasNext()) {
+            if (it.next().getValue().expiresAt - now <= 0) {
+                it.remove();
+            }
+        }
+    }
+
+    private String hash(String authHeader) {
+        return Base64.getEncoder().encodeToString(
+                this.mac.get().doFinal(authHeader.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * A verified credential.
+     */
+    private static class Entry {
+
+        private final String username;
+        private final AccountRole role;
+        private final long expiresAt;
+
+        Entry(String username, AccountRole role, long expiresAt) {
+            this.username = username;
+            this.role = role;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
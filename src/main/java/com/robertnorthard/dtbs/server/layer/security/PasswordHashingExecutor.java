@@ -0,0 +1,220 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import com.robertnorthard.dtbs.server.configuration.ConfigService;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Runs BCrypt password hashing and verification on a dedicated, bounded
+ * thread pool so a burst of logins cannot consume every request thread and
+ * core. The pool is sized to a configured share of the available processors
+ * (dtbs.server.password.cpu.share, default 0.5) and the number of waiting
+ * tasks is limited (dtbs.server.password.queue, default 64). Work submitted
+ * when the queue is full is rejected immediately with an
+ * AdmissionRejectedException.
+ *
+ * @author robertnorthard
+ */
+public class PasswordHashingExecutor {
+
+    private static final String CPU_SHARE_PROPERTY = "dtbs.server.password.cpu.share";
+    private static final String QUEUE_PROPERTY = "dtbs.server.password.queue";
+    private static final double DEFAULT_CPU_SHARE = 0.5;
+    private static final int DEFAULT_QUEUE = 64;
+    private static final int WORK_FACTOR = 12;
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Constructor for class PasswordHashingExecutor.
+     *
+     * @param threads number of hashing threads.
+     * @param queueLimit maximum number of tasks waiting for a thread.
+     */
+    PasswordHashingExecutor(int threads, int queueLimit) {
+        this.threads = threads;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueLimit), new ThreadFactory() {
+
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "password-hashing-" + this.count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * @return a shared instance of the password hashing executor.
+     */
+    public static PasswordHashingExecutor getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Hash a plaintext password using BCrypt with a work factor of 12.
+     *
+     * @param password password to hash.
+     * @return a string representation of the salted password.
+     * @throws AdmissionRejectedException if the hashing queue is full.
+     */
+    public String hashPassword(final String password) {
+        return this.execute(new Callable<String>() {
+            @Override
+            public String call() {
+                return BCrypt.hashpw(password, BCrypt.gensalt(WORK_FACTOR));
+            }
+        });
+    }
+
+    /**
+     * Check if plain text password matches hash.
+     *
+     * @param password plaintext password
+     * @param hash hashed password
+     * @return true if plaintext password and hash match, else false.
+     * @throws AdmissionRejectedException if the hashing queue is full.
+     */
+    public boolean checkPassword(final String password, final String hash) {
+        return this.execute(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return BCrypt.checkpw(password, hash);
+            }
+        });
+    }
+
+    /**
+     * Stop the hashing threads. Tasks already queued are completed, later
+     * work is rejected with an AdmissionRejectedException.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * @return point in time statistics for the executor.
+     */
+    public PasswordHashingStats getStats() {
+        long count = this.completed.get();
+
+        return new PasswordHashingStats(this.threads,
+                this.executor.getQueue().size(),
+                this.executor.getActiveCount(),
+                count, this.rejected.get(),
+                count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(this.totalNanos.get() / count),
+                TimeUnit.NANOSECONDS.toMillis(this.maxNanos.get()));
+    }
+
+    /**
+     * Run a hashing task on the pool and wait for its result.
+     *
+     * @param task hashing task.
+     * @return result of the task.
+     * @throws AdmissionRejectedException if the hashing queue is full.
+     */
+    private <T> T execute(final Callable<T> task) {
+        Future<T> future;
+
+        try {
+            future = this.executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    long start = System.nanoTime();
+                    try {
+                        return task.call();
+                    } finally {
+                        PasswordHashingExecutor.this.record(System.nanoTime() - start);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            this.rejected.incrementAndGet();
+            throw new AdmissionRejectedException(
+                    "Too many authentication requests.", this.estimateWaitSeconds());
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for password hashing.", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private void record(long nanos) {
+        this.completed.incrementAndGet();
+        this.totalNanos.addAndGet(nanos);
+
+        long max = this.maxNanos.get();
+        while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+            max = this.maxNanos.get();
+        }
+    }
+
+    /**
+     * Estimate how long the current queue will take to drain.
+     *
+     * @return estimated seconds until the queue has drained.
+     */
+    private long estimateWaitSeconds() {
+        long count = this.completed.get();
+        long averageNanos = count == 0 ? TimeUnit.MILLISECONDS.toNanos(250) : this.totalNanos.get() / count;
+        long waitNanos = averageNanos * (this.executor.getQueue().size() + this.threads) / this.threads;
+
+        return TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1;
+    }
+
+    /**
+     * Create the shared instance from application configuration.
+     *
+     * @return the shared password hashing executor.
+     */
+    private static PasswordHashingExecutor create() {
+        Properties properties = ConfigService.getConfig("application.properties");
+        double cpuShare = DEFAULT_CPU_SHARE;
+        int queue = DEFAULT_QUEUE;
+
+        if (properties != null && properties.getProperty(CPU_SHARE_PROPERTY) != null) {
+            cpuShare = Double.parseDouble(properties.getProperty(CPU_SHARE_PROPERTY));
+        }
+        if (properties != null && properties.getProperty(QUEUE_PROPERTY) != null) {
+            queue = Integer.parseInt(properties.getProperty(QUEUE_PROPERTY));
+        }
+
+        int threads = Math.max(1, (int) (Runtime.getRuntime().availableProcessors() * cpuShare));
+        return new PasswordHashingExecutor(threads, queue);
+    }
+
+    /**
+     * Lazily created shared instance.
+     */
+    private static class Holder {
+
+        private static final PasswordHashingExecutor INSTANCE = PasswordHashingExecutor.create();
+    }
+}
@@ -0,0 +1,88 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+/**
+ * Point in time statistics for the password hashing executor.
+ *
+ * @author robertnorthard
+ */
+public class PasswordHashingStats {
+
+    private final int threads;
+    private final int queueDepth;
+    private final int active;
+    private final long completed;
+    private final long rejected;
+    private final long averageLatencyMillis;
+    private final long maxLatencyMillis;
+
+    /**
+     * Constructor for class PasswordHashingStats.
+     *
+     * @param threads number of hashing threads.
+     * @param queueDepth number of tasks waiting for a thread.
+     * @param active number of tasks running.
+     * @param completed number of tasks completed.
+     * @param rejected number of tasks rejected as the queue was full.
+     * @param averageLatencyMillis average hashing time in milliseconds.
+     * @param maxLatencyMillis maximum hashing time in milliseconds.
+     */
+    public PasswordHashingStats(int threads, int queueDepth, int active, long completed,
+            long rejected, long averageLatencyMillis, long maxLatencyMillis) {
+        this.threads = threads;
+        this.queueDepth = queueDepth;
+        this.active = active;
+        this.completed = completed;
+        this.rejected = rejected;
+        this.averageLatencyMillis = averageLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * @return the threads
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * @return the queueDepth
+     */
+    public int getQueueDepth() {
+        return this.queueDepth;
+    }
+
+    /**
+     * @return the active
+     */
+    public int getActive() {
+        return this.active;
+    }
+
+    /**
+     * @return the completed
+     */
+    public long getCompleted() {
+        return this.completed;
+    }
+
+    /**
+     * @return the rejected
+     */
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    /**
+     * @return the averageLatencyMillis
+     */
+    public long getAverageLatencyMillis() {
+        return this.averageLatencyMillis;
+    }
+
+    /**
+     * @return the maxLatencyMillis
+     */
+    public long getMaxLatencyMillis() {
+        return this.maxLatencyMillis;
+    }
+}
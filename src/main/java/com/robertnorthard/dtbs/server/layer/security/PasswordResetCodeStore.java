@@ -0,0 +1,321 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import com.robertnorthard.dtbs.server.configuration.ConfigService;
+import com.robertnorthard.dtbs.server.layer.persistence.PasswordResetEventDao;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.PasswordResetEvent;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.joda.time.DateTime;
+
+/**
+ * Store of temporary password reset codes, one per user.
+ *
+ * Codes are held in memory as salted SHA-256 hashes, so verification needs no
+ * database round trip, and a code is rejected after MAX_ATTEMPTS attempts to
+ * verify it. Expired codes are removed by a hashed timing wheel advanced by
+ * callers, without a background thread.
+ *
+ * Codes can also be written through to the database for durability with
+ * dtbs.server.password.reset.persistent=true (default false). Each issued code
+ * hash is then written as a PasswordResetEvent, deactivating the user's
+ * previous codes, and a used, expired or exhausted code is deactivated. A
+ * code not held in memory, because it was issued before a restart or on
+ * another node, is verified against the stored row, with attempts counted and
+ * the code consumed by conditional updates of the row.
+ *
+ * @author robertnorthard
+ */
+@Singleton
+public class PasswordResetCodeStore {
+
+    /**
+     * Number of incorrect attempts after which a code is invalidated.
+     */
+    public static final int MAX_ATTEMPTS = 5;
+
+    private static final String PERSISTENT_PROPERTY = "dtbs.server.password.reset.persistent";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int SALT_LENGTH = 16;
+    private static final int WHEEL_SIZE = 64;
+    private static final long TICK_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ConcurrentMap<String, ResetCode> codes = new ConcurrentHashMap<>();
+    private final Queue<String>[] wheel;
+    private final AtomicLong currentTick;
+    private final SecureRandom random = new SecureRandom();
+
+    @Inject
+    private PasswordResetEventDao passwordResetEventDao;
+
+    /**
+     * Default constructor for class PasswordResetCodeStore.
+     */
+    @SuppressWarnings("unchecked")
+    public PasswordResetCodeStore() {
+        this.wheel = new Queue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            this.wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.currentTick = new AtomicLong(this.now() / TICK_MILLIS);
+    }
+
+    /**
+     * Constructor for class PasswordResetCodeStore.
+     *
+     * @param passwordResetEventDao dao to persist codes, null to keep codes
+     * in memory only.
+     */
+    public PasswordResetCodeStore(PasswordResetEventDao passwordResetEventDao) {
+        this();
+        this.passwordResetEventDao = passwordResetEventDao;
+    }
+
+    /**
+     * Enable write through to the database if configured.
+     */
+    @PostConstruct
+    public void init() {
+        Properties properties = ConfigService.getConfig("application.properties");
+
+        if (properties == null
+                || !"true".equalsIgnoreCase(properties.getProperty(PERSISTENT_PROPERTY))) {
+            this.passwordResetEventDao = null;
+        }
+    }
+
+    /**
+     * Issue a reset code for a user, replacing any previous code.
+     *
+     * @param username username of account.
+     * @param code plaintext reset code.
+     * @param expiry time the code expires.
+     */
+    public void issue(String username, String code, DateTime expiry) {
+        String hash = this.hash(username, code, null);
+
+        if (this.passwordResetEventDao != null) {
+            this.passwordResetEventDao.deactivateForUsername(username);
+            this.passwordResetEventDao.persistEntity(new PasswordResetEvent(username, hash, expiry));
+        }
+
+        this.advance();
+        this.put(username, new ResetCode(hash, expiry.getMillis()));
+    }
+
+    /**
+     * Verify a reset code. A correct code is consumed so can only be used
+     * once. An incorrect code counts towards the code's attempt limit.
+     *
+     * @param username username of account.
+     * @param code plaintext reset code.
+     * @return true if the code is correct and has not expired.
+     */
+    public boolean verify(String username, String code) {
+        this.advance();
+
+        ResetCode resetCode = this.codes.get(username);
+        if (resetCode == null) {
+            return this.passwordResetEventDao != null && this.verifyStored(username, code);
+        }
+
+        if (resetCode.expiresAt <= this.now()
+                || resetCode.attempts.incrementAndGet() > MAX_ATTEMPTS) {
+            this.codes.remove(username, resetCode);
+            this.deactivateStored(username);
+            return false;
+        }
+
+        if (!this.matches(resetCode.hash, username, code)) {
+            return false;
+        }
+
+        // false if consumed concurrently.
+        if (!this.codes.remove(username, resetCode)) {
+            return false;
+        }
+        return this.passwordResetEventDao == null
+                || this.passwordResetEventDao.deactivateForUsername(username) > 0;
+    }
+
+    /**
+     * Invalidate the code for a user.
+     *
+     * @param username username of account.
+     */
+    public void invalidate(String username) {
+        this.codes.remove(username);
+        this.deactivateStored(username);
+    }
+
+    /**
+     * @return the number of codes held in memory.
+     */
+    public int size() {
+        return this.codes.size();
+    }
+
+    /**
+     * Return the current time in milliseconds.
+     *
+     * @return the current time in milliseconds.
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    private void put(String username, ResetCode resetCode) {
+        this.codes.put(username, resetCode);
+
+        long tick = Math.max(resetCode.expiresAt / TICK_MILLIS, this.currentTick.get());
+        this.wheel[(int) (tick % WHEEL_SIZE)].add(username);
+    }
+
+    /**
+     * Deactivate the user's stored codes if written through to the database.
+     *
+     * @param username username of account.
+     */
+    private void deactivateStored(String username) {
+        if (this.passwordResetEventDao != null) {
+            this.passwordResetEventDao.deactivateForUsername(username);
+        }
+    }
+
+    /**
+     * Verify a reset code against the user's latest stored code. The attempt
+     * is counted before the code is checked and a code that has reached
+     * MAX_ATTEMPTS or expired is deactivated.
+     *
+     * @param username username of account.
+     * @param code plaintext reset code.
+     * @return true if the code is correct, has not expired and was not
+     * consumed concurrently.
+     */
+    private boolean verifyStored(String username, String code) {
+        PasswordResetEvent event = this.passwordResetEventDao.findLatestActivePasswordReset(username);
+
+        if (event == null || event.getCode() == null || event.getCode().indexOf('$') <= 0) {
+            return false;
+        }
+
+        if (event.getExpiry().getMillis() <= this.now()
+                || !this.passwordResetEventDao.recordAttempt(event.getId(), MAX_ATTEMPTS)) {
+            this.passwordResetEventDao.deactivate(event.getId());
+            return false;
+        }
+
+        if (!this.matches(event.getCode(), username, code)) {
+            return false;
+        }
+
+        // false if consumed concurrently.
+        return this.passwordResetEventDao.deactivate(event.getId());
+    }
+
+    /**
+     * Return true if the code matches a stored hash.
+     *
+     * @param hash stored salt$hash.
+     * @param username username of account.
+     * @param code plaintext code.
+     * @return true if the code matches.
+     */
+    private boolean matches(String hash, String username, String code) {
+        String salt = hash.substring(0, hash.indexOf('$'));
+
+        return MessageDigest.isEqual(hash.getBytes(StandardCharsets.UTF_8),
+                this.hash(username, code, salt).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Advance the timing wheel to the current time, removing expired codes
+     * from the slots passed. Only one caller advances the wheel at a time.
+     */
+    private void advance() {
+        long now = this.now();
+        long target = now / TICK_MILLIS;
+        long tick = this.currentTick.get();
+
+        if (tick >= target || !this.currentTick.compareAndSet(tick, target)) {
+            return;
+        }
+
+        long slots = Math.min(target - tick, WHEEL_SIZE);
+        for (long t = target - slots + 1; t <= target; t++) {
+            Iterator<String> it = this.wheel[(int) (t % WHEEL_SIZE)].iterator();
+
+            while (it.hasNext()) {
+                String username = it.next();
+                ResetCode resetCode = this.codes.get(username);
+
+                if (resetCode == null) {
+                    it.remove();
+                } else if (resetCode.expiresAt <= now) {
+                    this.codes.remove(username, resetCode);
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Return a salted hash of the code. A new salt is generated if salt is
+     * null.
+     *
+     * @param username username of account.
+     * @param code plaintext code.
+     * @param salt base64 salt or null.
+     * @return salt$hash, both base64 encoded.
+     */
+    private String hash(String username, String code, String salt) {
+        byte[] saltBytes;
+
+        if (salt == null) {
+            saltBytes = new byte[SALT_LENGTH];
+            this.random.nextBytes(saltBytes);
+        } else {
+            saltBytes = Base64.getDecoder().decode(salt);
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            digest.update(saltBytes);
+            digest.update((username + ":" + code).getBytes(StandardCharsets.UTF_8));
+
+            return Base64.getEncoder().encodeToString(saltBytes) + "$"
+                    + Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * A hashed reset code held in memory.
+     */
+    private static class ResetCode {
+
+        private final String hash;
+        private final long expiresAt;
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        ResetCode(String hash, long expiresAt) {
+            this.hash = hash;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.HttpResponseFactory;
+import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Priority;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Rate limit login, logout and password reset requests by username and client
+ * address before the request reaches the authentication filter or a
+ * controller. Login and logout verify a password, so their bodies are read
+ * for the username and bodies larger than MAX_BODY_SIZE are rejected.
+ *
+ * @author robertnorthard
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 100)
+public class RateLimitFilter implements ContainerRequestFilter {
+
+    private static final Logger LOGGER = Logger.getLogger(RateLimitFilter.class.getName());
+
+    // login and logout bodies are small, larger bodies are rejected.
+    private static final int MAX_BODY_SIZE = 4096;
+
+    private final AuthenticationRateLimiter rateLimiter = AuthenticationRateLimiter.getInstance();
+
+    @Context
+    private HttpServletRequest servletRequest;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (!HttpMethod.POST.equals(requestContext.getMethod())) {
+            return;
+        }
+
+        List<PathSegment> path = requestContext.getUriInfo().getPathSegments();
+
+        try {
+            if (this.matches(path, "v1", "auth", "login")
+                    || this.matches(path, "v1", "auth", "logout")) {
+                byte[] body = this.readBody(requestContext);
+
+                if (body == null) {
+                    requestContext.abortWith(HttpResponseFactory.getInstance().getResponse(
+                            "Request body too large.", Response.Status.REQUEST_ENTITY_TOO_LARGE));
+                    return;
+                }
+                this.rateLimiter.checkAuthentication(this.readUsername(body), this.getAddress());
+
+            } else if (this.matches(path, "v1", "account", null, "reset")) {
+                this.rateLimiter.checkPasswordReset(path.get(2).getPath(), this.getAddress());
+
+            } else if (this.matches(path, "v1", "account", null, "reset", null)) {
+                // temporary codes are short so attempts count as authentication.
+                this.rateLimiter.checkAuthentication(path.get(2).getPath(), this.getAddress());
+            }
+        } catch (AdmissionRejectedException ex) {
+            LOGGER.log(Level.INFO, ex.getMessage());
+            requestContext.abortWith(HttpResponseFactory.getInstance()
+                    .getTooManyRequestsResponse(ex.getMessage(), ex.getRetryAfterSeconds()));
+        }
+    }
+
+    /**
+     * Return true if the path matches the segments, a null segment matches
+     * any value.
+     *
+     * @param path request path segments.
+     * @param segments segments to match.
+     * @return true if the path matches the segments.
+     */
+    private boolean matches(List<PathSegment> path, String... segments) {
+        if (path.size() != segments.length) {
+            return false;
+        }
+
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i] != null && !segments[i].equals(path.get(i).getPath())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the request body, restoring it for the controller. At most
+     * MAX_BODY_SIZE + 1 bytes are read so a large body is not buffered.
+     *
+     * @param requestContext request context.
+     * @return the body or null if larger than MAX_BODY_SIZE.
+     * @throws IOException if the body cannot be read.
+     */
+    private byte[] readBody(ContainerRequestContext requestContext) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        InputStream in = requestContext.getEntityStream();
+        byte[] buffer = new byte[1024];
+        int read;
+
+        while (body.size() <= MAX_BODY_SIZE
+                && (read = in.read(buffer, 0, Math.min(buffer.length, MAX_BODY_SIZE + 1 - body.size()))) != -1) {
+            body.write(buffer, 0, read);
+        }
+
+        if (body.size() > MAX_BODY_SIZE) {
+            return null;
+        }
+
+        requestContext.setEntityStream(new ByteArrayInputStream(body.toByteArray()));
+        return body.toByteArray();
+    }
+
+    /**
+     * Read the username from a json request body.
+     *
+     * @param body request body.
+     * @return the username or null if not present.
+     */
+    private String readUsername(byte[] body) {
+        if (body.length == 0) {
+            return null;
+        }
+
+        try {
+            JsonNode json = DataMapper.getInstance().readTree(body);
+            JsonNode username = json == null ? null : json.get("username");
+            return username == null ? null : username.asText();
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINEST, null, ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return address of the client or null if not known.
+     */
+    private String getAddress() {
+        return this.servletRequest == null ? null : this.servletRequest.getRemoteAddr();
+    }
+}
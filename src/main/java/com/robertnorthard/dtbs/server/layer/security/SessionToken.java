@@ -0,0 +1,83 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.service.entities.AccountRole;
+
+/**
+ * A verified session token issued at login.
+ *
+ * @author robertnorthard
+ */
+public class SessionToken {
+
+    private final String tokenId;
+    private final String username;
+    private final AccountRole role;
+    private final long issuedAt;
+    private final long expiresAt;
+
+    /**
+     * Constructor for class SessionToken.
+     *
+     * @param tokenId unique id of token.
+     * @param username username of account.
+     * @param role role of account.
+     * @param issuedAt time token was issued in milliseconds since the epoch.
+     * @param expiresAt time token expires in milliseconds since the epoch.
+     */
+    public SessionToken(String tokenId, String username, AccountRole role, long issuedAt, long expiresAt) {
+        this.tokenId = tokenId;
+        this.username = username;
+        this.role = role;
+        this.issuedAt = issuedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Return an account holding the username and role carried by the token,
+     * for use in a security context without loading the account.
+     *
+     * @return an account with the username and role of the token.
+     */
+    public Account toAccount() {
+        Account account = new Account();
+        account.setUsername(this.username);
+        account.setRole(this.role);
+        return account;
+    }
+
+    /**
+     * @return the tokenId
+     */
+    public String getTokenId() {
+        return this.tokenId;
+    }
+
+    /**
+     * @return the username
+     */
+    public String getUsername() {
+        return this.username;
+    }
+
+    /**
+     * @return the role
+     */
+    public AccountRole getRole() {
+        return this.role;
+    }
+
+    /**
+     * @return the issuedAt
+     */
+    public long getIssuedAt() {
+        return this.issuedAt;
+    }
+
+    /**
+     * @return the expiresAt
+     */
+    public long getExpiresAt() {
+        return this.expiresAt;
+    }
+}
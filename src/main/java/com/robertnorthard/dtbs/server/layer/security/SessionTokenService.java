@@ -0,0 +1,348 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import com.robertnorthard.dtbs.server.common.exceptions.AccountAuthenticationFailed;
+import com.robertnorthard.dtbs.server.configuration.ConfigService;
+import com.robertnorthard.dtbs.server.layer.service.AccountFacade;
+import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.service.entities.AccountRole;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies HMAC-SHA256 signed session tokens. A token carries the
+ * username and role of the account so requests can be authenticated without
+ * loading the account or checking its password.
+ *
+ * A token has the form id.username.role.issued.expires.signature, where
+ * username and signature are base64url encoded.
+ *
+ * Tokens are short lived (dtbs.server.session.ttl.seconds, default 30) and
+ * are exchanged for a new token at /refresh, which is allowed until
+ * dtbs.server.session.refresh.minutes (default 15) after the token expired.
+ * Refreshed tokens and tokens issued to a user before they logged out or reset
+ * their password are held in in-memory revocation lists, so revocation takes
+ * effect straight away on the node that handled it. Refresh also checks the
+ * account's sessions revoked watermark, so on other nodes a revoked token is
+ * valid until it expires and is then refused a new token.
+ *
+ * The signing key is read from the base64 encoded dtbs.server.session.key
+ * property so tokens are valid on every node; if it is not configured a random
+ * key is generated and tokens are only valid on this node until restart.
+ *
+ * @author robertnorthard
+ */
+public class SessionTokenService {
+
+    private static final Logger LOGGER = Logger.getLogger(SessionTokenService.class.getName());
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String KEY_PROPERTY = "dtbs.server.session.key";
+    private static final String TTL_PROPERTY = "dtbs.server.session.ttl.seconds";
+    private static final String REFRESH_PROPERTY = "dtbs.server.session.refresh.minutes";
+    private static final long DEFAULT_TTL_SECONDS = 30;
+    private static final long DEFAULT_REFRESH_MINUTES = 15;
+    private static final int KEY_LENGTH = 32;
+    private static final int TOKEN_ID_LENGTH = 12;
+    private static final int TOKEN_PARTS = 6;
+
+    private final ThreadLocal<Mac> mac;
+    private final long ttlMillis;
+    private final long refreshMillis;
+    private final SecureRandom random = new SecureRandom();
+
+    // token id to end of the refresh window of revoked tokens.
+    private final ConcurrentMap<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    // username to time before which all tokens for the user are revoked.
+    private final ConcurrentMap<String, Long> revokedUsers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for class SessionTokenService. Tokens can be refreshed for
+     * the default refresh window after they expire.
+     *
+     * @param key HMAC signing key.
+     * @param ttl time a token is valid for.
+     * @param unit unit of ttl.
+     */
+    SessionTokenService(byte[] key, long ttl, TimeUnit unit) {
+        this(key, ttl, unit, TimeUnit.MINUTES.toMillis(DEFAULT_REFRESH_MINUTES));
+    }
+
+    /**
+     * Constructor for class SessionTokenService.
+     *
+     * @param key HMAC signing key.
+     * @param ttl time a token is valid for.
+     * @param unit unit of ttl.
+     * @param refreshMillis time after a token expires it can still be
+     * refreshed, in milliseconds.
+     */
+    SessionTokenService(byte[] key, long ttl, TimeUnit unit, long refreshMillis) {
+        final SecretKeySpec keySpec = new SecretKeySpec(key, HMAC_ALGORITHM);
+        this.ttlMillis = unit.toMillis(ttl);
+        this.refreshMillis = refreshMillis;
+
+        this.mac = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    Mac m = Mac.getInstance(HMAC_ALGORITHM);
+                    m.init(keySpec);
+                    return m;
+                } catch (GeneralSecurityException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return a shared instance of the session token service.
+     */
+    public static SessionTokenService getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Issue a session token for an authenticated account.
+     *
+     * @param account authenticated account.
+     * @return a signed session token.
+     * @throws IllegalArgumentException if the account has no username or role.
+     */
+    public String issue(Account account) {
+        if (account == null || account.getUsername() == null || account.getRole() == null) {
+            throw new IllegalArgumentException("Account must have a username and role.");
+        }
+
+        long issuedAt = System.currentTimeMillis();
+        Long revokedBefore = this.revokedUsers.get(account.getUsername());
+        if (revokedBefore != null && issuedAt <= revokedBefore) {
+            issuedAt = revokedBefore + 1;
+        }
+
+        byte[] id = new byte[TOKEN_ID_LENGTH];
+        this.random.nextBytes(id);
+
+        String payload = encode(id) + "."
+                + encode(account.getUsername().getBytes(StandardCharsets.UTF_8)) + "."
+                + account.getRole().name() + "."
+                + issuedAt + "."
+                + (issuedAt + this.ttlMillis);
+
+        return payload + "." + encode(this.sign(payload));
+    }
+
+    /**
+     * Verify a session token. The token is valid if its signature matches,
+     * it has not expired and it has not been revoked.
+     *
+     * @param token session token.
+     * @return the verified token or null if the token is not valid.
+     */
+    public SessionToken verify(String token) {
+        SessionToken session = this.parse(token);
+
+        if (session == null || session.getExpiresAt() <= System.currentTimeMillis()
+                || this.isRevoked(session)) {
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Verify a session token can still be refreshed: its signature matches,
+     * it is within its refresh window and it has not been revoked.
+     *
+     * @param token session token.
+     * @return the verified token or null if the token cannot be refreshed.
+     */
+    private SessionToken verifyRefreshable(String token) {
+        SessionToken session = this.parse(token);
+
+        if (session == null || session.getExpiresAt() + this.refreshMillis <= System.currentTimeMillis()
+                || this.isRevoked(session)) {
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * Exchange a session token within its refresh window for a new token
+     * with a new expiry. The account is loaded so a token issued before the
+     * user's sessions were revoked on any node, or for an account no longer
+     * active, is refused. The old token is revoked.
+     *
+     * @param token session token to refresh.
+     * @param accountService account service to load the account.
+     * @return a new session token.
+     * @throws AccountAuthenticationFailed if the token cannot be refreshed.
+     */
+    public String refresh(String token, AccountFacade accountService) throws AccountAuthenticationFailed {
+        SessionToken session = this.verifyRefreshable(token);
+
+        if (session == null) {
+            throw new AccountAuthenticationFailed();
+        }
+
+        Account account = accountService.findAccount(session.getUsername());
+
+        if (account == null || !account.isActive()
+                || session.getIssuedAt() <= account.getSessionsRevokedAt()
+                || this.revokedTokens.putIfAbsent(session.getTokenId(),
+                        session.getExpiresAt() + this.refreshMillis) != null) {
+            throw new AccountAuthenticationFailed();
+        }
+
+        this.removeExpired();
+        return this.issue(account);
+    }
+
+    /**
+     * Revoke a session token.
+     *
+     * @param token session token to revoke.
+     */
+    public void revoke(String token) {
+        SessionToken session = this.verifyRefreshable(token);
+
+        if (session != null) {
+            this.revokedTokens.put(session.getTokenId(), session.getExpiresAt() + this.refreshMillis);
+            this.removeExpired();
+        }
+    }
+
+    /**
+     * Revoke every session token issued to a user up to now. Called on logout
+     * and password reset.
+     *
+     * @param username username of account.
+     */
+    public void revokeUser(String username) {
+        this.revokedUsers.put(username, System.currentTimeMillis());
+        this.removeExpired();
+    }
+
+    /**
+     * Parse a session token and check its signature.
+     *
+     * @param token session token.
+     * @return the token or null if the token is malformed or its signature
+     * does not match.
+     */
+    private SessionToken parse(String token) {
+        if (token == null) {
+            return null;
+        }
+
+        int signatureIndex = token.lastIndexOf('.');
+        if (signatureIndex < 0) {
+            return null;
+        }
+
+        String payload = token.substring(0, signatureIndex);
+        String[] parts = token.split("\\.", -1);
+
+        try {
+            if (parts.length != TOKEN_PARTS || !MessageDigest.isEqual(
+                    this.sign(payload), Base64.getUrlDecoder().decode(parts[5]))) {
+                return null;
+            }
+
+            return new SessionToken(parts[0],
+                    new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8),
+                    AccountRole.valueOf(parts[2]),
+                    Long.parseLong(parts[3]), Long.parseLong(parts[4]));
+
+        } catch (IllegalArgumentException ex) {
+            LOGGER.log(Level.FINEST, null, ex);
+            return null;
+        }
+    }
+
+    private boolean isRevoked(SessionToken session) {
+        Long revokedBefore = this.revokedUsers.get(session.getUsername());
+
+        return (revokedBefore != null && session.getIssuedAt() <= revokedBefore)
+                || this.revokedTokens.containsKey(session.getTokenId());
+    }
+
+    /**
+     * Remove revocations for tokens that have expired anyway.
+     */
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<String, Long>> tokens = this.revokedTokens.entrySet().iterator();
+        while (tokens.hasNext()) {
+            if (tokens.next().getValue() <= now) {
+                tokens.remove();
+            }
+        }
+
+        Iterator<Map.Entry<String, Long>> users = this.revokedUsers.entrySet().iterator();
+        while (users.hasNext()) {
+            if (users.next().getValue() + this.ttlMillis + this.refreshMillis <= now) {
+                users.remove();
+            }
+        }
+    }
+
+    private byte[] sign(String payload) {
+        return this.mac.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Create the shared instance from application configuration.
+     *
+     * @return the shared session token service.
+     */
+    private static SessionTokenService create() {
+        Properties properties = ConfigService.getConfig("application.properties");
+        String configuredKey = properties == null ? null : properties.getProperty(KEY_PROPERTY);
+        long ttl = DEFAULT_TTL_SECONDS;
+        long refresh = DEFAULT_REFRESH_MINUTES;
+
+        if (properties != null && properties.getProperty(TTL_PROPERTY) != null) {
+            ttl = Long.parseLong(properties.getProperty(TTL_PROPERTY));
+        }
+        if (properties != null && properties.getProperty(REFRESH_PROPERTY) != null) {
+            refresh = Long.parseLong(properties.getProperty(REFRESH_PROPERTY));
+        }
+
+        byte[] key;
+        if (configuredKey != null) {
+            key = Base64.getDecoder().decode(configuredKey);
+        } else {
+            LOGGER.log(Level.WARNING, "{0} not configured, session tokens are only valid on this node.", KEY_PROPERTY);
+            key = new byte[KEY_LENGTH];
+            new SecureRandom().nextBytes(key);
+        }
+
+        return new SessionTokenService(key, ttl, TimeUnit.SECONDS, TimeUnit.MINUTES.toMillis(refresh));
+    }
+
+    /**
+     * Lazily created shared instance.
+     */
+    private static class Holder {
+
+        private static final SessionTokenService INSTANCE = SessionTokenService.create();
+    }
+}
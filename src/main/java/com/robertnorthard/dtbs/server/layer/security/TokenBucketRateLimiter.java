@@ -0,0 +1,120 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket rate limiter keyed by an arbitrary string such as
+ * a username or client address.
+ *
+ * Each bucket is a single AtomicLong holding the time at which the bucket
+ * will be full again. Tokens are refilled lazily: the number of tokens
+ * available is derived from how far that time is in the future, and taking a
+ * token moves it forward by one refill interval with a compare-and-set. Full
+ * buckets are equivalent to absent ones, so idle buckets are evicted by a
+ * periodic sweep run inline by the caller that finds it due.
+ *
+ * @author robertnorthard
+ */
+public class TokenBucketRateLimiter {
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final ConcurrentMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+
+    /**
+     * Constructor for class TokenBucketRateLimiter.
+     *
+     * @param capacity maximum number of tokens in a bucket.
+     * @param refillPeriod time to refill one token.
+     * @param unit unit of refill period.
+     * @throws IllegalArgumentException if capacity or refill period is not positive.
+     */
+    public TokenBucketRateLimiter(int capacity, long refillPeriod, TimeUnit unit) {
+        if (capacity <= 0 || refillPeriod <= 0) {
+            throw new IllegalArgumentException("Capacity and refill period must be positive.");
+        }
+
+        this.intervalNanos = unit.toNanos(refillPeriod);
+        this.burstNanos = this.intervalNanos * capacity;
+        this.nextSweep = new AtomicLong(this.now() + SWEEP_INTERVAL_NANOS);
+    }
+
+    /**
+     * Take a token from the bucket for the key.
+     *
+     * @param key bucket key.
+     * @return 0 if a token was taken, else the number of nanoseconds until a
+     * token will be available.
+     */
+    public long tryAcquire(String key) {
+        long now = this.now();
+        this.sweep(now);
+
+        AtomicLong bucket = this.buckets.get(key);
+        if (bucket == null) {
+            AtomicLong created = new AtomicLong(now);
+            bucket = this.buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + this.intervalNanos;
+
+            if (next - now > this.burstNanos) {
+                return next - now - this.burstNanos;
+            }
+
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return the number of buckets held.
+     */
+    public int size() {
+        return this.buckets.size();
+    }
+
+    /**
+     * Return the current time in nanoseconds.
+     *
+     * @return the current time in nanoseconds.
+     */
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Remove full buckets if a sweep is due. Only one caller runs each sweep.
+     *
+     * @param now current time in nanoseconds.
+     */
+    private void sweep(long now) {
+        long due = this.nextSweep.get();
+
+        if (now - due < 0 || !this.nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+
+        Iterator<Map.Entry<String, AtomicLong>> it = this.buckets.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, AtomicLong> entry = it.next();
+            if (entry.getValue().get() - now <= 0) {
+                this.buckets.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
@@ -25,7 +25,7 @@ public interface AccountFacade {
             throws AccountInvalidException;
 
     /**
-     * Authenticate a user.
+     * Authenticate a user. Has no side effects.
      *
      * @param username username of account
      * @param password password of account
@@ -45,17 +45,29 @@ public interface AccountFacade {
     public void logout(String username, String password) throws AccountAuthenticationFailed;
     
     /**
-     * Authenticate a user and add Google GCM registration id
+     * Login a user. Used for taxi drivers to start a shift.
+     *
+     * @param username username of account
+     * @param password password of account
+     * @return account object if authentication successful.
+     * @throws AccountAuthenticationFailed if authentication fails.
+     */
+    public Account login(String username, String password)
+            throws AccountAuthenticationFailed;
+
+    /**
+     * Login a user and add Google GCM registration id. Used for taxi drivers
+     * to start a shift.
      *
      * @param username username of account
      * @param password password of account
      * @param googleGcmRegId Google cloud messenger registration id.
-     * @return account object if authentication successful else null.
+     * @return account object if authentication successful.
      * @throws AccountAuthenticationFailed if authentication fails.
      */
-    public Account authenticate(String username, String password, String googleGcmRegId)
+    public Account login(String username, String password, String googleGcmRegId)
             throws AccountAuthenticationFailed;
-    
+
     /**
      * Authenticate user from base64 encoded message.
      *
@@ -4,14 +4,18 @@ import com.robertnorthard.dtbs.server.common.exceptions.AccountAuthenticationFai
 import com.robertnorthard.dtbs.server.common.exceptions.AccountInvalidException;
 import com.robertnorthard.dtbs.server.common.exceptions.EntityNotFoundException;
 import com.robertnorthard.dtbs.server.layer.service.business.rules.validator.AccountValidator;
-import com.robertnorthard.dtbs.server.layer.service.entities.events.PasswordResetEvent;
 import com.robertnorthard.dtbs.server.layer.persistence.AccountDao;
 import com.robertnorthard.dtbs.server.layer.persistence.PasswordResetEventDao;
 import com.robertnorthard.dtbs.server.layer.persistence.TaxiDao;
+import com.robertnorthard.dtbs.server.layer.security.CredentialCache;
+import com.robertnorthard.dtbs.server.layer.security.PasswordResetCodeStore;
+import com.robertnorthard.dtbs.server.layer.security.SessionTokenService;
 import com.robertnorthard.dtbs.server.layer.utils.AuthenticationUtils;
 import com.robertnorthard.dtbs.server.layer.utils.mail.MailStrategy;
+import com.robertnorthard.dtbs.server.layer.utils.topic.BookingTopic;
 import com.robertnorthard.dtbs.server.layer.service.entities.Account;
 import com.robertnorthard.dtbs.server.layer.service.entities.AccountRole;
+import com.robertnorthard.dtbs.server.layer.service.entities.taxi.OffDutyTaxiState;
 import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
 import java.util.List;
 import javax.ejb.Stateless;
@@ -28,9 +32,11 @@ public class AccountService implements AccountFacade {
 
     private final AccountDao accountDao;
     @Inject
-    private PasswordResetEventDao passwordResetEventDao;
-    @Inject
     private MailStrategy mailStrategy;
+    @Inject
+    private PasswordResetCodeStore passwordResetCodeStore;
+    @Inject
+    private BookingTopic bookingTopic;
 
     private TaxiDao taxiDao = new TaxiDao();
 
@@ -47,8 +53,21 @@ public class AccountService implements AccountFacade {
      */
     public AccountService(AccountDao accountDao, PasswordResetEventDao passwordResetEventDao, MailStrategy mailStrategy) {
         this.accountDao = accountDao;
-        this.passwordResetEventDao = passwordResetEventDao;
         this.mailStrategy = mailStrategy;
+        this.passwordResetCodeStore = new PasswordResetCodeStore(passwordResetEventDao);
+    }
+
+    /**
+     * AccountService constructor.
+     *
+     * @param accountDao Account data access object.
+     * @param passwordResetEventDao Password reset data access object.
+     * @param mailStrategy Mail strategy object.
+     * @param taxiDao Taxi data access object.
+     */
+    public AccountService(AccountDao accountDao, PasswordResetEventDao passwordResetEventDao, MailStrategy mailStrategy, TaxiDao taxiDao) {
+        this(accountDao, passwordResetEventDao, mailStrategy);
+        this.taxiDao = taxiDao;
     }
 
     /**
@@ -115,7 +134,8 @@ public class AccountService implements AccountFacade {
     }
 
     /**
-     * Authenticate a user if password matches and account is active.
+     * Authenticate a user if password matches and account is active. Has no
+     * side effects so is safe to call on every request.
      *
      * @param username username of account
      * @param password password of account
@@ -136,16 +156,60 @@ public class AccountService implements AccountFacade {
             throw new AccountAuthenticationFailed();
         }
 
+        return account;
+    }
+
+    /**
+     * Login a user. Used for taxi drivers to start a shift, putting an off
+     * duty taxi on duty.
+     *
+     * @param username username of account
+     * @param password password of account
+     * @return account object if authentication successful.
+     * @throws AccountAuthenticationFailed if authentication fails.
+     */
+    @Override
+    public Account login(String username, String password)
+            throws AccountAuthenticationFailed {
+        Account account = this.authenticate(username, password);
+        this.startShift(account);
+        return account;
+    }
+
+    /**
+     * Login a user and add Google GCM registration id.
+     *
+     * @param username username of account
+     * @param password password of account
+     * @param googleGcmRegId Google cloud messenger registration id.
+     * @return account object if authentication successful.
+     * @throws AccountAuthenticationFailed if authentication fails.
+     */
+    @Override
+    public Account login(String username, String password, String googleGcmRegId)
+            throws AccountAuthenticationFailed {
+        Account account = this.authenticate(username, password);
+        account.setGcmRegId(googleGcmRegId);
+        this.accountDao.update(account);
+        this.startShift(account);
+        return account;
+    }
+
+    /**
+     * Put a driver's taxi on duty if it is off duty. A taxi on a job is left
+     * unchanged.
+     *
+     * @param account authenticated account.
+     */
+    private void startShift(Account account) {
         if (account.hasRole(AccountRole.DRIVER.toString())) {
-            Taxi taxi = this.taxiDao.findTaxiForDriver(username);
+            Taxi taxi = this.taxiDao.findTaxiForDriver(account.getUsername());
 
-            if (taxi != null) {
+            if (taxi != null && taxi.getState() instanceof OffDutyTaxiState) {
                 taxi.goOnDuty();
                 this.taxiDao.update(taxi);
             }
         }
-
-        return account;
     }
     
    /**
@@ -157,16 +221,7 @@ public class AccountService implements AccountFacade {
      */
     @Override
     public void logout(String username, String password) throws AccountAuthenticationFailed{
-         Account account = this.findAccount(username);
-
-        if (account == null) {
-            throw new AccountAuthenticationFailed();
-        }
-
-        if (!AuthenticationUtils.
-                checkPassword(password, account.getPassword()) || !account.isActive()) {
-            throw new AccountAuthenticationFailed();
-        }
+        Account account = this.authenticate(username, password);
 
         if (account.hasRole(AccountRole.DRIVER.toString())) {
             Taxi taxi = this.taxiDao.findTaxiForDriver(username);
@@ -176,28 +231,29 @@ public class AccountService implements AccountFacade {
                 this.taxiDao.update(taxi);
             }
         }
+
+        account.revokeSessions();
+        this.accountDao.update(account);
+
+        CredentialCache.getInstance().invalidate(username);
+        SessionTokenService.getInstance().revokeUser(username);
+        this.disconnect(username);
     }
 
     /**
-     * Authenticate a user and add Google GCM registration id.
+     * Close the user's live booking connections, opened with session tokens
+     * that have just been revoked.
      *
-     * @param username username of account
-     * @param password password of account
-     * @param googleGcmRegId Google cloud messenger registration id.
-     * @return account object if authentication successful else null.
-     * @throws AccountAuthenticationFailed if authentication fails.
+     * @param username username of account.
      */
-    @Override
-    public Account authenticate(String username, String password, String googleGcmRegId)
-            throws AccountAuthenticationFailed {
-        Account account = this.authenticate(username, password);
-        account.setGcmRegId(googleGcmRegId);
-        this.accountDao.update(account);
-        return account;
+    private void disconnect(String username) {
+        if (this.bookingTopic != null) {
+            this.bookingTopic.disconnect(username);
+        }
     }
 
     /**
-     * Reset account password via temporary code. 1 - Generate temporary code 2 - Create reset event. 3 - Send email to use with temporary access
+     * Reset account password via temporary code. 1 - Generate temporary code 2 - Store hashed code. 3 - Send email to use with temporary access
      * code.
      *
      * @param username username of account to reset.
@@ -219,15 +275,8 @@ public class AccountService implements AccountFacade {
         // calculate reset expiry
         DateTime expireDate = new DateTime().plusDays(1);
 
-        // create new password reset event with reset code, account username and expiry.
-        PasswordResetEvent event = new PasswordResetEvent(
-                username, resetCode, expireDate);
-
-        // Set all current password resets for the user inactive.
-        this.deactivePasswordResets(username);
-
-        // save password reset event
-        this.passwordResetEventDao.persistEntity(event);
+        // store hashed reset code, replacing any previous code for the user.
+        this.passwordResetCodeStore.issue(username, resetCode, expireDate);
 
         // send email with temporary code
         this.mailStrategy.sendMail("DTBS - Reset Password",
@@ -250,7 +299,7 @@ public class AccountService implements AccountFacade {
     public void resetPassword(final String code, final String username, final String newPassword)
             throws AccountAuthenticationFailed, EntityNotFoundException {
 
-        if (authenticateTemporaryCredentials(username, code)) {
+        if (this.passwordResetCodeStore.verify(username, code)) {
 
             Account account = this.findAccount(username);
 
@@ -261,12 +310,13 @@ public class AccountService implements AccountFacade {
 
                 // store password hash
                 account.setPassword(passwordHash);
+                account.revokeSessions();
 
                 //update account
                 this.accountDao.update(account);
-
-                // on success deactive all password resets for account
-                this.deactivePasswordResets(username);
+                CredentialCache.getInstance().invalidate(username);
+                SessionTokenService.getInstance().revokeUser(username);
+                this.disconnect(username);
             } else {
                 throw new EntityNotFoundException();
             }
@@ -275,35 +325,6 @@ public class AccountService implements AccountFacade {
         }
     }
 
-    private boolean authenticateTemporaryCredentials(final String username, final String code) {
-        // authenticate code.
-        List<PasswordResetEvent> events = this.passwordResetEventDao.findActivePasswordResetByUsername(username);
-
-        for (PasswordResetEvent event : events) {
-            if (event.validateCode(code)) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
-    /**
-     * Set all active password resets for the specified user inactive.
-     *
-     * @param username username to search by.
-     */
-    private void deactivePasswordResets(String username) {
-        List<PasswordResetEvent> events = this.passwordResetEventDao.findActivePasswordResetByUsername(username);
-
-        if (events != null) {
-            for (PasswordResetEvent e : events) {
-                e.setInactive();
-                this.passwordResetEventDao.update(e);
-            }
-        }
-    }
-
     /**
      * Authenticate user from base64 encoded message.
      *
@@ -5,11 +5,18 @@ import com.robertnorthard.dtbs.server.common.exceptions.BookingNotFoundException
 import com.robertnorthard.dtbs.server.common.exceptions.IllegalBookingStateException;
 import com.robertnorthard.dtbs.server.common.exceptions.InvalidLocationException;
 import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.BookingEvent;
 import com.robertnorthard.dtbs.server.common.exceptions.InvalidBookingException;
 import com.robertnorthard.dtbs.server.common.exceptions.InvalidGoogleApiResponseException;
 import com.robertnorthard.dtbs.server.common.exceptions.RouteNotFoundException;
 import com.robertnorthard.dtbs.server.common.exceptions.TaxiNotFoundException;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.AwaitingBookingDto;
 import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingDto;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingSummaryDto;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.PagedResult;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.QuoteDto;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import com.robertnorthard.dtbs.server.layer.service.readmodel.UserBookingView;
 import java.util.List;
 import javax.ejb.Local;
 
@@ -58,6 +65,20 @@ public interface BookingFacade {
             InvalidGoogleApiResponseException,
             InvalidBookingException;
 
+    /**
+     * Quote the route and fare of a journey. The returned quote id may be
+     * passed when making a booking for the same journey to reuse the route.
+     *
+     * @param username username of passenger.
+     * @param startLocation start location.
+     * @param endLocation end location.
+     * @return a route and fare quote.
+     * @throws RouteNotFoundException route not found.
+     * @throws InvalidGoogleApiResponseException unable to parse Google API response.
+     */
+    public QuoteDto createQuote(String username, Location startLocation, Location endLocation)
+            throws RouteNotFoundException, InvalidGoogleApiResponseException;
+
     /**
      * Update the specified booking.
      *
@@ -73,12 +94,50 @@ public interface BookingFacade {
     public List<Booking> findBookingsInAwaitingTaxiDispatchState();
 
     /**
-     * A collections of bookings. If passenger display booking history. If driver display job history.
+     * Return summaries of bookings awaiting a taxi, containing only the fields listed to drivers.
+     *
+     * @return summaries of bookings awaiting a taxi.
+     */
+    public List<AwaitingBookingDto> findAwaitingBookingSummaries();
+
+    /**
+     * A page of booking summaries ordered by most recent first. If passenger display booking history. If driver display job history.
      *
      * @param username username.
-     * @return booking history.
+     * @param cursor cursor returned with the previous page, null for the first page.
+     * @param limit maximum number of bookings to return.
+     * @return a page of booking history.
+     * @throws IllegalArgumentException if username is null or cursor is invalid.
      */
-    public List<Booking> findBookingHistory(String username);
+    public PagedResult<BookingSummaryDto> findBookingHistory(String username, String cursor, int limit);
+
+    /**
+     * Return the event log of a booking if the user is the booking's passenger or the driver of the taxi assigned to it.
+     *
+     * @param id id of booking.
+     * @param username username of authenticated user.
+     * @return the events of the booking in the order they were appended, null if the booking was not found or the
+     * user is not part of the booking.
+     */
+    public List<BookingEvent> findBookingEvents(Long id, String username);
+
+    /**
+     * Return a page of booking events appended after the given event.
+     *
+     * @param afterId id of the last event read, 0 to read from the start.
+     * @param limit maximum number of events to return.
+     * @return a page of booking events appended after the given event.
+     */
+    public List<BookingEvent> findBookingEventsAfter(long afterId, int limit);
+
+    /**
+     * Rebuild the state of a booking by replaying its event log.
+     *
+     * @param id id of booking.
+     * @return the rebuilt booking.
+     * @throws BookingNotFoundException if the booking or its events were not found.
+     */
+    public Booking rebuildBooking(Long id) throws BookingNotFoundException;
 
     /**
      * Return most recent active booking for a user.
@@ -89,6 +148,32 @@ public interface BookingFacade {
      */
     public Booking checkActiveBooking(String username);
 
+    /**
+     * Return the booking read model view for a user: active booking, recent bookings and booking counts.
+     *
+     * @param username username of user.
+     * @return the booking read model view for a user.
+     */
+    public UserBookingView findBookingView(String username);
+
+    /**
+     * Rebuild the booking read model view for a user from the database.
+     *
+     * @param username username of user.
+     * @return the rebuilt view.
+     */
+    public UserBookingView rebuildBookingView(String username);
+
+    /**
+     * Discard all booking read model views, each is rebuilt from the database on next use.
+     */
+    public void rebuildBookingViews();
+
+    /**
+     * Warm the active booking index from the database if not already warm.
+     */
+    public void warmActiveBookingIndex();
+
     /**
      * Accept a taxi booking.
      *
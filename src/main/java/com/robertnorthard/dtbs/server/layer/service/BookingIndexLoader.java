@@ -0,0 +1,36 @@
+package com.robertnorthard.dtbs.server.layer.service;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.inject.Inject;
+
+/**
+ * Warms in memory booking indexes when the application starts.
+ *
+ * @author robertnorthard
+ */
+@Singleton
+@Startup
+public class BookingIndexLoader {
+
+    private static final Logger LOGGER = Logger.getLogger(BookingIndexLoader.class.getName());
+
+    @Inject
+    private BookingFacade bookingService;
+
+    /**
+     * Warm the active booking index. If warming fails the index is warmed on
+     * first use.
+     */
+    @PostConstruct
+    public void warm() {
+        try {
+            this.bookingService.warmActiveBookingIndex();
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "warm - unable to warm active booking index", ex);
+        }
+    }
+}
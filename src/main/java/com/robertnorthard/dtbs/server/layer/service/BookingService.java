@@ -5,26 +5,50 @@ import com.robertnorthard.dtbs.server.common.exceptions.BookingNotFoundException
 import com.robertnorthard.dtbs.server.common.exceptions.IllegalBookingStateException;
 import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
 import com.robertnorthard.dtbs.server.layer.persistence.BookingDao;
+import com.robertnorthard.dtbs.server.layer.persistence.BookingEventDao;
+import com.robertnorthard.dtbs.server.layer.persistence.NotificationOutboxDao;
 import com.robertnorthard.dtbs.server.common.exceptions.InvalidBookingException;
 import com.robertnorthard.dtbs.server.common.exceptions.InvalidGoogleApiResponseException;
 import com.robertnorthard.dtbs.server.common.exceptions.RouteNotFoundException;
 import com.robertnorthard.dtbs.server.common.exceptions.TaxiNotFoundException;
 import com.robertnorthard.dtbs.server.layer.service.business.rules.validator.BookingValidator;
 import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
 import com.robertnorthard.dtbs.server.layer.service.entities.Route;
 import com.robertnorthard.dtbs.server.layer.service.entities.booking.BookingStates;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.CancelledBookingState;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.CompletedBookingState;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.BookingEvent;
 import com.robertnorthard.dtbs.server.layer.service.entities.events.EventTypes;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.OutboxNotification;
 import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
 import com.robertnorthard.dtbs.server.layer.persistence.RouteDao;
 import com.robertnorthard.dtbs.server.layer.persistence.TaxiDao;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.AwaitingBookingDto;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingCursor;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.QuoteDto;
 import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingDto;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingSummaryDto;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.PagedResult;
+import com.robertnorthard.dtbs.server.layer.service.readmodel.ActiveBookingIndex;
+import com.robertnorthard.dtbs.server.layer.service.readmodel.BookingReadModel;
+import com.robertnorthard.dtbs.server.layer.service.readmodel.UserBookingView;
+import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
 import com.robertnorthard.dtbs.server.layer.utils.gcm.GcmClient;
+import com.robertnorthard.dtbs.server.layer.utils.cache.QuoteCache;
+import com.robertnorthard.dtbs.server.layer.utils.topic.BookingTopic;
+import com.robertnorthard.dtbs.server.layer.utils.topic.TopicSubscriber;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
+import javax.persistence.OptimisticLockException;
 
 /**
  * A service class implementing the booking facade.
@@ -34,6 +58,24 @@ import javax.inject.Inject;
 @Stateless
 public class BookingService implements BookingFacade {
 
+    private static final Logger LOGGER = Logger.getLogger(BookingService.class.getName());
+
+    /**
+     * Maximum number of bookings returned in a page of booking history.
+     */
+    public static final int MAX_HISTORY_PAGE_SIZE = 100;
+
+    /**
+     * Maximum number of attempts to update a booking and taxi when the update
+     * conflicts with a concurrent modification.
+     */
+    public static final int MAX_UPDATE_ATTEMPTS = 3;
+
+    /**
+     * Maximum number of events returned in a page of the booking event log.
+     */
+    public static final int MAX_EVENT_PAGE_SIZE = 500;
+
     @Inject
     private BookingDao bookingDao;
     @Inject
@@ -48,6 +90,34 @@ public class BookingService implements BookingFacade {
     private GcmClient gcmClient;
     @Inject
     private TaxiFacade taxiService;
+    @Inject
+    private BookingEventDao bookingEventDao;
+    @Inject
+    private BookingReadModel bookingReadModel;
+    @Inject
+    private ActiveBookingIndex activeBookingIndex;
+    @Inject
+    private BookingTopic bookingTopic;
+    @Inject
+    private NotificationOutboxDao notificationOutboxDao;
+    @Inject
+    private QuoteCache quoteCache;
+
+    /**
+     * Constructor for dependency injection/testing.
+     * 
+     * @param bookingDao booking dao.
+     * @param accountService account service.
+     * @param routeDao route dao.
+     * @param taxiDao taxi dao.
+     * @param googleDistanceMatrixFacade Google distance matrix service.
+     * @param gcmClient gcm client.
+     * @param taxiService taxi service.
+     * @param bookingEventDao booking event dao.
+     */
+    public BookingService(BookingDao bookingDao, AccountFacade accountService, RouteDao routeDao, TaxiDao taxiDao, GoogleDistanceMatrixFacade googleDistanceMatrixFacade, GcmClient gcmClient, TaxiService taxiService, BookingEventDao bookingEventDao) {
+        this(bookingDao, accountService, routeDao, taxiDao, googleDistanceMatrixFacade, gcmClient, taxiService, bookingEventDao, new BookingTopic());
+    }
 
     /**
      * Constructor for dependency injection/testing.
@@ -58,8 +128,29 @@ public class BookingService implements BookingFacade {
      * @param taxiDao taxi dao.
      * @param googleDistanceMatrixFacade Google distance matrix service.
      * @param gcmClient gcm client.
+     * @param taxiService taxi service.
+     * @param bookingEventDao booking event dao.
+     * @param bookingTopic topic of booking events pushed to live connections.
      */
-    public BookingService(BookingDao bookingDao, AccountFacade accountService, RouteDao routeDao, TaxiDao taxiDao, GoogleDistanceMatrixFacade googleDistanceMatrixFacade, GcmClient gcmClient, TaxiService taxiService) {
+    public BookingService(BookingDao bookingDao, AccountFacade accountService, RouteDao routeDao, TaxiDao taxiDao, GoogleDistanceMatrixFacade googleDistanceMatrixFacade, GcmClient gcmClient, TaxiService taxiService, BookingEventDao bookingEventDao, BookingTopic bookingTopic) {
+        this(bookingDao, accountService, routeDao, taxiDao, googleDistanceMatrixFacade, gcmClient, taxiService, bookingEventDao, bookingTopic, new NotificationOutboxDao());
+    }
+
+    /**
+     * Constructor for dependency injection/testing.
+     * 
+     * @param bookingDao booking dao.
+     * @param accountService account service.
+     * @param routeDao route dao.
+     * @param taxiDao taxi dao.
+     * @param googleDistanceMatrixFacade Google distance matrix service.
+     * @param gcmClient gcm client.
+     * @param taxiService taxi service.
+     * @param bookingEventDao booking event dao.
+     * @param bookingTopic topic of booking events pushed to live connections.
+     * @param notificationOutboxDao notification outbox dao.
+     */
+    public BookingService(BookingDao bookingDao, AccountFacade accountService, RouteDao routeDao, TaxiDao taxiDao, GoogleDistanceMatrixFacade googleDistanceMatrixFacade, GcmClient gcmClient, TaxiService taxiService, BookingEventDao bookingEventDao, BookingTopic bookingTopic, NotificationOutboxDao notificationOutboxDao) {
         this.bookingDao = bookingDao;
         this.accountService = accountService;
         this.routeDao = routeDao;
@@ -67,6 +158,12 @@ public class BookingService implements BookingFacade {
         this.googleDistanceMatrixFacade = googleDistanceMatrixFacade;
         this.gcmClient = gcmClient;
         this.taxiService = taxiService;
+        this.bookingEventDao = bookingEventDao;
+        this.bookingReadModel = new BookingReadModel();
+        this.activeBookingIndex = new ActiveBookingIndex();
+        this.bookingTopic = bookingTopic;
+        this.notificationOutboxDao = notificationOutboxDao;
+        this.quoteCache = new QuoteCache();
     }
 
     public BookingService() {
@@ -128,26 +225,46 @@ public class BookingService implements BookingFacade {
                     throw new AccountAuthenticationFailed();
                 }
 
-                if (this.incompleteBookings(passenger.getUsername())) {
+                // reserve the passenger's active booking so concurrent requests cannot both book.
+                if (!this.reserveActiveBooking(passenger.getUsername())) {
                     validator.getValidatorResult().addError("A user can only have one active booking.");
                     throw new InvalidBookingException(validator.getValidatorResult().getErrors());
                 }
-                
-                Route route = this.googleDistanceMatrixFacade.getRouteInfo(
-                        bookingDto.getStartLocation(),
-                        bookingDto.getEndLocation());
 
-                if (route == null) {
-                    throw new RouteNotFoundException();
+                Booking booking = null;
+                boolean created = false;
+
+                try {
+                    Route route = this.findQuotedRoute(bookingDto);
+
+                    if (route == null) {
+                        route = this.googleDistanceMatrixFacade.getRouteInfo(
+                                bookingDto.getStartLocation(),
+                                bookingDto.getEndLocation());
+                    }
+
+                    if (route == null) {
+                        throw new RouteNotFoundException();
+                    }
+
+                    booking = new Booking(
+                            passenger,
+                            route,
+                            bookingDto.getNumberPassengers());
+
+                    this.bookingDao.persistBooking(booking,
+                            new BookingEvent(booking, passenger.getUsername(), booking.getTimestamp()));
+                    this.activeBookingIndex.confirm(passenger.getUsername(), booking.getId());
+                    this.quoteCache.invalidate(bookingDto.getQuoteId());
+                    created = true;
+                } finally {
+                    if (!created) {
+                        this.activeBookingIndex.release(passenger.getUsername());
+                    }
                 }
 
-                Booking booking = new Booking(
-                        passenger,
-                        route,
-                        bookingDto.getNumberPassengers());
+                this.bookingReadModel.apply(booking, true);
 
-                this.bookingDao.persistEntity(booking);
-                
                 return booking;
 
             } else {
@@ -162,13 +279,104 @@ public class BookingService implements BookingFacade {
     }
 
     /**
-     * Return true if incomplete bookings for user else false.
+     * Return the route of the quote referenced by a booking, if the quote has
+     * not expired and was made for the same passenger and journey.
+     *
+     * @param bookingDto booking data transfer object.
+     * @return the quoted route or null.
+     */
+    private Route findQuotedRoute(BookingDto bookingDto) {
+        QuoteDto quote = this.quoteCache.get(bookingDto.getQuoteId(),
+                bookingDto.getPassengerUsername(),
+                bookingDto.getStartLocation(),
+                bookingDto.getEndLocation());
+
+        return quote == null ? null : quote.getRoute();
+    }
+
+    /**
+     * Quote the route and fare of a journey. The quote is cached so a booking
+     * made with its quote id reuses the route.
      *
-     * @param username username to check.
-     * @return true if incomplete bookings for user else false
+     * @param username username of passenger.
+     * @param startLocation start location.
+     * @param endLocation end location.
+     * @return a route and fare quote.
+     * @throws RouteNotFoundException route not found.
+     * @throws InvalidGoogleApiResponseException unable to parse Google API
+     * response.
+     * @throws IllegalArgumentException if a location is null.
      */
-    private boolean incompleteBookings(String username) {
-        return !this.bookingDao.findInCompletedBookingsForUser(username).isEmpty();
+    @Override
+    public QuoteDto createQuote(String username, Location startLocation, Location endLocation)
+            throws RouteNotFoundException, InvalidGoogleApiResponseException {
+
+        if (startLocation == null || endLocation == null) {
+            throw new IllegalArgumentException("Start and end location must be provided.");
+        }
+
+        Route route = this.googleDistanceMatrixFacade.getRouteInfo(startLocation, endLocation);
+
+        if (route == null) {
+            throw new RouteNotFoundException();
+        }
+
+        // priced the same way as a new booking.
+        double cost = new Booking(null, route, 1).getCost();
+
+        QuoteDto quote = new QuoteDto(this.quoteCache.nextQuoteId(), username,
+                startLocation, endLocation, route, cost, this.quoteCache.nextExpiry());
+        this.quoteCache.put(quote);
+        return quote;
+    }
+
+    /**
+     * Reserve an active booking for a passenger in the active booking index.
+     * The reservation stops concurrent requests on this node from both
+     * booking. The database decides whether the passenger already has an
+     * active booking, as it may have been made on another node, and the index
+     * is corrected from it.
+     *
+     * @param username username of passenger.
+     * @return true if reserved, false if the passenger has an active booking
+     * or a booking being created.
+     */
+    private boolean reserveActiveBooking(String username) {
+        this.warmActiveBookingIndex();
+
+        if (!this.activeBookingIndex.reserve(username)) {
+            Long activeBookingId = this.activeBookingIndex.getActiveBookingId(username);
+
+            if (activeBookingId == null) {
+                // booking being created by a concurrent request.
+                return false;
+            }
+
+            // index entry may be out of date, the database decides.
+            this.activeBookingIndex.remove(username, activeBookingId);
+            if (!this.activeBookingIndex.reserve(username)) {
+                return false;
+            }
+        }
+
+        Long storedBookingId = this.bookingDao.findActiveBookingIdForPassenger(username);
+
+        if (storedBookingId != null) {
+            this.activeBookingIndex.put(username, storedBookingId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Warm the active booking index from the database if not already warm.
+     */
+    @Override
+    public void warmActiveBookingIndex() {
+        if (!this.activeBookingIndex.isWarm()) {
+            List<Object[]> rows = this.bookingDao.findActiveBookingIds();
+            this.activeBookingIndex.warm(rows == null ? Collections.<Object[]>emptyList() : rows);
+        }
     }
 
     /**
@@ -192,75 +400,189 @@ public class BookingService implements BookingFacade {
     }
 
     /**
-     * A collections of bookings. If passenger display booking history. If
-     * driver display job history. If passenger has multiple roles combine
-     * collections.
+     * Return summaries of bookings awaiting a taxi.
      *
-     * @param username username.
-     * @return return booking history.
+     * @return summaries of bookings awaiting a taxi.
      */
     @Override
-    public List<Booking> findBookingHistory(String username) {
+    public List<AwaitingBookingDto> findAwaitingBookingSummaries() {
+        return this.bookingDao.findAwaitingBookingSummaries();
+    }
 
-        List<Booking> bookingHistory = new ArrayList<>();
+    /**
+     * A page of bookings ordered by most recent first. If passenger display
+     * booking history. If driver display job history. If passenger has
+     * multiple roles the collections are merged.
+     *
+     * @param username username.
+     * @param cursor cursor returned with the previous page, null for the first
+     * page.
+     * @param limit maximum number of bookings to return. Clamped between 1 and
+     * the maximum page size.
+     * @return return a page of booking history.
+     * @throws IllegalArgumentException if username is null or cursor is
+     * invalid.
+     */
+    @Override
+    public PagedResult<BookingSummaryDto> findBookingHistory(String username, String cursor, int limit) {
 
         if (username == null) {
             throw new IllegalArgumentException("Username cannot be nill.");
         }
 
+        BookingCursor bookingCursor = BookingCursor.parse(cursor);
+        int pageSize = Math.max(1, Math.min(limit, BookingService.MAX_HISTORY_PAGE_SIZE));
+
+        // the first page is served from the read model if it holds enough bookings.
+        if (bookingCursor == null && pageSize <= BookingReadModel.RECENT_BOOKINGS) {
+            UserBookingView view = this.findBookingView(username);
+            List<BookingSummaryDto> recent = view.getRecentBookings();
+            List<BookingSummaryDto> page = new ArrayList<>(
+                    recent.subList(0, Math.min(pageSize, recent.size())));
+
+            String nextCursor = null;
+            if (!page.isEmpty() && view.getTotalBookings() > page.size()) {
+                BookingSummaryDto last = page.get(page.size() - 1);
+                nextCursor = new BookingCursor(last.getTimestamp(), last.getId()).toString();
+            }
+            return new PagedResult<>(page, nextCursor);
+        }
+
+        return this.findBookingHistoryFromStore(username, bookingCursor, pageSize);
+    }
+
+    /**
+     * A page of bookings ordered by most recent first read from the database.
+     *
+     * @param username username.
+     * @param bookingCursor position to return bookings after, null for first
+     * page.
+     * @param pageSize maximum number of bookings to return.
+     * @return return a page of booking history.
+     */
+    private PagedResult<BookingSummaryDto> findBookingHistoryFromStore(
+            String username, BookingCursor bookingCursor, int pageSize) {
+
+        List<BookingSummaryDto> passengerBookings = Collections.emptyList();
+        List<BookingSummaryDto> driverBookings = Collections.emptyList();
+
         Account account = this.accountService.findAccount(username);
         if (account != null) {
 
-            // append as a passenger can have multiple roles.
+            // fetch one extra booking per role to determine if there is a next page.
             if (account.hasRole("passenger")) {
-                bookingHistory.addAll(this.bookingDao.findBookingsForPassenger(username));
+                passengerBookings = this.bookingDao.findBookingHistoryForPassenger(
+                        username, bookingCursor, pageSize + 1);
             }
             if (account.hasRole("driver")) {
-                bookingHistory.addAll(this.bookingDao.findBookingsForDriver(username));
+                driverBookings = this.bookingDao.findBookingHistoryForDriver(
+                        username, bookingCursor, pageSize + 1);
+            }
+        }
+
+        return this.mergeBookingHistory(passengerBookings, driverBookings, pageSize);
+    }
+
+    /**
+     * Merge two collections of bookings, each ordered by most recent first,
+     * into a single page without re-sorting either collection.
+     *
+     * @param first bookings ordered by most recent first.
+     * @param second bookings ordered by most recent first.
+     * @param pageSize maximum size of page.
+     * @return a page of the most recent bookings from both collections.
+     */
+    private PagedResult<BookingSummaryDto> mergeBookingHistory(List<BookingSummaryDto> first, List<BookingSummaryDto> second, int pageSize) {
+
+        List<BookingSummaryDto> page = new ArrayList<>(pageSize);
+        Iterator<BookingSummaryDto> firstIterator = first.iterator();
+        Iterator<BookingSummaryDto> secondIterator = second.iterator();
+        BookingSummaryDto a = firstIterator.hasNext() ? firstIterator.next() : null;
+        BookingSummaryDto b = secondIterator.hasNext() ? secondIterator.next() : null;
+        boolean hasNextPage = false;
+
+        while (a != null || b != null) {
+            BookingSummaryDto next;
+
+            if (b == null || (a != null && BookingCursor.compare(
+                    a.getTimestamp(), a.getId(), b.getTimestamp(), b.getId()) <= 0)) {
+                next = a;
+                a = firstIterator.hasNext() ? firstIterator.next() : null;
+            } else {
+                next = b;
+                b = secondIterator.hasNext() ? secondIterator.next() : null;
             }
 
-            return bookingHistory;
+            // a booking may appear in both collections.
+            if (!page.isEmpty() && page.get(page.size() - 1).getId() == next.getId()) {
+                continue;
+            }
+
+            if (page.size() == pageSize) {
+                hasNextPage = true;
+                break;
+            }
+            page.add(next);
+        }
+
+        String nextCursor = null;
+        if (hasNextPage) {
+            BookingSummaryDto last = page.get(page.size() - 1);
+            nextCursor = new BookingCursor(last.getTimestamp(), last.getId()).toString();
         }
 
-        return bookingHistory;
+        return new PagedResult<>(page, nextCursor);
     }
 
     /**
-     * Accept a taxi booking.
+     * Accept a taxi booking. The booking and taxi are updated together using
+     * optimistic locking, if another driver accepts the booking first the
+     * update is rejected. A conflict caused only by the taxi changing, for
+     * example a location update, is retried against the latest state.
      *
      * @param username username of taxi driver.
      * @param bookingId booking id.
      * @throws TaxiNotFoundException taxi not found.
      * @throws BookingNotFoundException booking not found.
-     * @throws IllegalBookingStateException if booking in an illegal state.
+     * @throws IllegalBookingStateException if booking in an illegal state or
+     * was accepted by another taxi.
      */
     @Override
-    public synchronized void acceptBooking(String username, long bookingId)
+    public void acceptBooking(String username, long bookingId)
             throws TaxiNotFoundException, BookingNotFoundException, IllegalBookingStateException {
 
-        Taxi taxi = this.taxiDao.findTaxiForDriver(username);
-        Booking booking = this.findBooking(bookingId);
+        Booking booking = null;
 
-        if (taxi == null) throw new TaxiNotFoundException();
-        if (booking == null) throw new BookingNotFoundException();
+        for (int attempt = 1; booking == null; attempt++) {
+            Taxi taxi = this.taxiDao.findTaxiForDriver(username);
+            Booking candidate = this.findBooking(bookingId);
 
-        try {
-            booking.dispatchTaxi(taxi);
+            if (taxi == null) throw new TaxiNotFoundException();
+            if (candidate == null) throw new BookingNotFoundException();
 
-            taxi.acceptJob();
-            this.taxiDao.update(taxi);
-            
-            // send GCM notification.
-            this.gcmClient.sendMessage(
-                    BookingStates.TAXI_DISPATCHED.toString(),
-                    EventTypes.BOOKING_EVENT.toString(),
-                    booking,
-                    booking.getPassenger().getGcmRegId());
+            try {
+                candidate.dispatchTaxi(taxi);
+                taxi.acceptJob();
+            } catch (IllegalStateException ex) {
+                throw new IllegalBookingStateException(ex.getMessage());
+            }
 
-            this.bookingDao.update(booking);
-        } catch (IllegalStateException ex) {
-            throw new IllegalBookingStateException(ex.getMessage());
+            try {
+                OutboxNotification outbox = this.notification(candidate, BookingStates.TAXI_DISPATCHED);
+                this.bookingDao.applyTransition(candidate, taxi,
+                        new BookingEvent(candidate, username, new Date()), outbox);
+                booking = candidate;
+                this.publish(booking, outbox);
+            } catch (OptimisticLockException ex) {
+                this.evict(candidate, taxi);
+
+                if (attempt == BookingService.MAX_UPDATE_ATTEMPTS) {
+                    throw new IllegalBookingStateException("Booking was updated concurrently.");
+                }
+            }
         }
+
+        this.bookingReadModel.apply(booking, false);
     }
 
     /**
@@ -290,18 +612,18 @@ public class BookingService implements BookingFacade {
 
         try {
             booking.pickupPassenger(new Date(timestamp));
-            this.bookingDao.update(booking);
-
-            // send GCM notification.
-            this.gcmClient.sendMessage(
-                    BookingStates.PASSENGER_PICKED_UP.toString(),
-                    EventTypes.BOOKING_EVENT.toString(),
-                    booking,
-                    booking.getPassenger().getGcmRegId());
-
+            OutboxNotification outbox = this.notification(booking, BookingStates.PASSENGER_PICKED_UP);
+            this.bookingDao.applyTransition(booking, null,
+                    new BookingEvent(booking, username, new Date(timestamp)), outbox);
+            this.publish(booking, outbox);
         } catch (IllegalStateException ex) {
             throw new IllegalBookingStateException(ex.getMessage());
+        } catch (OptimisticLockException ex) {
+            this.evict(booking, null);
+            throw new IllegalBookingStateException("Booking was updated concurrently.");
         }
+
+        this.bookingReadModel.apply(booking, false);
     }
 
     /**
@@ -317,35 +639,44 @@ public class BookingService implements BookingFacade {
     public void dropOffPassenger(String username, long bookingId, long timestamp)
             throws BookingNotFoundException, TaxiNotFoundException, IllegalBookingStateException {
 
-        Booking booking = this.findBooking(bookingId);
+        Booking booking = null;
 
-        Taxi taxi = this.taxiDao.findTaxiForDriver(username);
+        for (int attempt = 1; booking == null; attempt++) {
+            Booking candidate = this.findBooking(bookingId);
+            Taxi taxi = this.taxiDao.findTaxiForDriver(username);
 
-        if (taxi == null) {
-            throw new TaxiNotFoundException();
-        }
+            if (taxi == null) {
+                throw new TaxiNotFoundException();
+            }
 
-        if (booking == null) {
-            throw new BookingNotFoundException();
-        }
+            if (candidate == null) {
+                throw new BookingNotFoundException();
+            }
 
-        try {
-            booking.dropOffPassenger(new Date(timestamp));
-            taxi.goOnDuty();       
-            this.taxiDao.update(taxi);
-            
-            this.bookingDao.update(booking);
+            try {
+                candidate.dropOffPassenger(new Date(timestamp));
+                taxi.goOnDuty();
+            } catch (IllegalStateException ex) {
+                throw new IllegalBookingStateException(ex.getMessage());
+            }
 
-            // send GCM notification.
-            this.gcmClient.sendMessage(
-                    BookingStates.COMPLETED_BOOKING.toString(),
-                    EventTypes.BOOKING_EVENT.toString(),
-                    booking,
-                    booking.getPassenger().getGcmRegId());
-            
-        } catch (IllegalStateException ex) {
-            throw new IllegalBookingStateException(ex.getMessage());
+            try {
+                OutboxNotification outbox = this.notification(candidate, BookingStates.COMPLETED_BOOKING);
+                this.bookingDao.applyTransition(candidate, taxi,
+                        new BookingEvent(candidate, username, new Date(timestamp)), outbox);
+                booking = candidate;
+                this.publish(booking, outbox);
+            } catch (OptimisticLockException ex) {
+                this.evict(candidate, taxi);
+
+                if (attempt == BookingService.MAX_UPDATE_ATTEMPTS) {
+                    throw new IllegalBookingStateException("Booking was updated concurrently.");
+                }
+            }
         }
+
+        this.activeBookingIndex.remove(booking.getPassenger().getUsername(), booking.getId());
+        this.bookingReadModel.apply(booking, false);
     }
 
     /**
@@ -373,53 +704,332 @@ public class BookingService implements BookingFacade {
             throw new AccountAuthenticationFailed();
         }
         
-        if(booking.getTaxi() != null){
-            Taxi taxi = booking.getTaxi();
-            taxi.goOnDuty();
-            this.taxiDao.update(taxi);
-        }
+        Taxi taxi = booking.getTaxi();
 
         try {
             booking.cancelBooking();
+
+            if (taxi != null) {
+                taxi.goOnDuty();
+            }
         } catch (IllegalStateException ex) {
             throw new IllegalBookingStateException(ex.getMessage());
         }
 
+        try {
+            this.bookingDao.applyTransition(booking, taxi,
+                    new BookingEvent(booking, username, new Date()));
+        } catch (OptimisticLockException ex) {
+            this.evict(booking, taxi);
+            throw new IllegalBookingStateException("Booking was updated concurrently.");
+        }
+
+        this.activeBookingIndex.remove(username, booking.getId());
+        this.bookingReadModel.apply(booking, false);
+    }
+
+    /**
+     * Evict a booking and taxi from the shared cache after an optimistic lock
+     * failure so they are reloaded from the database.
+     *
+     * @param booking booking to evict.
+     * @param taxi taxi to evict, may be null.
+     */
+    private void evict(Booking booking, Taxi taxi) {
+        this.bookingDao.evict(booking.getId());
+
+        if (taxi != null) {
+            this.taxiDao.evict(taxi.getId());
+        }
+    }
+
+    /**
+     * Create the outbox notification telling the passenger about a booking
+     * state transition. The message key identifies the booking and state so
+     * a transition is only notified once. Notifications for the same booking
+     * share a collapse key so only the latest unsent state is pushed.
+     *
+     * @param booking booking after the transition.
+     * @param status state of the booking after the transition.
+     * @return an outbox notification for the transition.
+     */
+    private OutboxNotification notification(Booking booking, BookingStates status) {
+        return new OutboxNotification(
+                "booking:" + booking.getId() + ":" + status,
+                "booking:" + booking.getId(),
+                status.toString(),
+                EventTypes.BOOKING_EVENT.toString(),
+                DataMapper.getInstance().getObjectAsJson(booking),
+                booking.getPassenger().getGcmRegId());
+    }
+
+    /**
+     * Push a committed transition to the passenger's live connections
+     * without waiting for them. The transition's outbox notification is
+     * always written, so the notification is sent by the outbox relay unless
+     * a connection confirms it received the message first, in which case the
+     * notification is marked delivered.
+     *
+     * @param booking booking after the transition.
+     * @param notification outbox notification written with the transition.
+     */
+    private void publish(Booking booking, final OutboxNotification notification) {
+        String username = booking.getPassenger().getUsername();
+
+        if (!this.bookingTopic.isConnected(username)) {
+            return;
+        }
+
+        this.bookingTopic.publish(username, notification.getMessageKey(), notification.getStatus(),
+                notification.getEventType(), notification.getPayload(), new TopicSubscriber.SendCallback() {
+                    @Override
+                    public void sent() {
+                        BookingService.this.markDelivered(notification);
+                    }
+                });
+    }
+
+    /**
+     * Mark an outbox notification delivered over a live connection.
+     *
+     * @param notification outbox notification.
+     */
+    private void markDelivered(OutboxNotification notification) {
+        try {
+            this.notificationOutboxDao.updateStatus(Collections.singletonList(notification.getId()),
+                    OutboxNotification.DeliveryStatus.DELIVERED);
+        } catch (RuntimeException ex) {
+            // the relay sends it again, devices ignore the repeated key.
+            LOGGER.log(Level.WARNING, "publish - unable to mark notification delivered", ex);
+        }
+    }
+
+    /**
+     * Return the event log of a booking if the user is the booking's passenger
+     * or the driver of the taxi assigned to it, else null.
+     *
+     * @param id id of booking.
+     * @param username username of authenticated user.
+     * @return the events of the booking in the order they were appended, null
+     * if the booking was not found or the user is not part of the booking.
+     */
+    @Override
+    public List<BookingEvent> findBookingEvents(Long id, String username) {
+        Booking booking = this.findBooking(id);
+
+        if (booking == null) {
+            return null;
+        }
+
+        boolean passenger = booking.getPassenger().getUsername().equals(username);
+        boolean driver = booking.getTaxi() != null
+                && booking.getTaxi().getAccount().getUsername().equals(username);
+
+        if (passenger || driver) {
+            return this.bookingEventDao.findEventsForBooking(booking.getId());
+        }
+
+        return null;
+    }
+
+    /**
+     * Return a page of booking events appended after the given event, for
+     * consumers following the booking event log.
+     *
+     * @param afterId id of the last event read, 0 to read from the start.
+     * @param limit maximum number of events to return. Clamped between 1 and
+     * the maximum page size.
+     * @return a page of booking events appended after the given event.
+     */
+    @Override
+    public List<BookingEvent> findBookingEventsAfter(long afterId, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, BookingService.MAX_EVENT_PAGE_SIZE));
+        return this.bookingEventDao.findEventsAfter(afterId, pageSize);
+    }
+
+    /**
+     * Rebuild the state of a booking by replaying its event log and write the
+     * result to the booking projection.
+     *
+     * @param id id of booking.
+     * @return the rebuilt booking.
+     * @throws BookingNotFoundException if the booking or its events were not
+     * found.
+     */
+    @Override
+    public Booking rebuildBooking(Long id) throws BookingNotFoundException {
+        Booking booking = this.findBooking(id);
+
+        if (booking == null) {
+            throw new BookingNotFoundException();
+        }
+
+        List<BookingEvent> events = this.bookingEventDao.findEventsForBooking(booking.getId());
+
+        if (events == null || events.isEmpty()) {
+            throw new BookingNotFoundException();
+        }
+
+        Taxi taxi = null;
+        for (BookingEvent event : events) {
+            if (event.getTaxiId() == null) {
+                taxi = null;
+            } else if (taxi == null || taxi.getId() != event.getTaxiId().longValue()) {
+                taxi = this.taxiDao.findEntityById(event.getTaxiId());
+            }
+            booking.apply(event, taxi);
+        }
+
         this.bookingDao.update(booking);
+
+        if (booking.isActive()) {
+            this.activeBookingIndex.put(booking.getPassenger().getUsername(), booking.getId());
+        } else {
+            this.activeBookingIndex.remove(booking.getPassenger().getUsername(), booking.getId());
+        }
+
+        this.bookingReadModel.invalidate(booking.getPassenger().getUsername());
+        if (taxi != null && taxi.getAccount() != null) {
+            this.bookingReadModel.invalidate(taxi.getAccount().getUsername());
+        }
+        return booking;
     }
 
-   /**
+    /**
      * Return most recent active booking for a user.
-     * 
+     *
      * @param username username of user.
      * @return active booking for a user.
      * @throws IllegalArgumentException if username is null;
-     */ 
+     */
     @Override
     public Booking checkActiveBooking(String username) {
-        
-        if(username == null){
+
+        if (username == null) {
             throw new IllegalArgumentException("Username cannot be null.");
         }
-        
-        List<Booking> bookings = this.bookingDao.findBookingsForPassenger(username);
-        
-        if(bookings != null && bookings.size() > 0){
-            // return most recent booking
-            Booking recentBooking = bookings.get(0);
-            
-            for(Booking b: bookings){
-                if(b.isActive() && !recentBooking.getTimestamp().after(b.getTimestamp())){
-                    recentBooking = b;
-                }
+
+        this.warmActiveBookingIndex();
+        Long activeBookingId = this.activeBookingIndex.getActiveBookingId(username);
+
+        if (activeBookingId != null) {
+            Booking booking = this.findBooking(activeBookingId);
+
+            if (booking != null && booking.isActive()
+                    && booking.getPassenger().getUsername().equals(username)) {
+                return booking;
             }
-            
-            return !recentBooking.isActive() ? null : recentBooking;
+
+            // index entry is out of date.
+            this.activeBookingIndex.remove(username, activeBookingId);
         }
-        
-        return null;
+
+        // not in the index, the booking may have been made on another node.
+        Long storedBookingId = this.bookingDao.findActiveBookingIdForPassenger(username);
+
+        if (storedBookingId == null) {
+            return null;
+        }
+
+        this.activeBookingIndex.put(username, storedBookingId);
+        return this.findBooking(storedBookingId);
     }
-    
+
+    /**
+     * Return the booking read model view for a user, loading it from the
+     * database if not loaded.
+     *
+     * @param username username of user.
+     * @return the booking read model view for a user.
+     */
+    @Override
+    public UserBookingView findBookingView(String username) {
+        UserBookingView view = this.bookingReadModel.getView(username);
+
+        if (view == null) {
+            long stamp = this.bookingReadModel.getStamp();
+            view = this.loadBookingView(username);
+            this.bookingReadModel.putView(username, view, stamp);
+        }
+        return view;
+    }
+
+    /**
+     * Rebuild the booking read model view for a user from the database.
+     *
+     * @param username username of user.
+     * @return the rebuilt view.
+     */
+    @Override
+    public UserBookingView rebuildBookingView(String username) {
+        this.bookingReadModel.invalidate(username);
+        return this.findBookingView(username);
+    }
+
+    /**
+     * Discard all booking read model views, each is rebuilt from the database
+     * on next use.
+     */
+    @Override
+    public void rebuildBookingViews() {
+        this.bookingReadModel.clear();
+    }
+
+    /**
+     * Load the booking read model view for a user from the database.
+     *
+     * @param username username of user.
+     * @return the booking read model view for a user.
+     */
+    private UserBookingView loadBookingView(String username) {
+        PagedResult<BookingSummaryDto> recent = this.findBookingHistoryFromStore(
+                username, null, BookingReadModel.RECENT_BOOKINGS);
+
+        this.warmActiveBookingIndex();
+        Long activeBookingId = this.activeBookingIndex.getActiveBookingId(username);
+
+        List<Object[]> counts = new ArrayList<>();
+        Account account = this.accountService.findAccount(username);
+        if (account != null) {
+            if (account.hasRole("passenger") && account.hasRole("driver")) {
+                // counted in one query so bookings in both roles are not counted twice.
+                this.addAll(counts, this.bookingDao.countBookingsForPassengerOrDriverByState(username));
+            } else if (account.hasRole("passenger")) {
+                this.addAll(counts, this.bookingDao.countBookingsForPassengerByState(username));
+            } else if (account.hasRole("driver")) {
+                this.addAll(counts, this.bookingDao.countBookingsForDriverByState(username));
+            }
+        }
+
+        int total = 0;
+        int completed = 0;
+        int cancelled = 0;
+        for (Object[] row : counts) {
+            int count = ((Number) row[1]).intValue();
+            total += count;
+
+            if (row[0] instanceof CompletedBookingState) {
+                completed += count;
+            } else if (row[0] instanceof CancelledBookingState) {
+                cancelled += count;
+            }
+        }
+
+        return new UserBookingView(activeBookingId, recent.getData(), total, completed, cancelled);
+    }
+
+    /**
+     * Add all rows to a collection, ignoring null.
+     *
+     * @param rows collection to add to.
+     * @param additional rows to add, may be null.
+     */
+    private void addAll(List<Object[]> rows, List<Object[]> additional) {
+        if (additional != null) {
+            rows.addAll(additional);
+        }
+    }
+
        /**
      * Allocate taxi to current waiting bookings.
      */
@@ -0,0 +1,47 @@
+package com.robertnorthard.dtbs.server.layer.service;
+
+import com.robertnorthard.dtbs.server.layer.security.PasswordHashingExecutor;
+import com.robertnorthard.dtbs.server.layer.utils.gcm.NotificationDispatcher;
+import com.robertnorthard.dtbs.server.layer.utils.mail.SmtpMailQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PreDestroy;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+
+/**
+ * Stops the application's worker threads when the application is undeployed
+ * so they do not outlive it and keep its classes loaded.
+ *
+ * @author robertnorthard
+ */
+@Singleton
+@Startup
+public class ExecutorLifecycle {
+
+    private static final Logger LOGGER = Logger.getLogger(ExecutorLifecycle.class.getName());
+
+    /**
+     * Shut down the password hashing, notification and mail worker pools.
+     */
+    @PreDestroy
+    public void shutdown() {
+        try {
+            PasswordHashingExecutor.getInstance().shutdown();
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "shutdown - unable to stop password hashing executor", ex);
+        }
+
+        try {
+            NotificationDispatcher.shutdownAll();
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "shutdown - unable to stop notification dispatchers", ex);
+        }
+
+        try {
+            SmtpMailQueue.shutdownAll();
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "shutdown - unable to stop mail queues", ex);
+        }
+    }
+}
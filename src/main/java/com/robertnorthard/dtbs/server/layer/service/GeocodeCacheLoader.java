@@ -0,0 +1,114 @@
+package com.robertnorthard.dtbs.server.layer.service;
+
+import com.robertnorthard.dtbs.server.configuration.ConfigService;
+import com.robertnorthard.dtbs.server.layer.persistence.AddressDao;
+import com.robertnorthard.dtbs.server.layer.utils.geocoding.AddressSearchCache;
+import com.robertnorthard.dtbs.server.layer.utils.geocoding.ReverseGeocodeCache;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+
+/**
+ * Prefills the reverse geocode cache from addresses already stored when the
+ * application starts. The number of addresses loaded is set by
+ * dtbs.server.geocode.reverse.prefill, default 1000, 0 to disable.
+ *
+ * Address search results are loaded from and saved to the file configured by
+ * dtbs.server.geocode.search.file, if any, when the application starts and
+ * stops.
+ *
+ * @author robertnorthard
+ */
+@Singleton
+@Startup
+public class GeocodeCacheLoader {
+
+    private static final Logger LOGGER = Logger.getLogger(GeocodeCacheLoader.class.getName());
+
+    private static final String PREFILL_PROPERTY = "dtbs.server.geocode.reverse.prefill";
+    private static final int DEFAULT_PREFILL = 1000;
+
+    private final AddressDao addressDao;
+    private final ReverseGeocodeCache reverseGeocodeCache;
+    private final AddressSearchCache addressSearchCache;
+
+    public GeocodeCacheLoader() {
+        this(new AddressDao(), ReverseGeocodeCache.getInstance(), AddressSearchCache.getInstance());
+    }
+
+    /**
+     * Constructor for dependency injection/testing.
+     *
+     * @param addressDao address dao.
+     * @param reverseGeocodeCache reverse geocode cache.
+     * @param addressSearchCache address search cache.
+     */
+    public GeocodeCacheLoader(AddressDao addressDao, ReverseGeocodeCache reverseGeocodeCache,
+            AddressSearchCache addressSearchCache) {
+        this.addressDao = addressDao;
+        this.reverseGeocodeCache = reverseGeocodeCache;
+        this.addressSearchCache = addressSearchCache;
+    }
+
+    /**
+     * Warm the geocoding caches.
+     */
+    @PostConstruct
+    public void warm() {
+        this.prefill();
+        this.load();
+    }
+
+    /**
+     * Load saved address search results.
+     */
+    public void load() {
+        try {
+            int count = this.addressSearchCache.load();
+            LOGGER.log(Level.INFO, "load - loaded {0} address search results", count);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "load - unable to load address search results", ex);
+        }
+    }
+
+    /**
+     * Save address search results so they survive a restart.
+     */
+    @PreDestroy
+    public void save() {
+        try {
+            this.addressSearchCache.save();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "save - unable to save address search results", ex);
+        }
+    }
+
+    /**
+     * Prefill the reverse geocode cache. If prefilling fails addresses are
+     * cached as they are looked up.
+     */
+    public void prefill() {
+        Properties properties = ConfigService.getConfig("application.properties");
+        int limit = DEFAULT_PREFILL;
+
+        if (properties != null && properties.getProperty(PREFILL_PROPERTY) != null) {
+            limit = Integer.parseInt(properties.getProperty(PREFILL_PROPERTY));
+        }
+
+        if (limit <= 0) {
+            return;
+        }
+
+        try {
+            int count = this.reverseGeocodeCache.prefill(this.addressDao.findRecent(limit));
+            LOGGER.log(Level.INFO, "prefill - cached {0} addresses", count);
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "prefill - unable to prefill reverse geocode cache", ex);
+        }
+    }
+}
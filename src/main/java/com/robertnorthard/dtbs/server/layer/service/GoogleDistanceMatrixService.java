@@ -4,8 +4,12 @@ import com.robertnorthard.dtbs.server.common.exceptions.InvalidGoogleApiResponse
 import com.robertnorthard.dtbs.server.common.exceptions.RouteNotFoundException;
 import com.robertnorthard.dtbs.server.configuration.ConfigService;
 import com.robertnorthard.dtbs.server.layer.service.entities.Address;
+import com.robertnorthard.dtbs.server.layer.utils.geocoding.AddressSearchCache;
 import com.robertnorthard.dtbs.server.layer.utils.geocoding.PolyLineUtils;
+import com.robertnorthard.dtbs.server.layer.utils.geocoding.ReverseGeocodeCache;
+import com.robertnorthard.dtbs.server.layer.utils.geocoding.RouteCache;
 import com.robertnorthard.dtbs.server.layer.utils.http.HttpUtils;
+import com.robertnorthard.dtbs.server.layer.utils.http.SingleFlight;
 import com.robertnorthard.dtbs.server.layer.service.entities.Location;
 import com.robertnorthard.dtbs.server.layer.service.entities.Route;
 import java.util.ArrayList;
@@ -13,6 +17,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.ejb.Stateless;
@@ -23,6 +31,11 @@ import org.codehaus.jettison.json.JSONObject;
 /**
  * Google distance matrix service implementation.
  *
+ * Concurrent requests for the same route, reverse geocode, geocode or address
+ * search that miss the cache are coalesced into a single Google API call
+ * whose result is shared by every caller. Callers wait for a call in flight
+ * for at most dtbs.server.google.coalesce.timeout.seconds (default 10).
+ *
  * @author robertnorthard
  */
 @Stateless
@@ -30,13 +43,59 @@ public class GoogleDistanceMatrixService implements GoogleDistanceMatrixFacade {
 
     private static final Logger LOGGER = Logger.getLogger(GoogleDistanceMatrixService.class.getName());
 
+    private static final String COALESCE_TIMEOUT_PROPERTY = "dtbs.server.google.coalesce.timeout.seconds";
+    private static final long DEFAULT_COALESCE_TIMEOUT_SECONDS = 10;
+
+    // shared by every pooled instance so calls are coalesced across requests.
+    private static final SingleFlight<String, Route> ROUTE_CALLS = new SingleFlight<>();
+    private static final SingleFlight<String, String> REVERSE_GEOCODE_CALLS = new SingleFlight<>();
+    private static final SingleFlight<String, Location> GEOCODE_CALLS = new SingleFlight<>();
+    private static final SingleFlight<String, String> SEARCH_CALLS = new SingleFlight<>();
+
     private final Properties properties;
+    private final RouteCache routeCache;
+    private final ReverseGeocodeCache reverseGeocodeCache;
+    private final AddressSearchCache addressSearchCache;
+    private final long coalesceTimeoutSeconds;
 
     /**
      * Default constructor.
      */
     public GoogleDistanceMatrixService() {
-        this.properties = ConfigService.getConfig("application.properties");
+        this(ConfigService.getConfig("application.properties"),
+                RouteCache.getInstance(), ReverseGeocodeCache.getInstance(),
+                AddressSearchCache.getInstance());
+    }
+
+    /**
+     * Constructor for dependency injection/testing.
+     *
+     * @param properties application properties.
+     * @param routeCache route cache.
+     * @param reverseGeocodeCache reverse geocode cache.
+     * @param addressSearchCache forward geocode and address search cache.
+     */
+    public GoogleDistanceMatrixService(Properties properties, RouteCache routeCache,
+            ReverseGeocodeCache reverseGeocodeCache, AddressSearchCache addressSearchCache) {
+        this.properties = properties;
+        this.routeCache = routeCache;
+        this.reverseGeocodeCache = reverseGeocodeCache;
+        this.addressSearchCache = addressSearchCache;
+        this.coalesceTimeoutSeconds = getCoalesceTimeout(properties);
+    }
+
+    /**
+     * Return the time in seconds callers wait for a coalesced call from
+     * application properties (dtbs.server.google.coalesce.timeout.seconds).
+     *
+     * @param properties application properties.
+     * @return the time in seconds callers wait for a coalesced call.
+     */
+    private static long getCoalesceTimeout(Properties properties) {
+        if (properties != null && properties.getProperty(COALESCE_TIMEOUT_PROPERTY) != null) {
+            return Long.parseLong(properties.getProperty(COALESCE_TIMEOUT_PROPERTY));
+        }
+        return DEFAULT_COALESCE_TIMEOUT_SECONDS;
     }
 
     /**
@@ -84,7 +143,9 @@ public class GoogleDistanceMatrixService implements GoogleDistanceMatrixFacade {
     }
 
     /**
-     * Perform a Geocode reverse lookup using latitude and longitude. Query example:
+     * Perform a Geocode reverse lookup using latitude and longitude. Addresses
+     * are served from the reverse geocode cache when a point a few metres away
+     * was looked up recently. Query example:
      * http://maps.googleapis.com/maps/api/geocode/json?latlng=44.4647452,7.3553838
      *
      * @param latitude latitude.
@@ -93,7 +154,38 @@ public class GoogleDistanceMatrixService implements GoogleDistanceMatrixFacade {
      * @throws InvalidGoogleApiResponseException unable to parse API response.
      */
     @Override
-    public String getGeocode(double latitude, double longitude)
+    public String getGeocode(final double latitude, final double longitude)
+            throws InvalidGoogleApiResponseException {
+
+        String address = this.reverseGeocodeCache.get(latitude, longitude);
+
+        if (address == null) {
+            address = this.coalesce(REVERSE_GEOCODE_CALLS, this.reverseGeocodeCache.key(latitude, longitude),
+                    new Callable<String>() {
+                        @Override
+                        public String call() throws InvalidGoogleApiResponseException {
+                            String found = findGeocode(latitude, longitude);
+
+                            if (found != null) {
+                                reverseGeocodeCache.put(latitude, longitude, found);
+                            }
+                            return found;
+                        }
+                    });
+        }
+        return address;
+    }
+
+    /**
+     * Request the address of a latitude and longitude from the Google
+     * Geocoding API.
+     *
+     * @param latitude latitude.
+     * @param longitude longitude.
+     * @return address if found else null.
+     * @throws InvalidGoogleApiResponseException unable to parse API response.
+     */
+    private String findGeocode(double latitude, double longitude)
             throws InvalidGoogleApiResponseException {
 
         String query = this.properties.getProperty("google.geocoding.api.address.lookup");
@@ -130,12 +222,43 @@ public class GoogleDistanceMatrixService implements GoogleDistanceMatrixFacade {
      *
      * Example query: http://maps.googleapis.com/maps/api/geocode/json?address=%22po5%201pl%22
      *
+     * Results, including addresses not found, are served from the address
+     * search cache.
+     *
      * @param address address to lookup.
      * @return location of specified address.
      * @throws InvalidGoogleApiResponseException unable to parse API response.
      */
     @Override
-    public Location getGeocode(String address) throws InvalidGoogleApiResponseException {
+    public Location getGeocode(final String address) throws InvalidGoogleApiResponseException {
+
+        AddressSearchCache.Result<Location> cached = this.addressSearchCache.getLocation(address);
+
+        if (cached != null) {
+            return cached.getValue();
+        }
+
+        Location location = this.coalesce(GEOCODE_CALLS, AddressSearchCache.normalize(address),
+                new Callable<Location>() {
+                    @Override
+                    public Location call() throws InvalidGoogleApiResponseException {
+                        Location found = findGeocode(address);
+                        addressSearchCache.putLocation(address, found);
+                        return found;
+                    }
+                });
+        // coalesced callers share the location found.
+        return location == null ? null : new Location(location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * Request the location of an address from the Google Geocoding API.
+     *
+     * @param address address to lookup.
+     * @return location of address or null if not found.
+     * @throws InvalidGoogleApiResponseException unable to parse API response.
+     */
+    private Location findGeocode(String address) throws InvalidGoogleApiResponseException {
 
         try {
             String query = this.properties.getProperty("google.geocoding.api.address.latlng.lookup");
@@ -165,8 +288,43 @@ public class GoogleDistanceMatrixService implements GoogleDistanceMatrixFacade {
         }
     }
 
+    /**
+     * Find address via textual description. Results, including addresses not
+     * found, are served from the address search cache.
+     *
+     * @param address address to search.
+     * @return complete address or null if not found.
+     * @throws InvalidGoogleApiResponseException unable to parse API response.
+     */
     @Override
-    public String findAddress(String address) throws InvalidGoogleApiResponseException {
+    public String findAddress(final String address) throws InvalidGoogleApiResponseException {
+
+        AddressSearchCache.Result<String> cached = this.addressSearchCache.getAddress(address);
+
+        if (cached != null) {
+            return cached.getValue();
+        }
+
+        String found = this.coalesce(SEARCH_CALLS, AddressSearchCache.normalize(address),
+                new Callable<String>() {
+                    @Override
+                    public String call() throws InvalidGoogleApiResponseException {
+                        String result = searchAddress(address);
+                        addressSearchCache.putAddress(address, result);
+                        return result;
+                    }
+                });
+        return found;
+    }
+
+    /**
+     * Search for an address using the Google Geocoding API.
+     *
+     * @param address address to search.
+     * @return complete address or null if not found.
+     * @throws InvalidGoogleApiResponseException unable to parse API response.
+     */
+    private String searchAddress(String address) throws InvalidGoogleApiResponseException {
 
         try {
             String query = this.properties.getProperty("google.geocoding.api.address.lookup.text");
@@ -196,6 +354,8 @@ public class GoogleDistanceMatrixService implements GoogleDistanceMatrixFacade {
 
     /**
      * Get route info (distance, route, travel time, start and end textual address) using start and end location.
+     * Routes are served from the route cache when a route between nearby points
+     * was requested at a similar time of day.
      *
      * @param startLocation start location
      * @param endLocation end location.
@@ -203,11 +363,45 @@ public class GoogleDistanceMatrixService implements GoogleDistanceMatrixFacade {
      * @throws InvalidGoogleApiResponseException unable to parse API response.
      */
     @Override
-    public Route getRouteInfo(Location startLocation, Location endLocation)
+    public Route getRouteInfo(final Location startLocation, final Location endLocation)
+            throws InvalidGoogleApiResponseException {
+
+        Route route = this.routeCache.get(startLocation, endLocation);
+
+        if (route == null) {
+            route = this.coalesce(ROUTE_CALLS, this.routeCache.key(startLocation, endLocation),
+                    new Callable<Route>() {
+                        @Override
+                        public Route call() throws InvalidGoogleApiResponseException {
+                            Route found = findRoute(startLocation, endLocation);
+
+                            if (found != null) {
+                                routeCache.put(startLocation, endLocation, found);
+                            }
+                            return found;
+                        }
+                    });
+
+            if (route != null) {
+                // coalesced callers in the same grid cells share the route found.
+                route = this.routeCache.copy(route, startLocation, endLocation);
+            }
+        }
+        return route;
+    }
+
+    /**
+     * Request a route from the Google Directions API.
+     *
+     * @param startLocation start location
+     * @param endLocation end location.
+     * @return route or null if no route found.
+     * @throws InvalidGoogleApiResponseException unable to parse API response.
+     */
+    private Route findRoute(Location startLocation, Location endLocation)
             throws InvalidGoogleApiResponseException {
 
-        List<List<Location>> routes;
-        List<Location> path;
+        JSONArray routes;
         Address startAddress;
         Address endAddress;
         double distance;
@@ -232,16 +426,14 @@ public class GoogleDistanceMatrixService implements GoogleDistanceMatrixFacade {
 
             if (this.validateJsonResponse(json)) {
 
-                routes = this.getRoutes(json);
+                routes = json.getJSONArray("routes");
 
-                if (routes != null && !routes.isEmpty()) {
-                    path = routes.get(0);
-                } else {
+                if (routes.length() == 0) {
                     // no route.
                     return null;
                 }
 
-                JSONArray legs = json.getJSONArray("routes").getJSONObject(0).getJSONArray("legs");
+                JSONArray legs = routes.getJSONObject(0).getJSONArray("legs");
                 startAddress = new Address(legs.getJSONObject(0).getString("start_address"), startLocation);
                 endAddress = new Address(legs.getJSONObject(0).getString("end_address"), endLocation);
 
@@ -251,7 +443,11 @@ public class GoogleDistanceMatrixService implements GoogleDistanceMatrixFacade {
                 //time in seconds
                 estimatedTravelTime = legs.getJSONObject(0).getJSONObject("duration").getDouble("value");
 
-                route = new Route(startAddress, endAddress, distance, path, estimatedTravelTime);
+                route = new Route(startAddress, endAddress, distance, null, estimatedTravelTime);
+
+                // full resolution path from the step polylines, kept encoded and
+                // only decoded if a client asks for locations.
+                route.setEncodedPath(PolyLineUtils.encodePoly(this.getRoutes(json).get(0)));
             }
             return route;
         } catch (JSONException ex) {
@@ -260,6 +456,45 @@ public class GoogleDistanceMatrixService implements GoogleDistanceMatrixFacade {
         }
     }
 
+    /**
+     * Return the result of a Google API call, sharing a call already in flight
+     * with the same key. Errors thrown by the call are rethrown to every
+     * caller. Keys are the cache keys of the results, and loaders cache their
+     * result before returning, so a caller arriving as the call completes
+     * finds the result cached rather than making the call again.
+     *
+     * @param <V> type of result.
+     * @param calls calls in flight.
+     * @param key key identifying the call.
+     * @param loader Google API call.
+     * @return result of the call.
+     * @throws InvalidGoogleApiResponseException call failed or did not
+     * complete in time.
+     */
+    private <V> V coalesce(SingleFlight<String, V> calls, String key, Callable<V> loader)
+            throws InvalidGoogleApiResponseException {
+
+        try {
+            return calls.execute(key, loader, this.coalesceTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof InvalidGoogleApiResponseException) {
+                throw (InvalidGoogleApiResponseException) ex.getCause();
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            LOGGER.log(Level.SEVERE, null, ex);
+            throw new InvalidGoogleApiResponseException();
+        } catch (TimeoutException ex) {
+            LOGGER.log(Level.WARNING, "Google API call {0} did not complete in {1} seconds.",
+                    new Object[]{key, this.coalesceTimeoutSeconds});
+            throw new InvalidGoogleApiResponseException();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InvalidGoogleApiResponseException();
+        }
+    }
+
     /**
      * Return true if JSON valid else false.
      *
@@ -334,31 +569,10 @@ public class GoogleDistanceMatrixService implements GoogleDistanceMatrixFacade {
     @Override
     public long estimateTravelTime(Location startLocation, Location endLocation) throws InvalidGoogleApiResponseException {
 
-        try {
-            long estimatedTravelTime = 0;
-
-            String query = this.properties.getProperty("google.directions.api.route.lookup");
-            Map<String, String> tokens = new HashMap<>();
-            tokens.put("origin", startLocation.toString());
-            tokens.put("destination", endLocation.toString());
-            query = ConfigService.parseProperty(query, tokens);
-
-            LOGGER.log(Level.FINEST, "estimateTravelTime - {0}", query);
-
-            JSONObject json = HttpUtils.getUrl(query);
+        // the travel time comes from the same Directions request as the route, so share its cache.
+        Route route = this.getRouteInfo(startLocation, endLocation);
 
-            LOGGER.log(Level.FINEST, "estimateTravelTime - {0}", json);
-
-            if (this.validateJsonResponse(json)) {
-                JSONArray legs = json.getJSONArray("routes").getJSONObject(0).getJSONArray("legs");
-                //time in seconds
-                estimatedTravelTime = (long) legs.getJSONObject(0).getJSONObject("duration").getDouble("value");
-            }
-            return estimatedTravelTime;
-
-        } catch (JSONException ex) {
-            LOGGER.log(Level.SEVERE, null, ex);
-            throw new InvalidGoogleApiResponseException();
-        }
+        //time in seconds
+        return route == null ? 0 : (long) route.getEstimateTravelTime();
     }
 }
@@ -5,7 +5,6 @@ import com.robertnorthard.dtbs.server.common.dto.TaxiLocationEventDto;
 import com.robertnorthard.dtbs.server.common.exceptions.TaxiNotFoundException;
 import com.robertnorthard.dtbs.server.layer.service.entities.Location;
 import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
-import com.robertnorthard.dtbs.server.layer.persistence.LocationDao;
 import com.robertnorthard.dtbs.server.layer.persistence.data.mappers.taxi.JpaTaxiStateDataConverter;
 import com.robertnorthard.dtbs.server.layer.utils.LocationTrackingObserver;
 import com.robertnorthard.dtbs.server.layer.utils.Subject;
@@ -22,8 +21,6 @@ public class LocationTrackingService extends Subject implements LocationTracking
 
     @Inject
     private TaxiFacade taxiService;
-    @Inject
-    private LocationDao locationDao;
 
     /**
      * Update taxi location by id. Find taxi by id and set new location and
@@ -48,20 +45,7 @@ public class LocationTrackingService extends Subject implements LocationTracking
             throw ex;
         }
 
-        Taxi taxi = this.taxiService.findTaxi(id);
-
-        if (taxi == null) {
-            throw new TaxiNotFoundException();
-        }
-
-        Location previousLocation = taxi.getLocation();
-        taxi.updateLocation(lastKnownLocation);
-
-        if (previousLocation == null) {
-            this.locationDao.persistEntity(lastKnownLocation);
-        }
-
-        this.taxiService.updateTaxi(taxi);
+        Taxi taxi = this.taxiService.updateTaxiLocation(id, lastKnownLocation);
 
         // create taxi location event suitable for data transfer.
         TaxiLocationEventDto event = new TaxiLocationEventDto(id,
@@ -0,0 +1,202 @@
+package com.robertnorthard.dtbs.server.layer.service;
+
+import com.robertnorthard.dtbs.server.layer.persistence.NotificationOutboxDao;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.OutboxNotification;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.OutboxNotification.DeliveryStatus;
+import com.robertnorthard.dtbs.server.layer.utils.gcm.DeliveryListener;
+import com.robertnorthard.dtbs.server.layer.utils.gcm.DeliveryResult;
+import com.robertnorthard.dtbs.server.layer.utils.gcm.Notification;
+import com.robertnorthard.dtbs.server.layer.utils.gcm.NotificationDispatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+
+/**
+ * Relays notifications written to the notification outbox to the
+ * notification dispatcher. Every two seconds a batch of pending
+ * notifications is claimed and dispatched, and notifications completed since
+ * the previous run are marked delivered or failed in a single update.
+ *
+ * Notifications are claimed for LEASE_MILLIS before they are dispatched, so
+ * when the application runs on several nodes each notification is sent by
+ * one of them. A notification that is not marked before its lease expires,
+ * because the node stopped or delivery was abandoned after transient
+ * failures, is claimed again. A notification claimed more than MAX_ATTEMPTS
+ * times is marked as a dead letter instead of being sent.
+ *
+ * Delivery is at least once. Notifications are identified by message key, a
+ * key being relayed is not dispatched again and the key is sent to the
+ * device so repeated deliveries can be ignored.
+ *
+ * @author robertnorthard
+ */
+@Singleton
+@Startup
+public class NotificationOutboxRelay {
+
+    private static final Logger LOGGER = Logger.getLogger(NotificationOutboxRelay.class.getName());
+
+    /**
+     * Maximum number of notifications dispatched per run.
+     */
+    public static final int BATCH_SIZE = 100;
+
+    /**
+     * Maximum number of times a notification is claimed for delivery.
+     */
+    public static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * Time in milliseconds a claimed notification is reserved for this node.
+     */
+    public static final long LEASE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final NotificationOutboxDao notificationOutboxDao;
+    private final NotificationDispatcher dispatcher;
+
+    // identifies this relay in the claims it makes.
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicLong runs = new AtomicLong();
+
+    // message key to outbox id of notifications dispatched and not yet marked.
+    private final ConcurrentMap<String, Long> inFlight = new ConcurrentHashMap<>();
+    private final Queue<String> delivered = new ConcurrentLinkedQueue<>();
+    private final Queue<String> failed = new ConcurrentLinkedQueue<>();
+
+    private final DeliveryListener listener = new DeliveryListener() {
+        @Override
+        public void onComplete(Notification notification, DeliveryResult result) {
+            NotificationOutboxRelay.this.complete(notification.getKey(), result);
+        }
+    };
+
+    public NotificationOutboxRelay() {
+        this(new NotificationOutboxDao(), NotificationDispatcher.getInstance());
+    }
+
+    /**
+     * Constructor for dependency injection/testing.
+     *
+     * @param notificationOutboxDao notification outbox dao.
+     * @param dispatcher notification dispatcher.
+     */
+    public NotificationOutboxRelay(NotificationOutboxDao notificationOutboxDao, NotificationDispatcher dispatcher) {
+        this.notificationOutboxDao = notificationOutboxDao;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Mark completed notifications, then claim and dispatch the next batch of
+     * pending notifications.
+     */
+    @Schedule(second = "*/2", minute = "*", hour = "*", persistent = false)
+    public void relay() {
+        try {
+            this.mark(this.delivered, DeliveryStatus.DELIVERED);
+            this.mark(this.failed, DeliveryStatus.FAILED);
+
+            String owner = this.nodeId + ":" + this.runs.incrementAndGet();
+            List<Long> deadLetters = new ArrayList<>();
+            List<Long> unsent = new ArrayList<>();
+
+            for (OutboxNotification notification : this.notificationOutboxDao.claimPending(
+                    owner, System.currentTimeMillis(), LEASE_MILLIS, BATCH_SIZE)) {
+                String key = notification.getMessageKey();
+
+                if (!unsent.isEmpty()) {
+                    unsent.add(notification.getId());
+
+                } else if (notification.getAttempts() > MAX_ATTEMPTS) {
+                    LOGGER.log(Level.WARNING, "relay - notification {0} not delivered after {1} attempts",
+                            new Object[]{key, MAX_ATTEMPTS});
+                    deadLetters.add(notification.getId());
+
+                } else if (this.inFlight.putIfAbsent(key, notification.getId()) == null
+                        && !this.dispatcher.dispatch(notification.toNotification(), this.listener)) {
+                    // dispatcher queue full, release the rest for the next run.
+                    this.inFlight.remove(key);
+                    unsent.add(notification.getId());
+                }
+            }
+
+            if (!deadLetters.isEmpty()) {
+                this.notificationOutboxDao.updateStatus(deadLetters, DeliveryStatus.DEAD_LETTER);
+            }
+            this.notificationOutboxDao.release(unsent, owner);
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "relay - unable to relay notification outbox", ex);
+        }
+    }
+
+    /**
+     * @return the number of notifications dispatched and not yet marked.
+     */
+    public int getInFlight() {
+        return this.inFlight.size();
+    }
+
+    /**
+     * Record the outcome of a dispatched notification. Delivered and failed
+     * notifications are marked on the next run, as are notifications
+     * superseded by a later notification for the same booking.
+     * Notifications abandoned after transient failures are left pending and
+     * dispatched again once their claim expires.
+     *
+     * @param key message key of notification.
+     * @param result outcome of delivery.
+     */
+    private void complete(String key, DeliveryResult result) {
+        if (result.getStatus() == DeliveryResult.Status.DELIVERED
+                || result.getStatus() == DeliveryResult.Status.SUPERSEDED) {
+            this.delivered.add(key);
+        } else if (result.getStatus() == DeliveryResult.Status.FAILED) {
+            this.failed.add(key);
+        } else {
+            this.inFlight.remove(key);
+        }
+    }
+
+    /**
+     * Set the delivery status of completed notifications. Keys stay in
+     * flight until marked so the notification is not dispatched again, if
+     * the update fails they are marked on the next run.
+     *
+     * @param completed message keys of completed notifications.
+     * @param status delivery status to set.
+     */
+    private void mark(Queue<String> completed, DeliveryStatus status) {
+        List<String> keys = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+
+        for (String key = completed.poll(); key != null; key = completed.poll()) {
+            keys.add(key);
+            ids.add(this.inFlight.get(key));
+        }
+
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        try {
+            this.notificationOutboxDao.updateStatus(ids, status);
+        } catch (RuntimeException ex) {
+            completed.addAll(keys);
+            throw ex;
+        }
+
+        for (String key : keys) {
+            this.inFlight.remove(key);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.robertnorthard.dtbs.server.layer.service;
 
+import com.robertnorthard.dtbs.server.common.exceptions.TaxiNotFoundException;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
 import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
 import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
 import java.util.List;
@@ -23,12 +25,31 @@ public interface TaxiFacade {
      */
     public Taxi findTaxi(Long id);
 
+    /**
+     * Find the taxi assigned to a driver.
+     *
+     * @param username username of driver.
+     * @return taxi or null if the driver has no taxi.
+     */
+    public Taxi findTaxiForDriver(String username);
+
     /**
      * Update taxi.
      *
      * @param taxi taxi to update.
      */
     public void updateTaxi(Taxi taxi);
+
+    /**
+     * Update the last known location of a taxi. The taxi is reloaded and the
+     * update retried if it conflicts with a concurrent update to the taxi.
+     *
+     * @param id id of taxi.
+     * @param location last known location.
+     * @return the updated taxi.
+     * @throws TaxiNotFoundException taxi not found.
+     */
+    public Taxi updateTaxiLocation(Long id, Location location) throws TaxiNotFoundException;
     
     /**
      * Return a collection of taxis on duty and available.
@@ -1,5 +1,7 @@
 package com.robertnorthard.dtbs.server.layer.service;
 
+import com.robertnorthard.dtbs.server.common.exceptions.TaxiNotFoundException;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
 import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
 import com.robertnorthard.dtbs.server.layer.persistence.TaxiDao;
 import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
@@ -10,6 +12,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import javax.ejb.Stateless;
+import javax.persistence.OptimisticLockException;
 
 /**
  * Taxi Service class implementation.
@@ -19,6 +22,12 @@ import javax.ejb.Stateless;
 @Stateless
 public class TaxiService implements TaxiFacade {
 
+    /**
+     * Maximum number of attempts to update a taxi when the update conflicts
+     * with a concurrent modification.
+     */
+    public static final int MAX_UPDATE_ATTEMPTS = 3;
+
     private Map<Integer, Taxi> allTaxisCache = new ConcurrentHashMap<>();
     private TaxiDao taxiDao = new TaxiDao();
 
@@ -46,6 +55,17 @@ public class TaxiService implements TaxiFacade {
         return this.taxiDao.findEntityById(id);
     }
 
+    /**
+     * Find the taxi assigned to a driver.
+     *
+     * @param username username of driver.
+     * @return taxi or null if the driver has no taxi.
+     */
+    @Override
+    public Taxi findTaxiForDriver(String username) {
+        return this.taxiDao.findTaxiForDriver(username);
+    }
+
     /**
      * Update taxi.
      *
@@ -56,6 +76,43 @@ public class TaxiService implements TaxiFacade {
         this.taxiDao.update(taxi);
     }
 
+    /**
+     * Update the last known location of a taxi. The taxi is reloaded and the
+     * update retried if it conflicts with a concurrent update to the taxi,
+     * such as a driver accepting a booking.
+     *
+     * @param id id of taxi.
+     * @param location last known location.
+     * @return the updated taxi.
+     * @throws TaxiNotFoundException taxi not found.
+     * @throws OptimisticLockException if the update still conflicts after
+     * the maximum number of attempts.
+     */
+    @Override
+    public Taxi updateTaxiLocation(Long id, Location location) throws TaxiNotFoundException {
+
+        for (int attempt = 1;; attempt++) {
+            Taxi taxi = this.taxiDao.findEntityById(id);
+
+            if (taxi == null) {
+                throw new TaxiNotFoundException();
+            }
+
+            taxi.updateLocation(location);
+
+            try {
+                this.taxiDao.update(taxi);
+                return taxi;
+            } catch (OptimisticLockException ex) {
+                this.taxiDao.evict(id);
+
+                if (attempt == TaxiService.MAX_UPDATE_ATTEMPTS) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
     /**
      * Return a collection of taxis on duty and available.
      *
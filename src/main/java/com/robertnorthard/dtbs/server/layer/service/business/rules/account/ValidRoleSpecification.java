@@ -0,0 +1,35 @@
+package com.robertnorthard.dtbs.server.layer.service.business.rules.account;
+
+import com.robertnorthard.dtbs.server.layer.service.business.rules.CompositeSpecification;
+import com.robertnorthard.dtbs.server.layer.service.business.rules.validator.ValidatorResult;
+import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.service.entities.AccountRole;
+
+/**
+ * Valid role specification constraint class. Administrator accounts cannot
+ * be registered.
+ *
+ * @author robertnorthard
+ */
+public class ValidRoleSpecification extends CompositeSpecification<Account> {
+
+    public ValidRoleSpecification(ValidatorResult result) {
+        super(result);
+    }
+
+    @Override
+    public boolean isSatisfiedBy(Account candidate) {
+
+        if (candidate == null) {
+            throw new IllegalArgumentException("Candidate cannot be null.");
+        }
+
+        if (candidate.getRole() == AccountRole.ADMIN) {
+            this.getErrorResult().addError("Role must be passenger or driver.");
+            return false;
+        }
+
+        return true;
+    }
+
+}
@@ -6,6 +6,7 @@ import com.robertnorthard.dtbs.server.layer.service.business.rules.account.Usern
 import com.robertnorthard.dtbs.server.layer.service.business.rules.account.ValidEmailSpecification;
 import com.robertnorthard.dtbs.server.layer.service.business.rules.account.ValidFamilyCommonNameSpecification;
 import com.robertnorthard.dtbs.server.layer.service.business.rules.account.ValidPhoneNumberSpecification;
+import com.robertnorthard.dtbs.server.layer.service.business.rules.account.ValidRoleSpecification;
 import com.robertnorthard.dtbs.server.layer.service.business.rules.account.ValidUsernameSpecification;
 import com.robertnorthard.dtbs.server.layer.service.entities.Account;
 
@@ -38,6 +39,7 @@ public class AccountValidator extends Validator<Account> {
                 .and(new UniqueUsernameSpecification(result))
                 .and(new ValidPhoneNumberSpecification(result))
                 .and(new ValidFamilyCommonNameSpecification(result))
+                .and(new ValidRoleSpecification(result))
                 .isSatisfiedBy(account);
     }
 }
@@ -64,6 +64,10 @@ public class Account implements Serializable {
     
     @Column(name = "GOOGLE_GCM_REG_ID", nullable = true)
     private String gcmRegId;
+
+    @JsonIgnore
+    @Column(name = "SESSIONS_REVOKED_AT")
+    private long sessionsRevokedAt;
     
     public Account() {
         // Empty as per JPA 2.0 specification.
@@ -206,14 +210,14 @@ public class Account implements Serializable {
      * @return Return true if active, else false.
      */
     public boolean isActive() {
-        return this.active.ACTIVE == AccountStatus.ACTIVE;
+        return this.active == AccountStatus.ACTIVE;
     }
 
     /**
      * Set account inactive.
      */
     public void setInActive() {
-        this.active = AccountStatus.ACTIVE;
+        this.active = AccountStatus.INACTIVE;
     }
 
     /**
@@ -260,6 +264,22 @@ public class Account implements Serializable {
         this.gcmRegId = gcmRegId;
     }
 
+    /**
+     * @return time sessions issued up to were revoked, in milliseconds.
+     */
+    @JsonIgnore
+    public long getSessionsRevokedAt() {
+        return this.sessionsRevokedAt;
+    }
+
+    /**
+     * Revoke the user's sessions issued up to now. Session tokens issued up
+     * to this time cannot be refreshed.
+     */
+    public void revokeSessions() {
+        this.sessionsRevokedAt = System.currentTimeMillis();
+    }
+
     /**
      * Set family name.
      * 
@@ -8,7 +8,8 @@ package com.robertnorthard.dtbs.server.layer.service.entities;
 public enum AccountRole {
 
     DRIVER("driver"),
-    PASSENGER("passenger");
+    PASSENGER("passenger"),
+    ADMIN("admin");
 
     private final String role;
 
@@ -10,6 +10,7 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
@@ -20,6 +21,10 @@ import javax.persistence.Transient;
  */
 @Entity
 @Table(name = "ADDRESS")
+@NamedQuery(
+        name = "Address.findRecent",
+        query = "SELECT a FROM Address a WHERE a.location IS NOT NULL AND a.streetAddress IS NOT NULL ORDER BY a.id DESC"
+)
 public class Address implements Serializable {
     
     @Transient
@@ -1,6 +1,7 @@
 package com.robertnorthard.dtbs.server.layer.service.entities;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.robertnorthard.dtbs.server.layer.utils.geocoding.PolyLineUtils;
 import java.io.Serializable;
 import java.util.List;
 import javax.persistence.CascadeType;
@@ -10,6 +11,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
+import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.Transient;
@@ -25,6 +27,12 @@ public class Route implements Serializable {
     
     @Transient
     private static final long serialVersionUID = -1765861964246272848L;
+
+    /**
+     * Query parameter value requesting the route path as an encoded polyline.
+     */
+    @Transient
+    public static final String ENCODED_PATH_FORMAT = "encoded";
     
     @Column(name = "ID")
     @Id
@@ -45,9 +53,17 @@ public class Route implements Serializable {
     @Column(name = "ESTIMATED_TRAVEL_TIME")
     private double estimateTravelTime;
 
+    // path stored in Google's encoded polyline format, decoded on demand.
+    @Lob
+    @Column(name = "ENCODED_PATH")
+    private String encodedPath;
+
     @Transient
     private List<Location> path;
 
+    @Transient
+    private boolean pathEncoded;
+
     public Route() {
         // Empty constructor required by JPA.
     }
@@ -69,7 +85,7 @@ public class Route implements Serializable {
         this.endAddress = endAddress;
         this.distance = distance;
         this.estimateTravelTime = estimateTravelTime;
-        this.path = path;
+        this.setRoute(path);
     }
 
     /**
@@ -115,9 +131,20 @@ public class Route implements Serializable {
     }
 
     /**
+     * Return the route path. The path is decoded from its encoded polyline
+     * on first access. If the route has been set to return its encoded path
+     * null is returned.
+     *
      * @return the route
      */
     public List<Location> getPath() {
+        if (this.pathEncoded) {
+            return null;
+        }
+
+        if (this.path == null && this.encodedPath != null) {
+            this.path = PolyLineUtils.decodePoly(this.encodedPath);
+        }
         return this.path;
     }
 
@@ -126,6 +153,54 @@ public class Route implements Serializable {
      */
     public void setRoute(List<Location> path) {
         this.path = path;
+        this.encodedPath = path != null ? PolyLineUtils.encodePoly(path) : null;
+    }
+
+    /**
+     * Return the route path in Google's encoded polyline format. Only returned
+     * if the route has been set to return its encoded path else null.
+     *
+     * @return the encoded route path.
+     */
+    public String getEncodedPath() {
+        return this.pathEncoded ? this.encodedPath : null;
+    }
+
+    /**
+     * @param encodedPath the encoded route path to set.
+     */
+    public void setEncodedPath(String encodedPath) {
+        this.encodedPath = encodedPath;
+        this.path = null;
+    }
+
+    /**
+     * Return true if the path is returned in encoded polyline form, else false.
+     *
+     * @return true if the path is returned in encoded polyline form.
+     */
+    @JsonIgnore
+    public boolean isPathEncoded() {
+        return this.pathEncoded;
+    }
+
+    /**
+     * Return a copy of this route returning its path as an encoded polyline.
+     * The path is not decoded and this route is left unchanged, so it is safe
+     * to call on routes shared by a cache or persistence context.
+     *
+     * @return a copy of this route returning its encoded path.
+     */
+    public Route withEncodedPath() {
+        Route route = new Route();
+        route.id = this.id;
+        route.startAddress = this.startAddress;
+        route.endAddress = this.endAddress;
+        route.distance = this.distance;
+        route.estimateTravelTime = this.estimateTravelTime;
+        route.encodedPath = this.encodedPath;
+        route.pathEncoded = true;
+        return route;
     }
 
     /**
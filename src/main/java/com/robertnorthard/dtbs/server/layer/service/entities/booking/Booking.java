@@ -6,6 +6,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.robertnorthard.dtbs.server.layer.service.entities.Account;
 import com.robertnorthard.dtbs.server.layer.service.entities.Route;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.BookingEvent;
 import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
 import java.io.Serializable;
 import java.util.Date;
@@ -24,6 +25,7 @@ import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.persistence.Transient;
+import javax.persistence.Version;
 
 /**
  * Represents Taxi booking.
@@ -46,8 +48,67 @@ import javax.persistence.Transient;
             query = "SELECT b FROM Booking b WHERE b.taxi.account.username = :username"
     ),
     @NamedQuery(
-            name = "Booking.findBookingsforUserInState",
-            query = "SELECT b FROM Booking b WHERE b.passenger.username = :username AND NOT (b.state = :state) AND NOT (b.state = :state2)"
+            name = "Booking.findBookingHistoryForPassenger",
+            query = Booking.BOOKING_SUMMARY_SELECT
+                    + "WHERE b.passenger.username = :username "
+                    + "ORDER BY b.timestamp DESC, b.id DESC"
+    ),
+    @NamedQuery(
+            name = "Booking.findBookingHistoryForPassengerBefore",
+            query = Booking.BOOKING_SUMMARY_SELECT
+                    + "WHERE b.passenger.username = :username "
+                    + "AND (b.timestamp < :timestamp OR (b.timestamp = :timestamp AND b.id < :id)) "
+                    + "ORDER BY b.timestamp DESC, b.id DESC"
+    ),
+    @NamedQuery(
+            name = "Booking.findBookingHistoryForDriver",
+            query = Booking.BOOKING_SUMMARY_SELECT
+                    + "WHERE t.account.username = :username "
+                    + "ORDER BY b.timestamp DESC, b.id DESC"
+    ),
+    @NamedQuery(
+            name = "Booking.findBookingHistoryForDriverBefore",
+            query = Booking.BOOKING_SUMMARY_SELECT
+                    + "WHERE t.account.username = :username "
+                    + "AND (b.timestamp < :timestamp OR (b.timestamp = :timestamp AND b.id < :id)) "
+                    + "ORDER BY b.timestamp DESC, b.id DESC"
+    ),
+    @NamedQuery(
+            name = "Booking.countBookingsForPassengerByState",
+            query = "SELECT b.state, COUNT(b) FROM Booking b WHERE b.passenger.username = :username GROUP BY b.state"
+    ),
+    @NamedQuery(
+            name = "Booking.countBookingsForDriverByState",
+            query = "SELECT b.state, COUNT(b) FROM Booking b WHERE b.taxi.account.username = :username GROUP BY b.state"
+    ),
+    @NamedQuery(
+            name = "Booking.countBookingsForPassengerOrDriverByState",
+            query = "SELECT b.state, COUNT(DISTINCT b.id) FROM Booking b "
+                    + "LEFT JOIN b.taxi t LEFT JOIN t.account a "
+                    + "WHERE b.passenger.username = :username OR a.username = :username GROUP BY b.state"
+    ),
+    @NamedQuery(
+            name = "Booking.findAwaitingBookingSummaries",
+            query = "SELECT NEW com.robertnorthard.dtbs.server.layer.persistence.dto.AwaitingBookingDto("
+                    + "b.id, b.timestamp, b.numberPassengers, b.cost, p.commonName, "
+                    + "sa.streetAddress, sl.latitude, sl.longitude, "
+                    + "ea.streetAddress, el.latitude, el.longitude, "
+                    + "r.distance, r.estimateTravelTime) "
+                    + "FROM Booking b JOIN b.passenger p JOIN b.route r "
+                    + "JOIN r.startAddress sa JOIN sa.location sl "
+                    + "JOIN r.endAddress ea JOIN ea.location el "
+                    + "WHERE b.state = :state "
+                    + "ORDER BY b.timestamp ASC"
+    ),
+    @NamedQuery(
+            name = "Booking.findActiveBookingIds",
+            query = "SELECT b.passenger.username, b.id FROM Booking b "
+                    + "WHERE NOT (b.state = :state) AND NOT (b.state = :state2) ORDER BY b.timestamp DESC, b.id DESC"
+    ),
+    @NamedQuery(
+            name = "Booking.findActiveBookingIdsForPassenger",
+            query = "SELECT b.id FROM Booking b WHERE b.passenger.username = :username "
+                    + "AND NOT (b.state = :state) AND NOT (b.state = :state2) ORDER BY b.timestamp DESC, b.id DESC"
     )
 })
 public class Booking implements Serializable {
@@ -55,6 +116,18 @@ public class Booking implements Serializable {
     @Transient
     private static final long serialVersionUID = -1373406783231928690L;
 
+    /**
+     * Select clause projecting a booking into a booking summary, joined for
+     * use by booking history queries.
+     */
+    @Transient
+    static final String BOOKING_SUMMARY_SELECT
+            = "SELECT NEW com.robertnorthard.dtbs.server.layer.persistence.dto.BookingSummaryDto("
+            + "b.id, b.timestamp, b.state, b.cost, b.numberPassengers, b.startTime, b.endTime, "
+            + "sa.streetAddress, ea.streetAddress, t.id) "
+            + "FROM Booking b LEFT JOIN b.route r LEFT JOIN r.startAddress sa "
+            + "LEFT JOIN r.endAddress ea LEFT JOIN b.taxi t ";
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     private long id;
@@ -93,6 +166,11 @@ public class Booking implements Serializable {
     @Convert(converter = JpaBookingStateDataConverter.class)
     private BookingState state;
 
+    // optimistic lock, incremented on every update.
+    @Version
+    @Column(name = "VERSION")
+    private long version;
+
     // booking states
     @JsonIgnore
     @Transient
@@ -149,6 +227,31 @@ public class Booking implements Serializable {
         this.cost = this.calculateCost();
     }
 
+    /**
+     * Apply an event from the booking event log to the booking. Used to
+     * rebuild the booking by replaying its events in order.
+     *
+     * @param event booking event to apply.
+     * @param taxi taxi assigned to the booking by the event, null if none.
+     * @throws IllegalArgumentException if the event state is invalid.
+     */
+    public void apply(BookingEvent event, Taxi taxi) {
+        String eventState = event.getState();
+
+        this.state = new JpaBookingStateDataConverter().convertToEntityAttribute(eventState);
+        this.taxi = taxi;
+
+        if (eventState.equals(BookingStates.AWAITING_TAXI.toString())) {
+            this.timestamp = event.getTimestamp();
+            this.startTime = null;
+            this.endTime = null;
+        } else if (eventState.equals(BookingStates.PASSENGER_PICKED_UP.toString())) {
+            this.startTime = event.getTimestamp();
+        } else if (eventState.equals(BookingStates.COMPLETED_BOOKING.toString())) {
+            this.endTime = event.getTimestamp();
+        }
+    }
+
     /**
      * Cancel booking.
      *
@@ -427,4 +530,19 @@ public class Booking implements Serializable {
     public static BookingState getCompletedTaxiBookingState() {
         return Booking.completedTaxiBookingState;
     }
+
+    /**
+     * @return the version of the booking used for optimistic locking.
+     */
+    @JsonIgnore
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @param version the version to set
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,123 @@
+package com.robertnorthard.dtbs.server.layer.service.entities.events;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.robertnorthard.dtbs.server.layer.persistence.data.mappers.booking.JpaBookingStateDataConverter;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
+import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Lob;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * Entity class for booking events. Every booking state transition is appended
+ * to the booking event log, the booking row is a projection of its events.
+ * Events are never updated or deleted.
+ *
+ * @author robertnorthard
+ */
+@Entity
+@Table(name = "BOOKING_EVENT")
+@NamedQueries({
+    @NamedQuery(
+            name = "BookingEvent.findEventsForBooking",
+            query = "SELECT e FROM BookingEvent e WHERE e.bookingId = :bookingId ORDER BY e.id ASC"
+    ),
+    @NamedQuery(
+            name = "BookingEvent.findEventsAfter",
+            query = "SELECT e FROM BookingEvent e WHERE e.id > :id ORDER BY e.id ASC"
+    )
+})
+public class BookingEvent extends Event {
+
+    @Column(name = "BOOKING_ID")
+    private long bookingId;
+
+    @Column(name = "BOOKING_STATE")
+    private String state;
+
+    @Column(name = "ACTOR")
+    private String actor;
+
+    @Column(name = "TAXI_ID", nullable = true)
+    private Long taxiId;
+
+    @Lob
+    @Column(name = "PAYLOAD")
+    private String payload;
+
+    public BookingEvent() {
+        // Empty constructor required by JPA.
+    }
+
+    /**
+     * Constructor for class BookingEvent. Records the state of the booking
+     * after a transition.
+     *
+     * @param booking booking after the state transition.
+     * @param actor username of the user performing the transition.
+     * @param timestamp time of the transition.
+     */
+    public BookingEvent(Booking booking, String actor, Date timestamp) {
+        super(timestamp.getTime());
+        this.bookingId = booking.getId();
+        this.state = new JpaBookingStateDataConverter().convertToDatabaseColumn(booking.getState());
+        this.actor = actor;
+        this.taxiId = booking.getTaxi() == null ? null : booking.getTaxi().getId();
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("number_passengers", booking.getNumberPassengers());
+        data.put("cost", booking.getCost());
+        data.put("start_time", booking.getStartTime());
+        data.put("end_time", booking.getEndTime());
+        this.payload = DataMapper.getInstance().getObjectAsJson(data);
+    }
+
+    /**
+     * @return the id of the booking
+     */
+    public long getBookingId() {
+        return bookingId;
+    }
+
+    /**
+     * @param bookingId the id of the booking to set
+     */
+    public void setBookingId(long bookingId) {
+        this.bookingId = bookingId;
+    }
+
+    /**
+     * @return the booking state after the transition
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * @return the username of the user performing the transition
+     */
+    public String getActor() {
+        return actor;
+    }
+
+    /**
+     * @return the id of the taxi assigned to the booking, null if none
+     */
+    public Long getTaxiId() {
+        return taxiId;
+    }
+
+    /**
+     * @return the booking details at the time of the transition as JSON
+     */
+    @JsonRawValue
+    public String getPayload() {
+        return payload;
+    }
+}
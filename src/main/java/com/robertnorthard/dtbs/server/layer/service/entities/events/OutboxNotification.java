@@ -0,0 +1,225 @@
+package com.robertnorthard.dtbs.server.layer.service.entities.events;
+
+import com.robertnorthard.dtbs.server.layer.utils.gcm.Notification;
+import java.util.Collections;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Lob;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * Entity class for the notification outbox. A push notification is written
+ * to the outbox in the same transaction as the change it describes and is
+ * sent later by the outbox relay, so a notification is never lost or sent
+ * for a change that was rolled back.
+ *
+ * A relay claims a notification before sending it by setting its owner and
+ * lease expiry in a conditional update, so only one node sends it. A
+ * notification whose lease expires before it is marked may be claimed again,
+ * each claim counting as a delivery attempt.
+ *
+ * @author robertnorthard
+ */
+@Entity
+@Table(name = "NOTIFICATION_OUTBOX")
+@NamedQueries({
+    @NamedQuery(
+            name = "OutboxNotification.findInStatus",
+            query = "SELECT n FROM OutboxNotification n WHERE n.deliveryStatus = :status ORDER BY n.id ASC"
+    ),
+    @NamedQuery(
+            name = "OutboxNotification.findClaimable",
+            query = "SELECT n.id FROM OutboxNotification n WHERE n.deliveryStatus = :status AND n.leaseUntil < :now ORDER BY n.id ASC"
+    ),
+    @NamedQuery(
+            name = "OutboxNotification.claim",
+            query = "UPDATE OutboxNotification n SET n.claimedBy = :owner, n.leaseUntil = :leaseUntil, n.attempts = n.attempts + 1 "
+            + "WHERE n.id IN :ids AND n.deliveryStatus = :status AND n.leaseUntil < :now"
+    ),
+    @NamedQuery(
+            name = "OutboxNotification.findClaimed",
+            query = "SELECT n FROM OutboxNotification n WHERE n.claimedBy = :owner ORDER BY n.id ASC"
+    ),
+    @NamedQuery(
+            name = "OutboxNotification.release",
+            query = "UPDATE OutboxNotification n SET n.leaseUntil = 0, n.attempts = n.attempts - 1 "
+            + "WHERE n.id IN :ids AND n.claimedBy = :owner AND n.deliveryStatus = :status"
+    ),
+    @NamedQuery(
+            name = "OutboxNotification.updateStatus",
+            query = "UPDATE OutboxNotification n SET n.deliveryStatus = :status WHERE n.id IN :ids"
+    )
+})
+public class OutboxNotification extends Event {
+
+    /**
+     * Delivery status of an outbox notification.
+     */
+    public enum DeliveryStatus {
+
+        PENDING,
+        DELIVERED,
+        FAILED,
+        DEAD_LETTER
+    }
+
+    // unique key identifying the notification, sent to the device so
+    // repeated deliveries can be ignored.
+    @Column(name = "MESSAGE_KEY", unique = true, nullable = false)
+    private String messageKey;
+
+    // notifications with the same collapse key replace each other.
+    @Column(name = "COLLAPSE_KEY", nullable = true)
+    private String collapseKey;
+
+    @Column(name = "STATUS")
+    private String status;
+
+    @Column(name = "EVENT_TYPE")
+    private String eventType;
+
+    @Lob
+    @Column(name = "PAYLOAD")
+    private String payload;
+
+    @Column(name = "REGISTRATION_ID")
+    private String registrationId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "DELIVERY_STATUS")
+    private DeliveryStatus deliveryStatus;
+
+    // relay run holding the current claim, unique to the run.
+    @Column(name = "CLAIMED_BY", nullable = true)
+    private String claimedBy;
+
+    // time in milliseconds the current claim expires, 0 if never claimed.
+    @Column(name = "LEASE_UNTIL")
+    private long leaseUntil;
+
+    @Column(name = "ATTEMPTS")
+    private int attempts;
+
+    public OutboxNotification() {
+        // Empty constructor required by JPA.
+    }
+
+    /**
+     * Constructor for class OutboxNotification.
+     *
+     * @param messageKey unique key identifying the notification.
+     * @param collapseKey key of notifications that replace each other, only
+     * the latest is sent. May be null.
+     * @param status status to send alongside message.
+     * @param eventType notification type.
+     * @param payload JSON payload.
+     * @param registrationId Google Cloud Messenger registration id of device.
+     */
+    public OutboxNotification(String messageKey, String collapseKey, String status,
+            String eventType, String payload, String registrationId) {
+        this.messageKey = messageKey;
+        this.collapseKey = collapseKey;
+        this.status = status;
+        this.eventType = eventType;
+        this.payload = payload;
+        this.registrationId = registrationId;
+        this.deliveryStatus = DeliveryStatus.PENDING;
+    }
+
+    /**
+     * @return a push notification to send for this outbox entry.
+     */
+    public Notification toNotification() {
+        return new Notification(this.messageKey, this.collapseKey, this.status,
+                this.eventType, this.payload, Collections.singletonList(this.registrationId));
+    }
+
+    /**
+     * @return the messageKey
+     */
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    /**
+     * @return the collapseKey
+     */
+    public String getCollapseKey() {
+        return collapseKey;
+    }
+
+    /**
+     * @return the status
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the eventType
+     */
+    public String getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return the payload
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return the registrationId
+     */
+    public String getRegistrationId() {
+        return registrationId;
+    }
+
+    /**
+     * @return the deliveryStatus
+     */
+    public DeliveryStatus getDeliveryStatus() {
+        return deliveryStatus;
+    }
+
+    /**
+     * @return the claimedBy
+     */
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    /**
+     * @return the leaseUntil
+     */
+    public long getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    /**
+     * @return the number of times the notification has been claimed for
+     * delivery.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @param attempts the attempts to set
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * @param deliveryStatus the deliveryStatus to set
+     */
+    public void setDeliveryStatus(DeliveryStatus deliveryStatus) {
+        this.deliveryStatus = deliveryStatus;
+    }
+}
@@ -22,6 +22,22 @@ import org.joda.time.DateTime;
     @NamedQuery(
             name = "PasswordResetEvent.findActivePasswordResetByUsername",
             query = "SELECT e FROM PasswordResetEvent e WHERE e.username = :username"
+    ),
+    @NamedQuery(
+            name = "PasswordResetEvent.findLatestActivePasswordReset",
+            query = "SELECT e FROM PasswordResetEvent e WHERE e.username = :username AND e.active = true ORDER BY e.id DESC"
+    ),
+    @NamedQuery(
+            name = "PasswordResetEvent.recordAttempt",
+            query = "UPDATE PasswordResetEvent e SET e.attempts = e.attempts + 1 WHERE e.id = :id AND e.active = true AND e.attempts < :maxAttempts"
+    ),
+    @NamedQuery(
+            name = "PasswordResetEvent.deactivate",
+            query = "UPDATE PasswordResetEvent e SET e.active = false WHERE e.id = :id AND e.active = true"
+    ),
+    @NamedQuery(
+            name = "PasswordResetEvent.deactivateForUsername",
+            query = "UPDATE PasswordResetEvent e SET e.active = false WHERE e.username = :username AND e.active = true"
     )
 })
 public class PasswordResetEvent extends Event {
@@ -38,6 +54,9 @@ public class PasswordResetEvent extends Event {
     @Column(name = "EXPIRY")
     private DateTime expiry;
 
+    @Column(name = "ATTEMPTS")
+    private int attempts;
+
     public PasswordResetEvent() {
     }
 
@@ -69,6 +88,20 @@ public class PasswordResetEvent extends Event {
         return expiry;
     }
 
+    /**
+     * @return the number of attempts made to verify the code.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @param attempts the attempts to set
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
     /**
      * Set reset code to used.
      */
@@ -22,6 +22,7 @@ import javax.persistence.NamedQuery;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import javax.persistence.Version;
 
 /**
  * Represents a Taxi.
@@ -67,6 +68,11 @@ public class Taxi extends Observable implements Serializable {
     @Convert(converter = JpaTaxiStateDataConverter.class)
     private TaxiState state;
 
+    // optimistic lock, incremented on every update.
+    @Version
+    @Column(name = "VERSION")
+    private long version;
+
     // taxi states
     @JsonIgnore
     @Transient
@@ -248,4 +254,19 @@ public class Taxi extends Observable implements Serializable {
     public static TaxiState getOnDutyTaxiState() {
         return Taxi.onDutyTaxiState;
     }
+
+    /**
+     * @return the version of the taxi used for optimistic locking.
+     */
+    @JsonIgnore
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * @param version the version to set
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,112 @@
+package com.robertnorthard.dtbs.server.layer.service.readmodel;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Singleton;
+
+/**
+ * In memory index from passenger username to active booking id, a fast path
+ * for finding a passenger's active booking.
+ *
+ * A booking is reserved before it is created so concurrent requests from the
+ * same passenger on this node cannot both create an active booking. The index
+ * is warmed from the database at startup but does not see bookings made on
+ * other nodes, so the database remains the authority.
+ *
+ * @author robertnorthard
+ */
+@Singleton
+public class ActiveBookingIndex {
+
+    // placeholder for a booking being created.
+    private static final Long RESERVED = -1L;
+
+    private final ConcurrentMap<String, Long> activeBookings = new ConcurrentHashMap<>();
+    private volatile boolean warm;
+
+    /**
+     * Reserve an active booking for a passenger.
+     *
+     * @param username username of passenger.
+     * @return true if reserved, false if the passenger has an active booking
+     * or a booking being created.
+     */
+    public boolean reserve(String username) {
+        return this.activeBookings.putIfAbsent(username, RESERVED) == null;
+    }
+
+    /**
+     * Replace a passenger's reservation with the id of the created booking.
+     *
+     * @param username username of passenger.
+     * @param bookingId id of created booking.
+     */
+    public void confirm(String username, long bookingId) {
+        this.activeBookings.put(username, bookingId);
+    }
+
+    /**
+     * Record a passenger's active booking read from the database or restored
+     * from its event log.
+     *
+     * @param username username of passenger.
+     * @param bookingId id of active booking.
+     */
+    public void put(String username, long bookingId) {
+        this.activeBookings.put(username, bookingId);
+    }
+
+    /**
+     * Release a passenger's reservation if the booking was not created.
+     *
+     * @param username username of passenger.
+     */
+    public void release(String username) {
+        this.activeBookings.remove(username, RESERVED);
+    }
+
+    /**
+     * Remove a passenger's active booking once completed or cancelled.
+     *
+     * @param username username of passenger.
+     * @param bookingId id of completed or cancelled booking.
+     */
+    public void remove(String username, long bookingId) {
+        this.activeBookings.remove(username, bookingId);
+    }
+
+    /**
+     * Return the id of a passenger's active booking.
+     *
+     * @param username username of passenger.
+     * @return the id of a passenger's active booking, null if none or the
+     * booking is still being created.
+     */
+    public Long getActiveBookingId(String username) {
+        Long bookingId = this.activeBookings.get(username);
+        return RESERVED.equals(bookingId) ? null : bookingId;
+    }
+
+    /**
+     * Warm the index with active bookings read from the database. The most
+     * recent booking of each passenger is kept, and entries already in the
+     * index are kept as they are more recent still.
+     *
+     * @param rows rows of passenger username and booking id ordered by most
+     * recent booking first.
+     */
+    public void warm(List<Object[]> rows) {
+        for (Object[] row : rows) {
+            this.activeBookings.putIfAbsent((String) row[0], ((Number) row[1]).longValue());
+        }
+        this.warm = true;
+    }
+
+    /**
+     * @return true if the index has been warmed.
+     */
+    public boolean isWarm() {
+        return this.warm;
+    }
+}
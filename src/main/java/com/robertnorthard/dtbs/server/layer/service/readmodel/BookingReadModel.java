@@ -0,0 +1,172 @@
+package com.robertnorthard.dtbs.server.layer.service.readmodel;
+
+import com.robertnorthard.dtbs.server.configuration.ConfigService;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingSummaryDto;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCache;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Singleton;
+
+/**
+ * In memory per user booking read model. Views are loaded from the database
+ * on first use and kept up to date by applying each booking transition after
+ * it has been committed.
+ *
+ * Each node only applies the transitions it makes, so views are held in a
+ * size bounded cache and expire after a short time, bounding how long a view
+ * misses transitions made on another node. Configured by
+ * dtbs.server.readmodel.ttl.seconds (default 30) and
+ * dtbs.server.readmodel.size (default 10000).
+ *
+ * A view loaded concurrently with a transition for the same user may miss the
+ * transition, so each load reads the cache stamp and the view is discarded if
+ * a transition was applied while it was loading.
+ *
+ * @author robertnorthard
+ */
+@Singleton
+public class BookingReadModel {
+
+    /**
+     * Number of recent bookings kept per user.
+     */
+    public static final int RECENT_BOOKINGS = 20;
+
+    /**
+     * Name of the view cache in cache statistics.
+     */
+    public static final String NAME = "Booking read model";
+
+    private static final String TTL_PROPERTY = "dtbs.server.readmodel.ttl.seconds";
+    private static final String SIZE_PROPERTY = "dtbs.server.readmodel.size";
+    private static final long DEFAULT_TTL_SECONDS = 30;
+    private static final int DEFAULT_SIZE = 10000;
+
+    private final EntityCache<String, UserBookingView> views;
+
+    /**
+     * Constructor for class BookingReadModel, configured from application
+     * configuration.
+     */
+    public BookingReadModel() {
+        this(create());
+    }
+
+    /**
+     * Constructor for dependency injection/testing.
+     *
+     * @param views cache of views by username.
+     */
+    public BookingReadModel(EntityCache<String, UserBookingView> views) {
+        this.views = views;
+    }
+
+    /**
+     * Return the view for a user.
+     *
+     * @param username username of user.
+     * @return the view for a user or null if not loaded or expired.
+     */
+    public UserBookingView getView(String username) {
+        return this.views.get(username);
+    }
+
+    /**
+     * Return the current stamp of the view cache. Read before loading a view
+     * from the database and passed to putView.
+     *
+     * @return the current stamp.
+     */
+    public long getStamp() {
+        return this.views.getStamp();
+    }
+
+    /**
+     * Cache a view loaded from the database. The view is discarded if a
+     * transition was applied or a view invalidated after the stamp was read.
+     *
+     * @param username username of user.
+     * @param view view loaded from the database.
+     * @param stamp stamp read before the view was loaded.
+     */
+    public void putView(String username, UserBookingView view, long stamp) {
+        this.views.put(username, view, stamp);
+    }
+
+    /**
+     * Apply a committed booking transition to the views of the booking's
+     * passenger and driver.
+     *
+     * @param booking booking after the transition.
+     * @param created true if the booking was created by the transition.
+     */
+    public void apply(Booking booking, boolean created) {
+        BookingSummaryDto summary = BookingSummaryDto.fromBooking(booking);
+
+        this.apply(booking.getPassenger().getUsername(), summary, true, created);
+
+        if (booking.getTaxi() != null && booking.getTaxi().getAccount() != null) {
+            this.apply(booking.getTaxi().getAccount().getUsername(), summary, false, created);
+        }
+    }
+
+    /**
+     * Remove the view for a user, it is reloaded from the database on next
+     * use.
+     *
+     * @param username username of user.
+     */
+    public void invalidate(String username) {
+        this.views.invalidate(username);
+    }
+
+    /**
+     * Remove all views, they are reloaded from the database on next use.
+     */
+    public void clear() {
+        this.views.invalidateAll();
+    }
+
+    /**
+     * Apply a booking transition to a user's view if loaded. The view is
+     * invalidated first so a view loading concurrently is discarded.
+     *
+     * @param username username of user.
+     * @param summary summary of the booking after the transition.
+     * @param passenger true if the user is the booking's passenger.
+     * @param created true if the booking was created by the transition.
+     */
+    private void apply(String username, BookingSummaryDto summary, boolean passenger, boolean created) {
+        synchronized (this.views) {
+            UserBookingView view = this.views.get(username);
+            this.views.invalidate(username);
+
+            if (view != null) {
+                this.views.put(username, view.apply(summary, passenger, created, RECENT_BOOKINGS),
+                        this.views.getStamp());
+            }
+        }
+    }
+
+    /**
+     * Create the view cache from application configuration.
+     *
+     * @return the view cache.
+     */
+    private static EntityCache<String, UserBookingView> create() {
+        Properties properties = ConfigService.getConfig("application.properties");
+        long ttl = DEFAULT_TTL_SECONDS;
+        int size = DEFAULT_SIZE;
+
+        if (properties != null) {
+            if (properties.getProperty(TTL_PROPERTY) != null) {
+                ttl = Long.parseLong(properties.getProperty(TTL_PROPERTY));
+            }
+            if (properties.getProperty(SIZE_PROPERTY) != null) {
+                size = Integer.parseInt(properties.getProperty(SIZE_PROPERTY));
+            }
+        }
+        return new EntityCache<>(NAME, size, ttl, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,166 @@
+package com.robertnorthard.dtbs.server.layer.service.readmodel;
+
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingCursor;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingSummaryDto;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.BookingState;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.CancelledBookingState;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.CompletedBookingState;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.TaxiDispatchedBookingState;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable denormalized view of a user's bookings: the passenger's active
+ * booking, the most recent bookings and booking counts. A booking transition
+ * produces a new view, views are never modified.
+ *
+ * @author robertnorthard
+ */
+public class UserBookingView implements Serializable {
+
+    private final Long activeBookingId;
+    private final List<BookingSummaryDto> recentBookings;
+    private final int totalBookings;
+    private final int completedBookings;
+    private final int cancelledBookings;
+
+    /**
+     * Constructor for class UserBookingView.
+     *
+     * @param activeBookingId id of the passenger's active booking, null if
+     * none.
+     * @param recentBookings most recent bookings ordered by most recent first.
+     * @param totalBookings total number of bookings.
+     * @param completedBookings number of completed bookings.
+     * @param cancelledBookings number of cancelled bookings.
+     */
+    public UserBookingView(Long activeBookingId, List<BookingSummaryDto> recentBookings,
+            int totalBookings, int completedBookings, int cancelledBookings) {
+        this.activeBookingId = activeBookingId;
+        this.recentBookings = Collections.unmodifiableList(new ArrayList<>(recentBookings));
+        this.totalBookings = totalBookings;
+        this.completedBookings = completedBookings;
+        this.cancelledBookings = cancelledBookings;
+    }
+
+    /**
+     * Return a new view with a booking transition applied.
+     *
+     * @param summary summary of the booking after the transition.
+     * @param passenger true if the user is the booking's passenger, false if
+     * the user is the driver.
+     * @param created true if the booking was created by the transition.
+     * @param maxRecentBookings maximum number of recent bookings to keep.
+     * @return a new view with the booking transition applied.
+     */
+    public UserBookingView apply(BookingSummaryDto summary, boolean passenger,
+            boolean created, int maxRecentBookings) {
+
+        List<BookingSummaryDto> recent = new ArrayList<>(this.recentBookings.size() + 1);
+        BookingSummaryDto previous = null;
+
+        for (BookingSummaryDto booking : this.recentBookings) {
+            if (booking.getId() == summary.getId()) {
+                previous = booking;
+            } else {
+                recent.add(booking);
+            }
+        }
+
+        int index = 0;
+        while (index < recent.size() && BookingCursor.compare(
+                recent.get(index).getTimestamp(), recent.get(index).getId(),
+                summary.getTimestamp(), summary.getId()) < 0) {
+            index++;
+        }
+        recent.add(index, summary);
+
+        if (recent.size() > maxRecentBookings) {
+            recent = recent.subList(0, maxRecentBookings);
+        }
+
+        // a passenger joins a booking when created, a driver when dispatched.
+        boolean added = passenger ? created
+                : previous == null && summary.getState() instanceof TaxiDispatchedBookingState;
+
+        // completed and cancelled are final states so are only entered once.
+        int completed = this.completedBookings
+                + (this.entered(previous, summary, CompletedBookingState.class) ? 1 : 0);
+        int cancelled = this.cancelledBookings
+                + (this.entered(previous, summary, CancelledBookingState.class) ? 1 : 0);
+
+        Long active = this.activeBookingId;
+        if (passenger) {
+            if (!this.isFinal(summary.getState())) {
+                active = summary.getId();
+            } else if (active != null && active == summary.getId()) {
+                active = null;
+            }
+        }
+
+        return new UserBookingView(active, recent,
+                this.totalBookings + (added ? 1 : 0), completed, cancelled);
+    }
+
+    /**
+     * Return true if the booking entered the given state in this transition.
+     *
+     * @param previous summary of the booking before the transition, null if
+     * not in the recent bookings.
+     * @param summary summary of the booking after the transition.
+     * @param state state to check.
+     * @return true if the booking entered the given state.
+     */
+    private boolean entered(BookingSummaryDto previous, BookingSummaryDto summary,
+            Class<? extends BookingState> state) {
+        return state.isInstance(summary.getState())
+                && (previous == null || !state.isInstance(previous.getState()));
+    }
+
+    /**
+     * Return true if the state is completed or cancelled.
+     *
+     * @param state state to check.
+     * @return true if the state is completed or cancelled.
+     */
+    private boolean isFinal(BookingState state) {
+        return state instanceof CompletedBookingState || state instanceof CancelledBookingState;
+    }
+
+    /**
+     * @return the id of the passenger's active booking, null if none
+     */
+    public Long getActiveBookingId() {
+        return activeBookingId;
+    }
+
+    /**
+     * @return the most recent bookings ordered by most recent first
+     */
+    public List<BookingSummaryDto> getRecentBookings() {
+        return recentBookings;
+    }
+
+    /**
+     * @return the total number of bookings
+     */
+    public int getTotalBookings() {
+        return totalBookings;
+    }
+
+    /**
+     * @return the number of completed bookings
+     */
+    public int getCompletedBookings() {
+        return completedBookings;
+    }
+
+    /**
+     * @return the number of cancelled bookings
+     */
+    public int getCancelledBookings() {
+        return cancelledBookings;
+    }
+}
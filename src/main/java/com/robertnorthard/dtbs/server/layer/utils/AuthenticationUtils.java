@@ -1,10 +1,11 @@
 package com.robertnorthard.dtbs.server.layer.utils;
 
+import com.robertnorthard.dtbs.server.layer.security.AdmissionRejectedException;
+import com.robertnorthard.dtbs.server.layer.security.PasswordHashingExecutor;
 import java.util.Base64;
 import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.mindrot.jbcrypt.BCrypt;
 
 /**
  * Authentication utility class provide functions for managing base64
@@ -22,21 +23,24 @@ public class AuthenticationUtils {
 
     /**
      * Hash a plaintext value using BCrypt, blowfish block-cipher with a work
-     * factor of 12.
+     * factor of 12. Runs on the bounded password hashing executor.
      *
      * @param password password to hash.
      * @return a string representation of the salted password.
+     * @throws AdmissionRejectedException if the password hashing queue is full.
      */
     public static String hashPassword(String password) {
-        return BCrypt.hashpw(password, BCrypt.gensalt(12));
+        return PasswordHashingExecutor.getInstance().hashPassword(password);
     }
 
     /**
-     * Check if plain text password matches hash.
+     * Check if plain text password matches hash. Runs on the bounded password
+     * hashing executor.
      *
      * @param password plaintext password
      * @param hash hashed password
      * @return true if plaintext password and hash match, else false.
+     * @throws AdmissionRejectedException if the password hashing queue is full.
      */
     public static boolean checkPassword(String password, String hash) {
 
@@ -47,7 +51,7 @@ public class AuthenticationUtils {
             throw e;
         }
 
-        return BCrypt.checkpw(password, hash);
+        return PasswordHashingExecutor.getInstance().checkPassword(password, hash);
     }
 
     /**
@@ -0,0 +1,78 @@
+package com.robertnorthard.dtbs.server.layer.utils.cache;
+
+/**
+ * Point in time statistics for a cache.
+ *
+ * @author robertnorthard
+ */
+public class CacheStats {
+
+    private final String name;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+
+    /**
+     * Constructor for class CacheStats.
+     *
+     * @param name name of cache.
+     * @param hits number of lookups served from the cache.
+     * @param misses number of lookups not found in the cache.
+     * @param evictions number of entries evicted or rejected due to size.
+     * @param size current number of entries.
+     */
+    public CacheStats(String name, long hits, long misses, long evictions, int size) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the hits
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return the misses
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return the evictions
+     */
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * @return the size
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Return the ratio of lookups served from the cache, 1.0 if there have
+     * been no lookups.
+     *
+     * @return the ratio of lookups served from the cache.
+     */
+    public double getHitRatio() {
+        long requests = this.hits + this.misses;
+        return requests == 0 ? 1.0 : (double) this.hits / requests;
+    }
+}
@@ -0,0 +1,304 @@
+package com.robertnorthard.dtbs.server.layer.utils.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded, time limited cache of entities by primary key.
+ *
+ * Eviction follows W-TinyLFU: new entries enter a small LRU admission window
+ * and, when it overflows, the window's least recently used entry is only
+ * admitted to the main LRU region if it has been requested more often than the
+ * entry it would evict. Request frequency is estimated with a FrequencySketch.
+ * This keeps one-off lookups, such as a scan over old bookings, from flushing
+ * frequently read entities.
+ *
+ * @author robertnorthard
+ * @param <K> primary key of entity.
+ * @param <V> type of entity.
+ */
+public class EntityCache<K, V> {
+
+    private final String name;
+    private final long ttlNanos;
+    private final int windowSize;
+    private final int mainSize;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<K, Entry<V>> window;
+    private final LinkedHashMap<K, Entry<V>> main;
+    private final FrequencySketch sketch;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Constructor for class EntityCache.
+     *
+     * @param name name of cache, used for statistics.
+     * @param maximumSize maximum number of entries.
+     * @param ttl time an entry may be served after it was loaded.
+     * @param unit unit of ttl.
+     * @throws IllegalArgumentException if maximum size or ttl is not positive.
+     */
+    public EntityCache(String name, int maximumSize, long ttl, TimeUnit unit) {
+        if (maximumSize <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException("Maximum size and ttl must be positive.");
+        }
+
+        this.name = name;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.windowSize = Math.max(1, maximumSize / 100);
+        this.mainSize = Math.max(1, maximumSize - this.windowSize);
+        this.window = new LinkedHashMap<>(16, 0.75f, true);
+        this.main = new LinkedHashMap<>(16, 0.75f, true);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Return the cached entity with the given key. If the key is not cached or
+     * the entry has expired null is returned.
+     *
+     * @param key primary key.
+     * @return the cached entity or null.
+     */
+    public V get(K key) {
+        synchronized (this.lock) {
+            this.sketch.increment(key);
+
+            Entry<V> entry = this.window.get(key);
+            if (entry == null) {
+                entry = this.main.get(key);
+            }
+
+            if (entry != null && entry.expiresAt - this.now() > 0) {
+                this.hits.incrementAndGet();
+                return entry.value;
+            }
+
+            if (entry != null) {
+                this.remove(key);
+            }
+        }
+
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Return a stamp to pass to put before loading an entity, so an entity
+     * loaded before a concurrent invalidation is not cached.
+     *
+     * @return the current invalidation stamp.
+     */
+    public long getStamp() {
+        return this.invalidations.get();
+    }
+
+    /**
+     * Cache an entity loaded from the data layer. The entity is not cached if
+     * it is null or if the cache has been invalidated since stamp was read.
+     *
+     * @param key primary key.
+     * @param value entity.
+     * @param stamp value of getStamp read before the entity was loaded.
+     */
+    public void put(K key, V value, long stamp) {
+        this.put(key, value, stamp, this.ttlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cache an entity as above that expires after the given time, or the
+     * cache ttl if shorter, such as an entity restored with the time it had
+     * left before a restart.
+     *
+     * @param key primary key.
+     * @param value entity.
+     * @param stamp value of getStamp read before the entity was loaded.
+     * @param ttl time the entity may be served for.
+     * @param unit unit of ttl.
+     */
+    public void put(K key, V value, long stamp, long ttl, TimeUnit unit) {
+        if (key == null || value == null || ttl <= 0) {
+            return;
+        }
+
+        synchronized (this.lock) {
+            if (this.invalidations.get() != stamp) {
+                return;
+            }
+
+            Entry<V> entry = new Entry<>(value, this.now() + Math.min(unit.toNanos(ttl), this.ttlNanos));
+
+            if (this.main.containsKey(key)) {
+                this.main.put(key, entry);
+                return;
+            }
+
+            this.window.put(key, entry);
+
+            if (this.window.size() > this.windowSize) {
+                this.admit(this.removeEldest(this.window));
+            }
+        }
+    }
+
+    /**
+     * Remove the entity with the given key.
+     *
+     * @param key primary key.
+     */
+    public void invalidate(K key) {
+        if (key == null) {
+            return;
+        }
+
+        synchronized (this.lock) {
+            this.invalidations.incrementAndGet();
+            this.remove(key);
+        }
+    }
+
+    /**
+     * Remove all entities.
+     */
+    public void invalidateAll() {
+        synchronized (this.lock) {
+            this.invalidations.incrementAndGet();
+            this.window.clear();
+            this.main.clear();
+        }
+    }
+
+    /**
+     * Return a copy of the entries that have not expired.
+     *
+     * @return key to value of unexpired entries.
+     */
+    public Map<K, V> asMap() {
+        Map<K, V> entries = new HashMap<>();
+
+        synchronized (this.lock) {
+            long now = this.now();
+            for (Map<K, Entry<V>> region : Arrays.asList(this.window, this.main)) {
+                for (Map.Entry<K, Entry<V>> entry : region.entrySet()) {
+                    if (entry.getValue().expiresAt - now > 0) {
+                        entries.put(entry.getKey(), entry.getValue().value);
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Return the time left before each unexpired entry expires.
+     *
+     * @param unit unit of the times returned.
+     * @return key to time left of unexpired entries.
+     */
+    public Map<K, Long> getTimesToLive(TimeUnit unit) {
+        Map<K, Long> entries = new HashMap<>();
+
+        synchronized (this.lock) {
+            long now = this.now();
+            for (Map<K, Entry<V>> region : Arrays.asList(this.window, this.main)) {
+                for (Map.Entry<K, Entry<V>> entry : region.entrySet()) {
+                    long left = entry.getValue().expiresAt - now;
+                    if (left > 0) {
+                        entries.put(entry.getKey(), unit.convert(left, TimeUnit.NANOSECONDS));
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the number of cached entries.
+     */
+    public int size() {
+        synchronized (this.lock) {
+            return this.window.size() + this.main.size();
+        }
+    }
+
+    /**
+     * @return point in time statistics for the cache.
+     */
+    public CacheStats getStats() {
+        return new CacheStats(this.name, this.hits.get(), this.misses.get(),
+                this.evictions.get(), this.size());
+    }
+
+    /**
+     * Return the current time in nanoseconds.
+     *
+     * @return the current time in nanoseconds.
+     */
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Move an entry evicted from the window into the main region if it is
+     * requested more often than the main region's eviction victim.
+     *
+     * @param candidate entry leaving the window.
+     */
+    private void admit(Map.Entry<K, Entry<V>> candidate) {
+        if (this.main.size() < this.mainSize) {
+            this.main.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        K victim = this.main.keySet().iterator().next();
+
+        if (this.sketch.frequency(candidate.getKey()) > this.sketch.frequency(victim)) {
+            this.main.remove(victim);
+            this.main.put(candidate.getKey(), candidate.getValue());
+        }
+        this.evictions.incrementAndGet();
+    }
+
+    private Map.Entry<K, Entry<V>> removeEldest(LinkedHashMap<K, Entry<V>> region) {
+        Iterator<Map.Entry<K, Entry<V>>> it = region.entrySet().iterator();
+        Map.Entry<K, Entry<V>> eldest = it.next();
+        it.remove();
+        return eldest;
+    }
+
+    private void remove(K key) {
+        if (this.window.remove(key) == null) {
+            this.main.remove(key);
+        }
+    }
+
+    /**
+     * A cached entity and the time it expires.
+     */
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
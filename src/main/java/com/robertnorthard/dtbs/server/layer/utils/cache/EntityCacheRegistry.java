@@ -0,0 +1,106 @@
+package com.robertnorthard.dtbs.server.layer.utils.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of entity caches by entity class. DAOs are created in several
+ * places so caches are shared through the registry, ensuring an update made
+ * through one DAO instance invalidates the entity for all of them. Caches of
+ * values that are not looked up by primary key are registered by name so
+ * their statistics are reported with the entity caches.
+ *
+ * @author robertnorthard
+ */
+public class EntityCacheRegistry {
+
+    private static final ConcurrentMap<Object, EntityCache<?, ?>> CACHES = new ConcurrentHashMap<>();
+
+    private EntityCacheRegistry() {
+        // Empty as utility class.
+    }
+
+    /**
+     * Return the cache for the entity class, creating it if it does not exist.
+     *
+     * @param <K> primary key of entity.
+     * @param <V> type of entity.
+     * @param entityClass entity class.
+     * @param maximumSize maximum number of entries, used if the cache is created.
+     * @param ttl time to live, used if the cache is created.
+     * @param unit unit of ttl.
+     * @return the cache for the entity class.
+     */
+    public static <K, V> EntityCache<K, V> getCache(Class<V> entityClass, int maximumSize, long ttl, TimeUnit unit) {
+        return getCache(entityClass, entityClass.getSimpleName(), maximumSize, ttl, unit);
+    }
+
+    /**
+     * Return the cache with the given name, creating it if it does not exist.
+     *
+     * @param <K> cache key.
+     * @param <V> type of cached value.
+     * @param name name of cache.
+     * @param maximumSize maximum number of entries, used if the cache is created.
+     * @param ttl time to live, used if the cache is created.
+     * @param unit unit of ttl.
+     * @return the cache with the given name.
+     */
+    public static <K, V> EntityCache<K, V> getCache(String name, int maximumSize, long ttl, TimeUnit unit) {
+        return getCache(name, name, maximumSize, ttl, unit);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> EntityCache<K, V> getCache(Object key, String name, int maximumSize, long ttl, TimeUnit unit) {
+        EntityCache<?, ?> cache = CACHES.get(key);
+
+        if (cache == null) {
+            EntityCache<K, V> created = new EntityCache<>(name, maximumSize, ttl, unit);
+            cache = CACHES.putIfAbsent(key, created);
+            if (cache == null) {
+                cache = created;
+            }
+        }
+        return (EntityCache<K, V>) cache;
+    }
+
+    /**
+     * Remove the entity with the given key from the cache for the entity
+     * class. Does nothing if the entity class is not cached.
+     *
+     * @param entityClass entity class.
+     * @param key primary key.
+     */
+    @SuppressWarnings("unchecked")
+    public static void invalidate(Class<?> entityClass, Object key) {
+        EntityCache<Object, ?> cache = (EntityCache<Object, ?>) CACHES.get(entityClass);
+
+        if (cache != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Remove all entities from every cache.
+     */
+    public static void invalidateAll() {
+        for (EntityCache<?, ?> cache : CACHES.values()) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * @return statistics for every registered cache.
+     */
+    public static List<CacheStats> getStats() {
+        List<CacheStats> stats = new ArrayList<>();
+
+        for (EntityCache<?, ?> cache : CACHES.values()) {
+            stats.add(cache.getStats());
+        }
+        return stats;
+    }
+}
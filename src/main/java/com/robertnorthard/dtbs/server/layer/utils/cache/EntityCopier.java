@@ -0,0 +1,52 @@
+package com.robertnorthard.dtbs.server.layer.utils.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Deep copies serializable entities. Entities are mutated by the service
+ * layer before they are written, so cached entities are copied on the way in
+ * and out of the cache to stop one request observing another's uncommitted
+ * changes.
+ *
+ * @author robertnorthard
+ */
+public class EntityCopier {
+
+    private EntityCopier() {
+        // Empty as utility class.
+    }
+
+    /**
+     * Return a deep copy of the entity.
+     *
+     * @param <V> type of entity.
+     * @param entity entity to copy.
+     * @return a deep copy of the entity, null if entity is null.
+     * @throws IllegalStateException if the entity graph cannot be serialized.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V copy(V entity) {
+        if (entity == null) {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject((Serializable) entity);
+            }
+
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray()))) {
+                return (V) in.readObject();
+            }
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            throw new IllegalStateException("Unable to copy entity.", ex);
+        }
+    }
+}
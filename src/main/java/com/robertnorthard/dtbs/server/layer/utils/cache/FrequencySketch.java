@@ -0,0 +1,89 @@
+package com.robertnorthard.dtbs.server.layer.utils.cache;
+
+/**
+ * A count-min sketch estimating how often a key has been requested. Counters
+ * are capped and periodically halved so the estimate favours recent
+ * popularity. Used by EntityCache to decide whether a new entry is worth
+ * evicting an existing one for. Not thread safe.
+ *
+ * @author robertnorthard
+ */
+class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0x0fc9d1b9, 0x6b94ac43, 0xc5e37e3b};
+
+    private final int[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Constructor for class FrequencySketch.
+     *
+     * @param maximumSize maximum number of entries held by the cache.
+     */
+    FrequencySketch(int maximumSize) {
+        int width = Integer.highestOneBit(Math.max(16, maximumSize * 4) - 1) << 1;
+        this.table = new int[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = Math.max(10 * maximumSize, 100);
+    }
+
+    /**
+     * Record a request for the key.
+     *
+     * @param key key requested.
+     */
+    void increment(Object key) {
+        int hash = key.hashCode();
+        boolean added = false;
+
+        for (int i = 0; i < DEPTH; i++) {
+            int index = this.indexOf(hash, i);
+            if (this.table[i][index] < MAX_COUNT) {
+                this.table[i][index]++;
+                added = true;
+            }
+        }
+
+        if (added && ++this.additions >= this.sampleSize) {
+            this.reset();
+        }
+    }
+
+    /**
+     * Return the estimated number of recent requests for the key.
+     *
+     * @param key key to estimate.
+     * @return the estimated number of recent requests for the key.
+     */
+    int frequency(Object key) {
+        int hash = key.hashCode();
+        int frequency = MAX_COUNT;
+
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, this.table[i][this.indexOf(hash, i)]);
+        }
+        return frequency;
+    }
+
+    /**
+     * Halve every counter so old popularity decays.
+     */
+    private void reset() {
+        for (int[] row : this.table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+        this.additions /= 2;
+    }
+
+    private int indexOf(int hash, int depth) {
+        int h = (hash + SEEDS[depth]) * SEEDS[depth];
+        h ^= h >>> 16;
+        return h & this.mask;
+    }
+}
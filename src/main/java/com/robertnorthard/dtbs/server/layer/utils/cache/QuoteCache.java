@@ -0,0 +1,126 @@
+package com.robertnorthard.dtbs.server.layer.utils.cache;
+
+import com.robertnorthard.dtbs.server.configuration.ConfigService;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.QuoteDto;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Singleton;
+
+/**
+ * In memory cache of route and fare quotes by quote id, so a booking can
+ * reuse the route quoted to the passenger instead of requesting it from
+ * Google again. Quotes expire after dtbs.server.quote.ttl.minutes, five
+ * minutes by default.
+ *
+ * @author robertnorthard
+ */
+@Singleton
+public class QuoteCache {
+
+    /**
+     * Maximum number of cached quotes.
+     */
+    public static final int MAXIMUM_SIZE = 10000;
+
+    private static final String TTL_PROPERTY = "dtbs.server.quote.ttl.minutes";
+    private static final long DEFAULT_TTL_MINUTES = 5;
+    private static final int QUOTE_ID_LENGTH = 16;
+
+    private final EntityCache<String, QuoteDto> quotes;
+    private final long ttlMillis;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Default constructor for class QuoteCache.
+     */
+    public QuoteCache() {
+        this(getConfiguredTtl(), TimeUnit.MINUTES);
+    }
+
+    /**
+     * Constructor for class QuoteCache.
+     *
+     * @param ttl time a quote is valid for.
+     * @param unit unit of ttl.
+     */
+    public QuoteCache(long ttl, TimeUnit unit) {
+        this.quotes = new EntityCache<>("quotes", MAXIMUM_SIZE, ttl, unit);
+        this.ttlMillis = unit.toMillis(ttl);
+    }
+
+    /**
+     * @return a new unguessable quote id.
+     */
+    public String nextQuoteId() {
+        byte[] id = new byte[QUOTE_ID_LENGTH];
+        this.random.nextBytes(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id);
+    }
+
+    /**
+     * @return time a quote created now expires in milliseconds.
+     */
+    public long nextExpiry() {
+        return System.currentTimeMillis() + this.ttlMillis;
+    }
+
+    /**
+     * Cache a quote.
+     *
+     * @param quote quote to cache.
+     */
+    public void put(QuoteDto quote) {
+        this.quotes.put(quote.getQuoteId(), EntityCopier.copy(quote), this.quotes.getStamp());
+    }
+
+    /**
+     * Return a copy of a quote if it has not expired and was made for the
+     * passenger and journey.
+     *
+     * @param quoteId id of quote.
+     * @param username username of passenger.
+     * @param startLocation requested start location.
+     * @param endLocation requested end location.
+     * @return a copy of the quote or null.
+     */
+    public QuoteDto get(String quoteId, String username, Location startLocation, Location endLocation) {
+        if (quoteId == null) {
+            return null;
+        }
+
+        QuoteDto quote = this.quotes.get(quoteId);
+
+        if (quote == null || !quote.matches(username, startLocation, endLocation)) {
+            return null;
+        }
+        return EntityCopier.copy(quote);
+    }
+
+    /**
+     * Remove a quote once used.
+     *
+     * @param quoteId id of quote.
+     */
+    public void invalidate(String quoteId) {
+        this.quotes.invalidate(quoteId);
+    }
+
+    /**
+     * @return cache statistics.
+     */
+    public CacheStats getStats() {
+        return this.quotes.getStats();
+    }
+
+    private static long getConfiguredTtl() {
+        Properties properties = ConfigService.getConfig("application.properties");
+
+        if (properties != null && properties.getProperty(TTL_PROPERTY) != null) {
+            return Long.parseLong(properties.getProperty(TTL_PROPERTY));
+        }
+        return DEFAULT_TTL_MINUTES;
+    }
+}
@@ -0,0 +1,57 @@
+package com.robertnorthard.dtbs.server.layer.utils.gcm;
+
+/**
+ * A notification that could not be delivered.
+ *
+ * @author robertnorthard
+ */
+public class DeadLetter {
+
+    private final Notification notification;
+    private final String reason;
+    private final int attempts;
+    private final long failedAt;
+
+    /**
+     * Constructor for class DeadLetter.
+     *
+     * @param notification notification that could not be delivered.
+     * @param reason reason for the last failure.
+     * @param attempts number of delivery attempts made.
+     * @param failedAt time delivery was abandoned in milliseconds.
+     */
+    public DeadLetter(Notification notification, String reason, int attempts, long failedAt) {
+        this.notification = notification;
+        this.reason = reason;
+        this.attempts = attempts;
+        this.failedAt = failedAt;
+    }
+
+    /**
+     * @return the notification
+     */
+    public Notification getNotification() {
+        return this.notification;
+    }
+
+    /**
+     * @return the reason
+     */
+    public String getReason() {
+        return this.reason;
+    }
+
+    /**
+     * @return the attempts
+     */
+    public int getAttempts() {
+        return this.attempts;
+    }
+
+    /**
+     * @return the failedAt
+     */
+    public long getFailedAt() {
+        return this.failedAt;
+    }
+}
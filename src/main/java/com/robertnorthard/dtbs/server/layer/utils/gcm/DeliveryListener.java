@@ -0,0 +1,20 @@
+package com.robertnorthard.dtbs.server.layer.utils.gcm;
+
+/**
+ * Notified when the notification dispatcher has finished with a
+ * notification.
+ *
+ * @author robertnorthard
+ */
+public interface DeliveryListener {
+
+    /**
+     * Called once a notification has been delivered or abandoned. Called on
+     * a dispatcher thread, so must not block.
+     *
+     * @param notification notification dispatched.
+     * @param result outcome of the last attempt. RETRY if the notification
+     * was abandoned after transient failures and may be sent again later.
+     */
+    void onComplete(Notification notification, DeliveryResult result);
+}
@@ -0,0 +1,101 @@
+package com.robertnorthard.dtbs.server.layer.utils.gcm;
+
+import java.util.List;
+
+/**
+ * Outcome of a single attempt to send a notification.
+ *
+ * @author robertnorthard
+ */
+public class DeliveryResult {
+
+    /**
+     * Delivery status.
+     */
+    public enum Status {
+
+        // accepted by Google Cloud Messenger.
+        DELIVERED,
+        // replaced by a later notification with the same collapse key
+        // before it was sent.
+        SUPERSEDED,
+        // failed with a transient error, may be retried.
+        RETRY,
+        // failed with a permanent error, must not be retried.
+        FAILED
+    }
+
+    private static final DeliveryResult DELIVERED = new DeliveryResult(Status.DELIVERED, null, null);
+    private static final DeliveryResult SUPERSEDED = new DeliveryResult(Status.SUPERSEDED, null, null);
+
+    private final Status status;
+    private final String reason;
+    private final List<String> retryRegistrationIds;
+
+    private DeliveryResult(Status status, String reason, List<String> retryRegistrationIds) {
+        this.status = status;
+        this.reason = reason;
+        this.retryRegistrationIds = retryRegistrationIds;
+    }
+
+    /**
+     * @return a successful delivery result.
+     */
+    public static DeliveryResult delivered() {
+        return DELIVERED;
+    }
+
+    /**
+     * @return a result for a notification replaced before it was sent.
+     */
+    public static DeliveryResult superseded() {
+        return SUPERSEDED;
+    }
+
+    /**
+     * @param reason reason for failure.
+     * @return a transient failure result, retrying every device.
+     */
+    public static DeliveryResult retry(String reason) {
+        return new DeliveryResult(Status.RETRY, reason, null);
+    }
+
+    /**
+     * @param reason reason for failure.
+     * @param registrationIds registration ids of the devices to retry.
+     * @return a transient failure result, retrying only the given devices.
+     */
+    public static DeliveryResult retry(String reason, List<String> registrationIds) {
+        return new DeliveryResult(Status.RETRY, reason, registrationIds);
+    }
+
+    /**
+     * @param reason reason for failure.
+     * @return a permanent failure result.
+     */
+    public static DeliveryResult failed(String reason) {
+        return new DeliveryResult(Status.FAILED, reason, null);
+    }
+
+    /**
+     * @return the status
+     */
+    public Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * @return the reason
+     */
+    public String getReason() {
+        return this.reason;
+    }
+
+    /**
+     * @return registration ids of the devices to retry, null to retry every
+     * device.
+     */
+    public List<String> getRetryRegistrationIds() {
+        return this.retryRegistrationIds;
+    }
+}
@@ -1,12 +1,19 @@
 package com.robertnorthard.dtbs.server.layer.utils.gcm;
 
-import com.google.android.gcm.server.Message;
+import com.google.android.gcm.server.Constants;
+import com.google.android.gcm.server.InvalidRequestException;
+import com.google.android.gcm.server.MulticastResult;
 import com.google.android.gcm.server.Result;
 import com.google.android.gcm.server.Sender;
 import com.robertnorthard.dtbs.server.configuration.ConfigService;
 import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
 import com.robertnorthard.dtbs.server.layer.utils.encryption.EncryptedProperties;
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,40 +23,93 @@ import java.util.logging.Logger;
  * @author robertnorthard
  */
 public class GcmClient {
-    
-    private static final int GCM_SEND_RETRIES = 10;   
+
+    private static final Logger LOGGER = Logger.getLogger(GcmClient.class.getName());
+
+    private static final String ENDPOINT_PROPERTY = "dtbs.server.gcm.endpoint";
     
     // Google cloud messenger API key
-    private String gcmApiKey;
+    private volatile String gcmApiKey;
+
+    // URL messages are posted to, a local stub server when benchmarking.
+    private final String endpoint;
+
+    // reused for every message sent by this client.
+    private volatile Sender sender;
    
     private DataMapper dataMapper;
+
+    private NotificationDispatcher dispatcher;
     
     /**
      * Default constructor for class GcmClient.
      * Reads Google Cloud Messenger API key from application.properties 
-     * on the Java class path.
+     * on the Java class path. Messages are sent by the shared notification
+     * dispatcher.
      */
     public GcmClient(){
-        this.gcmApiKey = new EncryptedProperties(ConfigService
-                .getConfig("application.properties"))
-                .getKey("google.gcm.api.key");
-        
+        this.gcmApiKey = GcmClient.getConfiguredApiKey();
+        this.endpoint = GcmClient.getConfiguredEndpoint();
         this.dataMapper = DataMapper.getInstance();
+        this.dispatcher = NotificationDispatcher.getInstance();
     }
     
     /**
-     * Constructor for GcmClient.
+     * Constructor for GcmClient. Messages are sent by a dispatcher dedicated
+     * to this client, created when the first message is sent.
      * 
      * @param gcmApiKey Google Cloud Messenger API key.
      * @param datamapper data mapper for object to JSON conversion. 
      */
     public GcmClient(String gcmApiKey, DataMapper datamapper){
+        this(gcmApiKey, Constants.GCM_SEND_ENDPOINT, datamapper);
+    }
+
+    /**
+     * Constructor for GcmClient posting messages to the given URL, such as a
+     * local stub server. Messages are sent by a dispatcher dedicated to this
+     * client, created when the first message is sent.
+     *
+     * @param gcmApiKey Google Cloud Messenger API key.
+     * @param endpoint URL messages are posted to.
+     * @param datamapper data mapper for object to JSON conversion.
+     */
+    public GcmClient(String gcmApiKey, String endpoint, DataMapper datamapper){
         this.gcmApiKey = gcmApiKey;
+        this.endpoint = endpoint;
         this.dataMapper = datamapper;
     }
+
+    /**
+     * Return the Google Cloud Messenger API key from application.properties.
+     *
+     * @return the Google Cloud Messenger API key.
+     */
+    static String getConfiguredApiKey() {
+        return new EncryptedProperties(ConfigService
+                .getConfig("application.properties"))
+                .getKey("google.gcm.api.key");
+    }
+
+    /**
+     * Return the URL messages are posted to from application.properties
+     * (dtbs.server.gcm.endpoint), defaulting to Google Cloud Messenger.
+     *
+     * @return the URL messages are posted to.
+     */
+    static String getConfiguredEndpoint() {
+        Properties properties = ConfigService.getConfig("application.properties");
+
+        if (properties != null && properties.getProperty(ENDPOINT_PROPERTY) != null) {
+            return properties.getProperty(ENDPOINT_PROPERTY);
+        }
+        return Constants.GCM_SEND_ENDPOINT;
+    }
     
     /**
-     * Send messenger to a Google Cloud Messenger connected device.
+     * Send messenger to a Google Cloud Messenger connected device. The
+     * message is queued and sent asynchronously, so this method returns
+     * without waiting for Google Cloud Messenger.
      * 
      * @param status status to send alongside message.
      * @param eventType notification type.
@@ -57,25 +117,156 @@ public class GcmClient {
      * @param gcmRegistrationId Google Cloud Messenger registration id of device. 
      */
     public void sendMessage(String status, String eventType, Object object, String gcmRegistrationId){
-        Sender sender = new Sender(this.gcmApiKey);
-        Message outboundMessage = new Message.Builder()
-                .addData("status", status)
-                .addData("event", eventType)
-                .addData("data", this.dataMapper.getObjectAsJson(object))
-                .build();
+        this.sendMessage(status, eventType, object, Collections.singletonList(gcmRegistrationId));
+    }
+
+    /**
+     * Send the same message to many Google Cloud Messenger connected devices.
+     * The object is serialized once and the devices are sent multicast
+     * requests of up to NotificationDispatcher.MULTICAST_LIMIT devices.
+     *
+     * @param status status to send alongside message.
+     * @param eventType notification type.
+     * @param object object to encapsulate as JSON and send.
+     * @param gcmRegistrationIds Google Cloud Messenger registration ids of
+     * devices.
+     */
+    public void sendMessage(String status, String eventType, Object object, List<String> gcmRegistrationIds){
+        this.getDispatcher().dispatch(new Notification(null, null, status, eventType,
+                this.dataMapper.getObjectAsJson(object), gcmRegistrationIds));
+    }
+
+    /**
+     * Send a notification. The notification is queued and sent
+     * asynchronously.
+     *
+     * @param notification notification to send.
+     */
+    public void sendNotification(Notification notification){
+        this.getDispatcher().dispatch(notification);
+    }
+
+    /**
+     * Make a single multicast request to send a notification to each of its
+     * devices. If some devices fail with a transient error only those
+     * devices are retried.
+     *
+     * @param notification notification to send.
+     * @return outcome of the attempt.
+     */
+    public DeliveryResult deliver(Notification notification) {
+        List<String> registrationIds = notification.getRegistrationIds();
+        MulticastResult result;
+
         try {
-            Result result = sender.send(outboundMessage, gcmRegistrationId, GcmClient.GCM_SEND_RETRIES);
-        } catch (Exception ex) {
-            Logger.getLogger(GcmClient.class.getName()).log(Level.SEVERE, null, ex);
+            result = this.getSender().sendNoRetry(notification.toMessage(), registrationIds);
+        } catch (InvalidRequestException ex) {
+            if (ex.getHttpStatusCode() >= 500) {
+                return DeliveryResult.retry(ex.getMessage());
+            }
+            return DeliveryResult.failed(ex.getMessage());
+        } catch (IOException ex) {
+            return DeliveryResult.retry(ex.getMessage());
+        }
+
+        if (result == null) {
+            return DeliveryResult.retry("No response from Google Cloud Messenger.");
+        }
+
+        List<Result> results = result.getResults();
+        List<String> retry = new ArrayList<>();
+        String error = null;
+        int failed = 0;
+
+        for (int i = 0; i < results.size(); i++) {
+            Result deviceResult = results.get(i);
+
+            if (deviceResult.getMessageId() == null) {
+                error = deviceResult.getErrorCodeName();
+
+                if (Constants.ERROR_UNAVAILABLE.equals(error)
+                        || Constants.ERROR_INTERNAL_SERVER_ERROR.equals(error)) {
+                    retry.add(registrationIds.get(i));
+                } else {
+                    failed++;
+                }
+            }
         }
+
+        if (failed > 0) {
+            LOGGER.log(Level.WARNING, "{0} of {1} devices rejected {2} notification, last error: {3}",
+                    new Object[]{failed, registrationIds.size(), notification.getEventType(), error});
+        }
+
+        if (!retry.isEmpty()) {
+            return DeliveryResult.retry(error, retry);
+        }
+        if (failed == registrationIds.size()) {
+            return DeliveryResult.failed(error);
+        }
+        return DeliveryResult.delivered();
     }
 
     /**
-     * Set Google Cloud Messenger API key.
+     * Set Google Cloud Messenger API key. The shared notification dispatcher
+     * sends with the configured key, so a client using it switches to a
+     * dispatcher dedicated to this client.
      * 
      * @param gcmApiKey Google Cloud Messenger API key. 
      */
-    public void setGcmApiKey(String gcmApiKey) {
+    public synchronized void setGcmApiKey(String gcmApiKey) {
         this.gcmApiKey = gcmApiKey;
+        this.sender = null;
+
+        if (this.dispatcher == NotificationDispatcher.getInstance()) {
+            this.dispatcher = null;
+        }
+    }
+
+    /**
+     * Stop the dispatcher dedicated to this client, if any. The shared
+     * notification dispatcher is left running.
+     */
+    public synchronized void shutdown() {
+        if (this.dispatcher != null && this.dispatcher != NotificationDispatcher.getInstance()) {
+            this.dispatcher.shutdown();
+            this.dispatcher = null;
+        }
+    }
+
+    private Sender getSender() {
+        Sender current = this.sender;
+        if (current == null) {
+            current = Constants.GCM_SEND_ENDPOINT.equals(this.endpoint)
+                    ? new Sender(this.gcmApiKey)
+                    : new EndpointSender(this.gcmApiKey, this.endpoint);
+            this.sender = current;
+        }
+        return current;
+    }
+
+    private synchronized NotificationDispatcher getDispatcher() {
+        if (this.dispatcher == null) {
+            this.dispatcher = NotificationDispatcher.create(this);
+        }
+        return this.dispatcher;
+    }
+
+    /**
+     * Sender posting messages to a URL other than Google Cloud Messenger.
+     */
+    private static class EndpointSender extends Sender {
+
+        private final String endpoint;
+
+        EndpointSender(String key, String endpoint) {
+            super(key);
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        protected HttpURLConnection getConnection(String url) throws IOException {
+            return super.getConnection(this.endpoint);
+        }
     }
 }
@@ -0,0 +1,154 @@
+package com.robertnorthard.dtbs.server.layer.utils.gcm;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.android.gcm.server.Message;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a push notification waiting to be sent to one or more Google
+ * Cloud Messenger connected devices. The payload is serialized when the
+ * notification is created so later changes to the source object are not
+ * sent.
+ *
+ * @author robertnorthard
+ */
+public class Notification {
+
+    private final String key;
+    private final String collapseKey;
+    private final String status;
+    private final String eventType;
+    private final String data;
+    private final List<String> registrationIds;
+    private final long createdAt;
+
+    /**
+     * Constructor for class Notification.
+     *
+     * @param status status to send alongside message.
+     * @param eventType notification type.
+     * @param data JSON payload.
+     * @param registrationId Google Cloud Messenger registration id of device.
+     */
+    public Notification(String status, String eventType, String data, String registrationId) {
+        this(null, null, status, eventType, data, Collections.singletonList(registrationId));
+    }
+
+    /**
+     * Constructor for class Notification.
+     *
+     * @param key unique key identifying the notification, sent to the device
+     * so repeated deliveries can be ignored. May be null.
+     * @param collapseKey key of notifications that replace each other, only
+     * the latest notification with the same collapse key is sent to a device.
+     * May be null.
+     * @param status status to send alongside message.
+     * @param eventType notification type.
+     * @param data JSON payload.
+     * @param registrationIds Google Cloud Messenger registration ids of
+     * devices.
+     */
+    public Notification(String key, String collapseKey, String status, String eventType,
+            String data, List<String> registrationIds) {
+        this(key, collapseKey, status, eventType, data,
+                Collections.unmodifiableList(new ArrayList<>(registrationIds)),
+                System.currentTimeMillis());
+    }
+
+    private Notification(String key, String collapseKey, String status, String eventType,
+            String data, List<String> registrationIds, long createdAt) {
+        this.key = key;
+        this.collapseKey = collapseKey;
+        this.status = status;
+        this.eventType = eventType;
+        this.data = data;
+        this.registrationIds = registrationIds;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Return a copy of the notification sent to a subset of its devices.
+     *
+     * @param registrationIds Google Cloud Messenger registration ids of
+     * devices.
+     * @return a copy of the notification for the given devices.
+     */
+    public Notification withRegistrationIds(List<String> registrationIds) {
+        return new Notification(this.key, this.collapseKey, this.status, this.eventType,
+                this.data, Collections.unmodifiableList(new ArrayList<>(registrationIds)),
+                this.createdAt);
+    }
+
+    /**
+     * Build a Google Cloud Messenger message for the notification.
+     *
+     * @return a Google Cloud Messenger message.
+     */
+    public Message toMessage() {
+        Message.Builder builder = new Message.Builder()
+                .addData("status", this.status)
+                .addData("event", this.eventType)
+                .addData("data", this.data);
+
+        if (this.key != null) {
+            builder.addData("key", this.key);
+        }
+        if (this.collapseKey != null) {
+            builder.collapseKey(this.collapseKey);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the key, null if the notification has no key.
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    /**
+     * @return the collapseKey, null if the notification has no collapse key.
+     */
+    public String getCollapseKey() {
+        return this.collapseKey;
+    }
+
+    /**
+     * @return the status
+     */
+    public String getStatus() {
+        return this.status;
+    }
+
+    /**
+     * @return the eventType
+     */
+    public String getEventType() {
+        return this.eventType;
+    }
+
+    /**
+     * @return the data
+     */
+    @JsonIgnore
+    public String getData() {
+        return this.data;
+    }
+
+    /**
+     * @return the registrationIds
+     */
+    @JsonIgnore
+    public List<String> getRegistrationIds() {
+        return this.registrationIds;
+    }
+
+    /**
+     * @return time the notification was created in milliseconds.
+     */
+    public long getCreatedAt() {
+        return this.createdAt;
+    }
+}
@@ -0,0 +1,460 @@
+package com.robertnorthard.dtbs.server.layer.utils.gcm;
+
+import com.robertnorthard.dtbs.server.configuration.ConfigService;
+import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends push notifications asynchronously so callers are not held up by
+ * Google Cloud Messenger. Notifications are queued and sent by a small
+ * worker pool (dtbs.server.gcm.threads, default 2) sharing one sender. The
+ * number of queued notifications is limited (dtbs.server.gcm.queue, default
+ * 1000) and notifications dispatched when the queue is full are dropped.
+ *
+ * A notification for many devices is sent as multicast requests of up to
+ * MULTICAST_LIMIT devices. A notification for one device with a collapse
+ * key replaces a queued notification for the same device and collapse key
+ * that has not been sent yet, so only the latest is sent.
+ *
+ * Transient failures are retried with exponential backoff and jitter, up to
+ * dtbs.server.gcm.attempts attempts (default 5), without holding a worker
+ * between attempts. Only the devices that failed are retried. Notifications
+ * that cannot be delivered are kept in a bounded dead letter list.
+ *
+ * Dispatchers created from configuration, including the shared instance,
+ * are shut down together by shutdownAll when the application is undeployed.
+ *
+ * @author robertnorthard
+ */
+public class NotificationDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(NotificationDispatcher.class.getName());
+
+    private static final String THREADS_PROPERTY = "dtbs.server.gcm.threads";
+    private static final String QUEUE_PROPERTY = "dtbs.server.gcm.queue";
+    private static final String ATTEMPTS_PROPERTY = "dtbs.server.gcm.attempts";
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE = 1000;
+    private static final int DEFAULT_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Maximum number of devices in a single multicast request.
+     */
+    public static final int MULTICAST_LIMIT = 1000;
+
+    /**
+     * Maximum number of dead letters kept, oldest are discarded first.
+     */
+    public static final int MAX_DEAD_LETTERS = 100;
+
+    // dispatchers created from configuration, shut down on undeploy.
+    private static final Set<NotificationDispatcher> CREATED = Collections.newSetFromMap(
+            new ConcurrentHashMap<NotificationDispatcher, Boolean>());
+
+    private final GcmClient gcmClient;
+    private final ScheduledThreadPoolExecutor executor;
+    private final int queueLimit;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+
+    private final Deque<DeadLetter> deadLetters = new ArrayDeque<>();
+    // queued single device notifications by collapse key and device.
+    private final ConcurrentMap<String, Delivery> collapsible = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+    /**
+     * Constructor for class NotificationDispatcher.
+     *
+     * @param gcmClient client used to send each notification.
+     * @param threads number of worker threads.
+     * @param queueLimit maximum number of queued notifications, including
+     * those waiting for a retry.
+     * @param maxAttempts maximum number of delivery attempts.
+     * @param initialBackoffMillis delay before the first retry, doubled for
+     * each further retry.
+     */
+    NotificationDispatcher(GcmClient gcmClient, int threads, int queueLimit,
+            int maxAttempts, long initialBackoffMillis) {
+        this.gcmClient = gcmClient;
+        this.queueLimit = queueLimit;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "gcm-dispatcher-" + this.count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * @return a shared instance of the notification dispatcher.
+     */
+    public static NotificationDispatcher getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Queue a notification for delivery and return immediately.
+     *
+     * @param notification notification to send.
+     * @return true if the notification was queued, false if it was dropped
+     * as the queue is full.
+     */
+    public boolean dispatch(Notification notification) {
+        return this.dispatch(notification, null);
+    }
+
+    /**
+     * Queue a notification for delivery and return immediately. The
+     * listener is called once for each multicast request the notification
+     * is split into, when the request has been delivered, superseded or
+     * abandoned. It is not called if the notification is dropped.
+     *
+     * @param notification notification to send.
+     * @param listener listener notified of the outcome, may be null.
+     * @return true if the notification was queued, false if it was dropped
+     * as the queue is full.
+     */
+    public boolean dispatch(Notification notification, DeliveryListener listener) {
+        List<String> registrationIds = notification.getRegistrationIds();
+
+        if (registrationIds.size() > MULTICAST_LIMIT) {
+            boolean queued = true;
+            for (int i = 0; i < registrationIds.size(); i += MULTICAST_LIMIT) {
+                queued &= this.dispatch(notification.withRegistrationIds(registrationIds.subList(
+                        i, Math.min(i + MULTICAST_LIMIT, registrationIds.size()))), listener);
+            }
+            return queued;
+        }
+
+        String collapsibleKey = NotificationDispatcher.collapsibleKey(notification);
+        if (collapsibleKey != null) {
+            Delivery queued = this.collapsible.get(collapsibleKey);
+
+            if (queued != null && queued.replace(notification, listener)) {
+                this.coalesced.incrementAndGet();
+                return true;
+            }
+        }
+
+        if (this.pending.incrementAndGet() > this.queueLimit) {
+            this.pending.decrementAndGet();
+            this.rejected.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Notification queue full, dropping {0} notification.",
+                    notification.getEventType());
+            return false;
+        }
+
+        Delivery delivery = new Delivery(notification, listener, collapsibleKey);
+        if (collapsibleKey != null) {
+            this.collapsible.put(collapsibleKey, delivery);
+        }
+        this.schedule(delivery, 0);
+        return true;
+    }
+
+    /**
+     * Stop the worker threads. Notifications already due are sent, retries
+     * waiting for their backoff and later notifications are abandoned.
+     */
+    public void shutdown() {
+        CREATED.remove(this);
+        this.executor.shutdown();
+    }
+
+    /**
+     * Shut down every dispatcher created from configuration, including the
+     * shared instance and those dedicated to a GcmClient.
+     */
+    public static void shutdownAll() {
+        for (NotificationDispatcher dispatcher : new ArrayList<>(CREATED)) {
+            dispatcher.shutdown();
+        }
+    }
+
+    /**
+     * @return the most recent notifications that could not be delivered,
+     * oldest first.
+     */
+    public List<DeadLetter> getDeadLetters() {
+        synchronized (this.deadLetters) {
+            return new ArrayList<>(this.deadLetters);
+        }
+    }
+
+    /**
+     * @return point in time statistics for the dispatcher.
+     */
+    public NotificationStats getStats() {
+        long count = this.delivered.get();
+
+        return new NotificationStats(this.pending.get(), count,
+                this.retried.get(), this.failed.get(), this.rejected.get(), this.coalesced.get(),
+                count == 0 ? 0 : this.totalLatencyMillis.get() / count,
+                this.maxLatencyMillis.get());
+    }
+
+    /**
+     * Return the key notifications replacing each other are queued by, the
+     * collapse key and device. Null unless the notification is for a single
+     * device and has a collapse key.
+     *
+     * @param notification notification.
+     * @return the key or null.
+     */
+    private static String collapsibleKey(Notification notification) {
+        if (notification.getCollapseKey() == null || notification.getRegistrationIds().size() != 1) {
+            return null;
+        }
+        return notification.getCollapseKey() + "|" + notification.getRegistrationIds().get(0);
+    }
+
+    private void schedule(Delivery delivery, long delayMillis) {
+        try {
+            this.executor.schedule(delivery, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            this.abandon(delivery, DeliveryResult.retry("Dispatcher shut down."));
+        }
+    }
+
+    /**
+     * Return the delay before the next attempt: exponential backoff with
+     * jitter so retries after an outage are spread out.
+     *
+     * @param attempts number of attempts made.
+     * @return delay in milliseconds.
+     */
+    private long backoff(int attempts) {
+        long delay = Math.min(MAX_BACKOFF_MILLIS,
+                this.initialBackoffMillis << Math.min(attempts - 1, 20));
+
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private void complete(Delivery delivery) {
+        this.delivered.incrementAndGet();
+
+        long latency = System.currentTimeMillis() - delivery.notification.getCreatedAt();
+        this.totalLatencyMillis.addAndGet(latency);
+
+        long max = this.maxLatencyMillis.get();
+        while (latency > max && !this.maxLatencyMillis.compareAndSet(max, latency)) {
+            max = this.maxLatencyMillis.get();
+        }
+        this.pending.decrementAndGet();
+        this.notify(delivery, DeliveryResult.delivered());
+    }
+
+    private void abandon(Delivery delivery, DeliveryResult result) {
+        String reason = result.getReason();
+        this.failed.incrementAndGet();
+
+        LOGGER.log(Level.WARNING, "Notification {0} not delivered after {1} attempts: {2}",
+                new Object[]{delivery.notification.getEventType(), delivery.attempts, reason});
+
+        synchronized (this.deadLetters) {
+            if (this.deadLetters.size() == MAX_DEAD_LETTERS) {
+                this.deadLetters.removeFirst();
+            }
+            this.deadLetters.addLast(new DeadLetter(delivery.notification, reason,
+                    delivery.attempts, System.currentTimeMillis()));
+        }
+        this.pending.decrementAndGet();
+        this.notify(delivery, result);
+    }
+
+    private void notify(Delivery delivery, DeliveryResult result) {
+        if (delivery.listener != null) {
+            try {
+                delivery.listener.onComplete(delivery.notification, result);
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Create a dispatcher from application configuration.
+     *
+     * @param gcmClient client used to send each notification.
+     * @return a notification dispatcher.
+     */
+    static NotificationDispatcher create(GcmClient gcmClient) {
+        Properties properties = ConfigService.getConfig("application.properties");
+        int threads = DEFAULT_THREADS;
+        int queue = DEFAULT_QUEUE;
+        int attempts = DEFAULT_ATTEMPTS;
+
+        if (properties != null && properties.getProperty(THREADS_PROPERTY) != null) {
+            threads = Integer.parseInt(properties.getProperty(THREADS_PROPERTY));
+        }
+        if (properties != null && properties.getProperty(QUEUE_PROPERTY) != null) {
+            queue = Integer.parseInt(properties.getProperty(QUEUE_PROPERTY));
+        }
+        if (properties != null && properties.getProperty(ATTEMPTS_PROPERTY) != null) {
+            attempts = Integer.parseInt(properties.getProperty(ATTEMPTS_PROPERTY));
+        }
+
+        NotificationDispatcher dispatcher = new NotificationDispatcher(
+                gcmClient, threads, queue, attempts, INITIAL_BACKOFF_MILLIS);
+        CREATED.add(dispatcher);
+        return dispatcher;
+    }
+
+    /**
+     * A notification and the number of attempts made to send it. Until an
+     * attempt starts the notification may be replaced by a later one with
+     * the same collapse key.
+     */
+    private class Delivery implements Runnable {
+
+        private final String collapsibleKey;
+        private Notification notification;
+        private DeliveryListener listener;
+        private boolean sending;
+        private int attempts;
+
+        Delivery(Notification notification, DeliveryListener listener, String collapsibleKey) {
+            this.notification = notification;
+            this.listener = listener;
+            this.collapsibleKey = collapsibleKey;
+        }
+
+        /**
+         * Replace the notification if an attempt is not in progress. The
+         * listener of the replaced notification is told it was superseded.
+         *
+         * @param notification later notification.
+         * @param listener listener of the later notification.
+         * @return true if the notification was replaced.
+         */
+        boolean replace(Notification notification, DeliveryListener listener) {
+            Notification previous;
+            DeliveryListener previousListener;
+
+            synchronized (this) {
+                if (this.sending) {
+                    return false;
+                }
+                previous = this.notification;
+                previousListener = this.listener;
+                this.notification = notification;
+                this.listener = listener;
+            }
+
+            if (previousListener != null) {
+                try {
+                    previousListener.onComplete(previous, DeliveryResult.superseded());
+                } catch (RuntimeException ex) {
+                    LOGGER.log(Level.SEVERE, null, ex);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            Notification current;
+            synchronized (this) {
+                this.sending = true;
+                current = this.notification;
+            }
+
+            if (this.collapsibleKey != null) {
+                NotificationDispatcher.this.collapsible.remove(this.collapsibleKey, this);
+            }
+
+            this.attempts++;
+            DeliveryResult result;
+
+            try {
+                result = NotificationDispatcher.this.gcmClient.deliver(current);
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
+                result = DeliveryResult.failed(ex.toString());
+            }
+
+            if (result.getStatus() == DeliveryResult.Status.DELIVERED) {
+                NotificationDispatcher.this.complete(this);
+            } else if (result.getStatus() == DeliveryResult.Status.RETRY
+                    && this.attempts < NotificationDispatcher.this.maxAttempts) {
+                this.retry(result);
+            } else {
+                NotificationDispatcher.this.abandon(this, result);
+            }
+        }
+
+        /**
+         * Schedule the next attempt for the devices that failed. While
+         * waiting the notification may be replaced again, unless a later
+         * notification was queued during the attempt, which supersedes this
+         * one.
+         *
+         * @param result result of the failed attempt.
+         */
+        private void retry(DeliveryResult result) {
+            synchronized (this) {
+                if (result.getRetryRegistrationIds() != null) {
+                    this.notification = this.notification.withRegistrationIds(
+                            result.getRetryRegistrationIds());
+                }
+                this.sending = false;
+            }
+
+            if (this.collapsibleKey != null
+                    && NotificationDispatcher.this.collapsible.putIfAbsent(this.collapsibleKey, this) != null) {
+                NotificationDispatcher.this.coalesced.incrementAndGet();
+                NotificationDispatcher.this.pending.decrementAndGet();
+                NotificationDispatcher.this.notify(this, DeliveryResult.superseded());
+                return;
+            }
+
+            NotificationDispatcher.this.retried.incrementAndGet();
+            NotificationDispatcher.this.schedule(this,
+                    NotificationDispatcher.this.backoff(this.attempts));
+        }
+    }
+
+    /**
+     * Lazily created shared instance.
+     */
+    private static class Holder {
+
+        private static final NotificationDispatcher INSTANCE = NotificationDispatcher.create(
+                new GcmClient(GcmClient.getConfiguredApiKey(),
+                        GcmClient.getConfiguredEndpoint(), DataMapper.getInstance()));
+    }
+}
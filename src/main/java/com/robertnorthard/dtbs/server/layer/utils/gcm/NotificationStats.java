@@ -0,0 +1,101 @@
+package com.robertnorthard.dtbs.server.layer.utils.gcm;
+
+/**
+ * Point in time statistics for the notification dispatcher.
+ *
+ * @author robertnorthard
+ */
+public class NotificationStats {
+
+    private final int pending;
+    private final long delivered;
+    private final long retried;
+    private final long failed;
+    private final long rejected;
+    private final long coalesced;
+    private final long averageLatencyMillis;
+    private final long maxLatencyMillis;
+
+    /**
+     * Constructor for class NotificationStats.
+     *
+     * @param pending number of notifications queued or waiting for a retry.
+     * @param delivered number of notifications delivered.
+     * @param retried number of delivery attempts retried.
+     * @param failed number of notifications moved to the dead letter list.
+     * @param rejected number of notifications rejected as the queue was full.
+     * @param coalesced number of notifications replaced by a later
+     * notification before they were sent.
+     * @param averageLatencyMillis average time from dispatch to delivery in
+     * milliseconds.
+     * @param maxLatencyMillis maximum time from dispatch to delivery in
+     * milliseconds.
+     */
+    public NotificationStats(int pending, long delivered, long retried, long failed,
+            long rejected, long coalesced, long averageLatencyMillis, long maxLatencyMillis) {
+        this.pending = pending;
+        this.delivered = delivered;
+        this.retried = retried;
+        this.failed = failed;
+        this.rejected = rejected;
+        this.coalesced = coalesced;
+        this.averageLatencyMillis = averageLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * @return the pending
+     */
+    public int getPending() {
+        return this.pending;
+    }
+
+    /**
+     * @return the delivered
+     */
+    public long getDelivered() {
+        return this.delivered;
+    }
+
+    /**
+     * @return the retried
+     */
+    public long getRetried() {
+        return this.retried;
+    }
+
+    /**
+     * @return the failed
+     */
+    public long getFailed() {
+        return this.failed;
+    }
+
+    /**
+     * @return the rejected
+     */
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    /**
+     * @return the coalesced
+     */
+    public long getCoalesced() {
+        return this.coalesced;
+    }
+
+    /**
+     * @return the averageLatencyMillis
+     */
+    public long getAverageLatencyMillis() {
+        return this.averageLatencyMillis;
+    }
+
+    /**
+     * @return the maxLatencyMillis
+     */
+    public long getMaxLatencyMillis() {
+        return this.maxLatencyMillis;
+    }
+}
@@ -0,0 +1,315 @@
+package com.robertnorthard.dtbs.server.layer.utils.geocoding;
+
+import com.robertnorthard.dtbs.server.configuration.ConfigService;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCache;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCacheRegistry;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of forward geocoding and address search results by address text.
+ * Address text is normalized before lookup so input differing only in case,
+ * whitespace, punctuation or postcode spacing shares an entry. Addresses not
+ * found are cached for a shorter time.
+ *
+ * Found results may be saved to a file and loaded on restart. Statistics are
+ * reported with the entity caches.
+ *
+ * Configured by dtbs.server.geocode.search.ttl.hours (default 168),
+ * dtbs.server.geocode.search.negative.ttl.minutes (default 60),
+ * dtbs.server.geocode.search.size (default 10000) and
+ * dtbs.server.geocode.search.file (default none, results not saved).
+ *
+ * @author robertnorthard
+ */
+public class AddressSearchCache {
+
+    /**
+     * Name of the cache of found results in cache statistics.
+     */
+    public static final String NAME = "Address search";
+
+    /**
+     * Name of the cache of addresses not found in cache statistics.
+     */
+    public static final String NOT_FOUND_NAME = "Address search not found";
+
+    private static final String TTL_PROPERTY = "dtbs.server.geocode.search.ttl.hours";
+    private static final String NEGATIVE_TTL_PROPERTY = "dtbs.server.geocode.search.negative.ttl.minutes";
+    private static final String SIZE_PROPERTY = "dtbs.server.geocode.search.size";
+    private static final String FILE_PROPERTY = "dtbs.server.geocode.search.file";
+    private static final long DEFAULT_TTL_HOURS = 168;
+    private static final long DEFAULT_NEGATIVE_TTL_MINUTES = 60;
+    private static final int DEFAULT_SIZE = 10000;
+
+    private static final String GEOCODE_PREFIX = "geocode|";
+    private static final String SEARCH_PREFIX = "search|";
+
+    private static final Pattern PUNCTUATION = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // UK postcode with or without the space before the inward code.
+    private static final Pattern POSTCODE = Pattern.compile(
+            "\\b([a-z]{1,2}[0-9][a-z0-9]?) ?([0-9][a-z]{2})\\b");
+
+    private final EntityCache<String, Serializable> found;
+    private final EntityCache<String, Boolean> notFound;
+    private final File file;
+
+    /**
+     * Constructor for class AddressSearchCache.
+     *
+     * @param found cache of found results.
+     * @param notFound cache of addresses not found.
+     * @param file file found results are saved to, null to not save.
+     */
+    AddressSearchCache(EntityCache<String, Serializable> found, EntityCache<String, Boolean> notFound,
+            File file) {
+        this.found = found;
+        this.notFound = notFound;
+        this.file = file;
+    }
+
+    /**
+     * @return a shared instance of the address search cache.
+     */
+    public static AddressSearchCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Normalize address text: lower case, punctuation replaced by spaces,
+     * whitespace collapsed and UK postcodes written with a single space
+     * before the inward code.
+     *
+     * @param address address text.
+     * @return normalized address text.
+     */
+    public static String normalize(String address) {
+        String normalized = PUNCTUATION.matcher(address.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+        return POSTCODE.matcher(normalized).replaceAll("$1 $2");
+    }
+
+    /**
+     * Return the cached location of an address.
+     *
+     * @param address address text.
+     * @return the cached result, with a null value if the address was not
+     * found, or null if not cached.
+     */
+    public Result<Location> getLocation(String address) {
+        Result<Serializable> result = this.get(GEOCODE_PREFIX + normalize(address));
+
+        if (result == null) {
+            return null;
+        }
+        return new Result<>(copy((Location) result.getValue()));
+    }
+
+    /**
+     * Cache the location of an address.
+     *
+     * @param address address text.
+     * @param location location of address, null if not found.
+     */
+    public void putLocation(String address, Location location) {
+        this.put(GEOCODE_PREFIX + normalize(address), copy(location));
+    }
+
+    /**
+     * Return the cached result of an address search.
+     *
+     * @param address address text.
+     * @return the cached result, with a null value if the address was not
+     * found, or null if not cached.
+     */
+    public Result<String> getAddress(String address) {
+        Result<Serializable> result = this.get(SEARCH_PREFIX + normalize(address));
+
+        if (result == null) {
+            return null;
+        }
+        return new Result<>((String) result.getValue());
+    }
+
+    /**
+     * Cache the result of an address search.
+     *
+     * @param address address text.
+     * @param formattedAddress address found, null if not found.
+     */
+    public void putAddress(String address, String formattedAddress) {
+        this.put(SEARCH_PREFIX + normalize(address), formattedAddress);
+    }
+
+    /**
+     * Save found results to the configured file with the time each expires.
+     * Does nothing if no file is configured.
+     *
+     * @throws IOException if the file cannot be written.
+     */
+    public void save() throws IOException {
+        if (this.file == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Map<String, Serializable> values = this.found.asMap();
+        HashMap<String, Long> expiries = new HashMap<>();
+
+        for (Map.Entry<String, Long> entry : this.found.getTimesToLive(TimeUnit.MILLISECONDS).entrySet()) {
+            if (values.containsKey(entry.getKey())) {
+                expiries.put(entry.getKey(), now + entry.getValue());
+            }
+        }
+        values.keySet().retainAll(expiries.keySet());
+
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(this.file))) {
+            out.writeObject(values);
+            out.writeObject(expiries);
+        }
+    }
+
+    /**
+     * Load found results from the configured file. Each result is served for
+     * the time it had left when saved and results that have since expired are
+     * not loaded. Nothing is loaded if no file is configured or the file does
+     * not exist.
+     *
+     * @return the number of results loaded.
+     * @throws IOException if the file cannot be read.
+     */
+    @SuppressWarnings("unchecked")
+    public int load() throws IOException {
+        if (this.file == null || !this.file.exists()) {
+            return 0;
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(this.file))) {
+            Map<String, Serializable> saved = (Map<String, Serializable>) in.readObject();
+            Map<String, Long> expiries = (Map<String, Long>) in.readObject();
+            long now = System.currentTimeMillis();
+            int loaded = 0;
+
+            for (Map.Entry<String, Serializable> entry : saved.entrySet()) {
+                Long expiresAt = expiries.get(entry.getKey());
+
+                if (expiresAt != null && expiresAt > now) {
+                    this.found.put(entry.getKey(), entry.getValue(), this.found.getStamp(),
+                            expiresAt - now, TimeUnit.MILLISECONDS);
+                    loaded++;
+                }
+            }
+            return loaded;
+        } catch (ClassNotFoundException | ClassCastException ex) {
+            throw new IOException("Invalid address search cache file.", ex);
+        }
+    }
+
+    /**
+     * Copy a location so callers cannot modify a cached result.
+     *
+     * @param location location to copy.
+     * @return a copy of location, null if location is null.
+     */
+    private static Location copy(Location location) {
+        if (location == null) {
+            return null;
+        }
+        return new Location(location.getLatitude(), location.getLongitude());
+    }
+
+    private Result<Serializable> get(String key) {
+        Serializable value = this.found.get(key);
+
+        if (value != null) {
+            return new Result<>(value);
+        }
+        if (this.notFound.get(key) != null) {
+            return new Result<>(null);
+        }
+        return null;
+    }
+
+    private void put(String key, Serializable value) {
+        if (value == null) {
+            this.notFound.put(key, Boolean.TRUE, this.notFound.getStamp());
+        } else {
+            this.notFound.invalidate(key);
+            this.found.put(key, value, this.found.getStamp());
+        }
+    }
+
+    /**
+     * Create the shared instance from application configuration.
+     *
+     * @return the shared address search cache.
+     */
+    private static AddressSearchCache create() {
+        Properties properties = ConfigService.getConfig("application.properties");
+
+        long ttl = DEFAULT_TTL_HOURS;
+        long negativeTtl = DEFAULT_NEGATIVE_TTL_MINUTES;
+        int size = DEFAULT_SIZE;
+        File file = null;
+
+        if (properties != null) {
+            if (properties.getProperty(TTL_PROPERTY) != null) {
+                ttl = Long.parseLong(properties.getProperty(TTL_PROPERTY));
+            }
+            if (properties.getProperty(NEGATIVE_TTL_PROPERTY) != null) {
+                negativeTtl = Long.parseLong(properties.getProperty(NEGATIVE_TTL_PROPERTY));
+            }
+            if (properties.getProperty(SIZE_PROPERTY) != null) {
+                size = Integer.parseInt(properties.getProperty(SIZE_PROPERTY));
+            }
+            if (properties.getProperty(FILE_PROPERTY) != null) {
+                file = new File(properties.getProperty(FILE_PROPERTY));
+            }
+        }
+
+        EntityCache<String, Serializable> found = EntityCacheRegistry.getCache(NAME, size, ttl, TimeUnit.HOURS);
+        EntityCache<String, Boolean> notFound = EntityCacheRegistry.getCache(
+                NOT_FOUND_NAME, size, negativeTtl, TimeUnit.MINUTES);
+        return new AddressSearchCache(found, notFound, file);
+    }
+
+    /**
+     * A cached result. The value is null if the address was not found.
+     *
+     * @param <V> type of result.
+     */
+    public static class Result<V> {
+
+        private final V value;
+
+        Result(V value) {
+            this.value = value;
+        }
+
+        /**
+         * @return the value, null if the address was not found.
+         */
+        public V getValue() {
+            return this.value;
+        }
+    }
+
+    /**
+     * Lazily created shared instance.
+     */
+    private static class Holder {
+
+        private static final AddressSearchCache INSTANCE = AddressSearchCache.create();
+    }
+}
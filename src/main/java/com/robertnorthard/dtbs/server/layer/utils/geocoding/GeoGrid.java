@@ -0,0 +1,59 @@
+package com.robertnorthard.dtbs.server.layer.utils.geocoding;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+
+/**
+ * Divides the earth's surface into cells of approximately equal size, so
+ * nearby coordinates can share a cache entry.
+ *
+ * @author robertnorthard
+ */
+public class GeoGrid {
+
+    private static final double METERS_PER_DEGREE = 111320;
+    // limits the width of grid cells near the poles.
+    private static final double MIN_COSINE = 0.01;
+
+    private final double latitudeStep;
+
+    /**
+     * Constructor for class GeoGrid.
+     *
+     * @param cellMeters size of a cell in meters.
+     * @throws IllegalArgumentException if cell size is not positive.
+     */
+    public GeoGrid(double cellMeters) {
+        if (cellMeters <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive.");
+        }
+        this.latitudeStep = cellMeters / METERS_PER_DEGREE;
+    }
+
+    /**
+     * Return the cell containing a location. Cells are cellMeters high and
+     * approximately cellMeters wide at the cell's latitude.
+     *
+     * @param location location.
+     * @return row and column of the cell.
+     */
+    public String cell(Location location) {
+        return this.cell(location.getLatitude(), location.getLongitude());
+    }
+
+    /**
+     * Return the cell containing a latitude and longitude.
+     *
+     * @param latitude latitude.
+     * @param longitude longitude.
+     * @return row and column of the cell.
+     */
+    public String cell(double latitude, double longitude) {
+        long row = (long) Math.floor(latitude / this.latitudeStep);
+
+        double cosine = Math.cos(Math.toRadians((row + 0.5) * this.latitudeStep));
+        double longitudeStep = this.latitudeStep / Math.max(cosine, MIN_COSINE);
+        long column = (long) Math.floor(longitude / longitudeStep);
+
+        return row + ":" + column;
+    }
+}
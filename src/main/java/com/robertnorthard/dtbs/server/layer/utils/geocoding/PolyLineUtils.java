@@ -57,4 +57,55 @@ public class PolyLineUtils {
 
         return poly;
     }
+
+    /**
+     * Encode a collection of locations using the Google polyline algorithm.
+     * The inverse of {@link #decodePoly(String)}, coordinates are rounded to
+     * five decimal places.
+     * https://developers.google.com/maps/documentation/utilities/polylinealgorithm?csw=1
+     *
+     * @param path the locations to encode.
+     * @return the polyline encoded string. An empty string if path is null or
+     * empty.
+     */
+    public static String encodePoly(List<Location> path) {
+
+        StringBuilder encoded = new StringBuilder();
+
+        if (path == null) {
+            return encoded.toString();
+        }
+
+        long lastLat = 0, lastLng = 0;
+
+        for (Location location : path) {
+            long lat = Math.round(location.getLatitude() * 1E5);
+            long lng = Math.round(location.getLongitude() * 1E5);
+
+            PolyLineUtils.encodeValue(lat - lastLat, encoded);
+            PolyLineUtils.encodeValue(lng - lastLng, encoded);
+
+            lastLat = lat;
+            lastLng = lng;
+        }
+
+        return encoded.toString();
+    }
+
+    /**
+     * Append a single signed polyline value to the provided builder.
+     *
+     * @param value the delta value to encode.
+     * @param encoded builder to append encoded characters to.
+     */
+    private static void encodeValue(long value, StringBuilder encoded) {
+        long shifted = value < 0 ? ~(value << 1) : (value << 1);
+
+        while (shifted >= 0x20) {
+            encoded.append((char) ((0x20 | (shifted & 0x1f)) + 63));
+            shifted >>= 5;
+        }
+
+        encoded.append((char) (shifted + 63));
+    }
 }
@@ -0,0 +1,159 @@
+package com.robertnorthard.dtbs.server.layer.utils.geocoding;
+
+import com.robertnorthard.dtbs.server.configuration.ConfigService;
+import com.robertnorthard.dtbs.server.layer.service.entities.Address;
+import com.robertnorthard.dtbs.server.layer.utils.cache.CacheStats;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCache;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCacheRegistry;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of reverse geocoded addresses. Coordinates are bucketed into small
+ * grid cells so lookups for points a few metres apart, such as a map pin
+ * being dragged, share an address. Statistics are reported with the entity
+ * caches.
+ *
+ * Configured by dtbs.server.geocode.reverse.grid.meters (default 25),
+ * dtbs.server.geocode.reverse.ttl.hours (default 24) and
+ * dtbs.server.geocode.reverse.size (default 10000).
+ *
+ * @author robertnorthard
+ */
+public class ReverseGeocodeCache {
+
+    /**
+     * Name of the cache in cache statistics.
+     */
+    public static final String NAME = "Reverse geocode";
+
+    private static final String GRID_PROPERTY = "dtbs.server.geocode.reverse.grid.meters";
+    private static final String TTL_PROPERTY = "dtbs.server.geocode.reverse.ttl.hours";
+    private static final String SIZE_PROPERTY = "dtbs.server.geocode.reverse.size";
+    private static final double DEFAULT_GRID_METERS = 25;
+    private static final long DEFAULT_TTL_HOURS = 24;
+    private static final int DEFAULT_SIZE = 10000;
+
+    private final EntityCache<String, String> addresses;
+    private final GeoGrid grid;
+
+    /**
+     * Constructor for class ReverseGeocodeCache.
+     *
+     * @param addresses underlying cache.
+     * @param gridMeters size of grid cells in meters.
+     */
+    ReverseGeocodeCache(EntityCache<String, String> addresses, double gridMeters) {
+        this.addresses = addresses;
+        this.grid = new GeoGrid(gridMeters);
+    }
+
+    /**
+     * @return a shared instance of the reverse geocode cache.
+     */
+    public static ReverseGeocodeCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Return the cached address of the cell containing a latitude and
+     * longitude, or null if not cached.
+     *
+     * @param latitude latitude.
+     * @param longitude longitude.
+     * @return the cached address or null.
+     */
+    public String get(double latitude, double longitude) {
+        return this.addresses.get(this.key(latitude, longitude));
+    }
+
+    /**
+     * Cache the address of the cell containing a latitude and longitude.
+     *
+     * @param latitude latitude.
+     * @param longitude longitude.
+     * @param address address.
+     */
+    public void put(double latitude, double longitude, String address) {
+        this.addresses.put(this.key(latitude, longitude), address, this.addresses.getStamp());
+    }
+
+    /**
+     * Return the cache key of a latitude and longitude: the grid cell
+     * containing it.
+     *
+     * @param latitude latitude.
+     * @param longitude longitude.
+     * @return the cache key.
+     */
+    public String key(double latitude, double longitude) {
+        return this.grid.cell(latitude, longitude);
+    }
+
+    /**
+     * Cache known addresses. Addresses without a location or street address
+     * are ignored.
+     *
+     * @param known addresses, most recent first.
+     * @return the number of addresses cached.
+     */
+    public int prefill(List<Address> known) {
+        int count = 0;
+
+        // oldest first so the most recent address for a cell is kept.
+        for (int i = known.size() - 1; i >= 0; i--) {
+            Address address = known.get(i);
+
+            if (address.getLocation() != null && address.getAddress() != null) {
+                this.put(address.getLocation().getLatitude(),
+                        address.getLocation().getLongitude(), address.getAddress());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return cache statistics.
+     */
+    public CacheStats getStats() {
+        return this.addresses.getStats();
+    }
+
+    /**
+     * Create the shared instance from application configuration.
+     *
+     * @return the shared reverse geocode cache.
+     */
+    private static ReverseGeocodeCache create() {
+        Properties properties = ConfigService.getConfig("application.properties");
+
+        double grid = DEFAULT_GRID_METERS;
+        long ttl = DEFAULT_TTL_HOURS;
+        int size = DEFAULT_SIZE;
+
+        if (properties != null) {
+            if (properties.getProperty(GRID_PROPERTY) != null) {
+                grid = Double.parseDouble(properties.getProperty(GRID_PROPERTY));
+            }
+            if (properties.getProperty(TTL_PROPERTY) != null) {
+                ttl = Long.parseLong(properties.getProperty(TTL_PROPERTY));
+            }
+            if (properties.getProperty(SIZE_PROPERTY) != null) {
+                size = Integer.parseInt(properties.getProperty(SIZE_PROPERTY));
+            }
+        }
+
+        EntityCache<String, String> addresses = EntityCacheRegistry.getCache(NAME, size, ttl, TimeUnit.HOURS);
+        return new ReverseGeocodeCache(addresses, grid);
+    }
+
+    /**
+     * Lazily created shared instance.
+     */
+    private static class Holder {
+
+        private static final ReverseGeocodeCache INSTANCE = ReverseGeocodeCache.create();
+    }
+}
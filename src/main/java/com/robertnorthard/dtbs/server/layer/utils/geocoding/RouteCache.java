@@ -0,0 +1,194 @@
+package com.robertnorthard.dtbs.server.layer.utils.geocoding;
+
+import com.robertnorthard.dtbs.server.configuration.ConfigService;
+import com.robertnorthard.dtbs.server.layer.service.entities.Address;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import com.robertnorthard.dtbs.server.layer.service.entities.Route;
+import com.robertnorthard.dtbs.server.layer.utils.cache.CacheStats;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCache;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCacheRegistry;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCopier;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.DateTime;
+
+/**
+ * Cache of Google Directions routes. Routes are keyed by origin and
+ * destination quantized to a grid, so requests for the same trip from nearby
+ * points share a route, and by time of day bucket as travel times vary over
+ * the day.
+ *
+ * A cached route is returned with its start and end addresses located at the
+ * requested origin and destination. Statistics are reported with the entity
+ * caches.
+ *
+ * Configured by dtbs.server.route.cache.grid.meters (default 50),
+ * dtbs.server.route.cache.bucket.minutes (default 60),
+ * dtbs.server.route.cache.ttl.minutes (default 60) and
+ * dtbs.server.route.cache.size (default 5000).
+ *
+ * @author robertnorthard
+ */
+public class RouteCache {
+
+    /**
+     * Name of the cache in cache statistics.
+     */
+    public static final String NAME = "Route directions";
+
+    private static final String GRID_PROPERTY = "dtbs.server.route.cache.grid.meters";
+    private static final String BUCKET_PROPERTY = "dtbs.server.route.cache.bucket.minutes";
+    private static final String TTL_PROPERTY = "dtbs.server.route.cache.ttl.minutes";
+    private static final String SIZE_PROPERTY = "dtbs.server.route.cache.size";
+    private static final double DEFAULT_GRID_METERS = 50;
+    private static final int DEFAULT_BUCKET_MINUTES = 60;
+    private static final long DEFAULT_TTL_MINUTES = 60;
+    private static final int DEFAULT_SIZE = 5000;
+
+    private final EntityCache<String, Route> routes;
+    private final GeoGrid grid;
+    private final int bucketMinutes;
+
+    /**
+     * Constructor for class RouteCache.
+     *
+     * @param routes underlying cache.
+     * @param gridMeters size of grid cells in meters.
+     * @param bucketMinutes length of time of day buckets in minutes.
+     * @throws IllegalArgumentException if grid size or bucket length is not
+     * positive.
+     */
+    RouteCache(EntityCache<String, Route> routes, double gridMeters, int bucketMinutes) {
+        if (bucketMinutes <= 0) {
+            throw new IllegalArgumentException("Bucket length must be positive.");
+        }
+
+        this.routes = routes;
+        this.grid = new GeoGrid(gridMeters);
+        this.bucketMinutes = bucketMinutes;
+    }
+
+    /**
+     * @return a shared instance of the route cache.
+     */
+    public static RouteCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Return a copy of the cached route between the grid cells of start and
+     * end location for the current time of day, or null if not cached.
+     *
+     * @param startLocation start location.
+     * @param endLocation end location.
+     * @return a copy of the cached route or null.
+     */
+    public Route get(Location startLocation, Location endLocation) {
+        Route cached = this.routes.get(this.key(startLocation, endLocation));
+
+        if (cached == null) {
+            return null;
+        }
+
+        return this.copy(cached, startLocation, endLocation);
+    }
+
+    /**
+     * Return a copy of a route, such as one shared by callers in the same
+     * grid cells, starting and ending at the given locations.
+     *
+     * @param route route to copy.
+     * @param startLocation start location.
+     * @param endLocation end location.
+     * @return a copy of route.
+     */
+    public Route copy(Route route, Location startLocation, Location endLocation) {
+        Route copy = EntityCopier.copy(route);
+        copy.setStartLocation(new Address(copy.getStartAddress().getAddress(), startLocation));
+        copy.setEndAddress(new Address(copy.getEndAddress().getAddress(), endLocation));
+        return copy;
+    }
+
+    /**
+     * Cache a route between start and end location for the current time of
+     * day.
+     *
+     * @param startLocation start location.
+     * @param endLocation end location.
+     * @param route route to cache.
+     */
+    public void put(Location startLocation, Location endLocation, Route route) {
+        this.routes.put(this.key(startLocation, endLocation),
+                EntityCopier.copy(route), this.routes.getStamp());
+    }
+
+    /**
+     * @return cache statistics.
+     */
+    public CacheStats getStats() {
+        return this.routes.getStats();
+    }
+
+    /**
+     * Return the cache key of a route: the grid cells of the start and end
+     * location and the current time of day bucket.
+     *
+     * @param startLocation start location.
+     * @param endLocation end location.
+     * @return the cache key.
+     */
+    public String key(Location startLocation, Location endLocation) {
+        int bucket = new DateTime(this.now()).getMinuteOfDay() / this.bucketMinutes;
+
+        return this.grid.cell(startLocation) + "|" + this.grid.cell(endLocation) + "|" + bucket;
+    }
+
+    /**
+     * Return the current time in milliseconds.
+     *
+     * @return the current time in milliseconds.
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Create the shared instance from application configuration.
+     *
+     * @return the shared route cache.
+     */
+    private static RouteCache create() {
+        Properties properties = ConfigService.getConfig("application.properties");
+
+        double grid = DEFAULT_GRID_METERS;
+        int bucket = DEFAULT_BUCKET_MINUTES;
+        long ttl = DEFAULT_TTL_MINUTES;
+        int size = DEFAULT_SIZE;
+
+        if (properties != null) {
+            if (properties.getProperty(GRID_PROPERTY) != null) {
+                grid = Double.parseDouble(properties.getProperty(GRID_PROPERTY));
+            }
+            if (properties.getProperty(BUCKET_PROPERTY) != null) {
+                bucket = Integer.parseInt(properties.getProperty(BUCKET_PROPERTY));
+            }
+            if (properties.getProperty(TTL_PROPERTY) != null) {
+                ttl = Long.parseLong(properties.getProperty(TTL_PROPERTY));
+            }
+            if (properties.getProperty(SIZE_PROPERTY) != null) {
+                size = Integer.parseInt(properties.getProperty(SIZE_PROPERTY));
+            }
+        }
+
+        EntityCache<String, Route> routes = EntityCacheRegistry.getCache(NAME, size, ttl, TimeUnit.MINUTES);
+        return new RouteCache(routes, grid, bucket);
+    }
+
+    /**
+     * Lazily created shared instance.
+     */
+    private static class Holder {
+
+        private static final RouteCache INSTANCE = RouteCache.create();
+    }
+}
@@ -7,7 +7,8 @@ package com.robertnorthard.dtbs.server.layer.utils.http;
  */
 public enum HttpHeader {
 
-    AUTHORIZATION("Authorization");
+    AUTHORIZATION("Authorization"),
+    SESSION_TOKEN("X-Session-Token");
 
     private String header;
 
@@ -0,0 +1,101 @@
+package com.robertnorthard.dtbs.server.layer.utils.http;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent calls with the same key into a single call. The first
+ * caller for a key makes the call on its own thread; callers arriving while it
+ * is in flight wait for, and share, its result or error instead of making the
+ * same call again. Once the call completes the key is released, so results
+ * are not cached.
+ *
+ * Waiting callers share the same result object and should copy it before
+ * modifying it.
+ *
+ * @author robertnorthard
+ * @param <K> type of key.
+ * @param <V> type of result.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * Return the result of loader, or of a call with the same key already in
+     * flight.
+     *
+     * @param key key identifying the call.
+     * @param loader call to make if none is in flight for key.
+     * @param timeout maximum time to wait for a call in flight.
+     * @param unit unit of timeout.
+     * @return result of the call.
+     * @throws ExecutionException if the call failed, the cause is the error
+     * thrown by the call.
+     * @throws TimeoutException if a call in flight did not complete within the
+     * timeout.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws IllegalArgumentException if key or loader is null.
+     */
+    public V execute(K key, Callable<V> loader, long timeout, TimeUnit unit)
+            throws ExecutionException, TimeoutException, InterruptedException {
+
+        if (key == null || loader == null) {
+            throw new IllegalArgumentException("Key and loader cannot be null.");
+        }
+
+        FutureTask<V> call = new FutureTask<>(loader);
+        FutureTask<V> existing = this.inFlight.putIfAbsent(key, call);
+
+        if (existing != null) {
+            this.coalesced.incrementAndGet();
+
+            try {
+                return existing.get(timeout, unit);
+            } catch (TimeoutException ex) {
+                this.timeouts.incrementAndGet();
+                throw ex;
+            }
+        }
+
+        this.calls.incrementAndGet();
+
+        try {
+            call.run();
+        } finally {
+            this.inFlight.remove(key, call);
+        }
+        return call.get();
+    }
+
+    /**
+     * @return number of calls made.
+     */
+    public long getCalls() {
+        return this.calls.get();
+    }
+
+    /**
+     * @return number of callers that waited for a call already in flight.
+     */
+    public long getCoalesced() {
+        return this.coalesced.get();
+    }
+
+    /**
+     * @return number of waiting callers that timed out.
+     */
+    public long getTimeouts() {
+        return this.timeouts.get();
+    }
+}
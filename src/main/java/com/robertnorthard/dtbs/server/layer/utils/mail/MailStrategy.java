@@ -13,7 +13,7 @@ public interface MailStrategy {
      * @param subject subject of message
      * @param message message to send as part of email body.
      * @param recipient recipient to send message to.
-     * @return true if mail sent else false.
+     * @return true if mail sent or queued for sending else false.
      */
     public boolean sendMail(String subject, String message, String recipient);
 
@@ -0,0 +1,384 @@
+package com.robertnorthard.dtbs.server.layer.utils.mail;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Sends mail asynchronously over a reused SMTP connection. Messages are
+ * queued by callers and sent in batches by a single worker thread that keeps
+ * one connected transport, so the connection and TLS handshake are paid once
+ * rather than per message. The connection is closed after it has been idle
+ * for IDLE_SECONDS.
+ *
+ * Messages failing with a transient error are scheduled for a retry on a new
+ * connection with exponential backoff, so the worker keeps sending other
+ * messages while waiting. Messages rejected permanently by the server are
+ * dropped.
+ *
+ * Queues are shut down together by shutdownAll when the application is
+ * undeployed.
+ *
+ * @author robertnorthard
+ */
+public class SmtpMailQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(SmtpMailQueue.class.getName());
+
+    /**
+     * Maximum number of messages taken from the queue at a time.
+     */
+    public static final int BATCH_SIZE = 20;
+
+    /**
+     * Seconds a connection is kept open without a message to send.
+     */
+    public static final long IDLE_SECONDS = 30;
+
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // queues not yet shut down.
+    private static final Set<SmtpMailQueue> CREATED = Collections.newSetFromMap(
+            new ConcurrentHashMap<SmtpMailQueue, Boolean>());
+
+    private final Session session;
+    private final String fromAddress;
+    private final BlockingQueue<MailMessage> queue;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+
+    // single worker thread, the transport is only used by its tasks.
+    private final ScheduledThreadPoolExecutor executor;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    // only used by the worker thread.
+    private Transport transport;
+    private ScheduledFuture<?> idleClose;
+
+    /**
+     * Constructor for class SmtpMailQueue. Starts the worker thread.
+     *
+     * @param session mail session providing the SMTP server and credentials.
+     * @param fromAddress address mail is sent from.
+     * @param queueLimit maximum number of queued messages.
+     * @param maxAttempts maximum number of attempts to send a message.
+     * @param initialBackoffMillis delay before the first retry, doubled for
+     * each further retry.
+     */
+    public SmtpMailQueue(Session session, String fromAddress, int queueLimit,
+            int maxAttempts, long initialBackoffMillis) {
+        this.session = session;
+        this.fromAddress = fromAddress;
+        this.queue = new ArrayBlockingQueue<>(queueLimit);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "smtp-mail-queue");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        CREATED.add(this);
+    }
+
+    /**
+     * Queue a message and return immediately.
+     *
+     * @param subject subject of message.
+     * @param text message body.
+     * @param recipient recipient to send message to.
+     * @return true if the message was queued, false if the queue is full or
+     * shut down.
+     */
+    public boolean enqueue(String subject, String text, String recipient) {
+        if (this.executor.isShutdown()) {
+            LOGGER.log(Level.WARNING, "Mail queue shut down, dropping message \"{0}\".", subject);
+            return false;
+        }
+
+        if (!this.queue.offer(new MailMessage(subject, text, recipient))) {
+            LOGGER.log(Level.WARNING, "Mail queue full, dropping message \"{0}\".", subject);
+            return false;
+        }
+
+        if (this.drainScheduled.compareAndSet(false, true)) {
+            try {
+                this.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        SmtpMailQueue.this.drain();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                this.drainScheduled.set(false);
+                LOGGER.log(Level.WARNING, "Mail queue shut down, message \"{0}\" not sent.", subject);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop the worker thread. Messages already queued are sent, retries
+     * waiting for their backoff are abandoned and later messages rejected.
+     */
+    public void shutdown() {
+        CREATED.remove(this);
+
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    SmtpMailQueue.this.close();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            LOGGER.log(Level.FINE, null, ex);
+        }
+        this.executor.shutdown();
+    }
+
+    /**
+     * Shut down every queue not yet shut down.
+     */
+    public static void shutdownAll() {
+        for (SmtpMailQueue mailQueue : new ArrayList<>(CREATED)) {
+            mailQueue.shutdown();
+        }
+    }
+
+    /**
+     * @return number of messages sent.
+     */
+    public long getSent() {
+        return this.sent.get();
+    }
+
+    /**
+     * @return number of messages dropped after failing.
+     */
+    public long getFailed() {
+        return this.failed.get();
+    }
+
+    /**
+     * @return number of SMTP connections opened.
+     */
+    public long getConnections() {
+        return this.connections.get();
+    }
+
+    /**
+     * @return number of messages waiting to be sent.
+     */
+    public int getQueued() {
+        return this.queue.size();
+    }
+
+    /**
+     * Take batches of messages from the queue and send them, then schedule
+     * the connection to close when idle. Runs on the worker thread.
+     */
+    private void drain() {
+        // clear first so a message queued while draining schedules another run.
+        this.drainScheduled.set(false);
+
+        List<MailMessage> batch = new ArrayList<>(BATCH_SIZE);
+        while (this.queue.drainTo(batch, BATCH_SIZE) > 0) {
+            for (MailMessage message : batch) {
+                this.send(message, 1);
+            }
+            batch.clear();
+        }
+        this.scheduleIdleClose();
+    }
+
+    /**
+     * Make an attempt to send a message. A transient failure closes the
+     * connection and schedules the next attempt after a backoff, without
+     * holding the worker. Runs on the worker thread.
+     *
+     * @param mail message to send.
+     * @param attempt number of this attempt.
+     */
+    private void send(final MailMessage mail, final int attempt) {
+        try {
+            Message message = this.build(mail);
+            this.connect().sendMessage(message, message.getAllRecipients());
+            this.sent.incrementAndGet();
+        } catch (MessagingException ex) {
+            if (SmtpMailQueue.isPermanent(ex) || attempt >= this.maxAttempts) {
+                this.failed.incrementAndGet();
+                LOGGER.log(Level.SEVERE, "Unable to send message \"{0}\" after {1} attempts: {2}",
+                        new Object[]{mail.subject, attempt, ex.toString()});
+                return;
+            }
+
+            // the connection may be broken, reconnect for the next attempt.
+            this.close();
+
+            try {
+                this.executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        SmtpMailQueue.this.send(mail, attempt + 1);
+                        SmtpMailQueue.this.scheduleIdleClose();
+                    }
+                }, this.backoff(attempt), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException rejected) {
+                this.failed.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Mail queue shut down, message \"{0}\" not sent.", mail.subject);
+            }
+        }
+    }
+
+    /**
+     * Close the connection after IDLE_SECONDS unless it is used again first.
+     * Runs on the worker thread.
+     */
+    private void scheduleIdleClose() {
+        if (this.idleClose != null) {
+            this.idleClose.cancel(false);
+        }
+
+        try {
+            this.idleClose = this.executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    SmtpMailQueue.this.close();
+                }
+            }, IDLE_SECONDS, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException ex) {
+            this.close();
+        }
+    }
+
+    private Message build(MailMessage mail) throws MessagingException {
+        Message message = new MimeMessage(this.session);
+        message.setFrom(new InternetAddress(this.fromAddress));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(mail.recipient));
+        message.setSubject(mail.subject);
+        message.setText(mail.text);
+        return message;
+    }
+
+    /**
+     * Return the connected transport, connecting if not connected.
+     *
+     * @return a connected transport.
+     * @throws MessagingException if unable to connect.
+     */
+    private Transport connect() throws MessagingException {
+        if (this.transport == null || !this.transport.isConnected()) {
+            this.close();
+            Transport newTransport = this.session.getTransport("smtp");
+            newTransport.connect();
+            this.connections.incrementAndGet();
+            this.transport = newTransport;
+        }
+        return this.transport;
+    }
+
+    private void close() {
+        if (this.transport != null) {
+            try {
+                this.transport.close();
+            } catch (MessagingException ex) {
+                LOGGER.log(Level.FINE, null, ex);
+            }
+            this.transport = null;
+        }
+    }
+
+    /**
+     * Return the delay before the next attempt: exponential backoff with
+     * jitter.
+     *
+     * @param attempts number of attempts made.
+     * @return delay in milliseconds.
+     */
+    private long backoff(int attempts) {
+        long delay = Math.min(MAX_BACKOFF_MILLIS,
+                this.initialBackoffMillis << Math.min(attempts - 1, 20));
+
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Return true if the server rejected the message or recipient with a
+     * permanent (5xx) reply, or the message could not be built, so retrying
+     * will not help.
+     *
+     * @param ex exception thrown sending the message.
+     * @return true if the failure is permanent.
+     */
+    private static boolean isPermanent(MessagingException ex) {
+        for (Exception e = ex; e != null;
+                e = e instanceof MessagingException ? ((MessagingException) e).getNextException() : null) {
+            if (e instanceof SMTPAddressFailedException
+                    && ((SMTPAddressFailedException) e).getReturnCode() >= 500) {
+                return true;
+            }
+            if (e instanceof SMTPSendFailedException
+                    && ((SMTPSendFailedException) e).getReturnCode() >= 500) {
+                return true;
+            }
+            if (e instanceof SendFailedException
+                    && ((SendFailedException) e).getInvalidAddresses() != null
+                    && ((SendFailedException) e).getInvalidAddresses().length > 0) {
+                return true;
+            }
+            if (e instanceof AddressException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A queued message.
+     */
+    private static class MailMessage {
+
+        private final String subject;
+        private final String text;
+        private final String recipient;
+
+        MailMessage(String subject, String text, String recipient) {
+            this.subject = subject;
+            this.text = text;
+            this.recipient = recipient;
+        }
+    }
+}
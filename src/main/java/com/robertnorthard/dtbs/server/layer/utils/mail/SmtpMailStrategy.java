@@ -3,43 +3,52 @@ package com.robertnorthard.dtbs.server.layer.utils.mail;
 import com.robertnorthard.dtbs.server.configuration.ConfigService;
 import com.robertnorthard.dtbs.server.layer.utils.encryption.EncryptedProperties;
 
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import javax.mail.Authenticator;
-import javax.mail.Message;
-import javax.mail.MessagingException;
 import javax.mail.PasswordAuthentication;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeMessage;
 
 /**
- * SMTP Mail Strategy
+ * SMTP Mail Strategy. Mail is queued and sent asynchronously over a reused
+ * SMTP connection by an SmtpMailQueue, the queue size is limited by
+ * dtbs.server.mail.queue (default 500).
  *
  * @author robertnorthard
  */
 public class SmtpMailStrategy implements MailStrategy {
 
-    private static final Logger LOGGER = Logger.getLogger(SmtpMailStrategy.class.getName());
+    private static final String QUEUE_PROPERTY = "dtbs.server.mail.queue";
+    private static final int DEFAULT_QUEUE = 500;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
 
     private final EncryptedProperties mailProperties;
 
+    // true if mail is sent by the shared queue.
+    private final boolean shared;
+
+    private SmtpMailQueue mailQueue;
+
     /**
-     * Default constructor for classSmtpMailStrategy.
+     * Default constructor for classSmtpMailStrategy. Mail is sent by a queue
+     * shared by all default instances.
      */
     public SmtpMailStrategy() {
         mailProperties = new EncryptedProperties(ConfigService.getConfig("application.properties"));
+        this.shared = true;
     }
 
     /**
-     * Secondary constructor to allow mail properties to be set.
+     * Secondary constructor to allow mail properties to be set. Mail is sent
+     * by a queue dedicated to this instance, created when the first message
+     * is sent.
      *
      * @param mailProperties mail properties.
      */
     public SmtpMailStrategy(EncryptedProperties mailProperties) {
         this.mailProperties = mailProperties;
+        this.shared = false;
     }
 
     /**
@@ -62,41 +71,43 @@ public class SmtpMailStrategy implements MailStrategy {
     }
 
     /**
-     * Send mail with specified message.
+     * Queue mail with specified message. Returns without waiting for the
+     * SMTP server.
      *
      * @param subject subject of message
      * @param message message to send as part of email body.
      * @param recipient recipient to send message to.
-     * @return true if mail sent else false.
+     * @return true if mail queued for sending else false.
      */
     @Override
     public boolean sendMail(String subject, String message, String recipient) {
+        return this.getMailQueue().enqueue(subject, message, recipient);
+    }
 
-        boolean mailSent = false;
-
-        try {
-            Message mailMessage = new MimeMessage(
-                    this.getMailSession());
-
-            mailMessage.setFrom(
-                    new InternetAddress(
-                            mailProperties.getKey("mail.smtp.from.address")));
-
-            mailMessage.setRecipient(Message.RecipientType.TO,
-                    new InternetAddress(recipient));
-
-            mailMessage.setSubject(subject);
-            mailMessage.setText(message);
-
-            Transport.send(mailMessage);
-
-            mailSent = true;
-
-        } catch (MessagingException ex) {
-            LOGGER.log(Level.SEVERE, ex.toString());
+    /**
+     * Return the queue mail is sent by.
+     *
+     * @return the queue mail is sent by.
+     */
+    private synchronized SmtpMailQueue getMailQueue() {
+        if (this.mailQueue == null) {
+            this.mailQueue = this.shared ? SharedQueue.INSTANCE : this.createMailQueue();
         }
+        return this.mailQueue;
+    }
+
+    /**
+     * Create a mail queue from the mail properties.
+     *
+     * @return a new mail queue.
+     */
+    private SmtpMailQueue createMailQueue() {
+        String queue = this.mailProperties.getKey(QUEUE_PROPERTY);
 
-        return mailSent;
+        return new SmtpMailQueue(this.getMailSession(),
+                this.mailProperties.getKey("mail.smtp.from.address"),
+                queue == null ? DEFAULT_QUEUE : Integer.parseInt(queue),
+                MAX_ATTEMPTS, INITIAL_BACKOFF_MILLIS);
     }
 
     /**
@@ -115,4 +126,14 @@ public class SmtpMailStrategy implements MailStrategy {
             return false;
         }
     }
+
+    /**
+     * Lazily created queue shared by default instances.
+     */
+    private static class SharedQueue {
+
+        private static final SmtpMailQueue INSTANCE = new SmtpMailStrategy(
+                new EncryptedProperties(ConfigService.getConfig("application.properties")))
+                .createMailQueue();
+    }
 }
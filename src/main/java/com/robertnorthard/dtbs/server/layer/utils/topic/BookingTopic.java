@@ -0,0 +1,173 @@
+package com.robertnorthard.dtbs.server.layer.utils.topic;
+
+import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.inject.Singleton;
+
+/**
+ * In memory topic of booking events keyed by username. Each live connection
+ * of a user subscribes to the user's topic and booking state transitions are
+ * published to every connection of the user.
+ *
+ * Messages have the same fields as Google Cloud Messenger booking
+ * notifications, so apps can handle both the same way.
+ *
+ * @author robertnorthard
+ */
+@Singleton
+public class BookingTopic {
+
+    private final ConcurrentMap<String, Set<TopicSubscriber>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * Subscribe a connection to a user's topic.
+     *
+     * @param username username of account.
+     * @param subscriber connection to subscribe.
+     */
+    public synchronized void subscribe(String username, TopicSubscriber subscriber) {
+        Set<TopicSubscriber> connections = this.subscribers.get(username);
+
+        if (connections == null) {
+            connections = new CopyOnWriteArraySet<>();
+            this.subscribers.put(username, connections);
+        }
+        connections.add(subscriber);
+    }
+
+    /**
+     * Unsubscribe a connection from a user's topic.
+     *
+     * @param username username of account.
+     * @param subscriber connection to unsubscribe.
+     */
+    public synchronized void unsubscribe(String username, TopicSubscriber subscriber) {
+        Set<TopicSubscriber> connections = this.subscribers.get(username);
+
+        if (connections != null) {
+            connections.remove(subscriber);
+
+            if (connections.isEmpty()) {
+                this.subscribers.remove(username);
+            }
+        }
+    }
+
+    /**
+     * Close and unsubscribe every connection of a user, such as when the
+     * user logs out.
+     *
+     * @param username username of account.
+     */
+    public void disconnect(String username) {
+        Set<TopicSubscriber> connections;
+
+        synchronized (this) {
+            connections = this.subscribers.remove(username);
+        }
+
+        if (connections != null) {
+            for (TopicSubscriber subscriber : connections) {
+                subscriber.close("User logged out.");
+            }
+        }
+    }
+
+    /**
+     * @param username username of account.
+     * @return true if the user has a live connection.
+     */
+    public boolean isConnected(String username) {
+        return this.subscribers.containsKey(username);
+    }
+
+    /**
+     * Publish a message to every open connection of a user without waiting
+     * for it to be sent. Closed connections, and connections whose session is
+     * no longer valid, are unsubscribed.
+     *
+     * @param username username of account.
+     * @param message JSON message.
+     * @param callback called once, when the first connection confirms the
+     * message was sent, may be null.
+     * @return true if the message was handed to at least one open connection.
+     */
+    public boolean publish(String username, String message, final TopicSubscriber.SendCallback callback) {
+        Set<TopicSubscriber> connections = this.subscribers.get(username);
+        boolean published = false;
+
+        if (connections == null) {
+            return false;
+        }
+
+        final AtomicBoolean confirmed = new AtomicBoolean();
+        TopicSubscriber.SendCallback once = new TopicSubscriber.SendCallback() {
+            @Override
+            public void sent() {
+                if (callback != null && confirmed.compareAndSet(false, true)) {
+                    callback.sent();
+                }
+            }
+        };
+
+        for (TopicSubscriber subscriber : connections) {
+            if (subscriber.isOpen()) {
+                subscriber.send(message, once);
+                published = true;
+            } else {
+                this.unsubscribe(username, subscriber);
+            }
+        }
+        return published;
+    }
+
+    /**
+     * Publish a booking event to every open connection of a user without
+     * waiting for it to be sent.
+     *
+     * @param username username of account.
+     * @param key unique key of the event so repeated messages can be ignored.
+     * @param status state of the booking.
+     * @param eventType event type.
+     * @param data JSON booking.
+     * @param callback called once, when the first connection confirms the
+     * message was sent, may be null.
+     * @return true if the message was handed to at least one open connection.
+     */
+    public boolean publish(String username, String key, String status, String eventType, String data,
+            TopicSubscriber.SendCallback callback) {
+        return this.publish(username, BookingTopic.toMessage(key, status, eventType, data), callback);
+    }
+
+    /**
+     * @return the number of users with a live connection.
+     */
+    public int getConnectedUsers() {
+        return this.subscribers.size();
+    }
+
+    /**
+     * Build a booking event message.
+     *
+     * @param key unique key of the event so repeated messages can be ignored.
+     * @param status state of the booking.
+     * @param eventType event type.
+     * @param data JSON booking.
+     * @return a JSON message.
+     */
+    public static String toMessage(String key, String status, String eventType, String data) {
+        Map<String, String> message = new LinkedHashMap<>();
+        message.put("key", key);
+        message.put("status", status);
+        message.put("event", eventType);
+        message.put("data", data);
+
+        return DataMapper.getInstance().getObjectAsJson(message);
+    }
+}
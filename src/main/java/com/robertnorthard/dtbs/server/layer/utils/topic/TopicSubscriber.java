@@ -0,0 +1,43 @@
+package com.robertnorthard.dtbs.server.layer.utils.topic;
+
+/**
+ * A live connection subscribed to a user's booking topic.
+ *
+ * @author robertnorthard
+ */
+public interface TopicSubscriber {
+
+    /**
+     * @return true if the connection is open and still authenticated.
+     */
+    public boolean isOpen();
+
+    /**
+     * Send a message to the connection without waiting for it to be sent.
+     * The callback is called, on a thread of the connection's container, once
+     * the connection confirms the message was sent, and is not called if
+     * sending fails or times out.
+     *
+     * @param message JSON message.
+     * @param callback called once the message has been sent, may be null.
+     */
+    public void send(String message, SendCallback callback);
+
+    /**
+     * Close the connection.
+     *
+     * @param reason reason the connection is closed.
+     */
+    public void close(String reason);
+
+    /**
+     * Called when a connection confirms a message was sent.
+     */
+    public interface SendCallback {
+
+        /**
+         * The message was sent.
+         */
+        public void sent();
+    }
+}
@@ -0,0 +1,171 @@
+package com.robertnorthard.dtbs.server.layer.persistence;
+
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingCursor;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingSummaryDto;
+import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.service.entities.AccountRole;
+import com.robertnorthard.dtbs.server.layer.service.entities.Address;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import com.robertnorthard.dtbs.server.layer.service.entities.Route;
+import com.robertnorthard.dtbs.server.layer.service.entities.Vehicle;
+import com.robertnorthard.dtbs.server.layer.service.entities.VehicleType;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
+import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.Persistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Booking DAO tests against an in-memory database. Booking history is
+ * projected by JPQL constructor expressions, so the projected summaries are
+ * compared with summaries of the booking entities they replace.
+ *
+ * @author robertnorthard
+ */
+public class BookingDaoTest {
+
+    private static final String PERSISTENCE_UNIT = "com.robertnorthard.dtms.server";
+
+    private EntityManagerFactory emf;
+    private BookingDao bookingDao;
+    private Booking dispatched;
+    private Booking awaiting;
+
+    @Before
+    public void setUp() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.transactionType", "RESOURCE_LOCAL");
+        properties.put("javax.persistence.jtaDataSource", "");
+        properties.put("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+        properties.put("javax.persistence.jdbc.url", "jdbc:derby:memory:dtbs;create=true");
+        properties.put("javax.persistence.schema-generation.database.action", "drop-and-create");
+        properties.put("eclipselink.logging.level", "OFF");
+        this.emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, properties);
+
+        this.bookingDao = spy(new BookingDao());
+        doAnswer(new Answer<EntityManager>() {
+            @Override
+            public EntityManager answer(InvocationOnMock invocation) {
+                return BookingDaoTest.this.emf.createEntityManager();
+            }
+        }).when(this.bookingDao).getEntityManager();
+
+        Account passenger = new Account("timsmith", "Tim", "Smith", "password", "07526888826", "tim_smith@example.com");
+        passenger.setRole(AccountRole.PASSENGER);
+        Account driver = new Account("johndoe", "John", "Doe", "simple_password", "07888888826", "john_doe@example.com");
+        driver.setRole(AccountRole.DRIVER);
+        Taxi taxi = new Taxi(new Vehicle("AS10 AJ", 3, new VehicleType("Taxi", "Ford", "Focus", 0.3)), driver);
+
+        this.dispatched = new Booking(passenger, this.createRoute("College Lane, Hatfield AL10 9AB, UK"), 2, taxi);
+        this.dispatched.setTimestamp(new Date(1000));
+        this.awaiting = new Booking(passenger, this.createRoute("Hatfield Business Park, Hatfield AL10 9EU, UK"), 1);
+        this.awaiting.setTimestamp(new Date(2000));
+
+        EntityManager em = this.emf.createEntityManager();
+        em.getTransaction().begin();
+        em.persist(passenger);
+        em.persist(driver);
+        em.persist(taxi.getVehicle());
+        em.persist(taxi);
+        em.persist(this.dispatched);
+        em.persist(this.awaiting);
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @After
+    public void tearDown() {
+        this.emf.close();
+    }
+
+    /**
+     * Test of findBookingHistoryForPassenger method, of class BookingDao.
+     * Test: projected summaries match the booking entities, including a
+     * booking with no taxi dispatched.
+     */
+    @Test
+    public void testFindBookingHistoryForPassenger() {
+        List<BookingSummaryDto> history = this.bookingDao.findBookingHistoryForPassenger("timsmith", null, 10);
+
+        assertEquals(2, history.size());
+        this.assertSummaryOf(this.awaiting, history.get(0));
+        this.assertSummaryOf(this.dispatched, history.get(1));
+        assertNull(history.get(0).getTaxiId());
+        assertNotNull(history.get(1).getTaxiId());
+    }
+
+    /**
+     * Test of findBookingHistoryForPassenger method, of class BookingDao.
+     * Test: page after a cursor matches the booking entities.
+     */
+    @Test
+    public void testFindBookingHistoryForPassengerBefore() {
+        List<BookingSummaryDto> history = this.bookingDao.findBookingHistoryForPassenger("timsmith",
+                new BookingCursor(this.awaiting.getTimestamp(), this.awaiting.getId()), 10);
+
+        assertEquals(1, history.size());
+        this.assertSummaryOf(this.dispatched, history.get(0));
+    }
+
+    /**
+     * Test of findBookingHistoryForDriver method, of class BookingDao. Test:
+     * only the booking dispatched to the driver's taxi is returned and it
+     * matches the booking entity.
+     */
+    @Test
+    public void testFindBookingHistoryForDriver() {
+        List<BookingSummaryDto> history = this.bookingDao.findBookingHistoryForDriver("johndoe", null, 10);
+
+        assertEquals(1, history.size());
+        this.assertSummaryOf(this.dispatched, history.get(0));
+    }
+
+    private void assertSummaryOf(Booking expected, BookingSummaryDto actual) {
+        EntityManager em = this.emf.createEntityManager();
+        BookingSummaryDto summary;
+
+        try {
+            summary = BookingSummaryDto.fromBooking(em.find(Booking.class, expected.getId(),
+                    Collections.<String, Object>singletonMap(
+                            "javax.persistence.cache.retrieveMode", CacheRetrieveMode.BYPASS)));
+        } finally {
+            em.close();
+        }
+
+        assertEquals(summary.getId(), actual.getId());
+        assertEquals(summary.getTimestamp(), actual.getTimestamp());
+        assertEquals(summary.getState().getClass(), actual.getState().getClass());
+        assertEquals(summary.getCost(), actual.getCost(), 0.0);
+        assertEquals(summary.getNumberPassengers(), actual.getNumberPassengers());
+        assertEquals(summary.getStartTime(), actual.getStartTime());
+        assertEquals(summary.getEndTime(), actual.getEndTime());
+        assertEquals(summary.getStartAddress(), actual.getStartAddress());
+        assertEquals(summary.getEndAddress(), actual.getEndAddress());
+        assertEquals(summary.getTaxiId(), actual.getTaxiId());
+    }
+
+    private Route createRoute(String startAddress) {
+        List<Location> path = new ArrayList<>();
+        path.add(new Location(51.7520, -0.2420));
+        path.add(new Location(51.7720, -0.2220));
+
+        return new Route(
+                new Address(startAddress, new Location(51.7520, -0.2420)),
+                new Address("St Albans AL1 3JN, UK", new Location(51.7720, -0.2220)),
+                5400, path, 720);
+    }
+}
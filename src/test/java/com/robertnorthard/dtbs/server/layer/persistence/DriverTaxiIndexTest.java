@@ -0,0 +1,64 @@
+package com.robertnorthard.dtbs.server.layer.persistence;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Driver taxi index unit tests.
+ *
+ * @author robertnorthard
+ */
+public class DriverTaxiIndexTest {
+
+    private DriverTaxiIndex index;
+
+    @Before
+    public void setUp() {
+        this.index = new DriverTaxiIndex();
+    }
+
+    /**
+     * Test of unindex method, of class DriverTaxiIndex. Test: previous driver
+     * of a taxi with an id above the Long cache range is removed.
+     */
+    @Test
+    public void testUnindex() {
+        this.index.put("johndoe", 1000L);
+        this.index.put("janedoe", 1000L);
+        this.index.put("timsmith", 2000L);
+
+        this.index.unindex(1000L, "janedoe");
+
+        assertNull(this.index.get("johndoe"));
+        assertEquals(Long.valueOf(1000), this.index.get("janedoe"));
+        assertEquals(Long.valueOf(2000), this.index.get("timsmith"));
+    }
+
+    /**
+     * Test of unindex method, of class DriverTaxiIndex. Test: every driver of
+     * a taxi without a driver is removed.
+     */
+    @Test
+    public void testUnindexNoDriver() {
+        this.index.put("johndoe", 1000L);
+
+        this.index.unindex(1000L, null);
+
+        assertNull(this.index.get("johndoe"));
+    }
+
+    /**
+     * Test of unindex method, of class DriverTaxiIndex. Test: a driver moved
+     * to another taxi is not removed by an update to their previous taxi.
+     */
+    @Test
+    public void testUnindexDriverMoved() {
+        this.index.put("johndoe", 1000L);
+        this.index.put("johndoe", 2000L);
+
+        this.index.unindex(1000L, null);
+
+        assertEquals(Long.valueOf(2000), this.index.get("johndoe"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.robertnorthard.dtbs.server.layer.persistence;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Taxi DAO unit tests.
+ *
+ * @author robertnorthard
+ */
+public class TaxiDaoTest {
+
+    private TaxiDao taxiDao;
+    private EntityManager em;
+    private TypedQuery<Taxi> query;
+    private Taxi taxi;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        this.taxiDao = spy(new TaxiDao(new DriverTaxiIndex()));
+        this.em = mock(EntityManager.class);
+        this.query = mock(TypedQuery.class);
+
+        doReturn(this.em).when(this.taxiDao).getEntityManager();
+        when(this.em.createNamedQuery("Taxi.findTaxiForDriver", Taxi.class)).thenReturn(this.query);
+    }
+
+    /**
+     * Test of findTaxiForDriver method, of class TaxiDao. Test: second lookup
+     * resolved from the driver index.
+     */
+    @Test
+    public void testFindTaxiForDriverIndexed() {
+        this.taxi = this.createTaxi(1L, "indexed.driver");
+        when(this.query.getSingleResult()).thenReturn(this.taxi);
+        doReturn(this.taxi).when(this.taxiDao).findEntityById(1L);
+
+        assertSame(this.taxi, this.taxiDao.findTaxiForDriver("indexed.driver"));
+        assertSame(this.taxi, this.taxiDao.findTaxiForDriver("indexed.driver"));
+
+        verify(this.em, times(1)).createNamedQuery("Taxi.findTaxiForDriver", Taxi.class);
+    }
+
+    /**
+     * Test of findTaxiForDriver method, of class TaxiDao. Test: taxi assigned
+     * to another driver since it was indexed.
+     */
+    @Test
+    public void testFindTaxiForDriverReassigned() {
+        this.taxi = this.createTaxi(2L, "moved.driver");
+        Taxi newTaxi = this.createTaxi(3L, "moved.driver");
+        when(this.query.getSingleResult()).thenReturn(this.taxi, newTaxi);
+        doReturn(this.createTaxi(2L, "other.driver")).when(this.taxiDao).findEntityById(2L);
+
+        assertSame(this.taxi, this.taxiDao.findTaxiForDriver("moved.driver"));
+        assertSame(newTaxi, this.taxiDao.findTaxiForDriver("moved.driver"));
+
+        verify(this.em, times(2)).createNamedQuery("Taxi.findTaxiForDriver", Taxi.class);
+    }
+
+    private Taxi createTaxi(long id, String username) {
+        Account account = new Account();
+        account.setUsername(username);
+
+        Taxi t = new Taxi(null, account);
+        t.setId(id);
+        return t;
+    }
+}
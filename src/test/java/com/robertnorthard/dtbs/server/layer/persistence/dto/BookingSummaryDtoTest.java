@@ -0,0 +1,104 @@
+package com.robertnorthard.dtbs.server.layer.persistence.dto;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.service.entities.AccountRole;
+import com.robertnorthard.dtbs.server.layer.service.entities.Address;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import com.robertnorthard.dtbs.server.layer.service.entities.Route;
+import com.robertnorthard.dtbs.server.layer.service.entities.Vehicle;
+import com.robertnorthard.dtbs.server.layer.service.entities.VehicleType;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
+import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
+import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compares the payload size of list endpoints returning full booking entities
+ * against the projected booking summaries.
+ *
+ * @author robertnorthard
+ */
+public class BookingSummaryDtoTest {
+
+    private Booking booking;
+
+    @Before
+    public void setUp() {
+        Account passenger = new Account("timsmith", "Tim", "Smith", "password", "tim_smith@example.com", "07526888826");
+        passenger.setRole(AccountRole.PASSENGER);
+        Account driver = new Account("johndoe", "John", "Doe", "simple_password", "john_doe@example.com", "07888888826");
+        driver.setRole(AccountRole.DRIVER);
+
+        Taxi taxi = new Taxi(new Vehicle("AS10 AJ", 3, new VehicleType("Taxi", "Ford", "Focus", 0.3)), driver);
+        taxi.setId(7L);
+
+        List<Location> path = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            path.add(new Location(51.7520 + i * 0.0001, -0.2420 + i * 0.0001));
+        }
+
+        Route route = new Route(
+                new Address("College Lane, Hatfield AL10 9AB, UK", new Location(51.7520, -0.2420)),
+                new Address("St Albans AL1 3JN, UK", new Location(51.7720, -0.2220)),
+                5400, path, 720);
+
+        this.booking = new Booking(passenger, route, 2, taxi);
+        this.booking.setId(1L);
+        this.booking.setCost(12.5);
+    }
+
+    /**
+     * Test of BookingSummaryDto. Test: serialized history row is smaller than
+     * the serialized booking entity.
+     */
+    @Test
+    public void testBookingSummaryPayloadSize() {
+        BookingSummaryDto summary = new BookingSummaryDto(this.booking.getId(),
+                this.booking.getTimestamp(), this.booking.getState(), this.booking.getCost(),
+                this.booking.getNumberPassengers(), this.booking.getStartTime(), this.booking.getEndTime(),
+                this.booking.getRoute().getStartAddress().getAddress(),
+                this.booking.getRoute().getEndAddress().getAddress(),
+                this.booking.getTaxi().getId());
+
+        int entityBytes = this.payloadSize(this.booking);
+        int summaryBytes = this.payloadSize(summary);
+
+        assertTrue(summaryBytes * 4 < entityBytes);
+    }
+
+    /**
+     * Test of AwaitingBookingDto. Test: serialized awaiting row is smaller than
+     * the serialized booking entity and does not contain account details.
+     */
+    @Test
+    public void testAwaitingBookingPayloadSize() {
+        Route route = this.booking.getRoute();
+        AwaitingBookingDto summary = new AwaitingBookingDto(this.booking.getId(),
+                this.booking.getTimestamp(), this.booking.getNumberPassengers(), this.booking.getCost(),
+                this.booking.getPassenger().getCommonName(),
+                route.getStartAddress().getAddress(),
+                route.getStartAddress().getLocation().getLatitude(),
+                route.getStartAddress().getLocation().getLongitude(),
+                route.getEndAddress().getAddress(),
+                route.getEndAddress().getLocation().getLatitude(),
+                route.getEndAddress().getLocation().getLongitude(),
+                route.getDistance(), route.getEstimateTravelTime());
+
+        String json = DataMapper.getInstance().getObjectAsJson(summary);
+        int entityBytes = this.payloadSize(this.booking);
+        int summaryBytes = json.getBytes(StandardCharsets.UTF_8).length;
+
+        assertTrue(summaryBytes * 4 < entityBytes);
+        assertFalse(json.contains("email"));
+        assertFalse(json.contains("password"));
+    }
+
+    private int payloadSize(Object obj) {
+        return DataMapper.getInstance().getObjectAsJson(obj).getBytes(StandardCharsets.UTF_8).length;
+    }
+}
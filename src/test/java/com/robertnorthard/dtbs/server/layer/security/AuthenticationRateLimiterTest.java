@@ -0,0 +1,45 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Authentication rate limiter unit tests.
+ *
+ * @author robertnorthard
+ */
+public class AuthenticationRateLimiterTest {
+
+    private AuthenticationRateLimiter rateLimiter;
+
+    @Before
+    public void setUp() {
+        this.rateLimiter = new AuthenticationRateLimiter(
+                new TokenBucketRateLimiter(2, 1, TimeUnit.HOURS),
+                new TokenBucketRateLimiter(100, 1, TimeUnit.HOURS),
+                new TokenBucketRateLimiter(2, 1, TimeUnit.HOURS),
+                new TokenBucketRateLimiter(100, 1, TimeUnit.HOURS));
+    }
+
+    /**
+     * Test of checkAuthentication method, of class AuthenticationRateLimiter.
+     * Test: attempts for a username from one address do not lock the user out
+     * from another address.
+     */
+    @Test
+    public void testCheckAuthenticationByAddress() {
+        this.rateLimiter.checkAuthentication("timsmith", "10.0.0.1");
+        this.rateLimiter.checkAuthentication("timsmith", "10.0.0.1");
+
+        try {
+            this.rateLimiter.checkAuthentication("timsmith", "10.0.0.1");
+            fail("Expected the attempt to be rejected.");
+        } catch (AdmissionRejectedException ex) {
+            assertTrue(ex.getRetryAfterSeconds() > 0);
+        }
+
+        this.rateLimiter.checkAuthentication("timsmith", "10.0.0.2");
+    }
+}
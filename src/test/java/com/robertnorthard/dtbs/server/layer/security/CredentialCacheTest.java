@@ -0,0 +1,58 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.service.entities.AccountRole;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Credential cache unit tests.
+ *
+ * @author robertnorthard
+ */
+public class CredentialCacheTest {
+
+    private static final String HEADER = "Basic dGltc21pdGg6cGFzc3dvcmQ=";
+
+    private CredentialCache credentialCache;
+    private Account account;
+
+    @Before
+    public void setUp() {
+        this.credentialCache = new CredentialCache();
+        this.account = new Account();
+        this.account.setUsername("timsmith");
+        this.account.setPassword("$2a$12$hash");
+        this.account.setRole(AccountRole.PASSENGER);
+        this.account.setActive();
+    }
+
+    /**
+     * Test of getAccount method, of class CredentialCache.
+     */
+    @Test
+    public void testGetAccount() {
+        assertNull(this.credentialCache.getAccount(HEADER));
+
+        this.credentialCache.put(HEADER, this.account);
+
+        Account cached = this.credentialCache.getAccount(HEADER);
+        assertEquals("timsmith", cached.getUsername());
+        assertEquals(this.account.getRole(), cached.getRole());
+        assertNull(cached.getPassword());
+        assertNull(this.credentialCache.getAccount("Basic dGltc21pdGg6d3Jvbmc="));
+    }
+
+    /**
+     * Test of invalidate method, of class CredentialCache.
+     */
+    @Test
+    public void testInvalidate() {
+        this.credentialCache.put(HEADER, this.account);
+        this.credentialCache.invalidate("timsmith");
+
+        assertNull(this.credentialCache.getAccount(HEADER));
+        assertEquals(0, this.credentialCache.size());
+    }
+}
@@ -0,0 +1,75 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Password hashing executor unit tests.
+ *
+ * @author robertnorthard
+ */
+public class PasswordHashingExecutorTest {
+
+    private static final String HASH = "$2a$12$PCE2KE0b26mrJSfbxU8ep.XGxVisAc9BqJbxR6FD9BFLLAYGNipg.";
+
+    /**
+     * Test of checkPassword method, of class PasswordHashingExecutor.
+     */
+    @Test
+    public void testCheckPassword() {
+        PasswordHashingExecutor executor = new PasswordHashingExecutor(1, 1);
+
+        assertTrue(executor.checkPassword("robertnorthard", HASH));
+        assertFalse(executor.checkPassword("wrong_password", HASH));
+        assertEquals(2, executor.getStats().getCompleted());
+    }
+
+    /**
+     * Test of checkPassword method, of class PasswordHashingExecutor. Test:
+     * requests beyond the queue limit rejected.
+     */
+    @Test
+    public void testCheckPasswordRejected() throws Exception {
+        final PasswordHashingExecutor executor = new PasswordHashingExecutor(1, 1);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+        List<Future<Boolean>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 6; i++) {
+                results.add(callers.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        start.await();
+                        return executor.checkPassword("robertnorthard", HASH);
+                    }
+                }));
+            }
+            start.countDown();
+
+            int rejected = 0;
+            for (Future<Boolean> result : results) {
+                try {
+                    assertTrue(result.get());
+                } catch (ExecutionException ex) {
+                    AdmissionRejectedException cause = (AdmissionRejectedException) ex.getCause();
+                    assertTrue(cause.getRetryAfterSeconds() >= 1);
+                    rejected++;
+                }
+            }
+
+            assertTrue(rejected > 0);
+            assertEquals(rejected, executor.getStats().getRejected());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import com.robertnorthard.dtbs.server.layer.persistence.PasswordResetEventDao;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.PasswordResetEvent;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Password reset code store unit tests.
+ *
+ * @author robertnorthard
+ */
+public class PasswordResetCodeStoreTest {
+
+    /**
+     * Store with a controllable clock.
+     */
+    private static class TestCodeStore extends PasswordResetCodeStore {
+
+        private long time = TimeUnit.DAYS.toMillis(1);
+
+        TestCodeStore(PasswordResetEventDao passwordResetEventDao) {
+            super(passwordResetEventDao);
+        }
+
+        @Override
+        protected long now() {
+            return this.time;
+        }
+    }
+
+    /**
+     * Test of verify method, of class PasswordResetCodeStore. Test: code can
+     * only be used once and a new code replaces the old.
+     */
+    @Test
+    public void testVerify() {
+        PasswordResetCodeStore store = new PasswordResetCodeStore(null);
+
+        store.issue("timsmith", "aB3d", new DateTime().plusDays(1));
+        store.issue("timsmith", "zY9x", new DateTime().plusDays(1));
+
+        assertFalse(store.verify("timsmith", "aB3d"));
+        assertFalse(store.verify("johndoe", "zY9x"));
+        assertTrue(store.verify("timsmith", "zY9x"));
+        assertFalse(store.verify("timsmith", "zY9x"));
+    }
+
+    /**
+     * Test of verify method, of class PasswordResetCodeStore. Test: code
+     * invalidated after maximum attempts.
+     */
+    @Test
+    public void testVerifyMaxAttempts() {
+        PasswordResetCodeStore store = new PasswordResetCodeStore(null);
+        store.issue("timsmith", "aB3d", new DateTime().plusDays(1));
+
+        for (int i = 0; i < PasswordResetCodeStore.MAX_ATTEMPTS; i++) {
+            assertFalse(store.verify("timsmith", "wrong"));
+        }
+
+        assertFalse(store.verify("timsmith", "aB3d"));
+        assertEquals(0, store.size());
+    }
+
+    /**
+     * Test of verify method, of class PasswordResetCodeStore. Test: expired
+     * codes rejected and removed.
+     */
+    @Test
+    public void testVerifyExpired() {
+        TestCodeStore store = new TestCodeStore(null);
+        store.issue("timsmith", "aB3d", new DateTime(store.time + TimeUnit.HOURS.toMillis(1)));
+        store.issue("johndoe", "zY9x", new DateTime(store.time + TimeUnit.HOURS.toMillis(3)));
+
+        store.time += TimeUnit.HOURS.toMillis(2);
+
+        assertFalse(store.verify("timsmith", "aB3d"));
+        assertEquals(1, store.size());
+        assertTrue(store.verify("johndoe", "zY9x"));
+    }
+
+    /**
+     * Test of verify method, of class PasswordResetCodeStore. Test: code
+     * written through is verified from memory without reading the database
+     * and its stored row deactivated once used.
+     */
+    @Test
+    public void testVerifyWriteThrough() {
+        PasswordResetEventDao dao = mock(PasswordResetEventDao.class);
+        when(dao.deactivateForUsername("timsmith")).thenReturn(1);
+        PasswordResetCodeStore store = new PasswordResetCodeStore(dao);
+        store.issue("timsmith", "aB3d", new DateTime().plusDays(1));
+
+        assertFalse(store.verify("timsmith", "wrong"));
+        assertTrue(store.verify("timsmith", "aB3d"));
+
+        verify(dao, never()).findLatestActivePasswordReset(anyString());
+        verify(dao, never()).recordAttempt(anyLong(), anyInt());
+        verify(dao, times(2)).deactivateForUsername("timsmith");
+    }
+
+    /**
+     * Test of issue method, of class PasswordResetCodeStore. Test: hashed
+     * code persisted, previous codes deactivated and the code verified
+     * against the stored row by a store not holding it, such as after a
+     * restart.
+     */
+    @Test
+    public void testIssuePersistent() {
+        PasswordResetEventDao dao = mock(PasswordResetEventDao.class);
+        PasswordResetCodeStore store = new PasswordResetCodeStore(dao);
+        store.issue("timsmith", "aB3d", new DateTime().plusDays(1));
+
+        ArgumentCaptor<PasswordResetEvent> event = ArgumentCaptor.forClass(PasswordResetEvent.class);
+        verify(dao).deactivateForUsername("timsmith");
+        verify(dao).persistEntity(event.capture());
+        assertFalse(event.getValue().getCode().contains("aB3d"));
+        assertEquals(1, store.size());
+
+        event.getValue().setId(7L);
+        when(dao.findLatestActivePasswordReset("timsmith")).thenReturn(event.getValue());
+        when(dao.recordAttempt(7L, PasswordResetCodeStore.MAX_ATTEMPTS)).thenReturn(true);
+        when(dao.deactivate(7L)).thenReturn(true, false);
+        PasswordResetCodeStore restarted = new PasswordResetCodeStore(dao);
+
+        assertFalse(restarted.verify("timsmith", "wrong"));
+        verify(dao, never()).deactivate(7L);
+        assertTrue(restarted.verify("timsmith", "aB3d"));
+        assertFalse(restarted.verify("timsmith", "aB3d"));
+    }
+
+    /**
+     * Test of verify method, of class PasswordResetCodeStore. Test: stored
+     * code at its attempt limit deactivated and rejected even if correct by
+     * a store not holding it.
+     */
+    @Test
+    public void testVerifyMaxAttemptsPersistent() {
+        PasswordResetEventDao dao = mock(PasswordResetEventDao.class);
+        PasswordResetCodeStore store = new PasswordResetCodeStore(dao);
+        store.issue("timsmith", "aB3d", new DateTime().plusDays(1));
+
+        ArgumentCaptor<PasswordResetEvent> event = ArgumentCaptor.forClass(PasswordResetEvent.class);
+        verify(dao).persistEntity(event.capture());
+        event.getValue().setId(7L);
+        when(dao.findLatestActivePasswordReset("timsmith")).thenReturn(event.getValue());
+        when(dao.recordAttempt(7L, PasswordResetCodeStore.MAX_ATTEMPTS)).thenReturn(false);
+        PasswordResetCodeStore restarted = new PasswordResetCodeStore(dao);
+
+        assertFalse(restarted.verify("timsmith", "aB3d"));
+        verify(dao).deactivate(7L);
+    }
+}
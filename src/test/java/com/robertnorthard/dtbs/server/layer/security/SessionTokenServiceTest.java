@@ -0,0 +1,159 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import com.robertnorthard.dtbs.server.common.exceptions.AccountAuthenticationFailed;
+import com.robertnorthard.dtbs.server.layer.service.AccountFacade;
+import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.service.entities.AccountRole;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Session token service unit tests.
+ *
+ * @author robertnorthard
+ */
+public class SessionTokenServiceTest {
+
+    private static final byte[] KEY = "0123456789abcdef0123456789abcdef".getBytes();
+
+    private SessionTokenService sessionTokenService;
+    private Account account;
+    private AccountFacade accountService;
+
+    @Before
+    public void setUp() {
+        this.sessionTokenService = new SessionTokenService(KEY, 15, TimeUnit.MINUTES);
+        this.account = new Account();
+        this.account.setUsername("john.smith");
+        this.account.setRole(AccountRole.DRIVER);
+        this.account.setActive();
+
+        this.accountService = mock(AccountFacade.class);
+        when(this.accountService.findAccount("john.smith")).thenReturn(this.account);
+    }
+
+    /**
+     * Test of verify method, of class SessionTokenService.
+     */
+    @Test
+    public void testVerify() {
+        String token = this.sessionTokenService.issue(this.account);
+        SessionToken session = this.sessionTokenService.verify(token);
+
+        assertNotNull(session);
+        assertEquals("john.smith", session.getUsername());
+        assertTrue(session.toAccount().hasRole("driver"));
+    }
+
+    /**
+     * Test of verify method, of class SessionTokenService. Test: tampered
+     * role and token signed with another key rejected.
+     */
+    @Test
+    public void testVerifyTampered() {
+        String token = this.sessionTokenService.issue(this.account);
+
+        assertNull(this.sessionTokenService.verify(token.replace(".DRIVER.", ".PASSENGER.")));
+        assertNull(new SessionTokenService("another key".getBytes(), 15, TimeUnit.MINUTES).verify(token));
+        assertNull(this.sessionTokenService.verify("not.a.token"));
+    }
+
+    /**
+     * Test of verify method, of class SessionTokenService. Test: expired
+     * token rejected.
+     */
+    @Test
+    public void testVerifyExpired() {
+        SessionTokenService expired = new SessionTokenService(KEY, -1, TimeUnit.MILLISECONDS);
+
+        assertNull(expired.verify(expired.issue(this.account)));
+    }
+
+    /**
+     * Test of refresh method, of class SessionTokenService. Test: refreshed
+     * token revoked.
+     */
+    @Test
+    public void testRefresh() throws Exception {
+        String token = this.sessionTokenService.issue(this.account);
+        String refreshed = this.sessionTokenService.refresh(token, this.accountService);
+
+        assertNotNull(this.sessionTokenService.verify(refreshed));
+        assertNull(this.sessionTokenService.verify(token));
+
+        try {
+            this.sessionTokenService.refresh(token, this.accountService);
+            fail("Method should throw refreshed token revoked.");
+        } catch (AccountAuthenticationFailed ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Test of refresh method, of class SessionTokenService. Test: expired
+     * token within its refresh window refreshed.
+     */
+    @Test
+    public void testRefreshExpired() throws Exception {
+        SessionTokenService expired = new SessionTokenService(
+                KEY, -1, TimeUnit.MILLISECONDS, TimeUnit.MINUTES.toMillis(15));
+        String token = expired.issue(this.account);
+
+        assertNull(expired.verify(token));
+        assertNotNull(expired.refresh(token, this.accountService));
+    }
+
+    /**
+     * Test of refresh method, of class SessionTokenService. Test: expired
+     * token past its refresh window rejected.
+     */
+    @Test(expected = AccountAuthenticationFailed.class)
+    public void testRefreshWindowElapsed() throws Exception {
+        SessionTokenService expired = new SessionTokenService(KEY, -1, TimeUnit.MILLISECONDS, 0);
+
+        expired.refresh(expired.issue(this.account), this.accountService);
+    }
+
+    /**
+     * Test of refresh method, of class SessionTokenService. Test: token issued
+     * before the account's sessions were revoked on another node rejected.
+     */
+    @Test(expected = AccountAuthenticationFailed.class)
+    public void testRefreshSessionsRevoked() throws Exception {
+        String token = this.sessionTokenService.issue(this.account);
+        this.account.revokeSessions();
+
+        // revoked on another node, valid here until it expires.
+        assertNotNull(this.sessionTokenService.verify(token));
+        this.sessionTokenService.refresh(token, this.accountService);
+    }
+
+    /**
+     * Test of refresh method, of class SessionTokenService. Test: token for an
+     * inactive account rejected.
+     */
+    @Test(expected = AccountAuthenticationFailed.class)
+    public void testRefreshInactive() throws Exception {
+        String token = this.sessionTokenService.issue(this.account);
+        this.account.setInActive();
+
+        this.sessionTokenService.refresh(token, this.accountService);
+    }
+
+    /**
+     * Test of revokeUser method, of class SessionTokenService. Test: tokens
+     * issued after revocation are valid.
+     */
+    @Test
+    public void testRevokeUser() {
+        String token = this.sessionTokenService.issue(this.account);
+        this.sessionTokenService.revokeUser("john.smith");
+
+        assertNull(this.sessionTokenService.verify(token));
+        assertNotNull(this.sessionTokenService.verify(this.sessionTokenService.issue(this.account)));
+    }
+}
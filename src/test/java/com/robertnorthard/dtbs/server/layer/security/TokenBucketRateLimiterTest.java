@@ -0,0 +1,107 @@
+package com.robertnorthard.dtbs.server.layer.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Token bucket rate limiter unit tests.
+ *
+ * @author robertnorthard
+ */
+public class TokenBucketRateLimiterTest {
+
+    /**
+     * Rate limiter with a controllable clock.
+     */
+    private static class TestRateLimiter extends TokenBucketRateLimiter {
+
+        private long time;
+
+        TestRateLimiter(int capacity, long refillPeriod, TimeUnit unit) {
+            super(capacity, refillPeriod, unit);
+        }
+
+        @Override
+        protected long now() {
+            return this.time;
+        }
+    }
+
+    /**
+     * Test of tryAcquire method, of class TokenBucketRateLimiter. Test: burst
+     * up to capacity then refilled lazily.
+     */
+    @Test
+    public void testTryAcquire() {
+        TestRateLimiter limiter = new TestRateLimiter(3, 1, TimeUnit.SECONDS);
+
+        assertEquals(0, limiter.tryAcquire("timsmith"));
+        assertEquals(0, limiter.tryAcquire("timsmith"));
+        assertEquals(0, limiter.tryAcquire("timsmith"));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), limiter.tryAcquire("timsmith"));
+
+        // buckets are independent.
+        assertEquals(0, limiter.tryAcquire("johndoe"));
+
+        limiter.time = TimeUnit.SECONDS.toNanos(1);
+        assertEquals(0, limiter.tryAcquire("timsmith"));
+        assertTrue(limiter.tryAcquire("timsmith") > 0);
+    }
+
+    /**
+     * Test of tryAcquire method, of class TokenBucketRateLimiter. Test: idle
+     * buckets evicted.
+     */
+    @Test
+    public void testTryAcquireEvictsIdle() {
+        TestRateLimiter limiter = new TestRateLimiter(3, 1, TimeUnit.SECONDS);
+
+        limiter.tryAcquire("timsmith");
+        limiter.tryAcquire("johndoe");
+        assertEquals(2, limiter.size());
+
+        limiter.time = TimeUnit.MINUTES.toNanos(2);
+        limiter.tryAcquire("janedoe");
+
+        assertEquals(1, limiter.size());
+    }
+
+    /**
+     * Test of tryAcquire method, of class TokenBucketRateLimiter. Test:
+     * concurrent requests never exceed capacity.
+     */
+    @Test
+    public void testTryAcquireConcurrent() throws Exception {
+        final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(50, 1, TimeUnit.HOURS);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Long>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return limiter.tryAcquire("timsmith");
+                    }
+                }));
+            }
+
+            int acquired = 0;
+            for (Future<Long> result : results) {
+                if (result.get() == 0) {
+                    acquired++;
+                }
+            }
+            assertEquals(50, acquired);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
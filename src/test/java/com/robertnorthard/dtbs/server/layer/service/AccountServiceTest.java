@@ -4,11 +4,18 @@ import com.robertnorthard.dtbs.server.common.exceptions.AccountAuthenticationFai
 import com.robertnorthard.dtbs.server.layer.service.entities.Account;
 import com.robertnorthard.dtbs.server.layer.persistence.AccountDao;
 import com.robertnorthard.dtbs.server.layer.persistence.PasswordResetEventDao;
+import com.robertnorthard.dtbs.server.layer.persistence.TaxiDao;
+import com.robertnorthard.dtbs.server.layer.service.entities.AccountRole;
+import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
 import com.robertnorthard.dtbs.server.layer.utils.mail.MailStrategy;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.mockito.Mockito;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -21,7 +28,9 @@ public class AccountServiceTest {
     private AccountDao accountDao;
     private PasswordResetEventDao passwordResetEventDao;
     private MailStrategy mailStrategy;
+    private TaxiDao taxiDao;
     private Account passenger;
+    private Account driver;
 
     public AccountServiceTest() {
     }
@@ -32,9 +41,14 @@ public class AccountServiceTest {
         passwordResetEventDao = Mockito.mock(PasswordResetEventDao.class);
         mailStrategy = Mockito.mock(MailStrategy.class);
 
-        accountService = new AccountService(accountDao, passwordResetEventDao, mailStrategy);
+        taxiDao = Mockito.mock(TaxiDao.class);
+
+        accountService = new AccountService(accountDao, passwordResetEventDao, mailStrategy, taxiDao);
 
         passenger = new Account("john.doe", "John","Doe", "$2a$12$PCE2KE0b26mrJSfbxU8ep.XGxVisAc9BqJbxR6FD9BFLLAYGNipg.",  "07888888826", "john_doe@email.com");
+
+        driver = new Account("john.smith", "John","Smith", "$2a$12$PCE2KE0b26mrJSfbxU8ep.XGxVisAc9BqJbxR6FD9BFLLAYGNipg.",  "07888888827", "john_smith@email.com");
+        driver.setRole(AccountRole.DRIVER);
     }
 
    /**
@@ -101,4 +115,50 @@ public class AccountServiceTest {
         Account foundAccount = this.accountService.authenticate(username, password);
         fail();
     }
+
+   /**
+     * Test of authenticate method, of class AccountService,
+     * with a driver. Test: taxi duty state not changed.
+     */
+    @Test
+    public void testAuthenticateDriverNoDutyChange() throws Exception {
+        when(accountDao.findEntityById("john.smith")).thenReturn(driver);
+
+        assertEquals(driver, this.accountService.authenticate("john.smith", "robertnorthard"));
+        verify(taxiDao, never()).findTaxiForDriver(anyString());
+        verify(taxiDao, never()).update(any(Taxi.class));
+    }
+
+   /**
+     * Test of login method, of class AccountService,
+     * with a driver. Test: off duty taxi goes on duty.
+     */
+    @Test
+    public void testLoginDriver() throws Exception {
+        Taxi taxi = new Taxi(null, driver);
+        when(accountDao.findEntityById("john.smith")).thenReturn(driver);
+        when(taxiDao.findTaxiForDriver("john.smith")).thenReturn(taxi);
+
+        this.accountService.login("john.smith", "robertnorthard");
+
+        assertEquals(Taxi.getOnDutyTaxiState(), taxi.getState());
+        verify(taxiDao).update(taxi);
+    }
+
+   /**
+     * Test of login method, of class AccountService,
+     * with a driver on a job. Test: taxi stays on the job.
+     */
+    @Test
+    public void testLoginDriverOnJob() throws Exception {
+        Taxi taxi = new Taxi(null, driver);
+        taxi.setState(Taxi.getAcceptedJobTaxiState());
+        when(accountDao.findEntityById("john.smith")).thenReturn(driver);
+        when(taxiDao.findTaxiForDriver("john.smith")).thenReturn(taxi);
+
+        this.accountService.login("john.smith", "robertnorthard");
+
+        assertEquals(Taxi.getAcceptedJobTaxiState(), taxi.getState());
+        verify(taxiDao, never()).update(any(Taxi.class));
+    }
 }
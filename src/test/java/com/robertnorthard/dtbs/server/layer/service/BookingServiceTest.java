@@ -1,6 +1,7 @@
 package com.robertnorthard.dtbs.server.layer.service;
 
 import com.robertnorthard.dtbs.server.common.exceptions.AccountAuthenticationFailed;
+import com.robertnorthard.dtbs.server.common.exceptions.IllegalBookingStateException;
 import com.robertnorthard.dtbs.server.common.exceptions.InvalidBookingException;
 import com.robertnorthard.dtbs.server.common.exceptions.RouteNotFoundException;
 import com.robertnorthard.dtbs.server.layer.service.entities.Account;
@@ -10,17 +11,48 @@ import com.robertnorthard.dtbs.server.layer.service.entities.Route;
 import com.robertnorthard.dtbs.server.layer.service.entities.Vehicle;
 import com.robertnorthard.dtbs.server.layer.service.entities.VehicleType;
 import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.BookingStates;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.BookingEvent;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.OutboxNotification;
 import com.robertnorthard.dtbs.server.layer.service.entities.taxi.Taxi;
 import com.robertnorthard.dtbs.server.layer.persistence.BookingDao;
+import com.robertnorthard.dtbs.server.layer.persistence.BookingEventDao;
+import com.robertnorthard.dtbs.server.layer.persistence.NotificationOutboxDao;
 import com.robertnorthard.dtbs.server.layer.persistence.RouteDao;
+import com.robertnorthard.dtbs.server.layer.persistence.data.mappers.booking.JpaBookingStateDataConverter;
 import com.robertnorthard.dtbs.server.layer.persistence.TaxiDao;
 import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingDto;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingSummaryDto;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.PagedResult;
+import com.robertnorthard.dtbs.server.layer.persistence.dto.QuoteDto;
+import com.robertnorthard.dtbs.server.layer.service.readmodel.BookingReadModel;
 import com.robertnorthard.dtbs.server.layer.utils.gcm.GcmClient;
+import com.robertnorthard.dtbs.server.layer.utils.gcm.Notification;
+import com.robertnorthard.dtbs.server.layer.utils.topic.BookingTopic;
+import com.robertnorthard.dtbs.server.layer.utils.topic.TopicSubscriber;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.OptimisticLockException;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.Before;
+import org.mockito.ArgumentCaptor;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  *
@@ -35,6 +67,9 @@ public class BookingServiceTest {
     private final GoogleDistanceMatrixFacade googleDistanceMatrixFacade;
     private final GcmClient gcmClient;
     private final TaxiService taxiService;
+    private final BookingEventDao bookingEventDao;
+    private final BookingTopic bookingTopic;
+    private final NotificationOutboxDao notificationOutboxDao;
 
     private final BookingService bookingService;
 
@@ -54,6 +89,9 @@ public class BookingServiceTest {
         this.googleDistanceMatrixFacade = mock(GoogleDistanceMatrixFacade.class);
         this.gcmClient = mock(GcmClient.class);
         this.taxiService = mock(TaxiService.class);
+        this.bookingEventDao = mock(BookingEventDao.class);
+        this.bookingTopic = new BookingTopic();
+        this.notificationOutboxDao = mock(NotificationOutboxDao.class);
 
         this.bookingService = new BookingService(this.bookingDao,
                 this.accountFacade,
@@ -61,7 +99,10 @@ public class BookingServiceTest {
                 this.taxiDao,
                 this.googleDistanceMatrixFacade,
                 this.gcmClient,
-                this.taxiService);
+                this.taxiService,
+                this.bookingEventDao,
+                this.bookingTopic,
+                this.notificationOutboxDao);
     }
 
     @Before
@@ -81,6 +122,9 @@ public class BookingServiceTest {
         route.setEstimateTravelTime(4198);
 
         booking = new Booking(passenger, route, 2);
+
+        // no active bookings in the database unless a test says otherwise.
+        when(this.bookingDao.findActiveBookingIdForPassenger(anyString())).thenReturn(null);
     }
 
     /**
@@ -198,4 +242,439 @@ public class BookingServiceTest {
         fail("Method should throw authentication failed.");
     }
 
+
+    /**
+     * Test of makeBooking method, of class BookingService. Test: booking made
+     * with a quote id reuses the quoted route.
+     */
+    @Test
+    public void testMakeBookingWithQuote() throws Exception {
+        Location start = new Location(89, 180);
+        Location end = new Location(89, 179);
+
+        when(this.accountFacade.findAccount("timsmith")).thenReturn(this.passenger);
+        when(this.googleDistanceMatrixFacade.getRouteInfo(start, end)).thenReturn(this.route);
+
+        QuoteDto quote = this.bookingService.createQuote("timsmith", start, end);
+
+        BookingDto bookingDto = new BookingDto();
+        bookingDto.setPassengerUsername("timsmith");
+        bookingDto.setStartLocation(start);
+        bookingDto.setEndLocation(end);
+        bookingDto.setNumberPassengers(1);
+        bookingDto.setQuoteId(quote.getQuoteId());
+
+        Booking result = this.bookingService.makeBooking(bookingDto);
+
+        verify(this.googleDistanceMatrixFacade, times(1)).getRouteInfo(start, end);
+        assertEquals(quote.getCost(), result.getCost(), 0.001);
+        assertEquals(this.route.getDistance(), result.getRoute().getDistance(), 0.001);
+    }
+
+    /**
+     * Test of makeBooking method, of class BookingService. Test: quote for a
+     * different journey is not reused.
+     */
+    @Test
+    public void testMakeBookingWithQuoteForOtherJourney() throws Exception {
+        Location start = new Location(89, 180);
+        Location end = new Location(89, 179);
+        Location otherEnd = new Location(89, 179.5);
+
+        when(this.accountFacade.findAccount("timsmith")).thenReturn(this.passenger);
+        when(this.googleDistanceMatrixFacade.getRouteInfo(any(Location.class), any(Location.class)))
+                .thenReturn(this.route);
+
+        QuoteDto quote = this.bookingService.createQuote("timsmith", start, end);
+
+        BookingDto bookingDto = new BookingDto();
+        bookingDto.setPassengerUsername("timsmith");
+        bookingDto.setStartLocation(start);
+        bookingDto.setEndLocation(otherEnd);
+        bookingDto.setNumberPassengers(1);
+        bookingDto.setQuoteId(quote.getQuoteId());
+
+        this.bookingService.makeBooking(bookingDto);
+
+        verify(this.googleDistanceMatrixFacade).getRouteInfo(start, otherEnd);
+    }
+
+    /**
+     * Test of makeBooking method, of class BookingService. Test: passenger
+     * with an active booking in the active booking index.
+     */
+    @Test(expected = InvalidBookingException.class)
+    public void testMakeBookingActiveBooking() throws Exception {
+
+        BookingDto bookingDto = new BookingDto();
+        bookingDto.setPassengerUsername("timsmith");
+        bookingDto.setEndLocation(new Location(89, 179));
+        bookingDto.setStartLocation(new Location(89, 180));
+        bookingDto.setNumberPassengers(1);
+
+        when(this.accountFacade.findAccount("timsmith")).thenReturn(this.passenger);
+        when(this.bookingDao.findActiveBookingIds())
+                .thenReturn(Collections.singletonList(new Object[]{"timsmith", 5L}));
+        when(this.bookingDao.findEntityById(5L)).thenReturn(this.booking);
+        when(this.bookingDao.findActiveBookingIdForPassenger("timsmith")).thenReturn(5L);
+
+        this.bookingService.makeBooking(bookingDto);
+
+        fail("Method should throw a user can only have one active booking.");
+    }
+
+    /**
+     * Test of makeBooking method, of class BookingService. Test: passenger
+     * with an active booking made on another node, so not in the active
+     * booking index.
+     */
+    @Test
+    public void testMakeBookingActiveBookingOtherNode() throws Exception {
+
+        BookingDto bookingDto = new BookingDto();
+        bookingDto.setPassengerUsername("timsmith");
+        bookingDto.setEndLocation(new Location(89, 179));
+        bookingDto.setStartLocation(new Location(89, 180));
+        bookingDto.setNumberPassengers(1);
+
+        when(this.accountFacade.findAccount("timsmith")).thenReturn(this.passenger);
+        when(this.bookingDao.findActiveBookingIdForPassenger("timsmith")).thenReturn(7L);
+        when(this.bookingDao.findEntityById(7L)).thenReturn(this.booking);
+
+        try {
+            this.bookingService.makeBooking(bookingDto);
+            fail("Method should throw a user can only have one active booking.");
+        } catch (InvalidBookingException ex) {
+            // expected.
+        }
+
+        verify(this.googleDistanceMatrixFacade, never()).getRouteInfo(any(Location.class), any(Location.class));
+        assertEquals(this.booking, this.bookingService.checkActiveBooking("timsmith"));
+    }
+
+    /**
+     * Test of checkActiveBooking method, of class BookingService. Test:
+     * active booking made on another node is read from the database.
+     */
+    @Test
+    public void testCheckActiveBookingOtherNode() {
+        when(this.bookingDao.findActiveBookingIdForPassenger("timsmith")).thenReturn(7L);
+        when(this.bookingDao.findEntityById(7L)).thenReturn(this.booking);
+
+        assertEquals(this.booking, this.bookingService.checkActiveBooking("timsmith"));
+        assertNull(this.bookingService.checkActiveBooking("janedoe"));
+    }
+
+    /**
+     * Test of makeBooking method, of class BookingService. Test: reservation
+     * released when the booking is not created.
+     */
+    @Test
+    public void testMakeBookingReleasesReservation() throws Exception {
+
+        BookingDto bookingDto = new BookingDto();
+        bookingDto.setPassengerUsername("timsmith");
+        bookingDto.setEndLocation(new Location(89, 179));
+        bookingDto.setStartLocation(new Location(89, 180));
+        bookingDto.setNumberPassengers(1);
+
+        when(this.accountFacade.findAccount("timsmith")).thenReturn(this.passenger);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                this.bookingService.makeBooking(bookingDto);
+                fail("Method should throw route not found.");
+            } catch (RouteNotFoundException ex) {
+                // expected, second attempt is not rejected as an active booking.
+            }
+        }
+    }
+
+    /**
+     * Test of findBookingHistory method, of class BookingService. Test: first
+     * page served from the read model limited to requested size with cursor
+     * for the next page.
+     */
+    @Test
+    public void testFindBookingHistoryPage() {
+        BookingSummaryDto recent = this.bookingSummary(3, 3000);
+        BookingSummaryDto middle = this.bookingSummary(2, 2000);
+        BookingSummaryDto oldest = this.bookingSummary(1, 1000);
+
+        when(this.accountFacade.findAccount("timsmith")).thenReturn(this.passenger);
+        when(this.bookingDao.findBookingHistoryForPassenger("timsmith", null, BookingReadModel.RECENT_BOOKINGS + 1))
+                .thenReturn(Arrays.asList(recent, middle, oldest));
+        when(this.bookingDao.countBookingsForPassengerByState("timsmith"))
+                .thenReturn(Collections.singletonList(new Object[]{Booking.getCompletedTaxiBookingState(), 3L}));
+
+        PagedResult<BookingSummaryDto> page = this.bookingService.findBookingHistory("timsmith", null, 2);
+
+        assertEquals(Arrays.asList(recent, middle), page.getData());
+        assertEquals("2000_2", page.getNextCursor());
+    }
+
+    /**
+     * Test of findBookingHistory method, of class BookingService. Test:
+     * bookings a user is both passenger and driver of are counted once, so no
+     * cursor is returned when the page holds every booking.
+     */
+    @Test
+    public void testFindBookingHistoryPassengerAndDriver() {
+        BookingSummaryDto recent = this.bookingSummary(2, 2000);
+        BookingSummaryDto oldest = this.bookingSummary(1, 1000);
+
+        Account both = mock(Account.class);
+        when(both.hasRole("passenger")).thenReturn(true);
+        when(both.hasRole("driver")).thenReturn(true);
+        when(this.accountFacade.findAccount("timsmith")).thenReturn(both);
+        when(this.bookingDao.findBookingHistoryForPassenger("timsmith", null, BookingReadModel.RECENT_BOOKINGS + 1))
+                .thenReturn(Arrays.asList(recent, oldest));
+        when(this.bookingDao.findBookingHistoryForDriver("timsmith", null, BookingReadModel.RECENT_BOOKINGS + 1))
+                .thenReturn(Arrays.asList(recent, oldest));
+        when(this.bookingDao.countBookingsForPassengerOrDriverByState("timsmith"))
+                .thenReturn(Collections.singletonList(new Object[]{Booking.getCompletedTaxiBookingState(), 2L}));
+
+        PagedResult<BookingSummaryDto> page = this.bookingService.findBookingHistory("timsmith", null, 2);
+
+        assertEquals(Arrays.asList(recent, oldest), page.getData());
+        assertNull(page.getNextCursor());
+        verify(this.bookingDao, never()).countBookingsForPassengerByState("timsmith");
+    }
+
+    /**
+     * Test of acceptBooking method, of class BookingService. Test: update
+     * conflicting with a taxi location update is retried.
+     */
+    @Test
+    public void testAcceptBookingRetriesConflict() throws Exception {
+        when(this.bookingDao.findEntityById(1L)).thenReturn(
+                new Booking(passenger, route, 2), new Booking(passenger, route, 2));
+        doThrow(new OptimisticLockException()).doNothing()
+                .when(this.bookingDao).applyTransition(any(Booking.class), any(Taxi.class),
+                        any(BookingEvent.class), any(OutboxNotification.class));
+
+        this.taxiServiceTaxiOnDuty();
+
+        try {
+            this.bookingService.acceptBooking("johndoe", 1L);
+        } finally {
+            verify(this.gcmClient, never()).sendMessage(anyString(), anyString(), any(), anyString());
+        }
+
+        ArgumentCaptor<OutboxNotification> notification = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(this.bookingDao, times(2)).applyTransition(any(Booking.class), any(Taxi.class),
+                any(BookingEvent.class), notification.capture());
+        assertEquals(BookingStates.TAXI_DISPATCHED.toString(), notification.getValue().getStatus());
+        verify(this.gcmClient, never()).sendMessage(anyString(), anyString(), any(), anyString());
+    }
+
+    /**
+     * Test of acceptBooking method, of class BookingService. Test: booking
+     * accepted by another driver first.
+     */
+    @Test(expected = IllegalBookingStateException.class)
+    public void testAcceptBookingLosesRace() throws Exception {
+        Taxi otherTaxi = new Taxi(vehicle, driver);
+        otherTaxi.goOnDuty();
+        Booking accepted = new Booking(passenger, route, 2);
+        accepted.dispatchTaxi(otherTaxi);
+
+        when(this.bookingDao.findEntityById(1L)).thenReturn(
+                new Booking(passenger, route, 2), accepted);
+        doThrow(new OptimisticLockException())
+                .when(this.bookingDao).applyTransition(any(Booking.class), any(Taxi.class),
+                        any(BookingEvent.class), any(OutboxNotification.class));
+
+        this.taxiServiceTaxiOnDuty();
+
+        try {
+            this.bookingService.acceptBooking("johndoe", 1L);
+        } finally {
+            verify(this.gcmClient, never()).sendMessage(anyString(), anyString(), any(), anyString());
+        }
+    }
+
+    /**
+     * Test of acceptBooking method, of class BookingService. Test: passenger
+     * with a live connection is sent the transition and the outbox
+     * notification written with it is marked delivered.
+     */
+    @Test
+    public void testAcceptBookingPublishesToLiveConnection() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber(true, true);
+        this.bookingTopic.subscribe("timsmith", subscriber);
+
+        when(this.bookingDao.findEntityById(1L)).thenReturn(new Booking(passenger, route, 2));
+        this.taxiServiceTaxiOnDuty();
+
+        this.bookingService.acceptBooking("johndoe", 1L);
+
+        ArgumentCaptor<OutboxNotification> outbox = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(this.bookingDao).applyTransition(any(Booking.class), any(Taxi.class),
+                any(BookingEvent.class), outbox.capture());
+        assertEquals(1, subscriber.messages.size());
+        assertTrue(subscriber.messages.get(0).contains(BookingStates.TAXI_DISPATCHED.toString()));
+        verify(this.notificationOutboxDao).updateStatus(
+                Arrays.asList(outbox.getValue().getId()), OutboxNotification.DeliveryStatus.DELIVERED);
+        verify(this.gcmClient, never()).sendNotification(any(Notification.class));
+    }
+
+    /**
+     * Test of acceptBooking method, of class BookingService. Test: outbox
+     * notification left pending for the relay if the live connection does
+     * not confirm the message was sent.
+     */
+    @Test
+    public void testAcceptBookingSendUnconfirmed() throws Exception {
+        this.bookingTopic.subscribe("timsmith", new RecordingSubscriber(true, false));
+
+        when(this.bookingDao.findEntityById(1L)).thenReturn(new Booking(passenger, route, 2));
+        this.taxiServiceTaxiOnDuty();
+
+        this.bookingService.acceptBooking("johndoe", 1L);
+
+        verify(this.bookingDao).applyTransition(any(Booking.class), any(Taxi.class),
+                any(BookingEvent.class), (OutboxNotification) notNull());
+        verify(this.notificationOutboxDao, never()).updateStatus(
+                anyListOf(Long.class), any(OutboxNotification.DeliveryStatus.class));
+    }
+
+    /**
+     * Test of acceptBooking method, of class BookingService. Test: the
+     * transition does not wait for live connections, the outbox notification
+     * is marked delivered once when the first connection confirms the send.
+     */
+    @Test
+    public void testAcceptBookingSendConfirmedLater() throws Exception {
+        RecordingSubscriber phone = new RecordingSubscriber(true, false);
+        RecordingSubscriber tablet = new RecordingSubscriber(true, false);
+        this.bookingTopic.subscribe("timsmith", phone);
+        this.bookingTopic.subscribe("timsmith", tablet);
+
+        when(this.bookingDao.findEntityById(1L)).thenReturn(new Booking(passenger, route, 2));
+        this.taxiServiceTaxiOnDuty();
+
+        this.bookingService.acceptBooking("johndoe", 1L);
+
+        verify(this.notificationOutboxDao, never()).updateStatus(
+                anyListOf(Long.class), any(OutboxNotification.DeliveryStatus.class));
+
+        phone.callbacks.get(0).sent();
+        tablet.callbacks.get(0).sent();
+
+        verify(this.notificationOutboxDao, times(1)).updateStatus(
+                anyListOf(Long.class), eq(OutboxNotification.DeliveryStatus.DELIVERED));
+    }
+
+    /**
+     * Test of acceptBooking method, of class BookingService. Test: passenger
+     * connection closed during the transition is unsubscribed and the outbox
+     * notification left pending for the relay.
+     */
+    @Test
+    public void testAcceptBookingConnectionClosed() throws Exception {
+        this.bookingTopic.subscribe("timsmith", new RecordingSubscriber(false, true));
+
+        when(this.bookingDao.findEntityById(1L)).thenReturn(new Booking(passenger, route, 2));
+        this.taxiServiceTaxiOnDuty();
+
+        this.bookingService.acceptBooking("johndoe", 1L);
+
+        verify(this.notificationOutboxDao, never()).updateStatus(
+                anyListOf(Long.class), any(OutboxNotification.DeliveryStatus.class));
+        verify(this.gcmClient, never()).sendNotification(any(Notification.class));
+        assertFalse(this.bookingTopic.isConnected("timsmith"));
+    }
+
+    /**
+     * Test of rebuildBooking method, of class BookingService. Test: booking
+     * state restored from its event log.
+     */
+    @Test
+    public void testRebuildBooking() throws Exception {
+        // above the Long cache range, so ids must be compared by value.
+        this.taxi.setId(1000L);
+        this.taxi.goOnDuty();
+
+        Booking replay = new Booking(passenger, route, 2);
+        replay.setId(1L);
+        replay.setTimestamp(new Date(1000));
+        BookingEvent created = new BookingEvent(replay, "timsmith", new Date(1000));
+        replay.dispatchTaxi(this.taxi);
+        BookingEvent dispatched = new BookingEvent(replay, "johndoe", new Date(2000));
+        replay.pickupPassenger(new Date(3000));
+        BookingEvent pickedUp = new BookingEvent(replay, "johndoe", new Date(3000));
+
+        // projection lost the last two transitions.
+        Booking stale = new Booking(passenger, route, 2);
+        stale.setId(1L);
+
+        when(this.bookingDao.findEntityById(1L)).thenReturn(stale);
+        when(this.taxiDao.findEntityById(1000L)).thenReturn(this.taxi);
+        when(this.bookingEventDao.findEventsForBooking(1L))
+                .thenReturn(Arrays.asList(created, dispatched, pickedUp));
+
+        Booking result = this.bookingService.rebuildBooking(1L);
+
+        assertEquals("PASSENGER_PICKED_UP", new JpaBookingStateDataConverter()
+                .convertToDatabaseColumn(result.getState()));
+        assertEquals(this.taxi, result.getTaxi());
+        assertEquals(new Date(1000), result.getTimestamp());
+        assertEquals(new Date(3000), result.getStartTime());
+        verify(this.bookingDao).update(stale);
+        verify(this.taxiDao, times(1)).findEntityById(1000L);
+    }
+
+    private void taxiServiceTaxiOnDuty() {
+        // each attempt reloads the taxi in the on duty state.
+        when(this.taxiDao.findTaxiForDriver("johndoe")).thenAnswer(new Answer<Taxi>() {
+            @Override
+            public Taxi answer(InvocationOnMock invocation) {
+                Taxi onDuty = new Taxi(vehicle, driver);
+                onDuty.setId(1L);
+                onDuty.goOnDuty();
+                return onDuty;
+            }
+        });
+    }
+
+    /**
+     * Subscriber recording the messages sent to it.
+     */
+    private static class RecordingSubscriber implements TopicSubscriber {
+
+        private final boolean open;
+        private final boolean confirmed;
+        private final List<String> messages = new ArrayList<>();
+        private final List<SendCallback> callbacks = new ArrayList<>();
+
+        RecordingSubscriber(boolean open, boolean confirmed) {
+            this.open = open;
+            this.confirmed = confirmed;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return this.open;
+        }
+
+        @Override
+        public void send(String message, SendCallback callback) {
+            this.messages.add(message);
+            this.callbacks.add(callback);
+            if (this.confirmed) {
+                callback.sent();
+            }
+        }
+
+        @Override
+        public void close(String reason) {
+            // nothing to close.
+        }
+    }
+
+    private BookingSummaryDto bookingSummary(long id, long timestamp) {
+        return new BookingSummaryDto(id, new Date(timestamp), Booking.getCompletedTaxiBookingState(),
+                10, 1, null, null, "Hatfield", "London", null);
+    }
 }
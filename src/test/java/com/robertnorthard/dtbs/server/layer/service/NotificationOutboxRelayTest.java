@@ -0,0 +1,177 @@
+package com.robertnorthard.dtbs.server.layer.service;
+
+import com.robertnorthard.dtbs.server.layer.persistence.NotificationOutboxDao;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.OutboxNotification;
+import com.robertnorthard.dtbs.server.layer.service.entities.events.OutboxNotification.DeliveryStatus;
+import com.robertnorthard.dtbs.server.layer.utils.gcm.DeliveryListener;
+import com.robertnorthard.dtbs.server.layer.utils.gcm.DeliveryResult;
+import com.robertnorthard.dtbs.server.layer.utils.gcm.Notification;
+import com.robertnorthard.dtbs.server.layer.utils.gcm.NotificationDispatcher;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Notification outbox relay unit tests.
+ *
+ * @author robertnorthard
+ */
+public class NotificationOutboxRelayTest {
+
+    private NotificationOutboxDao notificationOutboxDao;
+    private NotificationDispatcher dispatcher;
+    private NotificationOutboxRelay relay;
+    private OutboxNotification notification;
+
+    @Before
+    public void setUp() {
+        this.notificationOutboxDao = mock(NotificationOutboxDao.class);
+        this.dispatcher = mock(NotificationDispatcher.class);
+        this.relay = new NotificationOutboxRelay(this.notificationOutboxDao, this.dispatcher);
+
+        this.notification = new OutboxNotification("booking:1:TAXI_DISPATCHED", "booking:1",
+                "TAXI_DISPATCHED", "BOOKING_EVENT", "{}", "registration-id");
+        this.notification.setId(7);
+
+        when(this.notificationOutboxDao.claimPending(anyString(), anyLong(),
+                eq(NotificationOutboxRelay.LEASE_MILLIS), eq(NotificationOutboxRelay.BATCH_SIZE)))
+                .thenReturn(Collections.singletonList(this.notification));
+        when(this.dispatcher.dispatch(any(Notification.class), any(DeliveryListener.class)))
+                .thenReturn(true);
+    }
+
+    /**
+     * Run the relay and return the notification dispatched and its listener.
+     */
+    private DeliveryListener relayAndCapture(ArgumentCaptor<Notification> dispatched) {
+        ArgumentCaptor<DeliveryListener> listener = ArgumentCaptor.forClass(DeliveryListener.class);
+
+        this.relay.relay();
+        verify(this.dispatcher).dispatch(dispatched.capture(), listener.capture());
+        return listener.getValue();
+    }
+
+    /**
+     * Test of relay method, of class NotificationOutboxRelay. Test: delivered
+     * notification marked on the next run and not dispatched twice.
+     */
+    @Test
+    public void testRelayDelivered() {
+        ArgumentCaptor<Notification> dispatched = ArgumentCaptor.forClass(Notification.class);
+        DeliveryListener listener = this.relayAndCapture(dispatched);
+
+        assertEquals("booking:1:TAXI_DISPATCHED", dispatched.getValue().getKey());
+        assertEquals(1, this.relay.getInFlight());
+
+        // still pending in the outbox but in flight.
+        this.relay.relay();
+        verify(this.dispatcher, times(1)).dispatch(any(Notification.class), any(DeliveryListener.class));
+
+        listener.onComplete(dispatched.getValue(), DeliveryResult.delivered());
+        when(this.notificationOutboxDao.claimPending(anyString(), anyLong(), anyLong(), anyInt()))
+                .thenReturn(Collections.<OutboxNotification>emptyList());
+        this.relay.relay();
+
+        verify(this.notificationOutboxDao).updateStatus(Arrays.asList(7L), DeliveryStatus.DELIVERED);
+        assertEquals(0, this.relay.getInFlight());
+    }
+
+    /**
+     * Test of relay method, of class NotificationOutboxRelay. Test: permanent
+     * failure marked failed.
+     */
+    @Test
+    public void testRelayFailed() {
+        ArgumentCaptor<Notification> dispatched = ArgumentCaptor.forClass(Notification.class);
+        DeliveryListener listener = this.relayAndCapture(dispatched);
+
+        listener.onComplete(dispatched.getValue(), DeliveryResult.failed("NotRegistered"));
+        this.relay.relay();
+
+        verify(this.notificationOutboxDao).updateStatus(Arrays.asList(7L), DeliveryStatus.FAILED);
+    }
+
+    /**
+     * Test of relay method, of class NotificationOutboxRelay. Test:
+     * notification abandoned after transient failures dispatched again.
+     */
+    @Test
+    public void testRelayRetry() {
+        ArgumentCaptor<Notification> dispatched = ArgumentCaptor.forClass(Notification.class);
+        DeliveryListener listener = this.relayAndCapture(dispatched);
+
+        listener.onComplete(dispatched.getValue(), DeliveryResult.retry("Unavailable"));
+        this.relay.relay();
+
+        verify(this.dispatcher, times(2)).dispatch(any(Notification.class), any(DeliveryListener.class));
+        verify(this.notificationOutboxDao, never()).updateStatus(
+                anyListOf(Long.class), any(DeliveryStatus.class));
+    }
+
+    /**
+     * Test of relay method, of class NotificationOutboxRelay. Test: marked
+     * again on the next run if the update fails.
+     */
+    @Test
+    public void testRelayUpdateFails() {
+        ArgumentCaptor<Notification> dispatched = ArgumentCaptor.forClass(Notification.class);
+        DeliveryListener listener = this.relayAndCapture(dispatched);
+
+        listener.onComplete(dispatched.getValue(), DeliveryResult.delivered());
+        when(this.notificationOutboxDao.claimPending(anyString(), anyLong(), anyLong(), anyInt()))
+                .thenReturn(Collections.<OutboxNotification>emptyList());
+        doThrow(new IllegalStateException()).doNothing().when(this.notificationOutboxDao)
+                .updateStatus(Arrays.asList(7L), DeliveryStatus.DELIVERED);
+
+        this.relay.relay();
+        this.relay.relay();
+
+        verify(this.notificationOutboxDao, times(2)).updateStatus(Arrays.asList(7L), DeliveryStatus.DELIVERED);
+        verify(this.dispatcher, times(1)).dispatch(any(Notification.class), any(DeliveryListener.class));
+        assertEquals(0, this.relay.getInFlight());
+    }
+
+    /**
+     * Test of relay method, of class NotificationOutboxRelay. Test:
+     * notification dropped by a full dispatcher released and dispatched on
+     * the next run.
+     */
+    @Test
+    public void testRelayQueueFull() {
+        when(this.dispatcher.dispatch(any(Notification.class), any(DeliveryListener.class)))
+                .thenReturn(false, true);
+
+        this.relay.relay();
+        assertEquals(0, this.relay.getInFlight());
+        verify(this.notificationOutboxDao).release(eq(Arrays.asList(7L)), anyString());
+
+        this.relay.relay();
+        assertEquals(1, this.relay.getInFlight());
+    }
+
+    /**
+     * Test of relay method, of class NotificationOutboxRelay. Test:
+     * notification claimed more than the maximum attempts dead lettered and
+     * not dispatched.
+     */
+    @Test
+    public void testRelayDeadLetter() {
+        this.notification.setAttempts(NotificationOutboxRelay.MAX_ATTEMPTS + 1);
+
+        this.relay.relay();
+
+        verify(this.notificationOutboxDao).updateStatus(Arrays.asList(7L), DeliveryStatus.DEAD_LETTER);
+        verify(this.dispatcher, never()).dispatch(any(Notification.class), any(DeliveryListener.class));
+        assertEquals(0, this.relay.getInFlight());
+    }
+}
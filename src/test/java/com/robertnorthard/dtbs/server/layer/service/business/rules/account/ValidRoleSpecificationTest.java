@@ -0,0 +1,50 @@
+package com.robertnorthard.dtbs.server.layer.service.business.rules.account;
+
+import com.robertnorthard.dtbs.server.layer.service.business.rules.Specification;
+import com.robertnorthard.dtbs.server.layer.service.business.rules.validator.ValidatorContext;
+import com.robertnorthard.dtbs.server.layer.service.business.rules.validator.ValidatorResult;
+import com.robertnorthard.dtbs.server.layer.service.entities.Account;
+import com.robertnorthard.dtbs.server.layer.service.entities.AccountRole;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for validating user account roles.
+ *
+ * @author robertnorthard
+ */
+public class ValidRoleSpecificationTest {
+
+    private final ValidatorResult results;
+    private final Specification spec;
+    private Account account;
+
+    public ValidRoleSpecificationTest() {
+        results = new ValidatorContext();
+        spec = new ValidRoleSpecification(results);
+    }
+
+    @Before
+    public void setup() {
+        account = new Account();
+    }
+
+    /**
+     * Test valid role. Valid role - passenger.
+     */
+    @Test
+    public void isSatisfiedByValidRole1() {
+        account.setRole(AccountRole.PASSENGER);
+        assertTrue(spec.isSatisfiedBy(account));
+    }
+
+    /**
+     * Test valid role. Invalid role - administrators cannot register.
+     */
+    @Test
+    public void isSatisfiedByValidRole2() {
+        account.setRole(AccountRole.ADMIN);
+        assertFalse(spec.isSatisfiedBy(account));
+    }
+}
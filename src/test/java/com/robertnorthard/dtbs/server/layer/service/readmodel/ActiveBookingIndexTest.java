@@ -0,0 +1,112 @@
+package com.robertnorthard.dtbs.server.layer.service.readmodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author robertnorthard
+ */
+public class ActiveBookingIndexTest {
+
+    /**
+     * Test of reserve method, of class ActiveBookingIndex. Test: reservation
+     * lifecycle.
+     */
+    @Test
+    public void testReserve() {
+        ActiveBookingIndex index = new ActiveBookingIndex();
+
+        assertTrue(index.reserve("timsmith"));
+        assertFalse(index.reserve("timsmith"));
+        assertNull(index.getActiveBookingId("timsmith"));
+
+        index.confirm("timsmith", 1L);
+        assertEquals(Long.valueOf(1), index.getActiveBookingId("timsmith"));
+
+        // release only removes an unconfirmed reservation.
+        index.release("timsmith");
+        assertFalse(index.reserve("timsmith"));
+
+        index.remove("timsmith", 1L);
+        assertTrue(index.reserve("timsmith"));
+    }
+
+    /**
+     * Test of reserve method, of class ActiveBookingIndex. Test: only one of
+     * many concurrent reservations for the same user succeeds.
+     */
+    @Test
+    public void testReserveConcurrent() throws Exception {
+        final ActiveBookingIndex index = new ActiveBookingIndex();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 100; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return index.reserve("timsmith");
+                    }
+                }));
+            }
+
+            int reserved = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    reserved++;
+                }
+            }
+            assertEquals(1, reserved);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of warm method, of class ActiveBookingIndex. Test: existing
+     * entries are kept.
+     */
+    @Test
+    public void testWarm() {
+        ActiveBookingIndex index = new ActiveBookingIndex();
+        index.confirm("timsmith", 2L);
+
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{"timsmith", 1L});
+        rows.add(new Object[]{"johndoe", 3L});
+        index.warm(rows);
+
+        assertTrue(index.isWarm());
+        assertEquals(Long.valueOf(2), index.getActiveBookingId("timsmith"));
+        assertEquals(Long.valueOf(3), index.getActiveBookingId("johndoe"));
+        assertNull(index.getActiveBookingId("janedoe"));
+
+        index.warm(Collections.<Object[]>emptyList());
+        assertEquals(Long.valueOf(3), index.getActiveBookingId("johndoe"));
+    }
+
+    /**
+     * Test of warm method, of class ActiveBookingIndex. Test: the most recent
+     * of a passenger's active bookings is kept.
+     */
+    @Test
+    public void testWarmMostRecent() {
+        ActiveBookingIndex index = new ActiveBookingIndex();
+
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{"timsmith", 4L});
+        rows.add(new Object[]{"timsmith", 1L});
+        index.warm(rows);
+
+        assertEquals(Long.valueOf(4), index.getActiveBookingId("timsmith"));
+    }
+}
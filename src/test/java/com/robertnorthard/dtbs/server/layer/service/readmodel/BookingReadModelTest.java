@@ -0,0 +1,66 @@
+package com.robertnorthard.dtbs.server.layer.service.readmodel;
+
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingSummaryDto;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCache;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Booking read model unit tests.
+ *
+ * @author robertnorthard
+ */
+public class BookingReadModelTest {
+
+    private final UserBookingView empty = new UserBookingView(
+            null, Collections.<BookingSummaryDto>emptyList(), 0, 0, 0);
+
+    /**
+     * Test of putView method, of class BookingReadModel. Test: a view loaded
+     * before the user's view was invalidated is discarded.
+     */
+    @Test
+    public void testPutViewStale() {
+        BookingReadModel readModel = new BookingReadModel(
+                new EntityCache<String, UserBookingView>("test", 100, 1, TimeUnit.HOURS));
+
+        long stamp = readModel.getStamp();
+        readModel.invalidate("timsmith");
+        readModel.putView("timsmith", this.empty, stamp);
+
+        assertNull(readModel.getView("timsmith"));
+    }
+
+    /**
+     * Test of getView method, of class BookingReadModel. Test: views expire
+     * so transitions made on other nodes are picked up.
+     */
+    @Test
+    public void testGetViewExpires() throws Exception {
+        BookingReadModel readModel = new BookingReadModel(
+                new EntityCache<String, UserBookingView>("test", 100, 50, TimeUnit.MILLISECONDS));
+
+        readModel.putView("timsmith", this.empty, readModel.getStamp());
+        assertSame(this.empty, readModel.getView("timsmith"));
+
+        Thread.sleep(100);
+        assertNull(readModel.getView("timsmith"));
+    }
+
+    /**
+     * Test of putView method, of class BookingReadModel. Test: the number of
+     * views is bounded.
+     */
+    @Test
+    public void testPutViewBounded() {
+        EntityCache<String, UserBookingView> views = new EntityCache<>("test", 10, 1, TimeUnit.HOURS);
+        BookingReadModel readModel = new BookingReadModel(views);
+
+        for (int i = 0; i < 100; i++) {
+            readModel.putView("user" + i, this.empty, readModel.getStamp());
+        }
+        assertTrue(views.size() <= 10);
+    }
+}
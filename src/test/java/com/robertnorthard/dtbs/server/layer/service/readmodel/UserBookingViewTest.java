@@ -0,0 +1,75 @@
+package com.robertnorthard.dtbs.server.layer.service.readmodel;
+
+import com.robertnorthard.dtbs.server.layer.persistence.dto.BookingSummaryDto;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.Booking;
+import com.robertnorthard.dtbs.server.layer.service.entities.booking.BookingState;
+import java.util.Collections;
+import java.util.Date;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author robertnorthard
+ */
+public class UserBookingViewTest {
+
+    private final UserBookingView empty = new UserBookingView(
+            null, Collections.<BookingSummaryDto>emptyList(), 0, 0, 0);
+
+    /**
+     * Test of apply method, of class UserBookingView. Test: passenger booking
+     * created then completed.
+     */
+    @Test
+    public void testApplyPassengerLifecycle() {
+        UserBookingView created = this.empty.apply(
+                this.summary(1, 1000, Booking.getAwaitingTaxiBookingState()), true, true, 2);
+
+        assertEquals(Long.valueOf(1), created.getActiveBookingId());
+        assertEquals(1, created.getTotalBookings());
+
+        UserBookingView completed = created.apply(
+                this.summary(1, 1000, Booking.getCompletedTaxiBookingState()), true, false, 2);
+
+        assertNull(completed.getActiveBookingId());
+        assertEquals(1, completed.getTotalBookings());
+        assertEquals(1, completed.getCompletedBookings());
+        assertEquals(1, completed.getRecentBookings().size());
+    }
+
+    /**
+     * Test of apply method, of class UserBookingView. Test: recent bookings
+     * ordered by most recent first and bounded.
+     */
+    @Test
+    public void testApplyRecentBookingsBounded() {
+        UserBookingView view = this.empty
+                .apply(this.summary(2, 2000, Booking.getCancelledBookingState()), true, true, 2)
+                .apply(this.summary(3, 3000, Booking.getCancelledBookingState()), true, true, 2)
+                .apply(this.summary(1, 1000, Booking.getCancelledBookingState()), true, true, 2);
+
+        assertEquals(2, view.getRecentBookings().size());
+        assertEquals(3, view.getRecentBookings().get(0).getId());
+        assertEquals(2, view.getRecentBookings().get(1).getId());
+        assertEquals(3, view.getTotalBookings());
+        assertEquals(3, view.getCancelledBookings());
+    }
+
+    /**
+     * Test of apply method, of class UserBookingView. Test: driver joins a
+     * booking when dispatched and has no active passenger booking.
+     */
+    @Test
+    public void testApplyDriverDispatched() {
+        UserBookingView view = this.empty.apply(
+                this.summary(1, 1000, Booking.getTaxiDispatchedBookingState()), false, false, 2);
+
+        assertNull(view.getActiveBookingId());
+        assertEquals(1, view.getTotalBookings());
+    }
+
+    private BookingSummaryDto summary(long id, long timestamp, BookingState state) {
+        return new BookingSummaryDto(id, new Date(timestamp), state, 10, 1, null, null, "Hatfield", "London", null);
+    }
+}
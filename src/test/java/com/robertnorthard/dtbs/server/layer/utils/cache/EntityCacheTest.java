@@ -0,0 +1,122 @@
+package com.robertnorthard.dtbs.server.layer.utils.cache;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Entity cache unit tests.
+ *
+ * @author robertnorthard
+ */
+public class EntityCacheTest {
+
+    /**
+     * Test of get method, of class EntityCache. Test: hit ratio recorded.
+     */
+    @Test
+    public void testGet() {
+        EntityCache<Long, String> cache = new EntityCache<>("test", 10, 1, TimeUnit.MINUTES);
+
+        assertNull(cache.get(1L));
+        cache.put(1L, "one", cache.getStamp());
+        assertEquals("one", cache.get(1L));
+
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0.5, stats.getHitRatio(), 0.0);
+    }
+
+    /**
+     * Test of get method, of class EntityCache. Test: expired entry not
+     * returned.
+     */
+    @Test
+    public void testGetExpired() {
+        final long[] time = {0};
+        EntityCache<Long, String> cache = new EntityCache<Long, String>("test", 10, 1, TimeUnit.SECONDS) {
+            @Override
+            protected long now() {
+                return time[0];
+            }
+        };
+
+        cache.put(1L, "one", cache.getStamp());
+        time[0] = TimeUnit.MILLISECONDS.toNanos(999);
+        assertEquals("one", cache.get(1L));
+
+        time[0] = TimeUnit.SECONDS.toNanos(1);
+        assertNull(cache.get(1L));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Test of invalidate method, of class EntityCache.
+     */
+    @Test
+    public void testInvalidate() {
+        EntityCache<Long, String> cache = new EntityCache<>("test", 10, 1, TimeUnit.MINUTES);
+
+        cache.put(1L, "one", cache.getStamp());
+        cache.invalidate(1L);
+
+        assertNull(cache.get(1L));
+    }
+
+    /**
+     * Test of put method, of class EntityCache. Test: entity loaded before a
+     * concurrent invalidation is not cached.
+     */
+    @Test
+    public void testPutAfterInvalidate() {
+        EntityCache<Long, String> cache = new EntityCache<>("test", 10, 1, TimeUnit.MINUTES);
+
+        long stamp = cache.getStamp();
+        cache.invalidate(1L);
+        cache.put(1L, "stale", stamp);
+
+        assertNull(cache.get(1L));
+    }
+
+    /**
+     * Test of put method, of class EntityCache. Test: a scan of one-off
+     * lookups does not evict frequently requested entries.
+     */
+    @Test
+    public void testPutScanResistant() {
+        EntityCache<Long, String> cache = new EntityCache<>("test", 100, 1, TimeUnit.MINUTES);
+
+        for (long i = 0; i < 50; i++) {
+            for (int j = 0; j < 10; j++) {
+                if (cache.get(i) == null) {
+                    cache.put(i, "hot", cache.getStamp());
+                }
+            }
+        }
+
+        for (long i = 1000; i < 1300; i++) {
+            cache.get(i);
+            cache.put(i, "cold", cache.getStamp());
+        }
+
+        assertEquals(100, cache.size());
+        for (long i = 0; i < 50; i++) {
+            assertEquals("hot", cache.get(i));
+        }
+    }
+
+    /**
+     * Test of copy method, of class EntityCopier.
+     */
+    @Test
+    public void testCopy() {
+        Location location = new Location(51.5, -0.1);
+        Location copy = EntityCopier.copy(location);
+
+        assertNotSame(location, copy);
+        assertEquals(location.getLatitude(), copy.getLatitude(), 0.0);
+        assertEquals(location.getLongitude(), copy.getLongitude(), 0.0);
+    }
+}
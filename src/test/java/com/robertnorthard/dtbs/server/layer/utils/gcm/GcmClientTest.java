@@ -0,0 +1,95 @@
+package com.robertnorthard.dtbs.server.layer.utils.gcm;
+
+import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * GCM client unit tests, run against a local stub server.
+ *
+ * @author robertnorthard
+ */
+public class GcmClientTest {
+
+    private StubGcmServer stub;
+    private GcmClient gcmClient;
+
+    @Before
+    public void setUp() throws Exception {
+        this.stub = new StubGcmServer(0);
+        this.gcmClient = new GcmClient("key", this.stub.getEndpoint(), DataMapper.getInstance());
+    }
+
+    @After
+    public void tearDown() {
+        this.gcmClient.shutdown();
+        this.stub.stop();
+    }
+
+    /**
+     * Test of deliver method, of class GcmClient.
+     */
+    @Test
+    public void testDeliver() {
+        DeliveryResult result = this.gcmClient.deliver(new Notification(null, null,
+                "TAXI_DISPATCHED", "BOOKING_EVENT", "{}", Arrays.asList("device-1", "device-2")));
+
+        assertEquals(DeliveryResult.Status.DELIVERED, result.getStatus());
+        assertEquals(1, this.stub.getRequests());
+        assertEquals(2, this.stub.getDevices());
+    }
+
+    /**
+     * Test of deliver method, of class GcmClient. Test: only devices failing
+     * with a transient error retried.
+     */
+    @Test
+    public void testDeliverPartialRetry() {
+        DeliveryResult result = this.gcmClient.deliver(new Notification(null, null,
+                "TAXI_DISPATCHED", "BOOKING_EVENT", "{}",
+                Arrays.asList("device-1", "unavailable-2", "invalid-3")));
+
+        assertEquals(DeliveryResult.Status.RETRY, result.getStatus());
+        assertEquals(Arrays.asList("unavailable-2"), result.getRetryRegistrationIds());
+    }
+
+    /**
+     * Test of deliver method, of class GcmClient. Test: permanent failure for
+     * every device.
+     */
+    @Test
+    public void testDeliverFailed() {
+        DeliveryResult result = this.gcmClient.deliver(new Notification(
+                "TAXI_DISPATCHED", "BOOKING_EVENT", "{}", "invalid-1"));
+
+        assertEquals(DeliveryResult.Status.FAILED, result.getStatus());
+        assertEquals("InvalidRegistration", result.getReason());
+    }
+
+    /**
+     * Test of sendMessage method, of class GcmClient. Test: devices grouped
+     * into multicast requests.
+     */
+    @Test
+    public void testSendMessageMulticast() throws Exception {
+        List<String> registrationIds = new ArrayList<>();
+        for (int i = 0; i < 2 * NotificationDispatcher.MULTICAST_LIMIT + 1; i++) {
+            registrationIds.add("device-" + i);
+        }
+
+        this.gcmClient.sendMessage("OFFER", "BOOKING_EVENT", "booking", registrationIds);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.stub.getDevices() < registrationIds.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(3, this.stub.getRequests());
+        assertEquals(registrationIds.size(), this.stub.getDevices());
+    }
+}
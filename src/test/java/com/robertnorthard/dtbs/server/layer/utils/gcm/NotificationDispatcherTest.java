@@ -0,0 +1,217 @@
+package com.robertnorthard.dtbs.server.layer.utils.gcm;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Notification dispatcher unit tests.
+ *
+ * @author robertnorthard
+ */
+public class NotificationDispatcherTest {
+
+    private final Notification notification = new Notification(
+            "TAXI_DISPATCHED", "BOOKING_EVENT", "{}", "registration-id");
+
+    /**
+     * Wait for all queued notifications to be processed.
+     */
+    private static void await(NotificationDispatcher dispatcher) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+
+        while (dispatcher.getStats().getPending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, dispatcher.getStats().getPending());
+    }
+
+    /**
+     * Test of dispatch method, of class NotificationDispatcher.
+     */
+    @Test
+    public void testDispatch() throws Exception {
+        GcmClient gcmClient = mock(GcmClient.class);
+        when(gcmClient.deliver(this.notification)).thenReturn(DeliveryResult.delivered());
+        NotificationDispatcher dispatcher = new NotificationDispatcher(gcmClient, 1, 10, 3, 1);
+
+        assertTrue(dispatcher.dispatch(this.notification));
+        await(dispatcher);
+
+        verify(gcmClient, times(1)).deliver(this.notification);
+        assertEquals(1, dispatcher.getStats().getDelivered());
+        assertTrue(dispatcher.getDeadLetters().isEmpty());
+    }
+
+    /**
+     * Test of dispatch method, of class NotificationDispatcher. Test:
+     * transient failures retried.
+     */
+    @Test
+    public void testDispatchRetry() throws Exception {
+        GcmClient gcmClient = mock(GcmClient.class);
+        when(gcmClient.deliver(this.notification)).thenReturn(
+                DeliveryResult.retry("Unavailable"),
+                DeliveryResult.retry("Unavailable"),
+                DeliveryResult.delivered());
+        NotificationDispatcher dispatcher = new NotificationDispatcher(gcmClient, 1, 10, 3, 1);
+
+        dispatcher.dispatch(this.notification);
+        await(dispatcher);
+
+        verify(gcmClient, times(3)).deliver(this.notification);
+        assertEquals(2, dispatcher.getStats().getRetried());
+        assertEquals(1, dispatcher.getStats().getDelivered());
+    }
+
+    /**
+     * Test of dispatch method, of class NotificationDispatcher. Test:
+     * notification dead lettered after maximum attempts.
+     */
+    @Test
+    public void testDispatchMaxAttempts() throws Exception {
+        GcmClient gcmClient = mock(GcmClient.class);
+        when(gcmClient.deliver(this.notification)).thenReturn(DeliveryResult.retry("Unavailable"));
+        NotificationDispatcher dispatcher = new NotificationDispatcher(gcmClient, 1, 10, 3, 1);
+
+        dispatcher.dispatch(this.notification);
+        await(dispatcher);
+
+        verify(gcmClient, times(3)).deliver(this.notification);
+        assertEquals(1, dispatcher.getStats().getFailed());
+        assertEquals(1, dispatcher.getDeadLetters().size());
+        assertEquals(3, dispatcher.getDeadLetters().get(0).getAttempts());
+        assertEquals("Unavailable", dispatcher.getDeadLetters().get(0).getReason());
+    }
+
+    /**
+     * Test of dispatch method, of class NotificationDispatcher. Test:
+     * permanent failures not retried.
+     */
+    @Test
+    public void testDispatchFailed() throws Exception {
+        GcmClient gcmClient = mock(GcmClient.class);
+        when(gcmClient.deliver(this.notification)).thenReturn(DeliveryResult.failed("NotRegistered"));
+        NotificationDispatcher dispatcher = new NotificationDispatcher(gcmClient, 1, 10, 3, 1);
+
+        dispatcher.dispatch(this.notification);
+        await(dispatcher);
+
+        verify(gcmClient, times(1)).deliver(this.notification);
+        assertEquals(1, dispatcher.getDeadLetters().size());
+    }
+
+    /**
+     * Test of dispatch method, of class NotificationDispatcher. Test:
+     * notifications beyond the queue limit dropped without blocking.
+     */
+    @Test
+    public void testDispatchQueueFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        GcmClient gcmClient = mock(GcmClient.class);
+        when(gcmClient.deliver(this.notification)).thenAnswer(new Answer<DeliveryResult>() {
+            @Override
+            public DeliveryResult answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return DeliveryResult.delivered();
+            }
+        });
+        NotificationDispatcher dispatcher = new NotificationDispatcher(gcmClient, 1, 2, 3, 1);
+
+        assertTrue(dispatcher.dispatch(this.notification));
+        assertTrue(dispatcher.dispatch(this.notification));
+        assertFalse(dispatcher.dispatch(this.notification));
+        assertEquals(1, dispatcher.getStats().getRejected());
+
+        release.countDown();
+        await(dispatcher);
+        assertEquals(2, dispatcher.getStats().getDelivered());
+    }
+
+    /**
+     * Test of dispatch method, of class NotificationDispatcher. Test: queued
+     * notification for the same device and collapse key replaced.
+     */
+    @Test
+    public void testDispatchCoalesced() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Notification blocking = new Notification("OFFER", "BOOKING_EVENT", "{}", "other-device");
+        Notification dispatched = new Notification("booking:1:TAXI_DISPATCHED", "booking:1",
+                "TAXI_DISPATCHED", "BOOKING_EVENT", "{}", Arrays.asList("registration-id"));
+        Notification pickedUp = new Notification("booking:1:PASSENGER_PICKED_UP", "booking:1",
+                "PASSENGER_PICKED_UP", "BOOKING_EVENT", "{}", Arrays.asList("registration-id"));
+
+        GcmClient gcmClient = mock(GcmClient.class);
+        when(gcmClient.deliver(any(Notification.class))).thenReturn(DeliveryResult.delivered());
+        when(gcmClient.deliver(blocking)).thenAnswer(new Answer<DeliveryResult>() {
+            @Override
+            public DeliveryResult answer(InvocationOnMock invocation) throws Throwable {
+                started.countDown();
+                release.await();
+                return DeliveryResult.delivered();
+            }
+        });
+        DeliveryListener listener = mock(DeliveryListener.class);
+        NotificationDispatcher dispatcher = new NotificationDispatcher(gcmClient, 1, 10, 3, 1);
+
+        dispatcher.dispatch(blocking);
+        started.await();
+        dispatcher.dispatch(dispatched, listener);
+        dispatcher.dispatch(pickedUp, listener);
+        release.countDown();
+        await(dispatcher);
+
+        verify(gcmClient, never()).deliver(dispatched);
+        verify(gcmClient).deliver(pickedUp);
+        verify(listener).onComplete(dispatched, DeliveryResult.superseded());
+        verify(listener).onComplete(pickedUp, DeliveryResult.delivered());
+        assertEquals(1, dispatcher.getStats().getCoalesced());
+    }
+
+    /**
+     * Test of dispatch method, of class NotificationDispatcher. Test: only
+     * devices failing with a transient error retried.
+     */
+    @Test
+    public void testDispatchPartialRetry() throws Exception {
+        Notification notification = new Notification(null, null, "OFFER", "BOOKING_EVENT", "{}",
+                Arrays.asList("device-1", "device-2"));
+        GcmClient gcmClient = mock(GcmClient.class);
+        when(gcmClient.deliver(any(Notification.class))).thenReturn(
+                DeliveryResult.retry("Unavailable", Arrays.asList("device-2")),
+                DeliveryResult.delivered());
+        NotificationDispatcher dispatcher = new NotificationDispatcher(gcmClient, 1, 10, 3, 1);
+
+        dispatcher.dispatch(notification);
+        await(dispatcher);
+
+        ArgumentCaptor<Notification> sent = ArgumentCaptor.forClass(Notification.class);
+        verify(gcmClient, times(2)).deliver(sent.capture());
+        assertEquals(Arrays.asList("device-2"), sent.getAllValues().get(1).getRegistrationIds());
+    }
+
+    /**
+     * Test of shutdown method, of class NotificationDispatcher. Test:
+     * notifications dispatched after shutdown abandoned, not sent.
+     */
+    @Test
+    public void testShutdown() throws Exception {
+        GcmClient gcmClient = mock(GcmClient.class);
+        NotificationDispatcher dispatcher = new NotificationDispatcher(gcmClient, 1, 10, 3, 1);
+
+        dispatcher.shutdown();
+        dispatcher.dispatch(this.notification);
+
+        assertEquals(0, dispatcher.getStats().getPending());
+        assertEquals(1, dispatcher.getDeadLetters().size());
+        verify(gcmClient, never()).deliver(any(Notification.class));
+    }
+}
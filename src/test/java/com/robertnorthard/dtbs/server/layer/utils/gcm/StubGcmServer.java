@@ -0,0 +1,191 @@
+package com.robertnorthard.dtbs.server.layer.utils.gcm;
+
+import com.robertnorthard.dtbs.server.layer.utils.datamapper.DataMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Local stand in for the Google Cloud Messenger send endpoint, so push
+ * throughput can be measured without network access or an API key. Every
+ * device is accepted, except registration ids starting with "unavailable"
+ * which fail with a transient error and "invalid" which fail permanently.
+ *
+ * Run main to benchmark the notification dispatcher against the stub, or
+ * point a server at it with dtbs.server.gcm.endpoint.
+ *
+ * @author robertnorthard
+ */
+public class StubGcmServer {
+
+    private static final Logger LOGGER = Logger.getLogger(StubGcmServer.class.getName());
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong devices = new AtomicLong();
+
+    /**
+     * Start a stub server.
+     *
+     * @param port port to listen on, 0 for any free port.
+     * @throws IOException if the server cannot be started.
+     */
+    public StubGcmServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/gcm/send", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StubGcmServer.this.handle(exchange);
+            }
+        });
+        this.server.start();
+    }
+
+    /**
+     * @return the URL of the stub send endpoint.
+     */
+    public String getEndpoint() {
+        return "http://localhost:" + this.server.getAddress().getPort() + "/gcm/send";
+    }
+
+    /**
+     * @return number of requests received.
+     */
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    /**
+     * @return number of devices messages were sent to.
+     */
+    public long getDevices() {
+        return this.devices.get();
+    }
+
+    /**
+     * Stop the server.
+     */
+    public void stop() {
+        this.server.stop(0);
+        this.executor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        JSONObject request;
+
+        try (InputStreamReader reader = new InputStreamReader(
+                exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            request = (JSONObject) new JSONParser().parse(reader);
+        } catch (ParseException ex) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+
+        JSONArray registrationIds = (JSONArray) request.get("registration_ids");
+        List<Map<String, String>> results = new ArrayList<>();
+        int success = 0;
+
+        for (Object registrationId : registrationIds) {
+            Map<String, String> result = new LinkedHashMap<>();
+            String id = String.valueOf(registrationId);
+
+            if (id.startsWith("unavailable")) {
+                result.put("error", "Unavailable");
+            } else if (id.startsWith("invalid")) {
+                result.put("error", "InvalidRegistration");
+            } else {
+                result.put("message_id", "0:" + this.devices.get());
+                success++;
+            }
+            results.add(result);
+        }
+
+        this.requests.incrementAndGet();
+        this.devices.addAndGet(registrationIds.size());
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("multicast_id", this.requests.get());
+        response.put("success", success);
+        response.put("failure", registrationIds.size() - success);
+        response.put("canonical_ids", 0);
+        response.put("results", results);
+
+        byte[] body = JSONObject.toJSONString(response).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Benchmark sending to devices one request per device and as multicast
+     * requests through the notification dispatcher.
+     *
+     * @param args number of devices, default 20000.
+     * @throws Exception if the benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        StubGcmServer stub = new StubGcmServer(0);
+
+        try {
+            List<String> registrationIds = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                registrationIds.add("device-" + i);
+            }
+
+            GcmClient gcmClient = new GcmClient("key", stub.getEndpoint(), DataMapper.getInstance());
+
+            NotificationDispatcher single = new NotificationDispatcher(gcmClient, 8, count, 5, 100);
+            long start = System.nanoTime();
+            for (String registrationId : registrationIds) {
+                single.dispatch(new Notification("OFFER", "BOOKING_EVENT", "{}", registrationId));
+            }
+            report("single", single, start, count);
+            single.shutdown();
+
+            NotificationDispatcher multicast = new NotificationDispatcher(gcmClient, 8, count, 5, 100);
+            start = System.nanoTime();
+            multicast.dispatch(new Notification(null, null, "OFFER", "BOOKING_EVENT", "{}", registrationIds));
+            report("multicast", multicast, start, count);
+            multicast.shutdown();
+        } finally {
+            stub.stop();
+        }
+    }
+
+    private static void report(String name, NotificationDispatcher dispatcher, long start,
+            int count) throws InterruptedException {
+        while (dispatcher.getStats().getPending() > 0) {
+            Thread.sleep(1);
+        }
+
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOGGER.log(Level.INFO, "{0}: {1} devices, {2} requests in {3}ms, {4} devices/s",
+                new Object[]{name, count, dispatcher.getStats().getDelivered(), millis,
+                    count * 1000L / millis});
+    }
+}
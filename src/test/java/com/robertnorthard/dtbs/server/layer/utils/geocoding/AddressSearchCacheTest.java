@@ -0,0 +1,115 @@
+package com.robertnorthard.dtbs.server.layer.utils.geocoding;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCache;
+import java.io.File;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Address search cache unit tests.
+ *
+ * @author robertnorthard
+ */
+public class AddressSearchCacheTest {
+
+    private AddressSearchCache create(File file) {
+        return this.create(new EntityCache<String, Serializable>("test", 100, 1, TimeUnit.HOURS), file);
+    }
+
+    private AddressSearchCache create(EntityCache<String, Serializable> found, File file) {
+        return new AddressSearchCache(found,
+                new EntityCache<String, Boolean>("test not found", 100, 1, TimeUnit.HOURS), file);
+    }
+
+    /**
+     * Test of normalize method, of class AddressSearchCache.
+     */
+    @Test
+    public void testNormalize() {
+        assertEquals("heathrow t5", AddressSearchCache.normalize("Heathrow T5"));
+        assertEquals("heathrow t5", AddressSearchCache.normalize("heathrow t5 "));
+        assertEquals("heathrow t5", AddressSearchCache.normalize("HEATHROW  T5"));
+        assertEquals("30 cheviots hatfield al10 8jd",
+                AddressSearchCache.normalize("30 Cheviots, Hatfield, AL108JD"));
+        assertEquals("30 cheviots hatfield al10 8jd",
+                AddressSearchCache.normalize(" 30 cheviots hatfield al10 8jd."));
+    }
+
+    /**
+     * Test of getLocation method, of class AddressSearchCache. Test: found
+     * and not found results served for equivalent address text.
+     */
+    @Test
+    public void testGetLocation() {
+        AddressSearchCache cache = this.create(null);
+        cache.putLocation("Heathrow T5", new Location(51.4723, -0.4877));
+        cache.putLocation("Nowhere Street", null);
+
+        assertEquals(new Location(51.4723, -0.4877), cache.getLocation("HEATHROW t5 ").getValue());
+        assertNull(cache.getLocation("nowhere street").getValue());
+        assertNull(cache.getLocation("Gatwick"));
+        assertNull(cache.getAddress("Heathrow T5"));
+    }
+
+    /**
+     * Test of getLocation method, of class AddressSearchCache. Test: the
+     * cached location cannot be modified by callers.
+     */
+    @Test
+    public void testGetLocationCopied() {
+        AddressSearchCache cache = this.create(null);
+        Location location = new Location(51.4723, -0.4877);
+        cache.putLocation("Heathrow T5", location);
+
+        location.setLatitude(0);
+        cache.getLocation("Heathrow T5").getValue().setLongitude(0);
+
+        assertEquals(new Location(51.4723, -0.4877), cache.getLocation("Heathrow T5").getValue());
+    }
+
+    /**
+     * Test of save and load methods, of class AddressSearchCache.
+     */
+    @Test
+    public void testSaveLoad() throws Exception {
+        File file = File.createTempFile("address-search", ".cache");
+        file.deleteOnExit();
+
+        AddressSearchCache cache = this.create(file);
+        cache.putAddress("al10 8jd", "30 Cheviots, Hatfield AL10 8JD, UK");
+        cache.putAddress("Nowhere Street", null);
+        cache.save();
+
+        AddressSearchCache restarted = this.create(file);
+
+        assertEquals(1, restarted.load());
+        assertEquals("30 Cheviots, Hatfield AL10 8JD, UK", restarted.getAddress("AL108JD").getValue());
+        assertNull(restarted.getAddress("Nowhere Street"));
+    }
+
+    /**
+     * Test of save and load methods, of class AddressSearchCache. Test: a
+     * loaded result is served for the time it had left when saved, not a
+     * full ttl.
+     */
+    @Test
+    public void testLoadRemainingLifetime() throws Exception {
+        File file = File.createTempFile("address-search", ".cache");
+        file.deleteOnExit();
+
+        AddressSearchCache cache = this.create(
+                new EntityCache<String, Serializable>("test", 100, 1, TimeUnit.MINUTES), file);
+        cache.putAddress("al10 8jd", "30 Cheviots, Hatfield AL10 8JD, UK");
+        cache.save();
+
+        EntityCache<String, Serializable> found = new EntityCache<>("test", 100, 1, TimeUnit.HOURS);
+        AddressSearchCache restarted = this.create(found, file);
+
+        assertEquals(1, restarted.load());
+        long ttl = found.getTimesToLive(TimeUnit.SECONDS).get("search|al10 8jd");
+        assertTrue(ttl > 0 && ttl <= 60);
+    }
+}
@@ -0,0 +1,53 @@
+package com.robertnorthard.dtbs.server.layer.utils.geocoding;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Polyline utility class unit tests.
+ *
+ * @author robertnorthard
+ */
+public class PolyLineUtilsTest {
+
+    private static final String ENCODED = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+
+    /**
+     * Test of encodePoly method, of class PolyLineUtils. Test: Google example
+     * polyline.
+     */
+    @Test
+    public void testEncodePoly() {
+        List<Location> path = new ArrayList<>();
+        path.add(new Location(38.5, -120.2));
+        path.add(new Location(40.7, -120.95));
+        path.add(new Location(43.252, -126.453));
+
+        assertEquals(ENCODED, PolyLineUtils.encodePoly(path));
+    }
+
+    /**
+     * Test of decodePoly method, of class PolyLineUtils. Test: decoding an
+     * encoded path returns the original locations.
+     */
+    @Test
+    public void testDecodeEncodedPoly() {
+        List<Location> path = PolyLineUtils.decodePoly(ENCODED);
+
+        assertEquals(3, path.size());
+        assertEquals(ENCODED, PolyLineUtils.encodePoly(path));
+        assertEquals(43.252, path.get(2).getLatitude(), 0.000001);
+        assertEquals(-126.453, path.get(2).getLongitude(), 0.000001);
+    }
+
+    /**
+     * Test of encodePoly method, of class PolyLineUtils. Test: null path.
+     */
+    @Test
+    public void testEncodeNullPoly() {
+        assertEquals("", PolyLineUtils.encodePoly(null));
+    }
+}
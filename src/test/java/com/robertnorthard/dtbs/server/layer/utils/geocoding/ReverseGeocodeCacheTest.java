@@ -0,0 +1,80 @@
+package com.robertnorthard.dtbs.server.layer.utils.geocoding;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Address;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCache;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Reverse geocode cache unit tests.
+ *
+ * @author robertnorthard
+ */
+public class ReverseGeocodeCacheTest {
+
+    private ReverseGeocodeCache reverseGeocodeCache;
+
+    @Before
+    public void setUp() {
+        this.reverseGeocodeCache = new ReverseGeocodeCache(
+                new EntityCache<String, String>("test", 100, 1, TimeUnit.HOURS), 25);
+    }
+
+    /**
+     * Test of get method, of class ReverseGeocodeCache. Test: point a few
+     * metres away served from the cache.
+     */
+    @Test
+    public void testGetNearbyPoint() {
+        this.reverseGeocodeCache.put(51.76305, -0.22305, "30 Cheviots, Hatfield AL10 8JD, UK");
+
+        assertEquals("30 Cheviots, Hatfield AL10 8JD, UK",
+                this.reverseGeocodeCache.get(51.76308, -0.22302));
+        assertEquals(1, this.reverseGeocodeCache.getStats().getHits());
+    }
+
+    /**
+     * Test of get method, of class ReverseGeocodeCache. Test: distant point
+     * not cached.
+     */
+    @Test
+    public void testGetDistantPoint() {
+        this.reverseGeocodeCache.put(51.76305, -0.22305, "30 Cheviots, Hatfield AL10 8JD, UK");
+
+        assertNull(this.reverseGeocodeCache.get(51.7640, -0.22305));
+        assertEquals(1, this.reverseGeocodeCache.getStats().getMisses());
+    }
+
+    /**
+     * Test of key method, of class ReverseGeocodeCache. Test: points a few
+     * metres apart share a key, distant points do not.
+     */
+    @Test
+    public void testKey() {
+        assertEquals(this.reverseGeocodeCache.key(51.76305, -0.22305),
+                this.reverseGeocodeCache.key(51.76308, -0.22302));
+        assertNotEquals(this.reverseGeocodeCache.key(51.76305, -0.22305),
+                this.reverseGeocodeCache.key(51.7640, -0.22305));
+    }
+
+    /**
+     * Test of prefill method, of class ReverseGeocodeCache. Test: most recent
+     * address kept for a cell and incomplete addresses ignored.
+     */
+    @Test
+    public void testPrefill() {
+        int count = this.reverseGeocodeCache.prefill(Arrays.asList(
+                new Address("College Lane, Hatfield AL10 9AB, UK", new Location(51.76305, -0.22305)),
+                new Address(null, new Location(51.5, -0.1)),
+                new Address("College Ln, Hatfield AL10 9AB, UK", new Location(51.76306, -0.22306))));
+
+        assertEquals(2, count);
+        assertEquals("College Lane, Hatfield AL10 9AB, UK",
+                this.reverseGeocodeCache.get(51.76305, -0.22305));
+        assertNull(this.reverseGeocodeCache.get(51.5, -0.1));
+    }
+}
@@ -0,0 +1,113 @@
+package com.robertnorthard.dtbs.server.layer.utils.geocoding;
+
+import com.robertnorthard.dtbs.server.layer.service.entities.Address;
+import com.robertnorthard.dtbs.server.layer.service.entities.Location;
+import com.robertnorthard.dtbs.server.layer.service.entities.Route;
+import com.robertnorthard.dtbs.server.layer.utils.cache.EntityCache;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Route cache unit tests.
+ *
+ * @author robertnorthard
+ */
+public class RouteCacheTest {
+
+    private final Location station = new Location(51.763, -0.223);
+    private final Location airport = new Location(51.8763, -0.3717);
+
+    private TestRouteCache routeCache;
+    private Route route;
+
+    @Before
+    public void setUp() {
+        this.routeCache = new TestRouteCache();
+        this.route = new Route(
+                new Address("Hatfield Station", this.station),
+                new Address("Luton Airport", this.airport),
+                18000, Arrays.asList(this.station, this.airport), 1500);
+    }
+
+    /**
+     * Test of get method, of class RouteCache. Test: route requested from a
+     * nearby point is served from the cache at the requested locations.
+     */
+    @Test
+    public void testGetNearbyPoint() {
+        this.routeCache.put(this.station, this.airport, this.route);
+
+        // about 10 meters from the station.
+        Location nearby = new Location(51.76309, -0.22301);
+        Route result = this.routeCache.get(nearby, this.airport);
+
+        assertNotNull(result);
+        assertEquals(1500, result.getEstimateTravelTime(), 0);
+        assertEquals("Hatfield Station", result.getStartAddress().getAddress());
+        assertEquals(nearby, result.getStartAddress().getLocation());
+        assertEquals(1, this.routeCache.getStats().getHits());
+    }
+
+    /**
+     * Test of get method, of class RouteCache. Test: route from a distant
+     * point is not cached.
+     */
+    @Test
+    public void testGetDistantPoint() {
+        this.routeCache.put(this.station, this.airport, this.route);
+
+        // about 1 kilometre from the station.
+        assertNull(this.routeCache.get(new Location(51.772, -0.223), this.airport));
+        assertEquals(1, this.routeCache.getStats().getMisses());
+    }
+
+    /**
+     * Test of get method, of class RouteCache. Test: route is not served at a
+     * different time of day.
+     */
+    @Test
+    public void testGetTimeOfDay() {
+        this.routeCache.time = new DateTime(2016, 3, 1, 8, 15).getMillis();
+        this.routeCache.put(this.station, this.airport, this.route);
+
+        this.routeCache.time = new DateTime(2016, 3, 1, 8, 45).getMillis();
+        assertNotNull(this.routeCache.get(this.station, this.airport));
+
+        this.routeCache.time = new DateTime(2016, 3, 1, 17, 30).getMillis();
+        assertNull(this.routeCache.get(this.station, this.airport));
+    }
+
+    /**
+     * Test of get method, of class RouteCache. Test: changes to a returned
+     * route do not change the cached route.
+     */
+    @Test
+    public void testGetCopy() {
+        this.routeCache.put(this.station, this.airport, this.route);
+
+        this.routeCache.get(this.station, this.airport).setEstimateTravelTime(0);
+
+        assertEquals(1500, this.routeCache.get(this.station, this.airport).getEstimateTravelTime(), 0);
+    }
+
+    /**
+     * Route cache with a settable clock.
+     */
+    private static class TestRouteCache extends RouteCache {
+
+        private long time = System.currentTimeMillis();
+
+        TestRouteCache() {
+            super(new EntityCache<String, Route>("test", 100, 1, TimeUnit.HOURS), 50, 60);
+        }
+
+        @Override
+        protected long now() {
+            return this.time;
+        }
+    }
+}
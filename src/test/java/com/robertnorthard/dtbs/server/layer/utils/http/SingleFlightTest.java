@@ -0,0 +1,204 @@
+package com.robertnorthard.dtbs.server.layer.utils.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Single flight unit tests.
+ *
+ * @author robertnorthard
+ */
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private SingleFlight<String, String> singleFlight;
+    private ExecutorService executor;
+    private CountDownLatch release;
+    private AtomicInteger loads;
+
+    @Before
+    public void setUp() {
+        this.singleFlight = new SingleFlight<>();
+        this.executor = Executors.newFixedThreadPool(CALLERS);
+        this.release = new CountDownLatch(1);
+        this.loads = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        this.release.countDown();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Test of execute method, of class SingleFlight. Test: concurrent callers
+     * with the same key share a single call.
+     */
+    @Test
+    public void testExecuteCoalesced() throws Exception {
+        List<Future<String>> results = this.submit("hatfield", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                loads.incrementAndGet();
+                release.await();
+                return "Hatfield, UK";
+            }
+        });
+        this.awaitCoalesced(CALLERS - 1);
+        this.release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("Hatfield, UK", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, this.loads.get());
+        assertEquals(1, this.singleFlight.getCalls());
+        assertEquals(CALLERS - 1, this.singleFlight.getCoalesced());
+    }
+
+    /**
+     * Test of execute method, of class SingleFlight. Test: every caller
+     * receives the error thrown by the call.
+     */
+    @Test
+    public void testExecuteErrorShared() throws Exception {
+        final IOException error = new IOException("Google API unavailable.");
+
+        List<Future<String>> results = this.submit("hatfield", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                loads.incrementAndGet();
+                release.await();
+                throw error;
+            }
+        });
+        this.awaitCoalesced(CALLERS - 1);
+        this.release.countDown();
+
+        for (Future<String> result : results) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("Expected the call to fail.");
+            } catch (ExecutionException ex) {
+                // unwrap the executor and single flight execution exceptions.
+                assertSame(error, ex.getCause().getCause());
+            }
+        }
+        assertEquals(1, this.loads.get());
+    }
+
+    /**
+     * Test of execute method, of class SingleFlight. Test: a completed call is
+     * not shared with later callers.
+     */
+    @Test
+    public void testExecuteAfterComplete() throws Exception {
+        Callable<String> loader = new Callable<String>() {
+            @Override
+            public String call() {
+                return "Call " + loads.incrementAndGet();
+            }
+        };
+
+        assertEquals("Call 1", this.singleFlight.execute("hatfield", loader, 1, TimeUnit.SECONDS));
+        assertEquals("Call 2", this.singleFlight.execute("hatfield", loader, 1, TimeUnit.SECONDS));
+        assertEquals(0, this.singleFlight.getCoalesced());
+    }
+
+    /**
+     * Test of execute method, of class SingleFlight. Test: calls with
+     * different keys are not coalesced.
+     */
+    @Test
+    public void testExecuteDifferentKeys() throws Exception {
+        final CountDownLatch started = new CountDownLatch(2);
+        Callable<String> loader = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                release.await();
+                return "Hatfield, UK";
+            }
+        };
+
+        Future<String> first = this.submit("hatfield", loader, 1).get(0);
+        Future<String> second = this.submit("welwyn", loader, 1).get(0);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        this.release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(2, this.singleFlight.getCalls());
+    }
+
+    /**
+     * Test of execute method, of class SingleFlight. Test: a caller waiting
+     * for a call in flight gives up after the timeout.
+     */
+    @Test
+    public void testExecuteTimeout() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+
+        this.submit("hatfield", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                release.await();
+                return "Hatfield, UK";
+            }
+        }, 1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        try {
+            this.singleFlight.execute("hatfield", new Callable<String>() {
+                @Override
+                public String call() {
+                    return "Not called";
+                }
+            }, 50, TimeUnit.MILLISECONDS);
+            fail("Expected the wait to time out.");
+        } catch (TimeoutException ex) {
+            assertEquals(1, this.singleFlight.getTimeouts());
+        }
+    }
+
+    private void awaitCoalesced(int callers) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (this.singleFlight.getCoalesced() < callers && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private List<Future<String>> submit(String key, Callable<String> loader) {
+        return this.submit(key, loader, CALLERS);
+    }
+
+    private List<Future<String>> submit(final String key, final Callable<String> loader, int callers) {
+        List<Future<String>> results = new ArrayList<>();
+
+        for (int i = 0; i < callers; i++) {
+            results.add(this.executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return singleFlight.execute(key, loader, 5, TimeUnit.SECONDS);
+                }
+            }));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,136 @@
+package com.robertnorthard.dtbs.server.layer.utils.mail;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.mail.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * SMTP mail queue unit tests, run against a local stub SMTP server.
+ *
+ * @author robertnorthard
+ */
+public class SmtpMailQueueTest {
+
+    private StubSmtpServer stub;
+    private Session session;
+    private SmtpMailQueue mailQueue;
+
+    @Before
+    public void setUp() throws Exception {
+        this.stub = new StubSmtpServer();
+
+        Properties properties = new Properties();
+        properties.setProperty("mail.smtp.host", "localhost");
+        properties.setProperty("mail.smtp.port", String.valueOf(this.stub.getPort()));
+
+        this.session = Session.getInstance(properties);
+        this.mailQueue = new SmtpMailQueue(this.session, "dtmsnoreply@example.com", 10, 3, 1);
+    }
+
+    @After
+    public void tearDown() {
+        this.mailQueue.shutdown();
+        this.stub.stop();
+    }
+
+    /**
+     * Wait for the queue to send or drop the given number of messages.
+     */
+    private void await(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+
+        while (this.mailQueue.getSent() + this.mailQueue.getFailed() < count
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Test of enqueue method, of class SmtpMailQueue. Test: messages sent
+     * over a single connection.
+     */
+    @Test
+    public void testEnqueue() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(this.mailQueue.enqueue("DTBS - Registration Confirmation",
+                    "Your account has been activated.", "timsmith@example.com"));
+        }
+        this.await(5);
+
+        assertEquals(5, this.mailQueue.getSent());
+        assertEquals(5, this.stub.getMessages().size());
+        assertEquals(1, this.stub.getConnections());
+        assertEquals(1, this.mailQueue.getConnections());
+    }
+
+    /**
+     * Test of enqueue method, of class SmtpMailQueue. Test: transient failure
+     * retried on a new connection.
+     */
+    @Test
+    public void testEnqueueRetry() throws Exception {
+        this.stub.failNext(2);
+
+        this.mailQueue.enqueue("DTBS - Reset Password", "Your temporary code is aB3d",
+                "timsmith@example.com");
+        this.await(1);
+
+        assertEquals(1, this.mailQueue.getSent());
+        assertEquals(1, this.stub.getMessages().size());
+        assertTrue(this.stub.getMessages().get(0).contains("aB3d"));
+        assertEquals(3, this.stub.getConnections());
+    }
+
+    /**
+     * Test of enqueue method, of class SmtpMailQueue. Test: message dropped
+     * after maximum attempts.
+     */
+    @Test
+    public void testEnqueueMaxAttempts() throws Exception {
+        this.stub.failNext(3);
+
+        this.mailQueue.enqueue("DTBS - Reset Password", "Your temporary code is aB3d",
+                "timsmith@example.com");
+        this.await(1);
+
+        assertEquals(0, this.mailQueue.getSent());
+        assertEquals(1, this.mailQueue.getFailed());
+    }
+
+    /**
+     * Test of enqueue method, of class SmtpMailQueue. Test: a message waiting
+     * for a retry does not hold up later messages.
+     */
+    @Test
+    public void testEnqueueRetryNotBlocking() throws Exception {
+        this.mailQueue.shutdown();
+        this.mailQueue = new SmtpMailQueue(this.session, "dtmsnoreply@example.com", 10, 3,
+                TimeUnit.SECONDS.toMillis(10));
+        this.stub.failNext(1);
+
+        this.mailQueue.enqueue("DTBS - Reset Password", "Your temporary code is aB3d",
+                "timsmith@example.com");
+        this.mailQueue.enqueue("DTBS - Registration Confirmation",
+                "Your account has been activated.", "johndoe@example.com");
+        this.await(1);
+
+        assertEquals(1, this.mailQueue.getSent());
+        assertTrue(this.stub.getMessages().get(0).contains("activated"));
+    }
+
+    /**
+     * Test of shutdown method, of class SmtpMailQueue. Test: messages
+     * rejected after shutdown.
+     */
+    @Test
+    public void testShutdown() {
+        this.mailQueue.shutdown();
+
+        assertFalse(this.mailQueue.enqueue("DTBS - Reset Password", "Your temporary code is aB3d",
+                "timsmith@example.com"));
+    }
+}
@@ -0,0 +1,148 @@
+package com.robertnorthard.dtbs.server.layer.utils.mail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal local SMTP server for testing mail delivery without a real mail
+ * server. Accepts every message, optionally replying to the end of the next
+ * messages with a transient failure.
+ *
+ * @author robertnorthard
+ */
+public class StubSmtpServer {
+
+    private final ServerSocket serverSocket;
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * Start a stub server on any free port.
+     *
+     * @throws IOException if the server cannot be started.
+     */
+    public StubSmtpServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("localhost"));
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                StubSmtpServer.this.accept();
+            }
+        }, "stub-smtp");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return port the server is listening on.
+     */
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return data of each message received.
+     */
+    public List<String> getMessages() {
+        return this.messages;
+    }
+
+    /**
+     * @return number of connections accepted.
+     */
+    public int getConnections() {
+        return this.connections.get();
+    }
+
+    /**
+     * Reject the next messages with a transient failure.
+     *
+     * @param count number of messages to reject.
+     */
+    public void failNext(int count) {
+        this.failures.set(count);
+    }
+
+    /**
+     * Stop the server.
+     */
+    public void stop() {
+        try {
+            this.serverSocket.close();
+        } catch (IOException ex) {
+            // closing.
+        }
+    }
+
+    private void accept() {
+        while (!this.serverSocket.isClosed()) {
+            try {
+                final Socket socket = this.serverSocket.accept();
+                this.connections.incrementAndGet();
+
+                Thread session = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        StubSmtpServer.this.converse(socket);
+                    }
+                });
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException ex) {
+                return;
+            }
+        }
+    }
+
+    private void converse(Socket socket) {
+        try (Socket s = socket;
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                        s.getInputStream(), StandardCharsets.US_ASCII))) {
+            OutputStream out = s.getOutputStream();
+            reply(out, "220 localhost stub");
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+
+                if (command.startsWith("DATA")) {
+                    reply(out, "354 end data with <CR><LF>.<CR><LF>");
+                    StringBuilder data = new StringBuilder();
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        data.append(line).append('\n');
+                    }
+
+                    if (this.failures.getAndDecrement() > 0) {
+                        reply(out, "451 try again later");
+                    } else {
+                        this.messages.add(data.toString());
+                        reply(out, "250 queued");
+                    }
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 bye");
+                    return;
+                } else {
+                    reply(out, "250 OK");
+                }
+            }
+        } catch (IOException ex) {
+            // connection closed.
+        }
+    }
+
+    private static void reply(OutputStream out, String line) throws IOException {
+        out.write((line + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+}